@@ -1,5 +1,12 @@
 package main.top.kindless.search;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 public interface OrderedST<K extends Comparable<K>,V> extends ST<K,V>{
 
     /**
@@ -72,8 +79,29 @@ public interface OrderedST<K extends Comparable<K>,V> extends ST<K,V>{
         else return rank(hi) - rank(lo);
     }
 
+    /**
+     * 删除lo到hi之间所有的键
+     * <br />
+     * 默认实现先取出范围内的键再逐个删除，实现类应该提供更快的实现
+     * @param lo
+     * @param hi
+     * @return 删除的键的数量
+     */
+    default int deleteRange(K lo,K hi){
+        if (hi.compareTo(lo) < 0)
+            return 0;
+        List<K> list = new ArrayList<>();
+        keys(lo,hi).forEach(list::add);
+        list.forEach(this::delete);
+        return list.size();
+    }
+
     /**
      * lo到hi之间所有键的数量，已排序
+     * <br />
+     * 实现类返回的是惰性的范围：只在遍历时才查找，遍历到哪里就查找到哪里，
+     * <br />
+     * 所以只读取前几个键时，耗时与范围的大小无关
      * @param lo
      * @param hi
      * @return
@@ -84,4 +112,69 @@ public interface OrderedST<K extends Comparable<K>,V> extends ST<K,V>{
     default Iterable<K> keys(){
         return keys(min(),max());
     }
+
+    /**
+     * lo到hi之间所有的键，从大到小排序
+     * <br />
+     * 默认实现需要先取出所有的键，实现类应该提供惰性的实现
+     * @param lo
+     * @param hi
+     * @return
+     */
+    default Iterable<K> descendingKeys(K lo,K hi){
+        List<K> list = new ArrayList<>();
+        keys(lo,hi).forEach(list::add);
+        Collections.reverse(list);
+        return list;
+    }
+
+    /**
+     * lo到hi之间所有的键值对，已排序
+     * <br />
+     * 默认实现对每一个键都要再查找一次值，实现类应该直接从结点中取出值
+     * @param lo
+     * @param hi
+     * @return
+     */
+    default Iterable<Map.Entry<K,V>> entries(K lo,K hi){
+        Iterable<K> keys = keys(lo,hi);
+        return () -> new Iterator<Map.Entry<K, V>>() {
+            private final Iterator<K> iterator = keys.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                K k = iterator.next();
+                return new AbstractMap.SimpleImmutableEntry<>(k,get(k));
+            }
+        };
+    }
+
+    /**
+     * lo到hi之间所有的键值对，从大到小排序
+     * @param lo
+     * @param hi
+     * @return
+     */
+    default Iterable<Map.Entry<K,V>> descendingEntries(K lo,K hi){
+        Iterable<K> keys = descendingKeys(lo,hi);
+        return () -> new Iterator<Map.Entry<K, V>>() {
+            private final Iterator<K> iterator = keys.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                K k = iterator.next();
+                return new AbstractMap.SimpleImmutableEntry<>(k,get(k));
+            }
+        };
+    }
 }
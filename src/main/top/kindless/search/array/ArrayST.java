@@ -1,11 +1,24 @@
 package main.top.kindless.search.array;
 
 import main.top.kindless.search.ST;
+import main.top.kindless.search.annotation.UnSafe;
 
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.function.BiConsumer;
 
+/**
+ * 基于无序数组的符号表，顺序查找。
+ * <br />
+ * 删除只把值置为null留下墓碑，之后再插入这个键时直接复用。
+ * <br />
+ * 墓碑占所有元素的比例超过{@link #MAX_GARBAGE_RATIO}时，在删除操作中顺便压缩一次，
+ * <br />
+ * 压缩是O(n)的，但是两次压缩之间至少有O(n)次删除，均摊到每次删除是O(1)
+ * @param <K> 键
+ * @param <V> 值
+ */
+@UnSafe
 public class ArrayST<K,V> implements ST<K,V> {
 
     private Node[] nodes;
@@ -16,6 +29,16 @@ public class ArrayST<K,V> implements ST<K,V> {
 
     private int size;
 
+    /**
+     * 墓碑的数量
+     */
+    private int garbage;
+
+    /**
+     * 墓碑的比例超过这个值时压缩
+     */
+    private static final double MAX_GARBAGE_RATIO = .25;
+
     private class Node{
         K key;
         V val;
@@ -37,21 +60,24 @@ public class ArrayST<K,V> implements ST<K,V> {
         nodes = (Node[]) Array.newInstance(Node.class,capacity);
         nodes[0] = new Node(null,null);
         size = 1;   //默认第一个元素当哨兵，提高性能
-        //后台开启垃圾清理
-        Thread gc = new Thread(() -> {
-            while (true) {
-                collectGarbage();
-            }
-        }, "garbageCollection");
-        gc.setDaemon(true);
-        gc.start();
     }
 
+    /**
+     * 插入，值为null时等同于删除
+     * @param k 键
+     * @param v 值
+     */
     @Override
     public void put(K k, V v) {
         nullValueCheck(k);
+        if (v == null){
+            delete(k);
+            return;
+        }
         for (int i = 1; i < size; i++) {
             if (nodes[i].key.equals(k)){
+                if (nodes[i].val == null)
+                    garbage--;
                 nodes[i].val = v;
                 return;
             }
@@ -72,16 +98,49 @@ public class ArrayST<K,V> implements ST<K,V> {
         return nodes[i].val;
     }
 
+    /**
+     * 删除，留下墓碑，墓碑太多时压缩
+     * @param k 键
+     */
+    @Override
+    public void delete(K k) {
+        nullValueCheck(k);
+        for (int i = 1; i < size; i++) {
+            if (nodes[i].key.equals(k)){
+                if (nodes[i].val != null){
+                    nodes[i].val = null;
+                    garbage++;
+                    if (garbageRatio() > MAX_GARBAGE_RATIO)
+                        collectGarbage();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 不包括墓碑
+     * @return 符号表的大小
+     */
     @Override
     public int size() {
-        return size-1;
+        return size - 1 - garbage;
+    }
+
+    /**
+     * 墓碑占数组中所有元素的比例
+     * @return 墓碑的比例
+     */
+    public double garbageRatio() {
+        return size == 1 ? 0 : (double) garbage / (size - 1);
     }
 
     @Override
     public Iterable<K> keys() {
         List<K> list = new ArrayList<>();
         for (int i = 1; i < size; i++) {
-            list.add(nodes[i].key);
+            if (nodes[i].val != null)
+                list.add(nodes[i].key);
         }
         return list;
     }
@@ -98,7 +157,8 @@ public class ArrayST<K,V> implements ST<K,V> {
             } catch (IllegalStateException e) {
                 throw new ConcurrentModificationException(e);
             }
-            action.accept(k,v);
+            if (v != null)
+                action.accept(k,v);
         }
     }
 
@@ -160,12 +220,17 @@ public class ArrayST<K,V> implements ST<K,V> {
                 MAX_ARRAY_SIZE;
     }
 
+    /**
+     * 压缩，一次遍历把有效的元素按原来的顺序移到前面，O(n)
+     */
     private void collectGarbage(){
+        int w = 1;
         for (int i = 1; i < size; i++) {
-            if (nodes[i].val == null || nodes[i].key == null){
-                if (size - 1 - i >= 0) System.arraycopy(nodes, i + 1, nodes, i, size - 1 - i);
-                nodes[--size] = null;
-            }
+            if (nodes[i].val != null)
+                nodes[w++] = nodes[i];
         }
+        Arrays.fill(nodes,w,size,null);
+        size = w;
+        garbage = 0;
     }
 }
@@ -1,9 +1,15 @@
 package main.top.kindless.search.binary;
 
 import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.utils.MergeJoin;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+import main.top.kindless.search.utils.SortedInput;
 
 import java.util.*;
 import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
 
 
 public class BinarySearchST<K extends Comparable<K>,V> implements OrderedST<K,V> {
@@ -28,6 +34,46 @@ public class BinarySearchST<K extends Comparable<K>,V> implements OrderedST<K,V>
         values = (V[]) new Object[capacity];
     }
 
+    private BinarySearchST(K[] keys,V[] values,int size){
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * 从已排序的键值对批量构建，读入的数组直接作为符号表的数组，O(n)，
+     * <br />
+     * 逐个put时每次插入都要移动后面的元素，需要O(n^2)
+     * @param sorted 按键从小到大排列、键不重复的键值对
+     * @return 二分查找符号表
+     */
+    public static <K extends Comparable<K>,V> BinarySearchST<K,V> bulkLoad(Iterator<? extends Map.Entry<K,V>> sorted){
+        SortedInput<K,V> input = SortedInput.drain(sorted,false);
+        return new BinarySearchST<>(input.keys,input.values,input.size);
+    }
+
+    /**
+     * 从已排序的数组构建，只复制一次，数组的容量正好等于键的数量
+     * @param keys 严格递增的键
+     * @param values 和键一一对应的值
+     * @return 二分查找符号表
+     */
+    public static <K extends Comparable<K>,V> BinarySearchST<K,V> fromSorted(K[] keys,V[] values){
+        SortedInput<K,V> input = SortedInput.of(keys,values,false);
+        int n = input.size;
+        return new BinarySearchST<>(Arrays.copyOf(input.keys,n),Arrays.copyOf(input.values,n),n);
+    }
+
+    /**
+     * 冻结成只读的Eytzinger布局，查找没有分支预测失败，缓存未命中也更少，
+     * <br />
+     * 适合构建之后只读的大表，之后这个符号表的修改不会影响返回的符号表
+     * @return 只读符号表
+     */
+    public EytzingerST<K,V> freeze(){
+        return new EytzingerST<>(keys,values,size);
+    }
+
     @Override
     public K min() {
         if (isEmpty())
@@ -79,22 +125,58 @@ public class BinarySearchST<K extends Comparable<K>,V> implements OrderedST<K,V>
         return keys[i];
     }
 
+    @Override
+    public Iterable<K> keys() {
+        return new RangeIterable<>(() -> new Cursor<>(0,size,false,true,i -> keys[i]));
+    }
+
+    /**
+     * 惰性的范围，遍历时才查找lo和hi的排名，不复制数组
+     * @param lo
+     * @param hi
+     * @return
+     */
     @Override
     public Iterable<K> keys(K lo, K hi) {
+        return range(lo,hi,false,true,i -> keys[i]);
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return range(lo,hi,true,true,i -> keys[i]);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+        return range(lo,hi,false,false,i -> new AbstractMap.SimpleImmutableEntry<>(keys[i],values[i]));
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+        return range(lo,hi,true,false,i -> new AbstractMap.SimpleImmutableEntry<>(keys[i],values[i]));
+    }
+
+    /**
+     * [lo,hi]的排名区间在每次遍历开始时计算
+     */
+    private <T> Iterable<T> range(K lo,K hi,boolean descending,boolean sortedKeys,IntFunction<T> element){
         nullValueCheck(lo,hi);
-        List<K> list = new ArrayList<>();
-        if (lo.compareTo(hi) > 0)
-            return list;
-        list.addAll(Arrays.asList(keys).subList(rank(lo), rank(hi)));
-        if (contains(hi))
-            list.add(keys[rank(hi)]);
-        return list;
+        return new RangeIterable<>(() -> {
+            if (lo.compareTo(hi) > 0)
+                return new Cursor<>(0,0,descending,sortedKeys,element);
+            int to = rank(hi);
+            if (to < size && keys[to].compareTo(hi) == 0)
+                to++;
+            return new Cursor<>(rank(lo),to,descending,sortedKeys,element);
+        });
     }
 
     /**
      * 在容量不足的时候会进行扩容操作，这样会大大降低该次插入值的效率，
      * <br />
-     * 所以最好提前预估二分查找符号表的大小
+     * 所以最好提前预估二分查找符号表的大小。
+     * <br />
+     * 插入位置后面的元素整体移动一次，仍然是O(n)，随机插入很多时用{@link BufferedBinarySearchST}
      * @param k 键
      * @param v 值
      */
@@ -107,10 +189,8 @@ public class BinarySearchST<K extends Comparable<K>,V> implements OrderedST<K,V>
             return;
         }
         ensureCapacityInternal(size + 1);
-        for (int j = size; j > i; j--) {
-            keys[j] = keys[j - 1];
-            values[j] = values[j-1];
-        }
+        System.arraycopy(keys,i,keys,i + 1,size - i);
+        System.arraycopy(values,i,values,i + 1,size - i);
         keys[i] = k;
         values[i] = v;
         size++;
@@ -139,15 +219,113 @@ public class BinarySearchST<K extends Comparable<K>,V> implements OrderedST<K,V>
         int i = rank(k);
         if (i == size || keys[i].compareTo(k) != 0)
             return;
-        for (int j = i; j < size - 1; j++) {
-            keys[j] = keys[j + 1];
-            values[j] = values[j + 1];
-        }
+        System.arraycopy(keys,i + 1,keys,i,size - i - 1);
+        System.arraycopy(values,i + 1,values,i,size - i - 1);
         size--;
         keys[size] = null;
         values[size] = null;
     }
 
+    /**
+     * 删除[lo,hi]范围内的所有键，后面的元素只整体移动一次
+     * @param lo
+     * @param hi
+     * @return 删除的键的数量
+     */
+    @Override
+    public int deleteRange(K lo, K hi) {
+        nullValueCheck(lo,hi);
+        if (lo.compareTo(hi) > 0)
+            return 0;
+        int from = rank(lo);
+        int to = rank(hi);
+        if (to < size && keys[to].compareTo(hi) == 0)
+            to++;
+        int n = to - from;
+        if (n <= 0)
+            return 0;
+        System.arraycopy(keys,to,keys,from,size - to);
+        System.arraycopy(values,to,values,from,size - to);
+        Arrays.fill(keys,size - n,size,null);
+        Arrays.fill(values,size - n,size,null);
+        size -= n;
+        return n;
+    }
+
+    /**
+     * 分裂，这个符号表只保留小于k的键，不小于k的键复制到返回的新符号表中
+     * @param k
+     * @return 不小于k的键组成的符号表
+     */
+    public BinarySearchST<K,V> split(K k){
+        nullValueCheck(k);
+        int from = rank(k);
+        int n = size - from;
+        BinarySearchST<K,V> right = new BinarySearchST<>(n);
+        System.arraycopy(keys,from,right.keys,0,n);
+        System.arraycopy(values,from,right.values,0,n);
+        right.size = n;
+        Arrays.fill(keys,from,size,null);
+        Arrays.fill(values,from,size,null);
+        size = from;
+        return right;
+    }
+
+    /**
+     * 并集，两个数组顺序归并一次，O(m+n)，a和b保持不变
+     * @param a
+     * @param b
+     * @param merge 两边都有的键，新值是merge(a中的值, b中的值)，返回null时删除这个键
+     * @return 新的符号表
+     */
+    public static <K extends Comparable<K>,V> BinarySearchST<K,V> union(BinarySearchST<K,V> a,BinarySearchST<K,V> b,BinaryOperator<V> merge){
+        return bulkLoad(MergeJoin.union(MergeJoin.entries(a),MergeJoin.entries(b),merge));
+    }
+
+    /**
+     * 交集，a和b保持不变
+     * @param a
+     * @param b
+     * @param merge 新值是merge(a中的值, b中的值)，返回null时删除这个键
+     * @return 新的符号表
+     */
+    public static <K extends Comparable<K>,V> BinarySearchST<K,V> intersection(BinarySearchST<K,V> a,BinarySearchST<K,V> b,BinaryOperator<V> merge){
+        return bulkLoad(MergeJoin.intersection(MergeJoin.entries(a),MergeJoin.entries(b),merge));
+    }
+
+    /**
+     * 差集，a和b保持不变
+     * @param a
+     * @param b
+     * @return a中有而b中没有的键组成的新符号表
+     */
+    public static <K extends Comparable<K>,V> BinarySearchST<K,V> difference(BinarySearchST<K,V> a,BinarySearchST<K,V> b){
+        return bulkLoad(MergeJoin.difference(MergeJoin.entries(a),MergeJoin.entries(b)));
+    }
+
+    /**
+     * 连接两个符号表，left中所有的键都必须小于right中所有的键，
+     * <br />
+     * right的元素追加到left的数组末尾，返回的就是left，之后right为空
+     * @param left
+     * @param right
+     * @return 包含两个符号表所有键的符号表
+     */
+    public static <K extends Comparable<K>,V> BinarySearchST<K,V> join(BinarySearchST<K,V> left,BinarySearchST<K,V> right){
+        if (left == right)
+            throw new IllegalArgumentException("cannot join a symbol table with itself");
+        if (!left.isEmpty() && !right.isEmpty() && left.max().compareTo(right.min()) >= 0)
+            throw new IllegalArgumentException("keys of left table must be less than keys of right table");
+        left.ensureCapacityInternal(left.size + right.size);
+        System.arraycopy(right.keys,0,left.keys,left.size,right.size);
+        System.arraycopy(right.values,0,left.values,left.size,right.size);
+        left.size += right.size;
+        Arrays.fill(right.keys,0,right.size,null);
+        Arrays.fill(right.values,0,right.size,null);
+        right.size = 0;
+        return left;
+    }
+
     @Override
     public void forEach(BiConsumer<? super K, ? super V> action) {
         Objects.requireNonNull(action);
@@ -181,14 +359,12 @@ public class BinarySearchST<K extends Comparable<K>,V> implements OrderedST<K,V>
     private void grow(int miniCapacity){
         int oldCapacity = keys.length;
         int newCapacity = oldCapacity == 1 ? oldCapacity << 1 : oldCapacity + (oldCapacity >> 1);
-        if (newCapacity - oldCapacity < 0)
-            newCapacity = oldCapacity;
+        if (newCapacity - miniCapacity < 0)
+            newCapacity = miniCapacity;
         if (newCapacity - MAX_ARRAY_SIZE > 0)
             newCapacity = hugeCapacity(miniCapacity);
-        synchronized (this){
-            keys = Arrays.copyOf(keys,newCapacity);
-            values = Arrays.copyOf(values,newCapacity);
-        }
+        keys = Arrays.copyOf(keys,newCapacity);
+        values = Arrays.copyOf(values,newCapacity);
     }
 
     /**
@@ -213,6 +389,32 @@ public class BinarySearchST<K extends Comparable<K>,V> implements OrderedST<K,V>
             throw new IndexOutOfBoundsException("Index:"+index+", Size:"+size);
     }
 
+    /**
+     * 按排名直接读取数组的范围游标
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final IntFunction<T> element;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, IntFunction<T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            return element.apply(descending ? hi - 1 : lo);
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
+    }
+
     /**
      * 检查空参数，任意一个参数为空都会检查不通过
      * @param value 参数列表
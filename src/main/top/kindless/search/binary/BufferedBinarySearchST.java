@@ -0,0 +1,459 @@
+package main.top.kindless.search.binary;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * 写优化的二分查找符号表。主数组和{@link BinarySearchST}一样是紧凑的有序数组，
+ * <br />
+ * 新键先插入一个小的有序缓冲区，缓冲区满了再和主数组一次归并，
+ * <br />
+ * 缓冲区的大小约为sqrt(n)，每次插入移动O(sqrt(n))个元素，远小于直接插入主数组的O(n)。
+ * <br />
+ * 删除主数组中的键只把值置为null作为墓碑，墓碑超过一半时压缩，
+ * <br />
+ * 有墓碑时用树状数组统计每个位置之前的有效元素，rank和select仍然是对数时间。
+ * <br />
+ * 缓冲区和主数组的键不重复，读操作同时查找两部分，范围遍历归并两部分
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class BufferedBinarySearchST<K extends Comparable<K>, V> implements OrderedST<K, V> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 8;
+
+    private static final int MIN_BUFFER_CAPACITY = 64;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 主数组，values[i]为null的位置是墓碑
+     */
+    private K[] keys;
+
+    private V[] values;
+
+    /**
+     * 主数组中的元素个数，包括墓碑
+     */
+    private int size;
+
+    /**
+     * 墓碑的个数
+     */
+    private int dead;
+
+    /**
+     * 主数组有效元素的树状数组，下标从1开始，没有墓碑时为null
+     */
+    private int[] live;
+
+    private K[] bufferKeys;
+
+    private V[] bufferValues;
+
+    private int bufferSize;
+
+    public BufferedBinarySearchST() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BufferedBinarySearchST(int capacity) {
+        keys = (K[]) new Comparable[capacity];
+        values = (V[]) new Object[capacity];
+        bufferKeys = (K[]) new Comparable[MIN_BUFFER_CAPACITY];
+        bufferValues = (V[]) new Object[MIN_BUFFER_CAPACITY];
+    }
+
+    /**
+     * 主数组中已有的键（包括墓碑）直接修改值，否则插入缓冲区，缓冲区满了就归并
+     * @param k 键
+     * @param v 值
+     */
+    @Override
+    public void put(K k, V v) {
+        nullValueCheck(k, v);
+        int i = Arrays.binarySearch(keys, 0, size, k);
+        if (i >= 0) {
+            if (values[i] == null) {
+                dead--;
+                if (dead == 0) live = null;
+                else update(i, 1);
+            }
+            values[i] = v;
+            return;
+        }
+        int j = Arrays.binarySearch(bufferKeys, 0, bufferSize, k);
+        if (j >= 0) {
+            bufferValues[j] = v;
+            return;
+        }
+        j = -j - 1;
+        System.arraycopy(bufferKeys, j, bufferKeys, j + 1, bufferSize - j);
+        System.arraycopy(bufferValues, j, bufferValues, j + 1, bufferSize - j);
+        bufferKeys[j] = k;
+        bufferValues[j] = v;
+        if (++bufferSize == bufferKeys.length)
+            flush();
+    }
+
+    @Override
+    public V get(K k) {
+        nullValueCheck(k);
+        int i = Arrays.binarySearch(keys, 0, size, k);
+        if (i >= 0)
+            return values[i];
+        int j = Arrays.binarySearch(bufferKeys, 0, bufferSize, k);
+        return j >= 0 ? bufferValues[j] : null;
+    }
+
+    /**
+     * 缓冲区中的键直接移除，主数组中的键留下墓碑，墓碑超过主数组的一半时压缩
+     * @param k 键
+     */
+    @Override
+    public void delete(K k) {
+        nullValueCheck(k);
+        int i = Arrays.binarySearch(keys, 0, size, k);
+        if (i >= 0) {
+            if (values[i] == null)
+                return;
+            if (dead == 0)
+                buildLive();
+            values[i] = null;
+            dead++;
+            update(i, -1);
+            if (dead > size >> 1)
+                flush();
+            return;
+        }
+        int j = Arrays.binarySearch(bufferKeys, 0, bufferSize, k);
+        if (j < 0)
+            return;
+        System.arraycopy(bufferKeys, j + 1, bufferKeys, j, bufferSize - j - 1);
+        System.arraycopy(bufferValues, j + 1, bufferValues, j, bufferSize - j - 1);
+        bufferSize--;
+        bufferKeys[bufferSize] = null;
+        bufferValues[bufferSize] = null;
+    }
+
+    @Override
+    public int size() {
+        return size - dead + bufferSize;
+    }
+
+    @Override
+    public K min() {
+        if (isEmpty())
+            throw new NoSuchElementException("called min() with empty symbol table");
+        return select(0);
+    }
+
+    @Override
+    public K max() {
+        if (isEmpty())
+            throw new NoSuchElementException("called max() with empty symbol table");
+        return select(size() - 1);
+    }
+
+    @Override
+    public K floor(K k) {
+        nullValueCheck(k);
+        if (get(k) != null)
+            return k;
+        int r = rank(k);
+        return r == 0 ? null : select(r - 1);
+    }
+
+    @Override
+    public K ceiling(K k) {
+        nullValueCheck(k);
+        int r = rank(k);
+        return r == size() ? null : select(r);
+    }
+
+    /**
+     * 两部分中小于k的键的数量之和，主数组要减去前面的墓碑
+     */
+    @Override
+    public int rank(K k) {
+        nullValueCheck(k);
+        int i = Arrays.binarySearch(keys, 0, size, k);
+        int j = Arrays.binarySearch(bufferKeys, 0, bufferSize, k);
+        return liveBefore(i >= 0 ? i : -i - 1) + (j >= 0 ? j : -j - 1);
+    }
+
+    @Override
+    public K select(int i) {
+        if (i < 0 || i >= size())
+            throw new IndexOutOfBoundsException("Index:" + i + ", Size:" + size());
+        int t = split(i);
+        if (i - t == size - dead)
+            return bufferKeys[t];
+        K k = keys[livePosition(i - t)];
+        return t < bufferSize && bufferKeys[t].compareTo(k) < 0 ? bufferKeys[t] : k;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return new RangeIterable<>(() -> new Cursor<>(0, size(), false, true, (k, v) -> k));
+    }
+
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return range(lo, hi, false, true, (k, v) -> k);
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return range(lo, hi, true, true, (k, v) -> k);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+        return range(lo, hi, false, false, AbstractMap.SimpleImmutableEntry::new);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+        return range(lo, hi, true, false, AbstractMap.SimpleImmutableEntry::new);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int i = 0, j = 0;
+        while (i < size || j < bufferSize) {
+            if (i < size && values[i] == null) {
+                i++;
+            } else if (j == bufferSize || i < size && keys[i].compareTo(bufferKeys[j]) < 0) {
+                action.accept(keys[i], values[i]);
+                i++;
+            } else {
+                action.accept(bufferKeys[j], bufferValues[j]);
+                j++;
+            }
+        }
+    }
+
+    /**
+     * 立即把缓冲区归并到主数组并清除墓碑，之后的读操作只需要查找主数组，
+     * <br />
+     * 适合在大量写入之后、只读阶段开始之前调用
+     */
+    public void flush() {
+        if (dead > 0) {
+            int w = 0;
+            for (int r = 0; r < size; r++) {
+                if (values[r] != null) {
+                    keys[w] = keys[r];
+                    values[w] = values[r];
+                    w++;
+                }
+            }
+            Arrays.fill(keys, w, size, null);
+            Arrays.fill(values, w, size, null);
+            size = w;
+            dead = 0;
+            live = null;
+        }
+        //从后往前归并，缓冲区的每个键在主数组中二分查找位置，中间的元素整段移动，
+        //比较只有O(sqrt(n)log(n))次，主数组的元素只移动一次
+        ensureCapacityInternal(size + bufferSize);
+        int i = size, w = size + bufferSize;
+        for (int j = bufferSize - 1; j >= 0; j--) {
+            int p = -Arrays.binarySearch(keys, 0, i, bufferKeys[j]) - 1;
+            w -= i - p;
+            System.arraycopy(keys, p, keys, w, i - p);
+            System.arraycopy(values, p, values, w, i - p);
+            i = p;
+            keys[--w] = bufferKeys[j];
+            values[w] = bufferValues[j];
+        }
+        size += bufferSize;
+        Arrays.fill(bufferKeys, 0, bufferSize, null);
+        Arrays.fill(bufferValues, 0, bufferSize, null);
+        bufferSize = 0;
+        resizeBuffer();
+    }
+
+    /**
+     * 缓冲区的容量取sqrt(n)，插入缓冲区和分摊的归并开销都是O(sqrt(n))
+     */
+    @SuppressWarnings("unchecked")
+    private void resizeBuffer() {
+        int capacity = Math.max(MIN_BUFFER_CAPACITY, Integer.highestOneBit((int) Math.sqrt(size)) << 1);
+        if (capacity != bufferKeys.length) {
+            bufferKeys = (K[]) new Comparable[capacity];
+            bufferValues = (V[]) new Object[capacity];
+        }
+    }
+
+    /**
+     * 合并顺序中前r个元素里有多少个来自缓冲区，二分查找满足
+     * <br />
+     * 主数组第r-t个有效元素之前的元素都不大于缓冲区第t个元素的最小的t
+     */
+    private int split(int r) {
+        int lo = Math.max(0, r - (size - dead)), hi = Math.min(r, bufferSize);
+        while (lo < hi) {
+            int t = (lo + hi) >>> 1;
+            if (keys[livePosition(r - t - 1)].compareTo(bufferKeys[t]) > 0)
+                lo = t + 1;
+            else hi = t;
+        }
+        return lo;
+    }
+
+    /**
+     * 主数组[0,p)中有效元素的个数
+     */
+    private int liveBefore(int p) {
+        if (live == null)
+            return p;
+        int n = 0;
+        for (; p > 0; p -= p & -p)
+            n += live[p];
+        return n;
+    }
+
+    /**
+     * 主数组中第j个有效元素的位置，在树状数组上从高位往低位找
+     */
+    private int livePosition(int j) {
+        if (live == null)
+            return j;
+        int p = 0;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            if (p + step <= size && live[p + step] <= j) {
+                p += step;
+                j -= live[p];
+            }
+        }
+        return p;
+    }
+
+    private void buildLive() {
+        live = new int[size + 1];
+        for (int i = 1; i <= size; i++) {
+            live[i]++;
+            int parent = i + (i & -i);
+            if (parent <= size)
+                live[parent] += live[i];
+        }
+    }
+
+    private void update(int i, int delta) {
+        for (int p = i + 1; p <= size; p += p & -p)
+            live[p] += delta;
+    }
+
+    private <T> Iterable<T> range(K lo, K hi, boolean descending, boolean sortedKeys, BiFunction<K, V, T> element) {
+        nullValueCheck(lo, hi);
+        return new RangeIterable<>(() -> {
+            if (lo.compareTo(hi) > 0)
+                return new Cursor<>(0, 0, descending, sortedKeys, element);
+            int to = rank(hi);
+            if (get(hi) != null)
+                to++;
+            return new Cursor<>(rank(lo), to, descending, sortedKeys, element);
+        });
+    }
+
+    private void ensureCapacityInternal(int miniCapacity) {
+        if (miniCapacity - keys.length > 0) {
+            int oldCapacity = keys.length;
+            int newCapacity = oldCapacity + (oldCapacity >> 1);
+            if (newCapacity - miniCapacity < 0)
+                newCapacity = miniCapacity;
+            if (newCapacity - MAX_ARRAY_SIZE > 0) {
+                if (miniCapacity < 0)
+                    throw new OutOfMemoryError();
+                newCapacity = miniCapacity > MAX_ARRAY_SIZE ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+            }
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    /**
+     * 归并两部分的范围游标，第一次取元素时按排名定位两部分的起点，之后跳过墓碑
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final BiFunction<K, V, T> element;
+
+        /**
+         * 主数组和缓冲区中下一个元素的位置
+         */
+        private int i, j;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, BiFunction<K, V, T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            if (descending)
+                return previous(first);
+            if (first) {
+                j = split(lo);
+                i = lo - j < size - dead ? livePosition(lo - j) : size;
+            }
+            T t;
+            if (i == size || j < bufferSize && bufferKeys[j].compareTo(keys[i]) < 0) {
+                t = element.apply(bufferKeys[j], bufferValues[j]);
+                j++;
+            } else {
+                t = element.apply(keys[i], values[i]);
+                do i++;
+                while (i < size && values[i] == null);
+            }
+            return t;
+        }
+
+        private T previous(boolean first) {
+            if (first) {
+                int n = split(hi);
+                j = n - 1;
+                i = hi - n > 0 ? livePosition(hi - n - 1) : -1;
+            }
+            T t;
+            if (i < 0 || j >= 0 && bufferKeys[j].compareTo(keys[i]) > 0) {
+                t = element.apply(bufferKeys[j], bufferValues[j]);
+                j--;
+            } else {
+                t = element.apply(keys[i], values[i]);
+                do i--;
+                while (i >= 0 && values[i] == null);
+            }
+            return t;
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
+    }
+
+    private void nullValueCheck(Object... value) {
+        for (Object o : value) {
+            if (o == null)
+                throw new IllegalArgumentException("argument is null");
+        }
+    }
+}
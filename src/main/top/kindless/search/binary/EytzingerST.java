@@ -0,0 +1,276 @@
+package main.top.kindless.search.binary;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.annotation.Safe;
+import main.top.kindless.search.utils.MergeJoin;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+import main.top.kindless.search.utils.SortedInput;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * 只读的有序符号表，键按Eytzinger顺序（完全二叉树的层序）存放：
+ * <br />
+ * 位置i的两个孩子在2i和2i+1，查找从1开始每一步只算下一个位置，没有和比较结果相关的分支。
+ * <br />
+ * 二分查找的前几次比较分散在整个数组里，每一层都可能缓存未命中，
+ * <br />
+ * Eytzinger顺序下树的前几层挤在数组开头的几个缓存行里，一直留在缓存中，
+ * <br />
+ * 而且同一个结点的后代在数组里是连续的，硬件预取可以提前读到下一层。
+ * <br />
+ * 排名和位置之间用两个int数组互相转换，rank、select、floor、ceiling和范围遍历都是O(1)的转换加一次查找。
+ * <br />
+ * 构建之后不能修改，多个线程可以同时读
+ * @param <K> 键
+ * @param <V> 值
+ * @see BinarySearchST#freeze()
+ */
+@Safe
+public class EytzingerST<K extends Comparable<K>, V> implements OrderedST<K, V> {
+
+    /**
+     * 按Eytzinger顺序排列的键和值，下标从1开始，0不使用
+     */
+    private final K[] keys;
+
+    private final V[] values;
+
+    /**
+     * 位置到排名
+     */
+    private final int[] rankOf;
+
+    /**
+     * 排名到位置
+     */
+    private final int[] indexOf;
+
+    private final int size;
+
+    /**
+     * @param sorted 严格递增的键，只读取前n个
+     * @param sortedValues 和键一一对应的值
+     * @param n 键的数量
+     */
+    @SuppressWarnings("unchecked")
+    EytzingerST(K[] sorted, V[] sortedValues, int n) {
+        keys = (K[]) new Comparable[n + 1];
+        values = (V[]) new Object[n + 1];
+        rankOf = new int[n + 1];
+        indexOf = new int[n];
+        size = n;
+        //按中序遍历完全二叉树依次填入排序的键，只需要一个栈，深度是log(n)
+        int[] stack = new int[32];
+        int top = 0, i = 1, r = 0;
+        while (i <= n || top > 0) {
+            for (; i <= n; i <<= 1)
+                stack[top++] = i;
+            i = stack[--top];
+            keys[i] = sorted[r];
+            values[i] = sortedValues[r];
+            rankOf[i] = r;
+            indexOf[r++] = i;
+            i = i << 1 | 1;
+        }
+    }
+
+    /**
+     * 把任意有序符号表冻结成只读的Eytzinger布局，O(n)
+     * @param st 有序符号表，冻结之后它的修改不会影响返回的符号表
+     * @return 只读符号表
+     */
+    public static <K extends Comparable<K>, V> EytzingerST<K, V> freeze(OrderedST<K, V> st) {
+        SortedInput<K, V> input = SortedInput.drain(MergeJoin.entries(st), false);
+        return new EytzingerST<>(input.keys, input.values, input.size);
+    }
+
+    /**
+     * 第一个不小于k的键的位置，所有键都小于k时返回0。
+     * <br />
+     * 比较结果的符号位直接决定走左孩子还是右孩子，循环次数总是树高，
+     * <br />
+     * 结束时i的二进制去掉末尾连续的1和最后一个0，就是最后一次向左走的结点
+     */
+    private int lowerBound(K k) {
+        int i = 1;
+        while (i <= size)
+            i = i << 1 | keys[i].compareTo(k) >>> 31;
+        return i >>> Integer.numberOfTrailingZeros(~i) + 1;
+    }
+
+    @Override
+    public V get(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        return i != 0 && keys[i].compareTo(k) == 0 ? values[i] : null;
+    }
+
+    @Override
+    public void put(K k, V v) {
+        throw new UnsupportedOperationException("EytzingerST is immutable");
+    }
+
+    @Override
+    public void delete(K k) {
+        throw new UnsupportedOperationException("EytzingerST is immutable");
+    }
+
+    @Override
+    public void deleteMin() {
+        throw new UnsupportedOperationException("EytzingerST is immutable");
+    }
+
+    @Override
+    public void deleteMax() {
+        throw new UnsupportedOperationException("EytzingerST is immutable");
+    }
+
+    @Override
+    public int deleteRange(K lo, K hi) {
+        throw new UnsupportedOperationException("EytzingerST is immutable");
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public K min() {
+        if (isEmpty())
+            throw new NoSuchElementException("called min() with empty symbol table");
+        return keys[indexOf[0]];
+    }
+
+    @Override
+    public K max() {
+        if (isEmpty())
+            throw new NoSuchElementException("called max() with empty symbol table");
+        return keys[indexOf[size - 1]];
+    }
+
+    @Override
+    public K floor(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        if (i != 0 && keys[i].compareTo(k) == 0)
+            return keys[i];
+        int r = i == 0 ? size : rankOf[i];
+        return r == 0 ? null : keys[indexOf[r - 1]];
+    }
+
+    @Override
+    public K ceiling(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        return i == 0 ? null : keys[i];
+    }
+
+    /**
+     * @return 小于k的键的数量
+     */
+    @Override
+    public int rank(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        return i == 0 ? size : rankOf[i];
+    }
+
+    @Override
+    public K select(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index:" + i + ", Size:" + size);
+        return keys[indexOf[i]];
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return new RangeIterable<>(() -> new Cursor<>(0, size, false, true, i -> keys[i]));
+    }
+
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return range(lo, hi, false, true, i -> keys[i]);
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return range(lo, hi, true, true, i -> keys[i]);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+        return range(lo, hi, false, false, i -> new AbstractMap.SimpleImmutableEntry<>(keys[i], values[i]));
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+        return range(lo, hi, true, false, i -> new AbstractMap.SimpleImmutableEntry<>(keys[i], values[i]));
+    }
+
+    /**
+     * 按排名的顺序遍历，不是数组的顺序
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        for (int r = 0; r < size; r++) {
+            int i = indexOf[r];
+            action.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * [lo,hi]的排名区间在每次遍历开始时计算
+     */
+    private <T> Iterable<T> range(K lo, K hi, boolean descending, boolean sortedKeys, IntFunction<T> element) {
+        nullValueCheck(lo, hi);
+        return new RangeIterable<>(() -> {
+            if (lo.compareTo(hi) > 0)
+                return new Cursor<>(0, 0, descending, sortedKeys, element);
+            int i = lowerBound(hi);
+            int to = i == 0 ? size : keys[i].compareTo(hi) == 0 ? rankOf[i] + 1 : rankOf[i];
+            return new Cursor<>(rank(lo), to, descending, sortedKeys, element);
+        });
+    }
+
+    /**
+     * 按排名遍历的游标，每个元素通过排名转换成数组位置
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final IntFunction<T> element;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, IntFunction<T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            return element.apply(indexOf[descending ? hi - 1 : lo]);
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
+    }
+
+    private void nullValueCheck(Object... value) {
+        for (Object o : value) {
+            if (o == null)
+                throw new IllegalArgumentException("argument is null");
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package main.top.kindless.search.binary;
+
+import main.top.kindless.search.annotation.UnSafe;
+import main.top.kindless.search.function.IntObjConsumer;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.OptionalInt;
+
+/**
+ * Implementation of ordered symbol table based on binary search over <br />
+ * a sorted array, specialized for {@code int} keys.<br />
+ * Keys are stored unboxed in a {@code int[]} array next to a parallel <br />
+ * value array, so a search reads consecutive primitives instead of <br />
+ * following a reference and calling {@code compareTo} at every step. <br />
+ * Searches and range counts go through a pluggable {@link SearchKernel}. <br />
+ * Range queries return the keys as a {@code int[]} copied with one <br />
+ * {@link System#arraycopy}, or pass them to a {@link IntObjConsumer}, <br />
+ * never boxing them. Insertion and deletion shift the tail of the <br />
+ * arrays, so building a large table should go through {@link #fromSorted}.
+ * @param <V> the type of the value
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.binary.BinarySearchST
+ * @see main.top.kindless.search.binary.LongBinarySearchST
+ */
+@UnSafe
+public class IntBinarySearchST<V> {
+
+    /*----------Fields----------*/
+    /**
+     * The current number of elements in the symbol table.
+     */
+    private int N;
+
+    /**
+     * The keys in strictly ascending order, only the first N are used.
+     */
+    private int[] keys;
+
+    /**
+     * The values, indexed like the keys.
+     */
+    private V[] values;
+
+    private final SearchKernel kernel;
+
+    /*-----------Constants----------*/
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final SearchKernel DEFAULT_KERNEL = SearchKernel.load();
+
+    public IntBinarySearchST() {
+        this(DEFAULT_SIZE, DEFAULT_KERNEL);
+    }
+
+    public IntBinarySearchST(int capacity) {
+        this(capacity, DEFAULT_KERNEL);
+    }
+
+    /**
+     *
+     * @param capacity Initial capacity of the arrays.
+     * @param kernel The search kernel.
+     */
+    @SuppressWarnings("unchecked")
+    public IntBinarySearchST(int capacity, SearchKernel kernel) {
+        keys = new int[capacity];
+        values = (V[]) new Object[capacity];
+        this.kernel = Objects.requireNonNull(kernel);
+    }
+
+    /**
+     * Builds a symbol table from sorted arrays in O(n), copying them once.
+     * @param keys keys in strictly ascending order
+     * @param values the values of the keys, none of them null
+     * @return the symbol table
+     */
+    public static <V> IntBinarySearchST<V> fromSorted(int[] keys, V[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + keys.length + ", " + values.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0 && keys[i - 1] >= keys[i])
+                throw new IllegalArgumentException("keys are not strictly ascending: " + keys[i - 1] + ", " + keys[i]);
+            if (values[i] == null)
+                throw new IllegalArgumentException("value is null at " + i);
+        }
+        IntBinarySearchST<V> st = new IntBinarySearchST<>(keys.length);
+        System.arraycopy(keys, 0, st.keys, 0, keys.length);
+        System.arraycopy(values, 0, st.values, 0, keys.length);
+        st.N = keys.length;
+        return st;
+    }
+
+    /**
+     * Insertion operation. Inserting a null value is the same as deleting the key.
+     * @param key The unique identification of the data element
+     * @param value Data element value
+     */
+    public void put(int key, V value) {
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        int i = kernel.lowerBound(keys, 0, N, key);
+        if (i < N && keys[i] == key) {
+            values[i] = value;
+            return;
+        }
+        if (N == keys.length)
+            grow(N + 1);
+        System.arraycopy(keys, i, keys, i + 1, N - i);
+        System.arraycopy(values, i, values, i + 1, N - i);
+        keys[i] = key;
+        values[i] = value;
+        N++;
+    }
+
+    /**
+     * Search operation.
+     * @param key The unique identification of the data element
+     * @return The value of the data element, or null if the key is absent
+     */
+    public V get(int key) {
+        int i = kernel.lowerBound(keys, 0, N, key);
+        return i < N && keys[i] == key ? values[i] : null;
+    }
+
+    /**
+     * Whether the symbol table contains the key.
+     * @param key The unique identification of the data element
+     * @return true if the key is present
+     */
+    public boolean contains(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Deletion operation, the tail of the arrays is shifted back once.
+     * @param key The unique identification of the data element
+     */
+    public void delete(int key) {
+        int i = kernel.lowerBound(keys, 0, N, key);
+        if (i == N || keys[i] != key)
+            return;
+        System.arraycopy(keys, i + 1, keys, i, N - i - 1);
+        System.arraycopy(values, i + 1, values, i, N - i - 1);
+        values[--N] = null;
+    }
+
+    /**
+     * The number of data elements in the symbol table.
+     * @return The number of data elements in the symbol table.
+     */
+    public int size() {
+        return N;
+    }
+
+    public boolean isEmpty() {
+        return N == 0;
+    }
+
+    /**
+     * The number of keys in {@code [lo, hi]}, two searches and no iteration.
+     * @param lo the smallest key, inclusive
+     * @param hi the largest key, inclusive
+     * @return the number of keys in the range
+     */
+    public int size(int lo, int hi) {
+        if (lo > hi)
+            return 0;
+        int from = kernel.lowerBound(keys, 0, N, lo);
+        return kernel.upperBound(keys, from, N, hi) - from;
+    }
+
+    public int min() {
+        if (N == 0)
+            throw new NoSuchElementException("called min() with empty symbol table");
+        return keys[0];
+    }
+
+    public int max() {
+        if (N == 0)
+            throw new NoSuchElementException("called max() with empty symbol table");
+        return keys[N - 1];
+    }
+
+    /**
+     * @param key the key to search
+     * @return the largest key less than or equal to {@code key}, if any
+     */
+    public OptionalInt floor(int key) {
+        int i = kernel.upperBound(keys, 0, N, key);
+        return i == 0 ? OptionalInt.empty() : OptionalInt.of(keys[i - 1]);
+    }
+
+    /**
+     * @param key the key to search
+     * @return the smallest key greater than or equal to {@code key}, if any
+     */
+    public OptionalInt ceiling(int key) {
+        int i = kernel.lowerBound(keys, 0, N, key);
+        return i == N ? OptionalInt.empty() : OptionalInt.of(keys[i]);
+    }
+
+    /**
+     * @param key the key to search
+     * @return the number of keys less than {@code key}
+     */
+    public int rank(int key) {
+        return kernel.lowerBound(keys, 0, N, key);
+    }
+
+    /**
+     * @param i the rank
+     * @return the key of rank {@code i}
+     */
+    public int select(int i) {
+        if (i < 0 || i >= N)
+            throw new IndexOutOfBoundsException("Index:" + i + ", Size:" + N);
+        return keys[i];
+    }
+
+    /**
+     * Returns all keys in the symbol table.
+     * @return all keys in ascending order
+     */
+    public int[] keys() {
+        return Arrays.copyOf(keys, N);
+    }
+
+    /**
+     * Returns the keys in {@code [lo, hi]}.
+     * @param lo the smallest key, inclusive
+     * @param hi the largest key, inclusive
+     * @return the keys in the range in ascending order
+     */
+    public int[] keys(int lo, int hi) {
+        if (lo > hi)
+            return new int[0];
+        int from = kernel.lowerBound(keys, 0, N, lo);
+        return Arrays.copyOfRange(keys, from, kernel.upperBound(keys, from, N, hi));
+    }
+
+    /**
+     * The iteration operation provided internally supports lambda expression, <br />
+     * keys are passed to the action in ascending order without being boxed.
+     * @param action Circulatory body
+     */
+    public void forEach(IntObjConsumer<? super V> action) {
+        forEachIndex(0, N, action);
+    }
+
+    /**
+     * Iterates the keys in {@code [lo, hi]} in ascending order.
+     * @param lo the smallest key, inclusive
+     * @param hi the largest key, inclusive
+     * @param action Circulatory body
+     */
+    public void forEach(int lo, int hi, IntObjConsumer<? super V> action) {
+        if (lo > hi)
+            return;
+        int from = kernel.lowerBound(keys, 0, N, lo);
+        forEachIndex(from, kernel.upperBound(keys, from, N, hi), action);
+    }
+
+    /**
+     * Remove all the elements, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(values, 0, N, null);
+        N = 0;
+    }
+
+    /**
+     * Convert all the key value pairs to string.
+     * @return string value
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        forEach((k, v) -> sb.append(k).append("=").append(v).append(","));
+        if (sb.charAt(sb.length() - 1) == ',')
+            sb.replace(sb.length() - 1, sb.length(), "");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private void forEachIndex(int from, int to, IntObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        for (int i = from; i < to; i++) {
+            action.accept(keys[i], values[i]);
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int oldCapacity = keys.length;
+        int newCapacity = Math.max(oldCapacity + (oldCapacity >> 1), minCapacity);
+        if (newCapacity - MAX_ARRAY_SIZE > 0) {
+            if (minCapacity < 0)
+                throw new OutOfMemoryError();
+            newCapacity = MAX_ARRAY_SIZE;
+        }
+        keys = Arrays.copyOf(keys, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+    }
+}
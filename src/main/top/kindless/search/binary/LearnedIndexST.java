@@ -0,0 +1,488 @@
+package main.top.kindless.search.binary;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+import main.top.kindless.search.utils.SortedInput;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * 数值键的学习索引符号表。键和{@link BinarySearchST}一样存放在有序数组中，
+ * <br />
+ * 另外在键到位置的映射上拟合一个分段线性模型，每一段保证预测的位置和实际位置相差不超过epsilon，
+ * <br />
+ * 查找时先在很小的段数组中找到键所在的段，算出预测位置，再在[预测-epsilon,预测+epsilon]中二分，
+ * <br />
+ * 键的分布接近线性时（递增的时间戳、自增id）只有几个段，一次查找只需要log2(epsilon)次左右的比较。
+ * <br />
+ * 分段用收缩锥的方法在线构建：以段的第一个点为原点，每个新点把可行的斜率范围收窄，范围为空时开始新的一段，
+ * <br />
+ * 所以追加比最大键更大的键时只更新最后一段，O(1)。中间插入和删除使后面的位置偏移一位，
+ * <br />
+ * 记录偏移的次数并放宽查找窗口，超过epsilon次时重新拟合。键不多时不建模型，用插值查找。
+ * <br />
+ * 查找的窗口不包含目标时向外倍增扩大，所以模型只影响速度，不影响正确性。
+ * <br />
+ * 键的doubleValue必须和compareTo的顺序一致（不减），doubleValue相同的键再用compareTo区分
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class LearnedIndexST<K extends Number & Comparable<K>, V> implements OrderedST<K, V> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 8;
+
+    private static final int DEFAULT_EPSILON = 32;
+
+    /**
+     * 键的数量达到这个值之后才建模型
+     */
+    private static final int MODEL_THRESHOLD = 1 << 10;
+
+    /**
+     * 插值查找的最多探测次数，分布很不均匀时改用二分
+     */
+    private static final int MAX_INTERPOLATIONS = 8;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private K[] keys;
+
+    private V[] values;
+
+    /**
+     * 键的doubleValue，模型和查找只读这个数组，不需要访问键对象
+     */
+    private double[] xs;
+
+    private int size;
+
+    private final int epsilon;
+
+    /**
+     * 每一段第一个键的doubleValue、第一个键的位置和斜率，段数为0表示还没有模型
+     */
+    private double[] first, intercept, slope;
+
+    private int segments;
+
+    /**
+     * 最后一段的可行斜率范围
+     */
+    private double coneLow, coneHigh;
+
+    /**
+     * 建模型之后中间插入和删除的次数，每次都可能使预测多偏差一位
+     */
+    private int drift;
+
+    public LearnedIndexST() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_EPSILON);
+    }
+
+    /**
+     *
+     * @param capacity 初始容量
+     * @param epsilon 模型的最大误差，越小段数越多，查找窗口越小
+     */
+    @SuppressWarnings("unchecked")
+    public LearnedIndexST(int capacity, int epsilon) {
+        if (epsilon < 1)
+            throw new IllegalArgumentException("epsilon must be positive: " + epsilon);
+        this.epsilon = epsilon;
+        keys = (K[]) new Number[capacity];
+        values = (V[]) new Object[capacity];
+        xs = new double[capacity];
+        first = new double[DEFAULT_INITIAL_CAPACITY];
+        intercept = new double[DEFAULT_INITIAL_CAPACITY];
+        slope = new double[DEFAULT_INITIAL_CAPACITY];
+    }
+
+    /**
+     * 从已排序的数组构建，一次拟合，O(n)
+     * @param keys 严格递增的键
+     * @param values 和键一一对应的值
+     * @param epsilon 模型的最大误差
+     * @return 学习索引符号表
+     */
+    public static <K extends Number & Comparable<K>, V> LearnedIndexST<K, V> fromSorted(K[] keys, V[] values, int epsilon) {
+        SortedInput.of(keys, values, false);
+        int n = keys.length;
+        LearnedIndexST<K, V> st = new LearnedIndexST<>(n, epsilon);
+        System.arraycopy(keys, 0, st.keys, 0, n);
+        System.arraycopy(values, 0, st.values, 0, n);
+        for (int i = 0; i < n; i++) {
+            st.xs[i] = keys[i].doubleValue();
+        }
+        st.size = n;
+        st.rebuild();
+        return st;
+    }
+
+    @Override
+    public V get(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        return i < size && keys[i].compareTo(k) == 0 ? values[i] : null;
+    }
+
+    /**
+     * 比最大键大的键追加到数组末尾，只扩展模型的最后一段，其他位置要移动后面的元素
+     * @param k 键
+     * @param v 值
+     */
+    @Override
+    public void put(K k, V v) {
+        nullValueCheck(k, v);
+        int i = lowerBound(k);
+        if (i < size && keys[i].compareTo(k) == 0) {
+            values[i] = v;
+            return;
+        }
+        ensureCapacityInternal(size + 1);
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        System.arraycopy(xs, i, xs, i + 1, size - i);
+        keys[i] = k;
+        values[i] = v;
+        xs[i] = k.doubleValue();
+        size++;
+        if (segments == 0) {
+            if (size >= MODEL_THRESHOLD)
+                rebuild();
+        } else if (i == size - 1) {
+            extend(i);
+        } else if (++drift > epsilon) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 删除最大键不影响其他键的位置，其他位置算作一次偏移
+     * @param k 键
+     */
+    @Override
+    public void delete(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        if (i == size || keys[i].compareTo(k) != 0)
+            return;
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        System.arraycopy(xs, i + 1, xs, i, size - i - 1);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        if (segments == 0)
+            return;
+        if (i < size) {
+            if (++drift > epsilon)
+                rebuild();
+        } else if (intercept[segments - 1] == size) {
+            //最后一段只有被删除的键，之前一段的斜率范围没有保存，固定为当前的斜率
+            segments--;
+            if (segments > 0)
+                coneLow = coneHigh = slope[segments - 1];
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public K min() {
+        if (isEmpty())
+            throw new NoSuchElementException("called min() with empty symbol table");
+        return keys[0];
+    }
+
+    @Override
+    public K max() {
+        if (isEmpty())
+            throw new NoSuchElementException("called max() with empty symbol table");
+        return keys[size - 1];
+    }
+
+    @Override
+    public K floor(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        if (i < size && keys[i].compareTo(k) == 0)
+            return keys[i];
+        return i == 0 ? null : keys[i - 1];
+    }
+
+    @Override
+    public K ceiling(K k) {
+        nullValueCheck(k);
+        int i = lowerBound(k);
+        return i == size ? null : keys[i];
+    }
+
+    @Override
+    public int rank(K k) {
+        nullValueCheck(k);
+        return lowerBound(k);
+    }
+
+    @Override
+    public K select(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index:" + i + ", Size:" + size);
+        return keys[i];
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return new RangeIterable<>(() -> new Cursor<>(0, size, false, true, i -> keys[i]));
+    }
+
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return range(lo, hi, false, true, i -> keys[i]);
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return range(lo, hi, true, true, i -> keys[i]);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+        return range(lo, hi, false, false, i -> new AbstractMap.SimpleImmutableEntry<>(keys[i], values[i]));
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+        return range(lo, hi, true, false, i -> new AbstractMap.SimpleImmutableEntry<>(keys[i], values[i]));
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < size; i++) {
+            action.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * @return 预测位置和实际位置的最大偏差，等于epsilon加上建模型之后的偏移次数，没有模型时为-1
+     */
+    public int maxError() {
+        return segments == 0 ? -1 : epsilon + drift;
+    }
+
+    /**
+     * @return 模型的段数
+     */
+    public int segmentCount() {
+        return segments;
+    }
+
+    /**
+     * @return 模型占用的字节数，每段三个double，不包括键值数组
+     */
+    public long modelBytes() {
+        return (long) segments * 3 * Double.BYTES;
+    }
+
+    /**
+     * 第一个不小于k的键的位置
+     */
+    private int lowerBound(K k) {
+        double x = k.doubleValue();
+        int i = segments == 0 ? interpolate(x) : predict(x);
+        while (i < size && xs[i] == x && keys[i].compareTo(k) < 0)
+            i++;
+        return i;
+    }
+
+    /**
+     * 用模型预测位置，在误差窗口里二分，窗口不包含目标时向外倍增
+     */
+    private int predict(double x) {
+        int s = segment(x);
+        double p = intercept[s] + slope[s] * (x - first[s]);
+        int error = epsilon + drift + 1;
+        int lo = (int) Math.max(0, Math.min(size, p - error));
+        int hi = (int) Math.max(0, Math.min(size, p + error + 1));
+        if (lo > 0 && xs[lo - 1] >= x) {
+            for (int step = error; ; step <<= 1) {
+                hi = lo - 1;
+                lo = Math.max(0, hi - step);
+                if (lo == 0 || xs[lo - 1] < x)
+                    break;
+            }
+        } else if (hi < size && xs[hi] < x) {
+            for (int step = error; ; step <<= 1) {
+                lo = hi + 1;
+                hi = Math.min(size, lo + step);
+                if (hi == size || xs[hi] >= x)
+                    break;
+            }
+        }
+        return lowerBound(x, lo, hi);
+    }
+
+    /**
+     * 最后一个第一个键不大于x的段，x比所有段都小时返回0
+     */
+    private int segment(double x) {
+        int lo = 0, hi = segments - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (first[mid] <= x)
+                lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * 插值查找，按[lo,hi)两端的值线性估计位置，探测几次之后还没有缩小到很小的范围就改用二分
+     */
+    private int interpolate(double x) {
+        int lo = 0, hi = size;
+        for (int probes = 0; hi - lo > 16 && probes < MAX_INTERPOLATIONS; probes++) {
+            double a = xs[lo], b = xs[hi - 1];
+            if (x <= a)
+                return lo;
+            if (x > b)
+                return hi;
+            int mid = lo + (int) ((x - a) / (b - a) * (hi - 1 - lo));
+            if (xs[mid] < x)
+                lo = mid + 1;
+            else hi = mid;
+        }
+        return lowerBound(x, lo, hi);
+    }
+
+    /**
+     * [lo,hi)中第一个不小于x的位置，都小于x时返回hi
+     */
+    private int lowerBound(double x, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (xs[mid] < x)
+                lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * 重新拟合所有的键
+     */
+    private void rebuild() {
+        segments = 0;
+        drift = 0;
+        for (int i = 0; i < size; i++) {
+            extend(i);
+        }
+    }
+
+    /**
+     * 把位置i的键加入最后一段，误差超过epsilon时从它开始新的一段
+     */
+    private void extend(int i) {
+        double x = xs[i];
+        if (segments > 0) {
+            int s = segments - 1;
+            double dx = x - first[s], dy = i - intercept[s];
+            if (dx > 0) {
+                double low = Math.max(coneLow, (dy - epsilon) / dx);
+                double high = Math.min(coneHigh, (dy + epsilon) / dx);
+                if (low <= high) {
+                    coneLow = low;
+                    coneHigh = high;
+                    slope[s] = (low + high) / 2;
+                    return;
+                }
+            } else if (Math.abs(dy) <= epsilon) {
+                return;
+            }
+        }
+        if (segments == first.length) {
+            int capacity = segments + (segments >> 1);
+            first = Arrays.copyOf(first, capacity);
+            intercept = Arrays.copyOf(intercept, capacity);
+            slope = Arrays.copyOf(slope, capacity);
+        }
+        first[segments] = x;
+        intercept[segments] = i;
+        slope[segments] = 0;
+        segments++;
+        coneLow = Double.NEGATIVE_INFINITY;
+        coneHigh = Double.POSITIVE_INFINITY;
+    }
+
+    private <T> Iterable<T> range(K lo, K hi, boolean descending, boolean sortedKeys, IntFunction<T> element) {
+        nullValueCheck(lo, hi);
+        return new RangeIterable<>(() -> {
+            if (lo.compareTo(hi) > 0)
+                return new Cursor<>(0, 0, descending, sortedKeys, element);
+            int to = lowerBound(hi);
+            if (to < size && keys[to].compareTo(hi) == 0)
+                to++;
+            return new Cursor<>(lowerBound(lo), to, descending, sortedKeys, element);
+        });
+    }
+
+    private void ensureCapacityInternal(int miniCapacity) {
+        if (miniCapacity - keys.length > 0) {
+            int oldCapacity = keys.length;
+            int newCapacity = oldCapacity + (oldCapacity >> 1);
+            if (newCapacity - miniCapacity < 0)
+                newCapacity = miniCapacity;
+            if (newCapacity - MAX_ARRAY_SIZE > 0) {
+                if (miniCapacity < 0)
+                    throw new OutOfMemoryError();
+                newCapacity = miniCapacity > MAX_ARRAY_SIZE ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+            }
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            xs = Arrays.copyOf(xs, newCapacity);
+        }
+    }
+
+    /**
+     * 按排名直接读取数组的范围游标
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final IntFunction<T> element;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, IntFunction<T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            return element.apply(descending ? hi - 1 : lo);
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
+    }
+
+    private void nullValueCheck(Object... value) {
+        for (Object o : value) {
+            if (o == null)
+                throw new IllegalArgumentException("argument is null");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package main.top.kindless.search.binary;
+
+/**
+ * Portable search kernel written in plain Java.<br />
+ * The upper levels are an ordinary branching binary search: on a large <br />
+ * array every level is a cache miss, and a speculated branch starts <br />
+ * loading the next level before the comparison is resolved, which a <br />
+ * branch-free search only matches with prefetch instructions that Java <br />
+ * does not expose. Once the range is down to {@link #BLOCK} keys, which <br />
+ * share two or three cache lines, the keys are counted in a straight <br />
+ * loop without branches, which the JIT may unroll or vectorize.
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.binary.SearchKernel
+ */
+public final class ScalarSearchKernel implements SearchKernel {
+
+    public static final ScalarSearchKernel INSTANCE = new ScalarSearchKernel();
+
+    /**
+     * The number of keys below which the range is counted linearly.
+     */
+    private static final int BLOCK = 16;
+
+    private ScalarSearchKernel() {
+    }
+
+    @Override
+    public int lowerBound(long[] a, int from, int to, long key) {
+        while (to - from > BLOCK) {
+            int mid = (from + to) >>> 1;
+            if (a[mid] < key)
+                from = mid + 1;
+            else to = mid;
+        }
+        int less = 0;
+        for (int i = from; i < to; i++) {
+            less += a[i] < key ? 1 : 0;
+        }
+        return from + less;
+    }
+
+    @Override
+    public int upperBound(long[] a, int from, int to, long key) {
+        while (to - from > BLOCK) {
+            int mid = (from + to) >>> 1;
+            if (a[mid] <= key)
+                from = mid + 1;
+            else to = mid;
+        }
+        int notGreater = 0;
+        for (int i = from; i < to; i++) {
+            notGreater += a[i] <= key ? 1 : 0;
+        }
+        return from + notGreater;
+    }
+
+    @Override
+    public int lowerBound(int[] a, int from, int to, int key) {
+        while (to - from > BLOCK) {
+            int mid = (from + to) >>> 1;
+            if (a[mid] < key)
+                from = mid + 1;
+            else to = mid;
+        }
+        int less = 0;
+        for (int i = from; i < to; i++) {
+            less += a[i] < key ? 1 : 0;
+        }
+        return from + less;
+    }
+
+    @Override
+    public int upperBound(int[] a, int from, int to, int key) {
+        while (to - from > BLOCK) {
+            int mid = (from + to) >>> 1;
+            if (a[mid] <= key)
+                from = mid + 1;
+            else to = mid;
+        }
+        int notGreater = 0;
+        for (int i = from; i < to; i++) {
+            notGreater += a[i] <= key ? 1 : 0;
+        }
+        return from + notGreater;
+    }
+}
@@ -0,0 +1,69 @@
+package main.top.kindless.search.binary;
+
+/**
+ * Search primitives over sorted primitive arrays, used by <br />
+ * {@link LongBinarySearchST} and {@link IntBinarySearchST} for lookups <br />
+ * and range counts. The default is the portable {@link ScalarSearchKernel}; <br />
+ * on a JDK with {@code jdk.incubator.vector} a kernel that compares a whole <br />
+ * vector of keys per instruction can be plugged in, either through the <br />
+ * constructor of the symbol tables or with the system property <br />
+ * {@value #KERNEL_PROPERTY} naming a class with a public no-arg constructor.
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.binary.ScalarSearchKernel
+ */
+public interface SearchKernel {
+
+    /**
+     * The system property naming the default kernel class.
+     */
+    String KERNEL_PROPERTY = "top.kindless.search.kernel";
+
+    /**
+     * The first position in {@code [from, to)} whose key is not less than {@code key}.
+     * @param a keys sorted in strictly ascending order
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @param key the key to search
+     * @return the position, or {@code to} if all keys are less than {@code key}
+     */
+    int lowerBound(long[] a, int from, int to, long key);
+
+    /**
+     * The first position in {@code [from, to)} whose key is greater than {@code key}.
+     * @param a keys sorted in strictly ascending order
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @param key the key to search
+     * @return the position, or {@code to} if no key is greater than {@code key}
+     */
+    int upperBound(long[] a, int from, int to, long key);
+
+    /**
+     * @see #lowerBound(long[], int, int, long)
+     */
+    int lowerBound(int[] a, int from, int to, int key);
+
+    /**
+     * @see #upperBound(long[], int, int, long)
+     */
+    int upperBound(int[] a, int from, int to, int key);
+
+    /**
+     * Loads the kernel named by {@value #KERNEL_PROPERTY}. If the property is <br />
+     * not set, or the class (or a module it needs) cannot be loaded, <br />
+     * the scalar kernel is returned.
+     * @return the default kernel
+     */
+    static SearchKernel load() {
+        String name = System.getProperty(KERNEL_PROPERTY);
+        if (name != null) {
+            try {
+                return (SearchKernel) Class.forName(name).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+                //fall back to the scalar kernel
+            }
+        }
+        return ScalarSearchKernel.INSTANCE;
+    }
+}
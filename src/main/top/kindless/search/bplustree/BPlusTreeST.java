@@ -0,0 +1,857 @@
+package main.top.kindless.search.bplustree;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * 内存中的B+树。
+ * <br />
+ * 红黑树每个键一个结点，查找时每一层都是一次缓存未命中；B+树的结点
+ * <br />
+ * 保存order个连续的键，一次查找只访问log(order)n个结点，结点内部是
+ * <br />
+ * 对连续数组的二分查找。键值对只保存在叶子结点中，叶子结点相互链接，
+ * <br />
+ * 所以范围查找找到起点之后是顺序读取。内部结点记录每个子树的大小，
+ * <br />
+ * rank和select只需要一次向下查找。
+ * <br />
+ * 叶子结点满的时候平均每个键值对只占两个引用，红黑树的结点要五个字段加上对象头
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class BPlusTreeST<K extends Comparable<K>, V> implements OrderedST<K, V> {
+
+    private static final int DEFAULT_ORDER = 64;
+
+    private static final int MIN_ORDER = 4;
+
+    /**
+     * 叶子结点最多的键值对数量，也是内部结点最多的子结点数量
+     */
+    private final int order;
+
+    /**
+     * 除了根结点，每个结点至少有order/2个键值对或者子结点
+     */
+    private final int minimum;
+
+    private Node root;
+
+    /**
+     * 最左和最右的叶子结点
+     */
+    private Leaf head, tail;
+
+    /**
+     * 内部结点的层数，为0时根结点就是叶子结点
+     */
+    private int height;
+
+    private int size;
+
+    /**
+     * 修改时记录的路径以及每一层走向的子结点，在多次修改之间复用
+     */
+    private Inner[] path;
+    private int[] index;
+
+    private abstract class Node {
+        /**
+         * 叶子结点中键值对的数量，内部结点中子结点的数量
+         */
+        int n;
+    }
+
+    private class Leaf extends Node {
+        final K[] keys;
+        final V[] values;
+        Leaf prev, next;
+
+        @SuppressWarnings("unchecked")
+        Leaf() {
+            keys = (K[]) new Comparable[order];
+            values = (V[]) new Object[order];
+        }
+    }
+
+    private class Inner extends Node {
+        /**
+         * keys[i]是children[i+1]子树的下界，n个子结点只有n-1个键
+         */
+        final K[] keys;
+        final Node[] children;
+        /**
+         * 每个子树中键值对的数量
+         */
+        final int[] counts;
+
+        @SuppressWarnings("unchecked")
+        Inner() {
+            keys = (K[]) new Comparable[order - 1];
+            children = (Node[]) new BPlusTreeST.Node[order];
+            counts = new int[order];
+        }
+    }
+
+    public BPlusTreeST() {
+        this(DEFAULT_ORDER);
+    }
+
+    /**
+     *
+     * @param order 每个结点最多的键值对或者子结点数量，不小于4
+     */
+    public BPlusTreeST(int order) {
+        if (order < MIN_ORDER)
+            throw new IllegalArgumentException("order must be at least " + MIN_ORDER + ": " + order);
+        this.order = order;
+        this.minimum = order / 2;
+        head = tail = new Leaf();
+        root = head;
+    }
+
+    /**
+     * 从已排序的键值对批量构建，每个结点都填满，只需要O(n)
+     * @param sorted 按键从小到大排列、键不重复的键值对
+     * @return B+树
+     */
+    public static <K extends Comparable<K>, V> BPlusTreeST<K, V> bulkLoad(Iterator<? extends Map.Entry<K, V>> sorted) {
+        return bulkLoad(sorted, DEFAULT_ORDER);
+    }
+
+    /**
+     * 从已排序的键值对批量构建。先顺序填满叶子结点，再一层一层地把结点
+     * <br />
+     * 分组作为上一层的子结点，最后一组太小时和前一组平分
+     * @param sorted 按键从小到大排列、键不重复的键值对
+     * @param order 每个结点最多的键值对或者子结点数量
+     * @return B+树
+     */
+    public static <K extends Comparable<K>, V> BPlusTreeST<K, V> bulkLoad(Iterator<? extends Map.Entry<K, V>> sorted, int order) {
+        Objects.requireNonNull(sorted);
+        BPlusTreeST<K, V> st = new BPlusTreeST<>(order);
+        st.load(sorted);
+        return st;
+    }
+
+    @Override
+    public K min() {
+        if (isEmpty())
+            throw new NoSuchElementException("called min() with empty symbol table");
+        return head.keys[0];
+    }
+
+    @Override
+    public K max() {
+        if (isEmpty())
+            throw new NoSuchElementException("called max() with empty symbol table");
+        return tail.keys[tail.n - 1];
+    }
+
+    /**
+     * 找到键所在的叶子结点，叶子结点中没有不大于k的键时就是前一个叶子结点的最后一个键
+     * @param k
+     * @return 不存在则返回null
+     */
+    @Override
+    public K floor(K k) {
+        nullValueCheck(k);
+        Leaf leaf = leafOf(k);
+        int i = upperBound(leaf.keys, leaf.n, k);
+        if (i > 0)
+            return leaf.keys[i - 1];
+        return leaf.prev == null ? null : leaf.prev.keys[leaf.prev.n - 1];
+    }
+
+    /**
+     * @param k
+     * @return 不存在则返回null
+     */
+    @Override
+    public K ceiling(K k) {
+        nullValueCheck(k);
+        Leaf leaf = leafOf(k);
+        int i = lowerBound(leaf.keys, leaf.n, k);
+        if (i < leaf.n)
+            return leaf.keys[i];
+        return leaf.next == null ? null : leaf.next.keys[0];
+    }
+
+    /**
+     * 向下查找时加上左边所有子树的大小
+     * @param k
+     * @return
+     */
+    @Override
+    public int rank(K k) {
+        nullValueCheck(k);
+        return rank(k, false);
+    }
+
+    @Override
+    public K select(int i) {
+        rangeCheck(i);
+        Node node = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) node;
+            int c = 0;
+            while (i >= inner.counts[c])
+                i -= inner.counts[c++];
+            node = inner.children[c];
+        }
+        return ((Leaf) node).keys[i];
+    }
+
+    @Override
+    public int size(K lo, K hi) {
+        nullValueCheck(lo, hi);
+        if (hi.compareTo(lo) < 0)
+            return 0;
+        return rank(hi, true) - rank(lo, false);
+    }
+
+    @Override
+    public V get(K k) {
+        nullValueCheck(k);
+        Leaf leaf = leafOf(k);
+        int i = lowerBound(leaf.keys, leaf.n, k);
+        if (i < leaf.n && k.compareTo(leaf.keys[i]) == 0)
+            return leaf.values[i];
+        return null;
+    }
+
+    /**
+     * 非递归的插入。向下查找时记录路径，键已经存在就只修改值；否则插入叶子结点，
+     * <br />
+     * 把路径上的子树大小加一。叶子结点满了就分成两半，新结点和它的下界插入父结点，
+     * <br />
+     * 父结点满了再继续向上分裂，根结点分裂时树长高一层
+     * @param k 键
+     * @param v 值，为null时删除这个键
+     */
+    @Override
+    public void put(K k, V v) {
+        nullValueCheck(k);
+        if (v == null) {
+            delete(k);
+            return;
+        }
+        Inner[] path = path();
+        Leaf leaf = descend(k, path);
+        int i = lowerBound(leaf.keys, leaf.n, k);
+        if (i < leaf.n && k.compareTo(leaf.keys[i]) == 0) {
+            leaf.values[i] = v;
+            Arrays.fill(path, 0, height, null);
+            return;
+        }
+        size++;
+        for (int d = 0; d < height; d++)
+            path[d].counts[index[d]]++;
+        if (leaf.n < order) {
+            insertAt(leaf, i, k, v);
+            Arrays.fill(path, 0, height, null);
+            return;
+        }
+
+        Leaf right = splitLeaf(leaf);
+        if (i > leaf.n)
+            insertAt(right, i - leaf.n, k, v);
+        else insertAt(leaf, i, k, v);
+        Node split = right;
+        K separator = right.keys[0];
+        int leftCount = leaf.n, rightCount = right.n;
+        for (int d = height - 1; d >= 0 && split != null; d--) {
+            Inner parent = path[d];
+            int c = index[d];
+            parent.counts[c] = leftCount;
+            if (parent.n < order) {
+                insertChild(parent, c + 1, separator, split, rightCount);
+                split = null;
+                break;
+            }
+            //先分成两半，再插入新的子结点所在的一半
+            int mid = (order + 1) / 2;
+            Inner sibling = new Inner();
+            K up = parent.keys[mid - 1];
+            int moved = parent.n - mid;
+            System.arraycopy(parent.children, mid, sibling.children, 0, moved);
+            System.arraycopy(parent.counts, mid, sibling.counts, 0, moved);
+            System.arraycopy(parent.keys, mid, sibling.keys, 0, moved - 1);
+            Arrays.fill(parent.children, mid, parent.n, null);
+            Arrays.fill(parent.keys, mid - 1, parent.n - 1, null);
+            sibling.n = moved;
+            parent.n = mid;
+            if (c < mid)
+                insertChild(parent, c + 1, separator, split, rightCount);
+            else insertChild(sibling, c + 1 - mid, separator, split, rightCount);
+            split = sibling;
+            separator = up;
+            leftCount = sum(parent);
+            rightCount = sum(sibling);
+        }
+        if (split != null) {
+            Inner newRoot = new Inner();
+            newRoot.children[0] = root;
+            newRoot.children[1] = split;
+            newRoot.counts[0] = leftCount;
+            newRoot.counts[1] = rightCount;
+            newRoot.keys[0] = separator;
+            newRoot.n = 2;
+            root = newRoot;
+            height++;
+        }
+        Arrays.fill(path, 0, path.length, null);
+    }
+
+    /**
+     * 非递归的删除。从叶子结点删除之后，把路径上的子树大小减一，
+     * <br />
+     * 结点太小时向兄弟结点借一个，兄弟结点也不够借就合并，合并会让父结点
+     * <br />
+     * 少一个子结点，需要继续向上调整。根结点只剩一个子结点时树变矮一层
+     * @param k 键
+     */
+    @Override
+    public void delete(K k) {
+        nullValueCheck(k);
+        if (isEmpty())
+            return;
+        Inner[] path = path();
+        Leaf leaf = descend(k, path);
+        int i = lowerBound(leaf.keys, leaf.n, k);
+        if (i == leaf.n || k.compareTo(leaf.keys[i]) != 0) {
+            Arrays.fill(path, 0, height, null);
+            return;
+        }
+        size--;
+        for (int d = 0; d < height; d++)
+            path[d].counts[index[d]]--;
+        removeAt(leaf, i);
+        Node node = leaf;
+        for (int d = height - 1; d >= 0 && node.n < minimum; d--) {
+            if (!rebalance(path[d], index[d]))
+                break;
+            node = path[d];
+        }
+        while (height > 0 && root.n == 1) {
+            root = ((Inner) root).children[0];
+            height--;
+        }
+        Arrays.fill(path, 0, path.length, null);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return new RangeIterable<>(() -> new Cursor<>(0, size, false, true, (leaf, i) -> leaf.keys[i]));
+    }
+
+    /**
+     * 惰性的范围，遍历时才查找lo和hi的排名，之后沿着叶子结点的链表顺序读取
+     * @param lo
+     * @param hi
+     * @return
+     */
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return range(lo, hi, false, true, (leaf, i) -> leaf.keys[i]);
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return range(lo, hi, true, true, (leaf, i) -> leaf.keys[i]);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+        return range(lo, hi, false, false, (leaf, i) -> new AbstractMap.SimpleImmutableEntry<>(leaf.keys[i], leaf.values[i]));
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+        return range(lo, hi, true, false, (leaf, i) -> new AbstractMap.SimpleImmutableEntry<>(leaf.keys[i], leaf.values[i]));
+    }
+
+    /**
+     * 沿着叶子结点的链表遍历
+     * @param action 循环体
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        for (Leaf leaf = head; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.n; i++)
+                action.accept(leaf.keys[i], leaf.values[i]);
+        }
+    }
+
+    /**
+     * 每个结点最多的键值对或者子结点数量
+     * @return
+     */
+    public int order() {
+        return order;
+    }
+
+    /**
+     * 树的高度，只有一个叶子结点时为1
+     * @return
+     */
+    public int height() {
+        return height + 1;
+    }
+
+    /**
+     * 不大于k的键的数量，或者小于k的键的数量
+     */
+    private int rank(K k, boolean inclusive) {
+        int r = 0;
+        Node node = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) node;
+            int c = upperBound(inner.keys, inner.n - 1, k);
+            for (int j = 0; j < c; j++)
+                r += inner.counts[j];
+            node = inner.children[c];
+        }
+        Leaf leaf = (Leaf) node;
+        return r + (inclusive ? upperBound(leaf.keys, leaf.n, k) : lowerBound(leaf.keys, leaf.n, k));
+    }
+
+    /**
+     * k所在的叶子结点，等于下界的键在右边的子树中
+     */
+    private Leaf leafOf(K k) {
+        Node node = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) node;
+            node = inner.children[upperBound(inner.keys, inner.n - 1, k)];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * 向下查找k所在的叶子结点，记录路径
+     */
+    private Leaf descend(K k, Inner[] path) {
+        Node node = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) node;
+            int c = upperBound(inner.keys, inner.n - 1, k);
+            path[d] = inner;
+            index[d] = c;
+            node = inner.children[c];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * 第一个不小于k的键的位置
+     */
+    private static <K extends Comparable<K>> int lowerBound(K[] keys, int n, K k) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(k) < 0)
+                lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * 第一个大于k的键的位置
+     */
+    private static <K extends Comparable<K>> int upperBound(K[] keys, int n, K k) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(k) <= 0)
+                lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void insertAt(Leaf leaf, int i, K k, V v) {
+        System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.n - i);
+        System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.n - i);
+        leaf.keys[i] = k;
+        leaf.values[i] = v;
+        leaf.n++;
+    }
+
+    private void removeAt(Leaf leaf, int i) {
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.n - i - 1);
+        System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.n - i - 1);
+        leaf.n--;
+        leaf.keys[leaf.n] = null;
+        leaf.values[leaf.n] = null;
+    }
+
+    /**
+     * 把后一半键值对移到新的叶子结点，接在原来的结点后面
+     * @return 新的叶子结点
+     */
+    private Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf();
+        int mid = leaf.n / 2;
+        int moved = leaf.n - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, moved);
+        System.arraycopy(leaf.values, mid, right.values, 0, moved);
+        Arrays.fill(leaf.keys, mid, leaf.n, null);
+        Arrays.fill(leaf.values, mid, leaf.n, null);
+        right.n = moved;
+        leaf.n = mid;
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null)
+            leaf.next.prev = right;
+        else tail = right;
+        leaf.next = right;
+        return right;
+    }
+
+    /**
+     * 在位置c插入子结点，它的下界插入在位置c-1
+     */
+    private void insertChild(Inner inner, int c, K separator, Node child, int count) {
+        System.arraycopy(inner.children, c, inner.children, c + 1, inner.n - c);
+        System.arraycopy(inner.counts, c, inner.counts, c + 1, inner.n - c);
+        System.arraycopy(inner.keys, c - 1, inner.keys, c, inner.n - c);
+        inner.children[c] = child;
+        inner.counts[c] = count;
+        inner.keys[c - 1] = separator;
+        inner.n++;
+    }
+
+    /**
+     * 删除位置c的子结点以及它的下界
+     */
+    private void removeChild(Inner inner, int c) {
+        System.arraycopy(inner.children, c + 1, inner.children, c, inner.n - c - 1);
+        System.arraycopy(inner.counts, c + 1, inner.counts, c, inner.n - c - 1);
+        System.arraycopy(inner.keys, c, inner.keys, c - 1, inner.n - c - 1);
+        inner.n--;
+        inner.children[inner.n] = null;
+        inner.counts[inner.n] = 0;
+        inner.keys[inner.n - 1] = null;
+    }
+
+    /**
+     * 父结点的第c个子结点太小了，和相邻的兄弟结点合并，或者从兄弟结点借一个
+     * @return 是否发生了合并，合并之后父结点少了一个子结点
+     */
+    private boolean rebalance(Inner parent, int c) {
+        int l = c > 0 ? c - 1 : 0;
+        Node left = parent.children[l], right = parent.children[l + 1];
+        if (left.n + right.n <= order) {
+            merge(parent, l);
+            return true;
+        }
+        if (l < c)
+            moveRight(parent, l);
+        else moveLeft(parent, l);
+        return false;
+    }
+
+    /**
+     * 把第l+1个子结点合并到第l个子结点中
+     */
+    private void merge(Inner parent, int l) {
+        if (parent.children[l] instanceof BPlusTreeST.Leaf) {
+            Leaf left = (Leaf) parent.children[l], right = (Leaf) parent.children[l + 1];
+            System.arraycopy(right.keys, 0, left.keys, left.n, right.n);
+            System.arraycopy(right.values, 0, left.values, left.n, right.n);
+            left.next = right.next;
+            if (right.next != null)
+                right.next.prev = left;
+            else tail = left;
+            left.n += right.n;
+        } else {
+            Inner left = (Inner) parent.children[l], right = (Inner) parent.children[l + 1];
+            left.keys[left.n - 1] = parent.keys[l];
+            System.arraycopy(right.keys, 0, left.keys, left.n, right.n - 1);
+            System.arraycopy(right.children, 0, left.children, left.n, right.n);
+            System.arraycopy(right.counts, 0, left.counts, left.n, right.n);
+            left.n += right.n;
+        }
+        parent.counts[l] += parent.counts[l + 1];
+        removeChild(parent, l + 1);
+    }
+
+    /**
+     * 第l个子结点的最后一个键值对或者子结点移到第l+1个子结点的最前面
+     */
+    private void moveRight(Inner parent, int l) {
+        int moved;
+        if (parent.children[l] instanceof BPlusTreeST.Leaf) {
+            Leaf left = (Leaf) parent.children[l], right = (Leaf) parent.children[l + 1];
+            insertAt(right, 0, left.keys[left.n - 1], left.values[left.n - 1]);
+            removeAt(left, left.n - 1);
+            parent.keys[l] = right.keys[0];
+            moved = 1;
+        } else {
+            Inner left = (Inner) parent.children[l], right = (Inner) parent.children[l + 1];
+            System.arraycopy(right.children, 0, right.children, 1, right.n);
+            System.arraycopy(right.counts, 0, right.counts, 1, right.n);
+            System.arraycopy(right.keys, 0, right.keys, 1, right.n - 1);
+            right.children[0] = left.children[left.n - 1];
+            right.counts[0] = left.counts[left.n - 1];
+            right.keys[0] = parent.keys[l];
+            right.n++;
+            parent.keys[l] = left.keys[left.n - 2];
+            moved = left.counts[left.n - 1];
+            left.n--;
+            left.children[left.n] = null;
+            left.counts[left.n] = 0;
+            left.keys[left.n - 1] = null;
+        }
+        parent.counts[l] -= moved;
+        parent.counts[l + 1] += moved;
+    }
+
+    /**
+     * 第l+1个子结点的第一个键值对或者子结点移到第l个子结点的最后面
+     */
+    private void moveLeft(Inner parent, int l) {
+        int moved;
+        if (parent.children[l] instanceof BPlusTreeST.Leaf) {
+            Leaf left = (Leaf) parent.children[l], right = (Leaf) parent.children[l + 1];
+            insertAt(left, left.n, right.keys[0], right.values[0]);
+            removeAt(right, 0);
+            parent.keys[l] = right.keys[0];
+            moved = 1;
+        } else {
+            Inner left = (Inner) parent.children[l], right = (Inner) parent.children[l + 1];
+            left.children[left.n] = right.children[0];
+            left.counts[left.n] = right.counts[0];
+            left.keys[left.n - 1] = parent.keys[l];
+            left.n++;
+            parent.keys[l] = right.keys[0];
+            moved = right.counts[0];
+            System.arraycopy(right.children, 1, right.children, 0, right.n - 1);
+            System.arraycopy(right.counts, 1, right.counts, 0, right.n - 1);
+            System.arraycopy(right.keys, 1, right.keys, 0, right.n - 2);
+            right.n--;
+            right.children[right.n] = null;
+            right.counts[right.n] = 0;
+            right.keys[right.n - 1] = null;
+        }
+        parent.counts[l] += moved;
+        parent.counts[l + 1] -= moved;
+    }
+
+    private static int sum(BPlusTreeST<?, ?>.Inner inner) {
+        int s = 0;
+        for (int i = 0; i < inner.n; i++)
+            s += inner.counts[i];
+        return s;
+    }
+
+    /**
+     * 修改时记录路径的数组，树长高之后重新分配
+     */
+    @SuppressWarnings("unchecked")
+    private Inner[] path() {
+        if (path == null || path.length <= height) {
+            path = (Inner[]) new BPlusTreeST.Inner[height + 4];
+            index = new int[height + 4];
+        }
+        return path;
+    }
+
+    /**
+     * 批量构建，只在空表上调用
+     */
+    private void load(Iterator<? extends Map.Entry<K, V>> sorted) {
+        List<Node> level = new ArrayList<>();
+        List<K> lowers = new ArrayList<>();
+        Leaf leaf = head;
+        level.add(leaf);
+        K last = null;
+        while (sorted.hasNext()) {
+            Map.Entry<K, V> entry = sorted.next();
+            K k = entry.getKey();
+            V v = entry.getValue();
+            nullValueCheck(k, v);
+            if (last != null && last.compareTo(k) >= 0)
+                throw new IllegalArgumentException("keys are not strictly ascending: " + last + ", " + k);
+            if (leaf.n == order) {
+                Leaf next = new Leaf();
+                next.prev = leaf;
+                leaf.next = next;
+                leaf = next;
+                level.add(leaf);
+            }
+            leaf.keys[leaf.n] = k;
+            leaf.values[leaf.n++] = v;
+            last = k;
+            size++;
+        }
+        tail = leaf;
+        //最后一个叶子结点太小时，从前一个叶子结点移过来一些，两个结点平分
+        if (leaf.n < minimum && leaf.prev != null) {
+            Leaf prev = leaf.prev;
+            int moved = (prev.n + leaf.n) / 2 - leaf.n;
+            System.arraycopy(leaf.keys, 0, leaf.keys, moved, leaf.n);
+            System.arraycopy(leaf.values, 0, leaf.values, moved, leaf.n);
+            System.arraycopy(prev.keys, prev.n - moved, leaf.keys, 0, moved);
+            System.arraycopy(prev.values, prev.n - moved, leaf.values, 0, moved);
+            Arrays.fill(prev.keys, prev.n - moved, prev.n, null);
+            Arrays.fill(prev.values, prev.n - moved, prev.n, null);
+            prev.n -= moved;
+            leaf.n += moved;
+        }
+        int[] counts = new int[level.size()];
+        for (int i = 0; i < level.size(); i++) {
+            Leaf l = (Leaf) level.get(i);
+            counts[i] = l.n;
+            lowers.add(l.keys[0]);
+        }
+        while (level.size() > 1) {
+            int m = level.size();
+            int groups = (m + order - 1) / order;
+            List<Node> upper = new ArrayList<>(groups);
+            List<K> upperLowers = new ArrayList<>(groups);
+            int[] upperCounts = new int[groups];
+            int from = 0;
+            for (int g = 0; g < groups; g++) {
+                int rest = m - from;
+                int take = Math.min(order, rest);
+                //最后两组平分，保证最后一组不会太小
+                if (g == groups - 2 && rest - order < minimum)
+                    take = rest / 2;
+                Inner inner = new Inner();
+                for (int j = 0; j < take; j++) {
+                    inner.children[j] = level.get(from + j);
+                    inner.counts[j] = counts[from + j];
+                    upperCounts[g] += counts[from + j];
+                    if (j > 0)
+                        inner.keys[j - 1] = lowers.get(from + j);
+                }
+                inner.n = take;
+                upper.add(inner);
+                upperLowers.add(lowers.get(from));
+                from += take;
+            }
+            level = upper;
+            lowers = upperLowers;
+            counts = upperCounts;
+            height++;
+        }
+        root = level.get(0);
+    }
+
+    /**
+     * [lo,hi]的排名区间在每次遍历开始时计算
+     */
+    private <T> Iterable<T> range(K lo, K hi, boolean descending, boolean sortedKeys, Element<Leaf, T> element) {
+        nullValueCheck(lo, hi);
+        return new RangeIterable<>(() -> {
+            if (lo.compareTo(hi) > 0)
+                return new Cursor<>(0, 0, descending, sortedKeys, element);
+            return new Cursor<>(rank(lo, false), rank(hi, true), descending, sortedKeys, element);
+        });
+    }
+
+    /**
+     * 从叶子结点中取出一个元素
+     */
+    private interface Element<L, T> {
+        T at(L leaf, int i);
+    }
+
+    /**
+     * 第一次取元素时按排名找到叶子结点，之后在叶子结点内部顺序移动，
+     * <br />
+     * 到了结点的边界就沿着链表走到相邻的叶子结点
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final Element<Leaf, T> element;
+
+        private Leaf leaf;
+
+        private int i;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, Element<Leaf, T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            if (first)
+                locate(descending ? hi - 1 : lo);
+            else if (descending) {
+                if (--i < 0) {
+                    leaf = leaf.prev;
+                    i = leaf.n - 1;
+                }
+            } else if (++i == leaf.n) {
+                leaf = leaf.next;
+                i = 0;
+            }
+            return element.at(leaf, i);
+        }
+
+        private void locate(int rank) {
+            Node node = root;
+            for (int d = 0; d < height; d++) {
+                Inner inner = (Inner) node;
+                int c = 0;
+                while (rank >= inner.counts[c])
+                    rank -= inner.counts[c++];
+                node = inner.children[c];
+            }
+            leaf = (Leaf) node;
+            i = rank;
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
+    }
+
+    /**
+     * 检查索引是否越界
+     * @param index 索引
+     */
+    private void rangeCheck(int index) {
+        if (index >= size || index < 0)
+            throw new IndexOutOfBoundsException("Index:" + index + ", Size:" + size);
+    }
+
+    /**
+     * 检查空参数，任意一个参数为空都会检查不通过
+     * @param value 参数列表
+     */
+    private void nullValueCheck(Object... value) {
+        for (Object o : value) {
+            if (o == null) {
+                throw new IllegalArgumentException("argument is null");
+            }
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package main.top.kindless.search.bst;
 
 import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+import main.top.kindless.search.utils.SortedInput;
 
-import java.util.ArrayList;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ConcurrentModificationException;
-import java.util.List;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
 
@@ -33,14 +42,98 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
         }
     }
 
+    /**
+     * 从已排序的键值对批量构建，先读入数组再调用{@link #fromSorted(Comparable[], Object[], boolean)}
+     * @param sorted 按键从小到大排列、键不重复的键值对
+     * @return 二叉查找树
+     */
+    public static <K extends Comparable<K>,V> BST<K,V> bulkLoad(Iterator<? extends Map.Entry<K,V>> sorted){
+        return build(SortedInput.drain(sorted,true),false);
+    }
+
+    public static <K extends Comparable<K>,V> BST<K,V> fromSorted(K[] keys,V[] values){
+        return fromSorted(keys,values,false);
+    }
+
+    /**
+     * 从已排序的数组直接构建完全平衡的树，每次取中间的键作为根结点，O(n)
+     * @param keys 严格递增的键
+     * @param values 和键一一对应的值
+     * @param parallel 是否用ForkJoin并行地构建较大的子树
+     * @return 二叉查找树
+     */
+    public static <K extends Comparable<K>,V> BST<K,V> fromSorted(K[] keys,V[] values,boolean parallel){
+        return build(SortedInput.of(keys,values,true),parallel);
+    }
+
+    private static <K extends Comparable<K>,V> BST<K,V> build(SortedInput<K,V> input,boolean parallel){
+        BST<K,V> st = new BST<>();
+        st.root = st.build(input.keys,input.values,input.size,parallel);
+        return st;
+    }
+
+    private Node build(K[] keys,V[] values,int n,boolean parallel){
+        if (parallel && n > Builder.THRESHOLD)
+            return ForkJoinPool.commonPool().invoke(new Builder(keys,values,0,n));
+        return build(keys,values,0,n);
+    }
+
+    /**
+     * 构建[lo,lo+n)的子树
+     */
+    private Node build(K[] keys,V[] values,int lo,int n){
+        if (n == 0)
+            return null;
+        int left = (n - 1) / 2;
+        Node node = new Node(keys[lo + left],values[lo + left],n);
+        node.left = build(keys,values,lo,left);
+        node.right = build(keys,values,lo + left + 1,n - 1 - left);
+        return node;
+    }
+
+    /**
+     * 并行地构建较大的子树，子树足够小时改为递归
+     */
+    private class Builder extends RecursiveTask<Node>{
+
+        static final int THRESHOLD = 1 << 14;
+
+        private final K[] keys;
+        private final V[] values;
+        private final int lo,n;
+
+        Builder(K[] keys,V[] values,int lo,int n){
+            this.keys = keys;
+            this.values = values;
+            this.lo = lo;
+            this.n = n;
+        }
+
+        @Override
+        protected Node compute() {
+            if (n <= THRESHOLD)
+                return build(keys,values,lo,n);
+            int left = (n - 1) / 2;
+            Node node = new Node(keys[lo + left],values[lo + left],n);
+            Builder l = new Builder(keys,values,lo,left);
+            l.fork();
+            node.right = new Builder(keys,values,lo + left + 1,n - 1 - left).compute();
+            node.left = l.join();
+            return node;
+        }
+    }
+
     @Override
     public K min() {
         Node min = min(root);
         return min == null ? null : min.key;
     }
 
-    private Node min(Node root){
-        return (root == null || root.left == null) ? root : min(root.left);
+    private Node min(Node node){
+        if (node != null)
+            while (node.left != null)
+                node = node.left;
+        return node;
     }
 
     @Override
@@ -49,8 +142,11 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
         return max == null ? null : max.key;
     }
 
-    private Node max(Node root){
-        return (root == null || root.right == null) ? root : max(root.right);
+    private Node max(Node node){
+        if (node != null)
+            while (node.right != null)
+                node = node.right;
+        return node;
     }
 
     @Override
@@ -59,17 +155,23 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
         return floor == null ? null : floor.key;
     }
 
-    private Node floor(K k,Node root){
-        if (root == null)
-            return null;
-        int cmp = root.key.compareTo(k);
-        if (cmp == 0)
-            return root;
-        if (cmp > 0){
-            return floor(k,root.left);
+    /**
+     * 向下查找，每向右走一步，当前结点就是目前为止最大的不大于k的结点
+     */
+    private Node floor(K k,Node node){
+        Node floor = null;
+        while (node != null){
+            int cmp = node.key.compareTo(k);
+            if (cmp == 0)
+                return node;
+            if (cmp > 0)
+                node = node.left;
+            else {
+                floor = node;
+                node = node.right;
+            }
         }
-        Node right = floor(k, root.right);
-        return right == null ? root : right;
+        return floor;
     }
 
     @Override
@@ -78,17 +180,23 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
         return ceiling == null ? null : ceiling.key;
     }
 
-    private Node ceiling(K k,Node root){
-        if (root == null)
-            return null;
-        int cmp = root.key.compareTo(k);
-        if (cmp == 0)
-            return root;
-        if (cmp < 0){
-            return floor(k,root.right);
+    /**
+     * 和floor对称，每向左走一步，当前结点就是目前为止最小的不小于k的结点
+     */
+    private Node ceiling(K k,Node node){
+        Node ceiling = null;
+        while (node != null){
+            int cmp = node.key.compareTo(k);
+            if (cmp == 0)
+                return node;
+            if (cmp < 0)
+                node = node.right;
+            else {
+                ceiling = node;
+                node = node.left;
+            }
         }
-        Node left = floor(k, root.left);
-        return left == null ? root : left;
+        return ceiling;
     }
 
     @Override
@@ -96,38 +204,171 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
         return rank(root,k);
     }
 
+    /**
+     * 向下查找，每向右走一步，左子树和当前结点都小于k
+     */
     private int rank(Node node,K k){
-        if (node == null){
-            return 0;
-        }
-        int cmp = k.compareTo(node.key);
-        if (cmp == 0){
-            return size(node.left);
-        }
-        if (cmp > 0){
-            return rank(node.right,k) + rank(node.left,k) + 1;
+        int rank = 0;
+        while (node != null){
+            int cmp = k.compareTo(node.key);
+            if (cmp == 0)
+                return rank + size(node.left);
+            if (cmp > 0){
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+            else node = node.left;
         }
-        return rank(node.left,k);
+        return rank;
     }
 
+    /**
+     * 根据左子树的大小决定向左还是向右，不需要遍历
+     */
     @Override
     public K select(int i) {
         rangeCheck(i);
-        List<K> list = new ArrayList<>();
-        inorder(root,list);
-        return list.get(i);
+        Node node = root;
+        while (true){
+            int t = size(node.left);
+            if (i < t)
+                node = node.left;
+            else if (i > t){
+                i -= t + 1;
+                node = node.right;
+            }
+            else return node.key;
+        }
     }
 
+    @Override
+    public Iterable<K> keys() {
+        return new RangeIterable<>(() -> new Cursor<>(0,size(),false,true,node -> node.key));
+    }
+
+    /**
+     * 惰性的范围，遍历时才定位到lo，只需要O(logn)就能取到第一个键
+     */
     @Override
     public Iterable<K> keys(K lo, K hi) {
-        List<K> list = new ArrayList<>();
-        inorder(root,list,lo,hi);
-        return list;
+        return range(lo,hi,false,true,node -> node.key);
     }
 
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return range(lo,hi,true,true,node -> node.key);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+        return range(lo,hi,false,false,node -> new AbstractMap.SimpleImmutableEntry<>(node.key,node.val));
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+        return range(lo,hi,true,false,node -> new AbstractMap.SimpleImmutableEntry<>(node.key,node.val));
+    }
+
+    /**
+     * [lo,hi]的排名区间在每次遍历开始时计算
+     */
+    private <T> Iterable<T> range(K lo,K hi,boolean descending,boolean sortedKeys,Function<Node,T> element){
+        return new RangeIterable<>(() -> {
+            int from = rank(lo);
+            return new Cursor<>(from,from + size(lo,hi),descending,sortedKeys,element);
+        });
+    }
+
+    /**
+     * 找到lo和hi的查找路径分叉的结点，再分别统计它左子树中不小于lo的键
+     * <br />
+     * 和右子树中不大于hi的键，只需要一次向下查找
+     */
+    @Override
+    public int size(K lo, K hi) {
+        if (hi.compareTo(lo) < 0)
+            return 0;
+        Node node = root;
+        while (node != null){
+            if (node.key.compareTo(lo) < 0)
+                node = node.right;
+            else if (node.key.compareTo(hi) > 0)
+                node = node.left;
+            else break;
+        }
+        if (node == null)
+            return 0;
+        return 1 + countFrom(node.left,lo) + countTo(node.right,hi);
+    }
+
+    /**
+     * 子树中不小于lo的键的数量
+     */
+    private int countFrom(Node node,K lo){
+        int count = 0;
+        while (node != null){
+            int cmp = node.key.compareTo(lo);
+            if (cmp < 0)
+                node = node.right;
+            else {
+                count += size(node.right) + 1;
+                if (cmp == 0)
+                    break;
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 子树中不大于hi的键的数量
+     */
+    private int countTo(Node node,K hi){
+        int count = 0;
+        while (node != null){
+            int cmp = node.key.compareTo(hi);
+            if (cmp > 0)
+                node = node.left;
+            else {
+                count += size(node.left) + 1;
+                if (cmp == 0)
+                    break;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 非递归的插入，先查找一次，键已经存在就只修改值，
+     * <br />
+     * 否则再向下走一次，沿途把子树大小加一，最后挂上新结点。
+     * <br />
+     * 不平衡的树按顺序插入时会退化成链表，非递归的实现不会栈溢出
+     * @param k 键
+     * @param v 值
+     */
     @Override
     public void put(K k, V v) {
-        root = put(root,k,v);
+        if (root == null){
+            root = new Node(k,v,1);
+            return;
+        }
+        Node node = find(k);
+        if (node != null){
+            node.val = v;
+            return;
+        }
+        Node parent = null;
+        int cmp = 0;
+        for (node = root; node != null; node = cmp < 0 ? node.left : node.right){
+            node.N++;
+            parent = node;
+            cmp = k.compareTo(node.key);
+        }
+        if (cmp < 0)
+            parent.left = new Node(k,v,1);
+        else parent.right = new Node(k,v,1);
     }
 
     @Override
@@ -140,10 +381,30 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
         return size(root);
     }
 
+    /**
+     * 用显式的栈做中序遍历，退化的树也不会栈溢出
+     * @param action 循环体
+     */
     @Override
     public void forEach(BiConsumer<? super K, ? super V> action) {
         Objects.requireNonNull(action);
-        inorder(root,action);
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !stack.isEmpty()){
+            for (; node != null; node = node.left)
+                stack.push(node);
+            node = stack.pop();
+            K k;
+            V v;
+            try {
+                k = node.key;
+                v = node.val;
+            } catch (IllegalStateException e) {
+                throw new ConcurrentModificationException(e);
+            }
+            action.accept(k,v);
+            node = node.right;
+        }
     }
 
     private int size(Node node){
@@ -164,111 +425,204 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
         return node == null ? null : node.val;
     }
 
+    /**
+     * 查找键所在的结点
+     * @param key 键
+     * @return 不存在则返回null
+     */
+    private Node find(K key){
+        Node node = root;
+        while (node != null){
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * 沿着左链接向下走，沿途把子树大小减一
+     */
     @Override
     public void deleteMin() {
         if (root == null)
             return;
-        root = deleteMin(root);
-    }
-
-    private Node deleteMin(Node node){
-        if (node.left == null)
-            return node.right;
-        node.left = deleteMin(node.left);
-        resize(node);
-        return node;
+        Node parent = null;
+        Node node = root;
+        for (; node.left != null; node = node.left){
+            node.N--;
+            parent = node;
+        }
+        if (parent == null)
+            root = node.right;
+        else parent.left = node.right;
     }
 
     @Override
     public void deleteMax() {
         if (root == null)
             return;
-        root = deleteMax(root);
-    }
-
-    private Node deleteMax(Node node){
-        if (node.right == null)
-            return node.left;
-        node.right = deleteMax(node.right);
-        resize(node);
-        return node;
+        Node parent = null;
+        Node node = root;
+        for (; node.right != null; node = node.right){
+            node.N--;
+            parent = node;
+        }
+        if (parent == null)
+            root = node.left;
+        else parent.right = node.left;
     }
 
+    /**
+     * 非递归的删除，先确认键存在，再向下走一次，沿途把子树大小减一。
+     * <br />
+     * 被删除的结点有两个孩子时，用它的后继结点，即右子树的最小结点代替它，
+     * <br />
+     * 找后继结点的路径上的子树大小也要减一
+     * @param k 键
+     */
     @Override
     public void delete(K k) {
-        root = delete(root,k);
-    }
-
-    private Node delete (Node node,K k){
-        if (node == null)
-            return null;
-        int cmp = k.compareTo(node.key);
-        if (cmp < 0)
-            node.left = delete(node.left,k);
-        else if (cmp > 0)
-            node.right = delete(node.right,k);
+        if (find(k) == null)
+            return;
+        Node parent = null;
+        Node node = root;
+        int cmp;
+        while ((cmp = k.compareTo(node.key)) != 0){
+            node.N--;
+            parent = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        Node replacement;
+        if (node.right == null)
+            replacement = node.left;
+        else if (node.left == null)
+            replacement = node.right;
         else {
-            if (node.right == null)
-                return node.left;
-            if (node.left == null)
-                return node.right;
-            Node t = node;
-            node = min(t.right);//当前删除结点赋值为其后继结点，即右子树的最小结点
-            node.right = deleteMin(t.right);//删除其右子树的最小结点
-            node.left = t.left;
+            Node successorParent = node;
+            Node successor = node.right;
+            for (; successor.left != null; successor = successor.left){
+                successor.N--;
+                successorParent = successor;
+            }
+            if (successorParent != node){
+                successorParent.left = successor.right;
+                successor.right = node.right;
+            }
+            successor.left = node.left;
+            successor.N = node.N - 1;
+            replacement = successor;
         }
-        resize(node);
-        return node;
+        if (parent == null)
+            root = replacement;
+        else if (parent.left == node)
+            parent.left = replacement;
+        else parent.right = replacement;
     }
 
-    private Node put(Node node, K key, V value){
-        //递归出口，node为空则创建新结点
-        if (node == null)   return new Node(key,value,1);
-        int cmp = node.key.compareTo(key);
-        //大于当前子树根结点的键则插入右子树
-        if (cmp < 0)    node.right = put(node.right,key,value);
-        //小于则插入左子树
-        else if (cmp > 0)  node.left = put(node.left,key,value);
-        //否则修改当前子树的根结点的值
-        else node.val = value;
-        //插入成功修改根节点以及每棵子树的N
-//        node.N = size(node.left) + size(node.right) + 1;
-        resize(node);
-        return node;
+    /**
+     * 分裂，这棵树只保留小于k的键，不小于k的键移到返回的新树中，
+     * <br />
+     * 只需要沿着查找路径走一遍，和树高成正比
+     * @param k
+     * @return 不小于k的键组成的树
+     */
+    public BST<K,V> split(K k){
+        Node[] parts = split(root,k,false);
+        root = parts[0];
+        BST<K,V> right = new BST<>();
+        right.root = parts[1];
+        return right;
     }
 
-    private void inorder(Node node,BiConsumer<? super K, ? super V> action){
-        if (node != null){
-            inorder(node.left,action);
-            K k;
-            V v;
-            try {
-                k = node.key;
-                v = node.val;
-            } catch (IllegalStateException e) {
-                throw new ConcurrentModificationException(e);
-            }
-            action.accept(k,v);
-            inorder(node.right,action);
-        }
+    /**
+     * 连接两棵树，left中所有的键都必须小于right中所有的键，
+     * <br />
+     * 把right挂到left的最大结点的右边，之后left和right都为空
+     * @param left
+     * @param right
+     * @return 包含两棵树所有键的树
+     */
+    public static <K extends Comparable<K>,V> BST<K,V> join(BST<K,V> left,BST<K,V> right){
+        if (left == right)
+            throw new IllegalArgumentException("cannot join a tree with itself");
+        if (!left.isEmpty() && !right.isEmpty() && left.max().compareTo(right.min()) >= 0)
+            throw new IllegalArgumentException("keys of left tree must be less than keys of right tree");
+        BST<K,V> st = new BST<>();
+        st.root = st.join(left.root,right.root);
+        left.root = right.root = null;
+        return st;
     }
 
-    private void inorder(Node node,List<K> keys){
-        if (node != null){
-            inorder(node.left,keys);
-            keys.add(node.key);
-            inorder(node.right,keys);
-        }
+    /**
+     * 删除[lo,hi]范围内的所有键：分裂两次再连接，不需要逐个删除
+     * @param lo
+     * @param hi
+     * @return 删除的键的数量
+     */
+    @Override
+    public int deleteRange(K lo, K hi) {
+        if (lo.compareTo(hi) > 0 || isEmpty())
+            return 0;
+        Node[] lower = split(root,lo,false);
+        Node[] upper = split(lower[1],hi,true);
+        root = join(lower[0],upper[1]);
+        return size(upper[0]);
     }
 
-    private void inorder(Node node,List<K> keys,K lo,K hi){
-        if (node != null){
-            inorder(node.left,keys,lo,hi);
-            K key = node.key;
-            if (key.compareTo(lo) >= 0 && key.compareTo(hi) <= 0)
-                keys.add(node.key);
-            inorder(node.right,keys,lo,hi);
+    /**
+     * 沿着查找路径向下，小于k的结点连同它的左子树依次挂到左边那棵树的最右侧，
+     * <br />
+     * 其余的结点连同右子树依次挂到右边那棵树的最左侧，最后自底向上重新计算路径上的子树大小
+     * @param inclusive 等于k的键是否分到左边
+     * @return 两棵树的根结点
+     */
+    @SuppressWarnings("unchecked")
+    private Node[] split(Node node,K k,boolean inclusive){
+        Node[] roots = (Node[]) new BST.Node[2];
+        Deque<Node> left = new ArrayDeque<>();
+        Deque<Node> right = new ArrayDeque<>();
+        while (node != null){
+            int cmp = k.compareTo(node.key);
+            if (cmp > 0 || (cmp == 0 && inclusive)){
+                if (left.isEmpty())
+                    roots[0] = node;
+                else left.peek().right = node;
+                left.push(node);
+                node = node.right;
+            }else {
+                if (right.isEmpty())
+                    roots[1] = node;
+                else right.peek().left = node;
+                right.push(node);
+                node = node.left;
+            }
         }
+        if (!left.isEmpty())
+            left.peek().right = null;
+        if (!right.isEmpty())
+            right.peek().left = null;
+        for (Node x : left)
+            x.N = size(x.left) + size(x.right) + 1;
+        for (Node x : right)
+            x.N = size(x.left) + size(x.right) + 1;
+        return roots;
+    }
+
+    /**
+     * 把right挂到left的最大结点的右边
+     */
+    private Node join(Node left,Node right){
+        if (left == null)
+            return right;
+        int n = size(right);
+        Node node = left;
+        for (; node.right != null; node = node.right)
+            node.N += n;
+        node.N += n;
+        node.right = right;
+        return left;
     }
 
     /**
@@ -280,8 +634,68 @@ public class BST<K extends Comparable<K>,V> implements OrderedST<K,V>{
             throw new IndexOutOfBoundsException("Index:"+index+", Size:"+size());
     }
 
-    private void resize(Node node){
-        if (node != null)
-            node.N = size(node.left) + size(node.right) + 1;
+    /**
+     * 基于排名的范围游标，第一次取元素时按子树大小定位到起始排名，
+     * <br />
+     * 之后只保存一条从根结点出发的路径，大小和树高成正比
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final Function<Node, T> element;
+
+        private Deque<Node> stack;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, Function<Node, T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            if (first) {
+                stack = new ArrayDeque<>();
+                locate(descending ? hi - 1 : lo);
+            }
+            Node node = stack.pop();
+            if (descending) {
+                for (Node x = node.left; x != null; x = x.right)
+                    stack.push(x);
+            } else {
+                for (Node x = node.right; x != null; x = x.left)
+                    stack.push(x);
+            }
+            return element.apply(node);
+        }
+
+        /**
+         * 查找排名为i的结点，把路径上之后还要访问的结点压栈
+         */
+        private void locate(int i) {
+            Node node = root;
+            while (node != null) {
+                int t = size(node.left);
+                if (i < t) {
+                    if (!descending)
+                        stack.push(node);
+                    node = node.left;
+                } else if (i > t) {
+                    if (descending)
+                        stack.push(node);
+                    i -= t + 1;
+                    node = node.right;
+                } else {
+                    stack.push(node);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
     }
 }
@@ -0,0 +1,109 @@
+package main.top.kindless.search.filter;
+
+import main.top.kindless.search.annotation.UnSafe;
+
+import java.io.Serializable;
+
+/**
+ * Blocked bloom filter.<br />
+ * The bit array is split into blocks of 512 bits, the size of a cache line, <br />
+ * and all the bits of a key are set in the same block, chosen by the high <br />
+ * bits of its hash. Any query therefore touches a single cache line. <br />
+ * It does not support removal: removed keys leave their bits set.
+ * @param <K>
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.filter.MembershipFilter
+ */
+@UnSafe
+public class BlockedBloomFilter<K> implements MembershipFilter<K>, Serializable {
+
+    /**
+     * The bits, 8 longs per block.
+     */
+    private final long[] bits;
+
+    private final int blocks;
+
+    /**
+     * The number of bits set per key.
+     */
+    private final int k;
+
+    private int N;
+
+    private static final int LONGS_PER_BLOCK = 8;
+
+    private static final int BITS_PER_BLOCK = 512;
+
+    /**
+     *
+     * @param expectedInsertions The number of keys the filter is sized for.
+     * @param fpp The desired false positive rate at that number of keys, <br />
+     *            must be between 0 and 1.
+     */
+    public BlockedBloomFilter(int expectedInsertions, double fpp) {
+        if (expectedInsertions < 1)
+            throw new IllegalArgumentException("expectedInsertions must be positive:" + expectedInsertions);
+        if (fpp <= 0 || fpp >= 1)
+            throw new IllegalArgumentException("fpp must be between 0 and 1:" + fpp);
+        double bitsPerKey = -Math.log(fpp) / (Math.log(2) * Math.log(2));
+        long m = (long) Math.ceil(expectedInsertions * bitsPerKey);
+        blocks = (int) Math.max(1, Math.min((m + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK, Integer.MAX_VALUE / LONGS_PER_BLOCK));
+        bits = new long[blocks * LONGS_PER_BLOCK];
+        k = (int) Math.max(1, Math.min(16, Math.round(bitsPerKey * Math.log(2))));
+    }
+
+    @Override
+    public boolean add(K key) {
+        long h = MembershipFilter.hash64(key);
+        int base = block(h);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < k; i++) {
+            int bit = (h1 + i * h2) & (BITS_PER_BLOCK - 1);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+        N++;
+        return true;
+    }
+
+    @Override
+    public boolean mightContain(K key) {
+        long h = MembershipFilter.hash64(key);
+        int base = block(h);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < k; i++) {
+            int bit = (h1 + i * h2) & (BITS_PER_BLOCK - 1);
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The classic estimate {@code (1 - e^(-kn/m))^k}. Blocking makes <br />
+     * the real rate slightly higher, since keys are not spread evenly <br />
+     * over the blocks.
+     */
+    @Override
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) k * N / ((double) blocks * BITS_PER_BLOCK)), k);
+    }
+
+    @Override
+    public int size() {
+        return N;
+    }
+
+    /**
+     * The first long of the block of a hash. The hash is mixed once more so <br />
+     * that the block does not depend on the bits used inside the block, <br />
+     * and the block is chosen by a multiply-shift instead of a modulo.
+     */
+    private int block(long h) {
+        long b = (h ^ (h >>> 29)) * 0xbf58476d1ce4e5b9L;
+        return (int) (((b >>> 32) * blocks) >>> 32) * LONGS_PER_BLOCK;
+    }
+}
@@ -0,0 +1,228 @@
+package main.top.kindless.search.filter;
+
+import main.top.kindless.search.annotation.UnSafe;
+
+import java.io.Serializable;
+
+/**
+ * Cuckoo filter.<br />
+ * Every key is reduced to a 16 bit fingerprint stored in one of two <br />
+ * buckets of four fingerprints. The second bucket is derived from the <br />
+ * first one and the fingerprint alone (partial-key cuckoo hashing), so <br />
+ * fingerprints can be moved between their buckets without the key, and <br />
+ * a key can be removed by removing one copy of its fingerprint. <br />
+ * Keys with the same hash code share both buckets and the fingerprint, <br />
+ * so at most eight of them fit at any size: once their two buckets hold <br />
+ * nothing but that fingerprint, further such keys are refused without <br />
+ * evicting anything, and the filter does not become full. <br />
+ * A query reads the two buckets, 8 bytes each.
+ * @param <K>
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.filter.MembershipFilter
+ */
+@UnSafe
+public class CuckooFilter<K> implements MembershipFilter<K>, Serializable {
+
+    /**
+     * The fingerprints, 4 per bucket, 0 marks a free slot.
+     */
+    private final short[] table;
+
+    private final int mask;
+
+    private int N;
+
+    /**
+     * A fingerprint evicted by the last failed insertion, kept so that <br />
+     * the filter never forgets a key; the filter is full while it is set.
+     */
+    private short victim;
+
+    private int victimIndex;
+
+    /**
+     * A simple xorshift state used to pick the fingerprint to evict.
+     */
+    private int seed = 0x2545F491;
+
+    private static final int SLOTS = 4;
+
+    private static final int MAX_KICKS = 500;
+
+    /**
+     * The expected occupancy at which insertions start to fail.
+     */
+    private static final double MAX_LOAD = .95;
+
+    /**
+     *
+     * @param expectedInsertions The number of keys the filter is sized for.
+     */
+    public CuckooFilter(int expectedInsertions) {
+        if (expectedInsertions < 1)
+            throw new IllegalArgumentException("expectedInsertions must be positive:" + expectedInsertions);
+        long buckets = (long) Math.ceil(expectedInsertions / (SLOTS * MAX_LOAD));
+        int n = (int) Math.min(Long.highestOneBit(Math.max(2, buckets - 1)) << 1, 1 << 28);
+        table = new short[n * SLOTS];
+        mask = n - 1;
+    }
+
+    @Override
+    public boolean add(K key) {
+        if (victim != 0)
+            return false;
+        long h = MembershipFilter.hash64(key);
+        short fp = fingerprint(h);
+        int i1 = (int) h & mask;
+        int i2 = altIndex(i1, fp);
+        if (insertInto(i1, fp) || insertInto(i2, fp)) {
+            N++;
+            return true;
+        }
+        if (saturated(i1, fp) && saturated(i2, fp))
+            return false;
+        int i = nextRandom() % 2 == 0 ? i1 : i2;
+        for (int n = 0; n < MAX_KICKS; n++) {
+            int slot = i * SLOTS + (nextRandom() & (SLOTS - 1));
+            short evicted = table[slot];
+            table[slot] = fp;
+            fp = evicted;
+            i = altIndex(i, fp);
+            if (insertInto(i, fp)) {
+                N++;
+                return true;
+            }
+        }
+        victim = fp;
+        victimIndex = i;
+        N++;
+        return true;
+    }
+
+    @Override
+    public boolean mightContain(K key) {
+        long h = MembershipFilter.hash64(key);
+        short fp = fingerprint(h);
+        int i1 = (int) h & mask;
+        int i2 = altIndex(i1, fp);
+        return contains(i1, fp) || contains(i2, fp)
+                || (victim == fp && (victimIndex == i1 || victimIndex == i2));
+    }
+
+    @Override
+    public boolean supportsRemove() {
+        return true;
+    }
+
+    /**
+     * Remove one copy of the fingerprint of the key. <br />
+     * Only keys that have been added may be removed.
+     */
+    @Override
+    public boolean remove(K key) {
+        long h = MembershipFilter.hash64(key);
+        short fp = fingerprint(h);
+        int i1 = (int) h & mask;
+        int i2 = altIndex(i1, fp);
+        if (victim == fp && (victimIndex == i1 || victimIndex == i2)) {
+            victim = 0;
+            N--;
+            return true;
+        }
+        if (removeFrom(i1, fp) || removeFrom(i2, fp)) {
+            N--;
+            if (victim != 0) {
+                short v = victim;
+                victim = 0;
+                if (!insertInto(victimIndex, v) && !insertInto(altIndex(victimIndex, v), v))
+                    victim = v;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the last insertion could not find room, <br />
+     * in which case {@link #add(Object)} refuses further keys.
+     * @return true if the filter is full
+     */
+    @Override
+    public boolean isFull() {
+        return victim != 0;
+    }
+
+    /**
+     * Each of the 8 slots of the two buckets matches a random <br />
+     * fingerprint with probability 2^-16 when it is occupied.
+     */
+    @Override
+    public double expectedFalsePositiveRate() {
+        double load = (double) N / table.length;
+        return 1 - Math.pow(1 - 1.0 / 65535, 2 * SLOTS * load);
+    }
+
+    @Override
+    public int size() {
+        return N;
+    }
+
+    private boolean insertInto(int bucket, short fp) {
+        int b = bucket * SLOTS;
+        for (int i = b; i < b + SLOTS; i++) {
+            if (table[i] == 0) {
+                table[i] = fp;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(int bucket, short fp) {
+        int b = bucket * SLOTS;
+        return table[b] == fp || table[b + 1] == fp || table[b + 2] == fp || table[b + 3] == fp;
+    }
+
+    /**
+     * Whether every slot of the bucket holds the fingerprint.
+     */
+    private boolean saturated(int bucket, short fp) {
+        int b = bucket * SLOTS;
+        return table[b] == fp && table[b + 1] == fp && table[b + 2] == fp && table[b + 3] == fp;
+    }
+
+    private boolean removeFrom(int bucket, short fp) {
+        int b = bucket * SLOTS;
+        for (int i = b; i < b + SLOTS; i++) {
+            if (table[i] == fp) {
+                table[i] = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The other bucket of a fingerprint. It is an involution: <br />
+     * applied to either bucket it gives the other one.
+     */
+    private int altIndex(int bucket, short fp) {
+        return (bucket ^ (fp * 0x5bd1e995)) & mask;
+    }
+
+    /**
+     * 16 bits of the hash that are not used for the bucket, never 0.
+     */
+    private static short fingerprint(long h) {
+        short fp = (short) (h >>> 48);
+        return fp == 0 ? 1 : fp;
+    }
+
+    private int nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed & 0x7fffffff;
+    }
+}
@@ -0,0 +1,287 @@
+package main.top.kindless.search.filter;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.annotation.UnSafe;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * A symbol table wrapped by an approximate membership filter.<br />
+ * Every key of the wrapped table is also added to the filter, so a <br />
+ * lookup whose key the filter has never seen is answered without <br />
+ * touching the table: no chain walk, no tree descent, no {@code equals} <br />
+ * or {@code compareTo} call. This pays off when most lookups are misses. <br />
+ * With a filter that supports removal (the cuckoo filter) deleted keys are <br />
+ * removed from it; otherwise they are counted as stale, and the filter is <br />
+ * rebuilt from the table once they become as many as the live keys. The <br />
+ * filter is also rebuilt, twice as large, when the table outgrows it. <br />
+ * A key the filter refuses while it is not full (the cuckoo filter holds at <br />
+ * most eight keys sharing a hash code) would not fit into a larger filter <br />
+ * either, so it is kept in a small overflow set that lookups check as well. <br />
+ * The wrapped table must not be modified except through this wrapper.
+ * @param <Key>
+ * @param <Value>
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.filter.MembershipFilter
+ * @see main.top.kindless.search.filter.BlockedBloomFilter
+ * @see main.top.kindless.search.filter.CuckooFilter
+ */
+@UnSafe
+public class FilteredST<Key, Value> implements ST<Key, Value> {
+
+    /*----------Fields----------*/
+    private final ST<Key, Value> st;
+
+    /**
+     * Creates a filter sized for the given number of keys.
+     */
+    private final IntFunction<MembershipFilter<Key>> filterFactory;
+
+    private MembershipFilter<Key> filter;
+
+    /**
+     * Keys of the table the filter refused without being full, <br />
+     * checked by every lookup the filter rejects while it is not empty.
+     */
+    private final Set<Key> overflow = new HashSet<>();
+
+    /**
+     * The number of keys the current filter is sized for.
+     */
+    private int capacity;
+
+    /**
+     * Keys deleted from the table that are still in a filter <br />
+     * without removal support.
+     */
+    private int staleKeys;
+
+    /**
+     * Lookups answered by the filter alone.
+     */
+    private long definiteMisses;
+
+    /**
+     * Lookups the filter let through for keys that were absent.
+     */
+    private long falsePositives;
+
+    private int rebuildNum;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * A rebuild stops doubling once the filter is sized for this many <br />
+     * times the keys of the table, the keys that still do not fit go to <br />
+     * the overflow set.
+     */
+    private static final int MAX_CAPACITY_RATIO = 8;
+
+    /*----------Constructors----------*/
+    /**
+     *
+     * @param st The symbol table to wrap, keys it already holds are added to the filter.
+     * @param expectedSize The number of keys the first filter is sized for.
+     * @param filterFactory Creates a filter sized for a given number of keys.
+     */
+    public FilteredST(ST<Key, Value> st, int expectedSize, IntFunction<MembershipFilter<Key>> filterFactory) {
+        if (st == null || filterFactory == null)
+            throw new IllegalArgumentException("st and filterFactory can't be null");
+        this.st = st;
+        this.filterFactory = filterFactory;
+        this.capacity = Math.max(Math.max(expectedSize, st.size() * 2), DEFAULT_CAPACITY);
+        rebuild();
+        rebuildNum = 0;
+    }
+
+    /**
+     * Wrap a symbol table with a blocked bloom filter.
+     * @param st The symbol table to wrap.
+     * @param expectedSize The number of keys the first filter is sized for.
+     * @param fpp The desired false positive rate.
+     * @return the wrapped symbol table
+     */
+    public static <Key, Value> FilteredST<Key, Value> bloom(ST<Key, Value> st, int expectedSize, double fpp) {
+        return new FilteredST<>(st, expectedSize, n -> new BlockedBloomFilter<>(n, fpp));
+    }
+
+    /**
+     * Wrap a symbol table with a cuckoo filter, which supports deletion.
+     * @param st The symbol table to wrap.
+     * @param expectedSize The number of keys the first filter is sized for.
+     * @return the wrapped symbol table
+     */
+    public static <Key, Value> FilteredST<Key, Value> cuckoo(ST<Key, Value> st, int expectedSize) {
+        return new FilteredST<>(st, expectedSize, CuckooFilter::new);
+    }
+
+    /*----------Methods----------*/
+    @Override
+    public void put(Key key, Value value) {
+        if (key == null) throw new IllegalArgumentException("argument to put() is null");
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        //表的大小变化说明这是一个新键
+        int before = st.size();
+        st.put(key, value);
+        if (st.size() == before)
+            return;
+        if (filter.add(key)) {
+            if (filter.size() > capacity)
+                grow();
+        } else if (filter.isFull() && capacity < maxCapacity()) {
+            grow();
+        } else {
+            overflow.add(key);
+        }
+    }
+
+    @Override
+    public Value get(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        if (!mightContain(key)) {
+            definiteMisses++;
+            return null;
+        }
+        Value value = st.get(key);
+        if (value == null)
+            falsePositives++;
+        return value;
+    }
+
+    @Override
+    public boolean contains(Key key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public void delete(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        if (!mightContain(key))
+            return;
+        int before = st.size();
+        st.delete(key);
+        if (st.size() < before) {
+            if (!overflow.isEmpty() && overflow.remove(key))
+                return;
+            if (filter.supportsRemove())
+                filter.remove(key);
+            else if (++staleKeys > st.size())
+                rebuild();
+        }
+    }
+
+    @Override
+    public int size() {
+        return st.size();
+    }
+
+    @Override
+    public Iterable<Key> keys() {
+        return st.keys();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Key, ? super Value> action) {
+        st.forEach(action);
+    }
+
+    /**
+     * The wrapped symbol table.
+     * @return the wrapped symbol table
+     */
+    public ST<Key, Value> unwrap() {
+        return st;
+    }
+
+    /**
+     * The rate of false positives among the lookups of absent keys so far.
+     * @return the observed false positive rate, 0 before any miss
+     */
+    public double observedFalsePositiveRate() {
+        long misses = definiteMisses + falsePositives;
+        return misses == 0 ? 0 : (double) falsePositives / misses;
+    }
+
+    /**
+     * The false positive rate the current filter expects for its number of keys.
+     * @return the expected false positive rate
+     */
+    public double expectedFalsePositiveRate() {
+        return filter.expectedFalsePositiveRate();
+    }
+
+    public long definiteMisses() {
+        return definiteMisses;
+    }
+
+    public long falsePositives() {
+        return falsePositives;
+    }
+
+    public int staleKeys() {
+        return staleKeys;
+    }
+
+    public int rebuildNum() {
+        return rebuildNum;
+    }
+
+    /**
+     * The number of keys the filter could not hold.
+     * @return the size of the overflow set
+     */
+    public int overflowSize() {
+        return overflow.size();
+    }
+
+    private boolean mightContain(Key key) {
+        return filter.mightContain(key) || !overflow.isEmpty() && overflow.contains(key);
+    }
+
+    private void grow() {
+        capacity = (int) Math.min(maxCapacity(), Math.max(capacity, st.size()) * 2L);
+        rebuild();
+    }
+
+    private int maxCapacity() {
+        return (int) Math.min(Integer.MAX_VALUE / 2, (long) Math.max(st.size(), DEFAULT_CAPACITY) * MAX_CAPACITY_RATIO);
+    }
+
+    /**
+     * Replace the filter by a new one built from the keys of the table, <br />
+     * doubling its capacity while it becomes full, at most up to <br />
+     * {@link #MAX_CAPACITY_RATIO} times the size of the table. Keys refused <br />
+     * by a filter that is not full, or by the largest one, go to the overflow set.
+     */
+    private void rebuild() {
+        capacity = Math.max(capacity, st.size());
+        for (;;) {
+            MembershipFilter<Key> newFilter = filterFactory.apply(capacity);
+            boolean last = capacity >= maxCapacity();
+            boolean[] full = new boolean[1];
+            overflow.clear();
+            st.forEach((k, v) -> {
+                if (!full[0] && !newFilter.add(k)) {
+                    if (newFilter.isFull() && !last)
+                        full[0] = true;
+                    else
+                        overflow.add(k);
+                }
+            });
+            if (!full[0]) {
+                filter = newFilter;
+                break;
+            }
+            capacity = Math.min(maxCapacity(), capacity * 2);
+        }
+        staleKeys = 0;
+        rebuildNum++;
+    }
+}
@@ -0,0 +1,80 @@
+package main.top.kindless.search.filter;
+
+/**
+ * 近似成员过滤器，
+ * <br />
+ * 可能把不存在的键误判为存在，但绝不会把已添加的键判断为不存在，
+ * <br />
+ * 所以否定的回答总是确定的
+ * @param <K> 键
+ */
+public interface MembershipFilter<K> {
+
+    /**
+     * 添加一个键
+     * @param k 键
+     * @return 过滤器已满，或者和这个键哈希值相同的键已经太多，无法再添加时返回false
+     */
+    boolean add(K k);
+
+    /**
+     * 过滤器是否已满，已满时{@link #add}拒绝所有的键，
+     * <br />
+     * 未满时{@link #add}返回false说明扩容也放不下这个键
+     * @return 已满则返回true
+     */
+    default boolean isFull() {
+        return false;
+    }
+
+    /**
+     * 键是否可能存在
+     * @param k 键
+     * @return 返回false则一定不存在
+     */
+    boolean mightContain(K k);
+
+    /**
+     * 是否支持删除
+     * @return 支持则返回true
+     */
+    default boolean supportsRemove() {
+        return false;
+    }
+
+    /**
+     * 删除一个已经添加过的键
+     * @param k 键
+     * @return 删除成功则返回true
+     */
+    default boolean remove(K k) {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * 按照当前已添加的键的数量估算的误判率
+     * @return 误判率
+     */
+    double expectedFalsePositiveRate();
+
+    /**
+     * 已添加的键的数量
+     * @return 数量
+     */
+    int size();
+
+    /**
+     * 混合键的哈希值，得到一个64位的哈希值
+     * @param k 键
+     * @return 64位哈希值
+     */
+    static long hash64(Object k) {
+        long h = k.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,21 @@
+package main.top.kindless.search.function;
+
+/**
+ * Represents an operation that accepts a {@code long} key and an object value,<br />
+ * the primitive specialization of {@link java.util.function.BiConsumer} <br />
+ * used to iterate primitive keyed symbol tables without boxing.
+ * @param <V> the type of the value
+ * @author kindless
+ * @since 1.0
+ * @see java.util.function.BiConsumer
+ */
+@FunctionalInterface
+public interface LongObjConsumer<V> {
+
+    /**
+     * Performs this operation on the given arguments.
+     * @param key the key
+     * @param value the value
+     */
+    void accept(long key, V value);
+}
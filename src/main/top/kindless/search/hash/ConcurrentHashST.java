@@ -0,0 +1,838 @@
+package main.top.kindless.search.hash;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.annotation.Safe;
+import main.top.kindless.search.redblackbst.RedBlackBST;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Thread safe implementation of symbol table based on hash table.<br />
+ * Reads never block: the bucket array is an {@link AtomicReferenceArray} <br />
+ * and list nodes are linked through volatile fields. A treeified bucket <br />
+ * keeps its red black tree next to a linked list of the same nodes; the <br />
+ * tree is modified in place under a small read write lock of the bucket, <br />
+ * and a reader that finds a writer holding it walks the list instead of <br />
+ * waiting. Writes lock only the head of the bucket they modify, and an <br />
+ * empty bucket is filled with a single CAS. <br />
+ * When the table grows, the old buckets are moved to the doubled array in <br />
+ * chunks that every writing thread can claim, so all the writers help <br />
+ * the resize instead of waiting for it. A moved bucket is replaced by a <br />
+ * forwarding node that redirects readers and writers to the new array. <br />
+ * By default {@link #size()} is the sum of a striped counter and is only <br />
+ * exact in quiescent states; a linearizable size can be requested when <br />
+ * the table is created, at the price of a shared lock on every write. <br />
+ * Serialization writes the elements one by one and rebuilds the table <br />
+ * when it is read back.
+ * @param <Key>
+ * @param <Value>
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.hash.SeparateChainingHashST
+ */
+@Safe
+public class ConcurrentHashST<Key extends Comparable<Key>, Value> implements ST<Key, Value>, Serializable {
+
+    /*----------Fields----------*/
+    /**
+     * The hash bucket array. Each bucket is null, the head of a linked <br />
+     * list, a tree bucket, or a forwarding node while it is being resized.
+     */
+    private transient volatile AtomicReferenceArray<Bin<Key, Value>> table;
+
+    /**
+     * The resize in progress, or null.
+     */
+    private transient volatile Transfer<Key, Value> transfer;
+
+    /**
+     * The number of elements at which the next resize starts.
+     */
+    private transient volatile int threshold;
+
+    /**
+     * Striped element counter, used unless the size must be linearizable.
+     */
+    private transient LongAdder counter;
+
+    /**
+     * Exact element counter, used if the size must be linearizable.
+     */
+    private transient AtomicInteger exactCounter;
+
+    /**
+     * If the size must be linearizable, writers hold this lock in shared <br />
+     * mode while they modify the table and {@link #size()} holds it in <br />
+     * exclusive mode, so it never observes a half finished write.
+     */
+    private transient StampedLock sizeLock;
+
+    /*-----------Constants----------*/
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * Treeify threshold, the same as the one of {@link SeparateChainingHashST}.
+     */
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * The number of buckets a thread claims at a time when it helps a resize.
+     */
+    private static final int TRANSFER_STRIDE = 16;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ConcurrentHashST, Transfer> TRANSFER =
+            AtomicReferenceFieldUpdater.newUpdater(ConcurrentHashST.class, Transfer.class, "transfer");
+
+    public ConcurrentHashST() {
+        this(DEFAULT_SIZE, false);
+    }
+
+    public ConcurrentHashST(int M) {
+        this(M, false);
+    }
+
+    /**
+     *
+     * @param M Initial number of hash buckets, which must be positive. <br />
+     *          It is rounded up to a power of two.
+     * @param linearizableSize Whether {@link #size()} must be linearizable.
+     * @throws SymbolTableInitialException
+     * Symbol table initialization exception is usually <br />
+     * thrown due to incorrect initialization parameters.
+     */
+    public ConcurrentHashST(int M, boolean linearizableSize) {
+        if (M < 1)
+            throw new SymbolTableInitialException("initial capacity is invalid, capacity:" + M);
+        initialize(M, linearizableSize);
+    }
+
+    private void initialize(int M, boolean linearizableSize) {
+        int n = tableSizeFor(M);
+        table = new AtomicReferenceArray<>(n);
+        threshold = n - (n >>> 2);
+        if (linearizableSize) {
+            counter = null;
+            exactCounter = new AtomicInteger();
+            sizeLock = new StampedLock();
+        } else {
+            counter = new LongAdder();
+            exactCounter = null;
+            sizeLock = null;
+        }
+    }
+
+    /*----------Buckets----------*/
+    /**
+     * Common type of everything stored in the bucket array.
+     */
+    private abstract static class Bin<K, V> {
+        /**
+         * Search the bucket without locking.
+         */
+        abstract V find(int h, K key);
+    }
+
+    /**
+     * Linked list node. Key and hash are final and the value and the <br />
+     * link are volatile, so a reader always sees a consistent node.
+     */
+    private static final class Node<K, V> extends Bin<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        V find(int h, K k) {
+            for (Node<K, V> e = this; e != null; e = e.next) {
+                if (e.hash == h && e.key.equals(k))
+                    return e.value;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Node of a treeified bucket. The nodes are indexed by the red black <br />
+     * tree and also linked in a list, which readers walk while a writer <br />
+     * holds the tree. {@code prev} is only used by writers.
+     */
+    private static final class TreeNode<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile TreeNode<K, V> next;
+        TreeNode<K, V> prev;
+
+        TreeNode(int hash, K key, V value, TreeNode<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Treeified bucket. Writers hold the monitor of the bucket like for <br />
+     * a list bucket, and additionally take {@link #lockState} in write mode <br />
+     * around a change of the tree, waiting for the readers inside the tree <br />
+     * to leave. Readers enter the tree by adding {@link #READER} to the <br />
+     * lock state; if a writer holds it or waits for it they search the <br />
+     * linked list instead, so a read never blocks. Updating the value of <br />
+     * a present key only writes the volatile value of its node.
+     */
+    private static final class TreeBin<K extends Comparable<K>, V> extends Bin<K, V> {
+        final RedBlackBST<K, TreeNode<K, V>> tree = new RedBlackBST<>();
+        volatile TreeNode<K, V> first;
+        volatile int lockState;
+        volatile Thread waiter;
+
+        static final int WRITER = 1;
+        static final int WAITER = 2;
+        static final int READER = 4;
+
+        @SuppressWarnings("rawtypes")
+        static final AtomicIntegerFieldUpdater<TreeBin> LOCK_STATE =
+                AtomicIntegerFieldUpdater.newUpdater(TreeBin.class, "lockState");
+
+        @Override
+        V find(int h, K k) {
+            for (TreeNode<K, V> e = first; e != null; ) {
+                int s = lockState;
+                if ((s & (WAITER | WRITER)) != 0) {
+                    if (e.hash == h && e.key.equals(k))
+                        return e.value;
+                    e = e.next;
+                } else if (LOCK_STATE.compareAndSet(this, s, s + READER)) {
+                    TreeNode<K, V> p;
+                    try {
+                        p = tree.get(k);
+                    } finally {
+                        Thread w;
+                        if (LOCK_STATE.getAndAdd(this, -READER) == (READER | WAITER) && (w = waiter) != null)
+                            LockSupport.unpark(w);
+                    }
+                    return p == null ? null : p.value;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Insert or update, the caller holds the monitor of the bucket.
+         * @return true if the key was absent
+         */
+        boolean put(int h, K k, V v) {
+            TreeNode<K, V> p = tree.get(k);
+            if (p != null) {
+                p.value = v;
+                return false;
+            }
+            TreeNode<K, V> f = first;
+            TreeNode<K, V> x = new TreeNode<>(h, k, v, f);
+            lockRoot();
+            try {
+                tree.put(k, x);
+                if (f != null)
+                    f.prev = x;
+                first = x;
+            } finally {
+                unlockRoot();
+            }
+            return true;
+        }
+
+        /**
+         * Delete, the caller holds the monitor of the bucket. The removed <br />
+         * node keeps its link, so a reader standing on it can go on.
+         * @return true if the key was present
+         */
+        boolean remove(K k) {
+            TreeNode<K, V> p = tree.get(k);
+            if (p == null)
+                return false;
+            lockRoot();
+            try {
+                tree.delete(k);
+                TreeNode<K, V> next = p.next, pred = p.prev;
+                if (pred == null)
+                    first = next;
+                else
+                    pred.next = next;
+                if (next != null)
+                    next.prev = pred;
+            } finally {
+                unlockRoot();
+            }
+            return true;
+        }
+
+        private void lockRoot() {
+            if (!LOCK_STATE.compareAndSet(this, 0, WRITER))
+                contendedLock();
+        }
+
+        private void unlockRoot() {
+            lockState = 0;
+        }
+
+        /**
+         * Wait for the readers in the tree to leave. Only one writer can <br />
+         * get here at a time, the others wait on the monitor.
+         */
+        private void contendedLock() {
+            boolean waiting = false;
+            for (int s; ; ) {
+                if (((s = lockState) & ~WAITER) == 0) {
+                    if (LOCK_STATE.compareAndSet(this, s, WRITER)) {
+                        if (waiting)
+                            waiter = null;
+                        return;
+                    }
+                } else if ((s & WAITER) == 0) {
+                    if (LOCK_STATE.compareAndSet(this, s, s | WAITER)) {
+                        waiting = true;
+                        waiter = Thread.currentThread();
+                    }
+                } else if (waiting) {
+                    LockSupport.park(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Placed in a bucket of the old array once it has been moved.
+     */
+    private static final class ForwardingNode<K, V> extends Bin<K, V> {
+        final AtomicReferenceArray<Bin<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Bin<K, V>> nextTable) {
+            this.nextTable = nextTable;
+        }
+
+        @Override
+        V find(int h, K k) {
+            AtomicReferenceArray<Bin<K, V>> tab = nextTable;
+            for (;;) {
+                Bin<K, V> f = tab.get(h & (tab.length() - 1));
+                if (f == null)
+                    return null;
+                if (!(f instanceof ForwardingNode))
+                    return f.find(h, k);
+                tab = ((ForwardingNode<K, V>) f).nextTable;
+            }
+        }
+    }
+
+    /**
+     * State of one resize, shared by all the threads that help it.
+     */
+    private static final class Transfer<K, V> {
+        final AtomicReferenceArray<Bin<K, V>> from;
+        final AtomicReferenceArray<Bin<K, V>> to;
+        final ForwardingNode<K, V> forwarding;
+        /**
+         * Buckets below this index have not been claimed yet.
+         */
+        final AtomicInteger transferIndex;
+        /**
+         * Buckets that have not been moved yet.
+         */
+        final AtomicInteger remaining;
+
+        Transfer(AtomicReferenceArray<Bin<K, V>> from) {
+            this.from = from;
+            this.to = new AtomicReferenceArray<>(from.length() << 1);
+            this.forwarding = new ForwardingNode<>(to);
+            this.transferIndex = new AtomicInteger(from.length());
+            this.remaining = new AtomicInteger(from.length());
+        }
+    }
+
+    /*----------Operations----------*/
+    /**
+     * Search operation, it never locks.
+     * @param key The unique identification of the data element
+     * @return The value of the data element
+     */
+    @Override
+    public Value get(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        int h = hash(key);
+        AtomicReferenceArray<Bin<Key, Value>> tab = table;
+        Bin<Key, Value> f = tab.get(h & (tab.length() - 1));
+        return f == null ? null : f.find(h, key);
+    }
+
+    /**
+     * Insertion operation.
+     * An empty bucket is filled with a CAS, otherwise the head of the <br />
+     * bucket is locked. If the bucket has been moved by a resize, the <br />
+     * thread helps the resize and retries in the new array. <br />
+     * Inserting a null value is the same as deleting the key.
+     * @param key The unique identification of the data element
+     * @param value Data element value
+     */
+    @Override
+    public void put(Key key, Value value) {
+        if (key == null) throw new IllegalArgumentException("argument to put() is null");
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        long stamp = sizeLock == null ? 0L : sizeLock.readLock();
+        try {
+            putVal(key, value);
+        } finally {
+            if (sizeLock != null)
+                sizeLock.unlockRead(stamp);
+        }
+        if (count() >= threshold)
+            tryGrow();
+    }
+
+    /**
+     * Deletion operation.
+     * @param key The unique identification of the data element
+     */
+    @Override
+    public void delete(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        long stamp = sizeLock == null ? 0L : sizeLock.readLock();
+        try {
+            deleteVal(key);
+        } finally {
+            if (sizeLock != null)
+                sizeLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The number of data elements in the symbol table. <br />
+     * Unless the table was created with a linearizable size, <br />
+     * the result is only an estimate while other threads are writing.
+     * @return The number of data elements in the symbol table.
+     */
+    @Override
+    public int size() {
+        if (sizeLock == null)
+            return count();
+        long stamp = sizeLock.writeLock();
+        try {
+            return exactCounter.get();
+        } finally {
+            sizeLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns all keys in the symbol table, which is iterable.
+     * @return all keys in the symbol table
+     */
+    @Override
+    public Iterable<Key> keys() {
+        List<Key> list = new ArrayList<>();
+        forEach((key, value) -> list.add(key));
+        return list;
+    }
+
+    /**
+     * The iteration operation provided internally supports lambda expression. <br />
+     * The iteration is weakly consistent: it never throws <br />
+     * {@link java.util.ConcurrentModificationException}, visits every <br />
+     * element present during the whole iteration exactly once, and may <br />
+     * or may not see concurrent modifications.
+     * @param action Circulatory body
+     */
+    @Override
+    public void forEach(BiConsumer<? super Key, ? super Value> action) {
+        Objects.requireNonNull(action);
+        AtomicReferenceArray<Bin<Key, Value>> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            forEach(tab, i, action);
+        }
+    }
+
+    /**
+     * Convert all the key value pairs to string.
+     * @return string value
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        forEach((k, v) -> sb.append(k).append("=").append(v).append(","));
+        if (sb.charAt(sb.length() - 1) == ',')
+            sb.replace(sb.length() - 1, sb.length(), "");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * Returns whether the size of this table is linearizable.
+     * @return true if {@link #size()} is linearizable
+     */
+    public boolean isSizeLinearizable() {
+        return sizeLock != null;
+    }
+
+    /**
+     * Returns the number of red and black trees in the current symbol table.
+     * @return the number of red and black trees in the current symbol table.
+     */
+    public int treeNum() {
+        int num = 0;
+        AtomicReferenceArray<Bin<Key, Value>> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            if (tab.get(i) instanceof TreeBin)
+                num++;
+        }
+        return num;
+    }
+
+    /*----------Internals----------*/
+    private void putVal(Key key, Value value) {
+        int h = hash(key);
+        AtomicReferenceArray<Bin<Key, Value>> tab = table;
+        for (;;) {
+            int i = h & (tab.length() - 1);
+            Bin<Key, Value> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, new Node<>(h, key, value, null))) {
+                    addCount(1);
+                    return;
+                }
+            } else if (f instanceof ForwardingNode) {
+                tab = helpTransfer(tab, (ForwardingNode<Key, Value>) f);
+            } else {
+                int binCount = 0;
+                boolean added = false;
+                synchronized (f) {
+                    if (tab.get(i) != f)
+                        continue;
+                    if (f instanceof Node) {
+                        Node<Key, Value> e = (Node<Key, Value>) f;
+                        for (binCount = 1; ; binCount++) {
+                            if (e.hash == h && e.key.equals(key)) {
+                                e.value = value;
+                                break;
+                            }
+                            if (e.next == null) {
+                                e.next = new Node<>(h, key, value, null);
+                                added = true;
+                                break;
+                            }
+                            e = e.next;
+                        }
+                    } else {
+                        added = ((TreeBin<Key, Value>) f).put(h, key, value);
+                    }
+                    if (added)
+                        addCount(1);
+                }
+                if (binCount >= TREEIFY_THRESHOLD)
+                    treeify(tab, i);
+                return;
+            }
+        }
+    }
+
+    private void deleteVal(Key key) {
+        int h = hash(key);
+        AtomicReferenceArray<Bin<Key, Value>> tab = table;
+        for (;;) {
+            int i = h & (tab.length() - 1);
+            Bin<Key, Value> f = tab.get(i);
+            if (f == null)
+                return;
+            if (f instanceof ForwardingNode) {
+                tab = helpTransfer(tab, (ForwardingNode<Key, Value>) f);
+                continue;
+            }
+            synchronized (f) {
+                if (tab.get(i) != f)
+                    continue;
+                if (f instanceof Node) {
+                    for (Node<Key, Value> e = (Node<Key, Value>) f, pred = null; e != null; pred = e, e = e.next) {
+                        if (e.hash == h && e.key.equals(key)) {
+                            if (pred == null)
+                                tab.set(i, e.next);
+                            else
+                                pred.next = e.next;
+                            addCount(-1);
+                            break;
+                        }
+                    }
+                } else {
+                    TreeBin<Key, Value> t = (TreeBin<Key, Value>) f;
+                    if (t.remove(key)) {
+                        if (t.first == null)
+                            tab.set(i, null);
+                        addCount(-1);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replace the list bucket at index by a tree bucket.
+     */
+    private void treeify(AtomicReferenceArray<Bin<Key, Value>> tab, int i) {
+        Bin<Key, Value> f = tab.get(i);
+        if (!(f instanceof Node))
+            return;
+        synchronized (f) {
+            if (tab.get(i) != f)
+                return;
+            TreeBin<Key, Value> t = new TreeBin<>();
+            for (Node<Key, Value> e = (Node<Key, Value>) f; e != null; e = e.next) {
+                t.put(e.hash, e.key, e.value);
+            }
+            tab.set(i, t);
+        }
+    }
+
+    /**
+     * Start a resize of the current table, or help the one in progress.
+     */
+    @SuppressWarnings("unchecked")
+    private void tryGrow() {
+        AtomicReferenceArray<Bin<Key, Value>> tab = table;
+        Transfer<Key, Value> t = transfer;
+        if (t == null) {
+            if (count() < threshold || tab.length() >= MAXIMUM_CAPACITY)
+                return;
+            Transfer<Key, Value> created = new Transfer<>(tab);
+            if (TRANSFER.compareAndSet(this, null, created)) {
+                if (table != tab) {
+                    // another resize finished between the reads above
+                    transfer = null;
+                    return;
+                }
+                t = created;
+            } else {
+                t = transfer;
+                if (t == null)
+                    return;
+            }
+        }
+        transfer(t);
+    }
+
+    /**
+     * Help the resize that moved the bucket, then continue in the new array.
+     */
+    private AtomicReferenceArray<Bin<Key, Value>> helpTransfer(AtomicReferenceArray<Bin<Key, Value>> tab,
+                                                               ForwardingNode<Key, Value> f) {
+        Transfer<Key, Value> t = transfer;
+        if (t != null && t.from == tab)
+            transfer(t);
+        return f.nextTable;
+    }
+
+    /**
+     * Claim chunks of buckets until none is left, moving each of them. <br />
+     * The thread that moves the last bucket publishes the new array. <br />
+     * A transfer whose source is not the current array is stale: it was <br />
+     * created after reading an array that has been replaced meanwhile, <br />
+     * and is dropped by the thread that created it.
+     */
+    private void transfer(Transfer<Key, Value> t) {
+        for (;;) {
+            if (table != t.from)
+                return;
+            int hi = t.transferIndex.get();
+            if (hi <= 0)
+                return;
+            int lo = Math.max(0, hi - TRANSFER_STRIDE);
+            if (!t.transferIndex.compareAndSet(hi, lo))
+                continue;
+            for (int i = hi - 1; i >= lo; i--) {
+                moveBin(t, i);
+            }
+            if (t.remaining.addAndGet(lo - hi) == 0) {
+                int n = t.to.length();
+                threshold = n - (n >>> 2);
+                table = t.to;
+                transfer = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Split one bucket of the old array into the buckets {@code i} and <br />
+     * {@code i + n} of the new array, then forward the old bucket. <br />
+     * The old nodes are left untouched so that concurrent readers of the <br />
+     * old array can finish their traversal.
+     */
+    private void moveBin(Transfer<Key, Value> t, int i) {
+        int n = t.from.length();
+        for (;;) {
+            Bin<Key, Value> f = t.from.get(i);
+            if (f == null) {
+                if (t.from.compareAndSet(i, null, t.forwarding))
+                    return;
+                continue;
+            }
+            if (f instanceof ForwardingNode)
+                return;
+            synchronized (f) {
+                if (t.from.get(i) != f)
+                    continue;
+                List<Node<Key, Value>> lo = new ArrayList<>();
+                List<Node<Key, Value>> hi = new ArrayList<>();
+                if (f instanceof Node) {
+                    for (Node<Key, Value> e = (Node<Key, Value>) f; e != null; e = e.next) {
+                        ((e.hash & n) == 0 ? lo : hi).add(e);
+                    }
+                } else {
+                    for (TreeNode<Key, Value> e = ((TreeBin<Key, Value>) f).first; e != null; e = e.next) {
+                        ((e.hash & n) == 0 ? lo : hi).add(new Node<>(e.hash, e.key, e.value, null));
+                    }
+                }
+                t.to.set(i, binOf(lo));
+                t.to.set(i + n, binOf(hi));
+                t.from.set(i, t.forwarding);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Build a fresh bucket holding copies of the given nodes.
+     */
+    private Bin<Key, Value> binOf(List<Node<Key, Value>> nodes) {
+        if (nodes.isEmpty())
+            return null;
+        if (nodes.size() >= TREEIFY_THRESHOLD) {
+            TreeBin<Key, Value> t = new TreeBin<>();
+            for (Node<Key, Value> e : nodes) {
+                t.put(e.hash, e.key, e.value);
+            }
+            return t;
+        }
+        Node<Key, Value> head = null;
+        for (Node<Key, Value> e : nodes) {
+            head = new Node<>(e.hash, e.key, e.value, head);
+        }
+        return head;
+    }
+
+    private void forEach(AtomicReferenceArray<Bin<Key, Value>> tab, int i,
+                         BiConsumer<? super Key, ? super Value> action) {
+        Bin<Key, Value> f = tab.get(i);
+        if (f instanceof Node) {
+            for (Node<Key, Value> e = (Node<Key, Value>) f; e != null; e = e.next) {
+                Value v = e.value;
+                if (v != null)
+                    action.accept(e.key, v);
+            }
+        } else if (f instanceof TreeBin) {
+            for (TreeNode<Key, Value> e = ((TreeBin<Key, Value>) f).first; e != null; e = e.next) {
+                Value v = e.value;
+                if (v != null)
+                    action.accept(e.key, v);
+            }
+        } else if (f instanceof ForwardingNode) {
+            AtomicReferenceArray<Bin<Key, Value>> next = ((ForwardingNode<Key, Value>) f).nextTable;
+            forEach(next, i, action);
+            forEach(next, i + tab.length(), action);
+        }
+    }
+
+    /**
+     * Write whether the size is linearizable, the number of elements <br />
+     * and then every key followed by its value.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        List<Object> elements = new ArrayList<>();
+        forEach((k, v) -> {
+            elements.add(k);
+            elements.add(v);
+        });
+        s.writeBoolean(sizeLock != null);
+        s.writeInt(elements.size() >>> 1);
+        for (Object e : elements) {
+            s.writeObject(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        boolean linearizableSize = s.readBoolean();
+        int n = s.readInt();
+        if (n < 0)
+            throw new InvalidObjectException("invalid size:" + n);
+        initialize(Math.max(DEFAULT_SIZE, (int) Math.min(MAXIMUM_CAPACITY, n + (n >>> 1) + 1L)), linearizableSize);
+        for (int i = 0; i < n; i++) {
+            put((Key) s.readObject(), (Value) s.readObject());
+        }
+    }
+
+    private void addCount(int delta) {
+        if (counter != null)
+            counter.add(delta);
+        else
+            exactCounter.addAndGet(delta);
+    }
+
+    private int count() {
+        long n = counter != null ? counter.sum() : exactCounter.get();
+        return n < 0 ? 0 : n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * Calculate the hash value of the key with the finalization step <br />
+     * of MurmurHash3, so that the low bits depend on every bit of the hash code.
+     * @param key Unique identification of data
+     * @return Hash value of the data, to be masked by the bucket array size
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Returns the smallest power of two that is not less than the capacity.
+     */
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(capacity - 1);
+        return (n < 1) ? 2 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+}
@@ -0,0 +1,655 @@
+package main.top.kindless.search.hash;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.annotation.UnSafe;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Implementation of symbol table based on bucketized cuckoo hashing.<br />
+ * Every key has exactly two candidate buckets given by two hash functions, <br />
+ * and every bucket has {@link #SLOTS} slots, so a search looks at no more <br />
+ * than eight slots in two buckets (plus a tiny stash that is empty almost <br />
+ * all the time). The hashes of the keys are kept in a parallel {@code int[]} <br />
+ * array, a bucket of which fits in a cache line, and keys are only compared <br />
+ * when their hashes match. <br />
+ * When both buckets of a new key are full, a breadth first search looks for <br />
+ * the shortest chain of displacements, at most {@link #MAX_PATH_LENGTH} long, <br />
+ * that ends in a free slot. If there is none the element goes to the stash, <br />
+ * and the table only grows once the stash is full as well, so the resize is <br />
+ * driven by the eviction path length rather than by a load factor. <br />
+ * Keys whose hashes are equal share both buckets at every size, so no <br />
+ * resize can separate them: once both buckets of a key are full of its <br />
+ * own hash, the key goes to an overflow chain of its first bucket instead. <br />
+ * The chains only hold such full-hash collisions and are only allocated <br />
+ * once the first one occurs.
+ * @param <Key>
+ * @param <Value>
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.ST
+ */
+@UnSafe
+public class CuckooHashST<Key, Value> implements ST<Key, Value>, Serializable {
+
+    /*----------Fields----------*/
+    /**
+     * The current number of elements in the symbol table, including the stash.
+     */
+    private int N;
+
+    /**
+     * The number of buckets, always a power of two.
+     */
+    private int M;
+
+    private int mask;
+
+    /**
+     * The hash of the key in each slot, {@link #EMPTY} marks a free slot. <br />
+     * Slot {@code s} of bucket {@code b} is at index {@code b * SLOTS + s}.
+     */
+    private int[] hashes;
+
+    private Key[] keys;
+
+    private Value[] values;
+
+    /**
+     * Elements for which no eviction path could be found.
+     */
+    private int[] stashHashes;
+
+    private Key[] stashKeys;
+
+    private Value[] stashValues;
+
+    private int stashSize;
+
+    /**
+     * Elements whose two buckets are full of keys with the same hash, <br />
+     * chained by their first bucket. Null until the first such element.
+     */
+    private Overflow<Key, Value>[] overflow;
+
+    private int overflowSize;
+
+    /*-----------Constants----------*/
+    /**
+     * The number of slots of a bucket.
+     */
+    private static final int SLOTS = 4;
+
+    /**
+     * The longest chain of displacements an insertion may perform.
+     */
+    private static final int MAX_PATH_LENGTH = 5;
+
+    /**
+     * The maximum number of buckets visited by the breadth first search.
+     */
+    private static final int MAX_BFS_NODES = 512;
+
+    /**
+     * The capacity of the stash.
+     */
+    private static final int STASH_SIZE = 8;
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 28;
+
+    private static final int EMPTY = 0;
+
+    /*----------BFS queue----------*/
+    private final int[] queueBucket = new int[MAX_BFS_NODES];
+
+    private final int[] queueParent = new int[MAX_BFS_NODES];
+
+    private final int[] queueSlot = new int[MAX_BFS_NODES];
+
+    private final int[] queueDepth = new int[MAX_BFS_NODES];
+
+    public CuckooHashST() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     *
+     * @param M Initial number of buckets, which must be positive. <br />
+     *          It is rounded up to a power of two.
+     * @throws SymbolTableInitialException
+     * Symbol table initialization exception is usually <br />
+     * thrown due to incorrect initialization parameters.
+     */
+    @SuppressWarnings("unchecked")
+    public CuckooHashST(int M) {
+        if (M < 1)
+            throw new SymbolTableInitialException("initial capacity is invalid, capacity:" + M);
+        allocate(tableSizeFor(M));
+        stashHashes = new int[STASH_SIZE];
+        stashKeys = (Key[]) new Object[STASH_SIZE];
+        stashValues = (Value[]) new Object[STASH_SIZE];
+    }
+
+    /**
+     * Search operation. The two candidate buckets and the stash are read, <br />
+     * and the overflow chain of the first bucket if there is one. That chain <br />
+     * only holds keys whose first bucket is the same, so a lookup costs more <br />
+     * than two buckets only when more than eight keys share its hash, and <br />
+     * then in proportion to their number.
+     * @param key The unique identification of the data element
+     * @return The value of the data element
+     */
+    @Override
+    public Value get(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        int h = hash(key);
+        int i = indexOf(h, key);
+        if (i >= 0)
+            return values[i];
+        i = stashIndexOf(h, key);
+        if (i >= 0)
+            return stashValues[i];
+        Overflow<Key, Value> x = overflowOf(h, key);
+        return x == null ? null : x.value;
+    }
+
+    @Override
+    public boolean contains(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to contains() is null");
+        int h = hash(key);
+        return indexOf(h, key) >= 0 || stashIndexOf(h, key) >= 0 || overflowOf(h, key) != null;
+    }
+
+    /**
+     * Insertion operation.
+     * If the key is present its value is replaced. Otherwise the element <br />
+     * goes to a free slot of its two buckets, or to the end of the shortest <br />
+     * eviction path, or to the stash; if all of them fail the table is doubled, <br />
+     * unless both buckets hold keys of the same hash, which go to the overflow. <br />
+     * Inserting a null value is the same as deleting the key.
+     * @param key The unique identification of the data element
+     * @param value Data element value
+     */
+    @Override
+    public void put(Key key, Value value) {
+        if (key == null) throw new IllegalArgumentException("argument to put() is null");
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        int h = hash(key);
+        int i = indexOf(h, key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        i = stashIndexOf(h, key);
+        if (i >= 0) {
+            stashValues[i] = value;
+            return;
+        }
+        Overflow<Key, Value> x = overflowOf(h, key);
+        if (x != null) {
+            x.value = value;
+            return;
+        }
+        while (!insert(h, key, value)) {
+            resize(M << 1);
+        }
+        N++;
+    }
+
+    /**
+     * Deletion operation. A freed slot may let an element of the stash <br />
+     * or of the overflow chain move back into the table.
+     * @param key The unique identification of the data element
+     */
+    @Override
+    public void delete(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        int h = hash(key);
+        int i = indexOf(h, key);
+        if (i >= 0) {
+            hashes[i] = EMPTY;
+            keys[i] = null;
+            values[i] = null;
+            N--;
+            unstash(h);
+            return;
+        }
+        i = stashIndexOf(h, key);
+        if (i >= 0) {
+            removeFromStash(i);
+            N--;
+            return;
+        }
+        if (overflow == null)
+            return;
+        int b = h & mask;
+        for (Overflow<Key, Value> x = overflow[b], prev = null; x != null; prev = x, x = x.next) {
+            if (x.hash == h && key.equals(x.key)) {
+                if (prev == null)
+                    overflow[b] = x.next;
+                else prev.next = x.next;
+                overflowSize--;
+                N--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * The number of data elements in the symbol table.
+     * @return The number of data elements in the symbol table.
+     */
+    @Override
+    public int size() {
+        return N;
+    }
+
+    /**
+     * Returns all keys in the symbol table, which is iterable.
+     * @return all keys in the symbol table
+     */
+    @Override
+    public Iterable<Key> keys() {
+        List<Key> list = new ArrayList<>(N);
+        forEach((key, value) -> list.add(key));
+        return list;
+    }
+
+    /**
+     * The iteration operation provided internally supports lambda expression.
+     * @param action Circulatory body
+     */
+    @Override
+    public void forEach(BiConsumer<? super Key, ? super Value> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != EMPTY)
+                action.accept(keys[i], values[i]);
+        }
+        for (int i = 0; i < stashSize; i++) {
+            action.accept(stashKeys[i], stashValues[i]);
+        }
+        if (overflow == null)
+            return;
+        for (Overflow<Key, Value> head : overflow) {
+            for (Overflow<Key, Value> x = head; x != null; x = x.next) {
+                action.accept(x.key, x.value);
+            }
+        }
+    }
+
+    /**
+     * Convert all the key value pairs to string.
+     * @return string value
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        forEach((k, v) -> sb.append(k).append("=").append(v).append(","));
+        if (sb.charAt(sb.length() - 1) == ',')
+            sb.replace(sb.length() - 1, sb.length(), "");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the current load factor of the symbol table, <br />
+     * that is the ratio of used slots.
+     * @return  current load factor of the symbol table
+     */
+    public double loadFactor() {
+        return (double) (N - stashSize - overflowSize) / (double) hashes.length;
+    }
+
+    /**
+     * Returns the number of elements in the stash.
+     * @return the number of elements in the stash
+     */
+    public int stashSize() {
+        return stashSize;
+    }
+
+    /**
+     * Returns the number of elements in the overflow chains, that is <br />
+     * the keys whose hashes are shared by more keys than fit in two buckets.
+     * @return the number of elements in the overflow chains
+     */
+    public int overflowSize() {
+        return overflowSize;
+    }
+
+    /*----------Internals----------*/
+    /**
+     * Find the slot of the key in its two buckets.
+     * @return the slot index, or -1
+     */
+    private int indexOf(int h, Key key) {
+        int b = (h & mask) * SLOTS;
+        for (int i = b; i < b + SLOTS; i++) {
+            if (hashes[i] == h && key.equals(keys[i]))
+                return i;
+        }
+        b = altIndex(h) * SLOTS;
+        for (int i = b; i < b + SLOTS; i++) {
+            if (hashes[i] == h && key.equals(keys[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    private int stashIndexOf(int h, Key key) {
+        for (int i = 0; i < stashSize; i++) {
+            if (stashHashes[i] == h && key.equals(stashKeys[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    private Overflow<Key, Value> overflowOf(int h, Key key) {
+        if (overflow == null)
+            return null;
+        for (Overflow<Key, Value> x = overflow[h & mask]; x != null; x = x.next) {
+            if (x.hash == h && key.equals(x.key))
+                return x;
+        }
+        return null;
+    }
+
+    /**
+     * Place an element which is known to be absent.
+     * @return false if the table has to grow first
+     */
+    @SuppressWarnings("unchecked")
+    private boolean insert(int h, Key key, Value value) {
+        int i = freeSlot(h & mask);
+        if (i < 0)
+            i = freeSlot(altIndex(h));
+        if (i < 0)
+            i = cuckoo(h);
+        if (i >= 0) {
+            hashes[i] = h;
+            keys[i] = key;
+            values[i] = value;
+            return true;
+        }
+        if (saturated(h)) {
+            if (overflow == null)
+                overflow = (Overflow<Key, Value>[]) new Overflow[M];
+            overflow[h & mask] = new Overflow<>(h, key, value, overflow[h & mask]);
+            overflowSize++;
+            return true;
+        }
+        if (stashSize < STASH_SIZE) {
+            stashHashes[stashSize] = h;
+            stashKeys[stashSize] = key;
+            stashValues[stashSize] = value;
+            stashSize++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether both buckets of the hash are full of keys with that very hash. <br />
+     * They stay together at every table size, so growing cannot help.
+     */
+    private boolean saturated(int h) {
+        int b = (h & mask) * SLOTS, c = altIndex(h) * SLOTS;
+        for (int s = 0; s < SLOTS; s++) {
+            if (hashes[b + s] != h || hashes[c + s] != h)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Breadth first search for the shortest eviction path from one of the <br />
+     * two buckets of the hash to a bucket with a free slot, then move the <br />
+     * elements along the path, starting from its end.
+     * @return the slot freed in one of the buckets of the hash, or -1
+     */
+    private int cuckoo(int h) {
+        int head = 0, tail = 0;
+        queueBucket[tail] = h & mask;
+        queueParent[tail] = -1;
+        queueDepth[tail++] = 0;
+        queueBucket[tail] = altIndex(h);
+        queueParent[tail] = -1;
+        queueDepth[tail++] = 0;
+        while (head < tail) {
+            int node = head++;
+            int bucket = queueBucket[node];
+            if (queueDepth[node] >= MAX_PATH_LENGTH)
+                continue;
+            for (int s = 0; s < SLOTS && tail < MAX_BFS_NODES; s++) {
+                int alt = otherIndex(hashes[bucket * SLOTS + s], bucket);
+                if (onPath(node, alt))
+                    continue;
+                queueBucket[tail] = alt;
+                queueParent[tail] = node;
+                queueSlot[tail] = s;
+                queueDepth[tail] = queueDepth[node] + 1;
+                int free = freeSlot(alt);
+                if (free >= 0)
+                    return moveAlong(tail, free);
+                tail++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the bucket already appears on the path ending at the node, <br />
+     * a path must not visit a bucket twice.
+     */
+    private boolean onPath(int node, int bucket) {
+        for (; node >= 0; node = queueParent[node]) {
+            if (queueBucket[node] == bucket)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Shift the elements along the path ending at the given queue node.
+     * @param node the last node of the path
+     * @param free the free slot in the bucket of that node
+     * @return the slot freed in the first bucket of the path
+     */
+    private int moveAlong(int node, int free) {
+        while (queueParent[node] >= 0) {
+            int from = queueBucket[queueParent[node]] * SLOTS + queueSlot[node];
+            hashes[free] = hashes[from];
+            keys[free] = keys[from];
+            values[free] = values[from];
+            free = from;
+            node = queueParent[node];
+        }
+        return free;
+    }
+
+    /**
+     * Move as many elements of the stash back into the table as possible, <br />
+     * then the elements of the overflow chain of the deleted hash: <br />
+     * the buckets of any other overflow element are full of its own hash.
+     * @param h the hash of the deleted element
+     */
+    private void unstash(int h) {
+        for (int i = stashSize - 1; i >= 0; i--) {
+            int sh = stashHashes[i];
+            int slot = freeSlot(sh & mask);
+            if (slot < 0)
+                slot = freeSlot(altIndex(sh));
+            if (slot >= 0) {
+                hashes[slot] = sh;
+                keys[slot] = stashKeys[i];
+                values[slot] = stashValues[i];
+                removeFromStash(i);
+            }
+        }
+        if (overflow == null)
+            return;
+        int b = h & mask;
+        for (Overflow<Key, Value> x = overflow[b], prev = null; x != null; x = x.next) {
+            if (x.hash == h) {
+                int slot = freeSlot(b);
+                if (slot < 0)
+                    slot = freeSlot(altIndex(h));
+                if (slot < 0)
+                    return;
+                hashes[slot] = x.hash;
+                keys[slot] = x.key;
+                values[slot] = x.value;
+                if (prev == null)
+                    overflow[b] = x.next;
+                else prev.next = x.next;
+                overflowSize--;
+            } else prev = x;
+        }
+    }
+
+    private void removeFromStash(int i) {
+        stashSize--;
+        stashHashes[i] = stashHashes[stashSize];
+        stashKeys[i] = stashKeys[stashSize];
+        stashValues[i] = stashValues[stashSize];
+        stashKeys[stashSize] = null;
+        stashValues[stashSize] = null;
+    }
+
+    private int freeSlot(int bucket) {
+        int b = bucket * SLOTS;
+        for (int i = b; i < b + SLOTS; i++) {
+            if (hashes[i] == EMPTY)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Double the number of buckets and reinsert every element, <br />
+     * including the stash and the overflow chains, which are rebuilt for the <br />
+     * new mask. Doubles again if that is still not enough.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        int[] oldHashes = hashes;
+        Key[] oldKeys = keys;
+        Value[] oldValues = values;
+        int[] oldStashHashes = stashHashes.clone();
+        Key[] oldStashKeys = stashKeys.clone();
+        Value[] oldStashValues = stashValues.clone();
+        int oldStashSize = stashSize;
+        Overflow<Key, Value>[] oldOverflow = overflow;
+        for (;;) {
+            if (capacity > MAXIMUM_CAPACITY)
+                throw new IllegalStateException("symbol table is full, size:" + N);
+            allocate(capacity);
+            overflow = null;
+            overflowSize = 0;
+            stashSize = 0;
+            Arrays.fill(stashKeys, null);
+            Arrays.fill(stashValues, null);
+            boolean ok = true;
+            for (int i = 0; i < oldHashes.length && ok; i++) {
+                if (oldHashes[i] != EMPTY)
+                    ok = insert(oldHashes[i], oldKeys[i], oldValues[i]);
+            }
+            for (int i = 0; i < oldStashSize && ok; i++) {
+                ok = insert(oldStashHashes[i], oldStashKeys[i], oldStashValues[i]);
+            }
+            for (int i = 0; oldOverflow != null && i < oldOverflow.length && ok; i++) {
+                for (Overflow<Key, Value> x = oldOverflow[i]; x != null && ok; x = x.next) {
+                    ok = insert(x.hash, x.key, x.value);
+                }
+            }
+            if (ok)
+                return;
+            capacity <<= 1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        M = capacity;
+        mask = capacity - 1;
+        hashes = new int[capacity * SLOTS];
+        keys = (Key[]) new Object[capacity * SLOTS];
+        values = (Value[]) new Object[capacity * SLOTS];
+    }
+
+    /**
+     * The second bucket of a hash, derived from a second mix of the hash. <br />
+     * It always differs from the first one.
+     */
+    private int altIndex(int h) {
+        int h2 = h * 0x5bd1e995;
+        h2 ^= h2 >>> 15;
+        int i = h2 & mask;
+        return i == (h & mask) ? i ^ 1 : i;
+    }
+
+    /**
+     * The candidate bucket of a hash that is not the given one.
+     */
+    private int otherIndex(int h, int bucket) {
+        int first = h & mask;
+        return bucket == first ? altIndex(h) : first;
+    }
+
+    /**
+     * Calculate the hash value of the key with the finalization step <br />
+     * of MurmurHash3. The result is never {@link #EMPTY}.
+     * @param key Unique identification of data
+     * @return Hash value of the data
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h == EMPTY ? 1 : h;
+    }
+
+    /**
+     * An element of an overflow chain.
+     */
+    private static final class Overflow<Key, Value> implements Serializable {
+
+        final int hash;
+
+        final Key key;
+
+        Value value;
+
+        Overflow<Key, Value> next;
+
+        Overflow(int hash, Key key, Value value, Overflow<Key, Value> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Returns the smallest power of two that is not less than the capacity.
+     */
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(capacity - 1);
+        return (n < 1) ? 2 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+}
@@ -0,0 +1,334 @@
+package main.top.kindless.search.hash;
+
+import main.top.kindless.search.annotation.UnSafe;
+import main.top.kindless.search.function.LongObjConsumer;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Implementation of symbol table based on an open addressing hash table <br />
+ * specialized for {@code long} keys.<br />
+ * Keys are stored unboxed in a {@code long[]} array next to a parallel <br />
+ * value array, and collisions are resolved by linear probing. The key <br />
+ * {@code 0} marks a free slot, so the entry whose key really is 0 is <br />
+ * kept in a dedicated field. Apart from growing the arrays, none of <br />
+ * the operations allocate.
+ * @param <V> the type of the value
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.hash.IntHashST
+ */
+@UnSafe
+public class LongHashST<V> implements Serializable {
+
+    /*----------Fields----------*/
+    /**
+     * The current number of elements in the symbol table, <br />
+     * including the entry of key 0.
+     */
+    private int N;
+
+    /**
+     * {@code keys.length - 1}, used to map a hash value to a slot.
+     */
+    private int mask;
+
+    /**
+     * When the number of elements in the arrays reaches this value, <br />
+     * the arrays will be doubled.
+     */
+    private int threshold;
+
+    /**
+     * The keys, indexed by slot. {@link #EMPTY} marks a free slot.
+     */
+    private long[] keys;
+
+    /**
+     * The values, indexed by slot.
+     */
+    private V[] values;
+
+    /**
+     * Whether the key 0 is present.
+     */
+    private boolean hasZeroKey;
+
+    /**
+     * The value of the key 0.
+     */
+    private V zeroValue;
+
+    /*-----------Constants----------*/
+    /**
+     * The maximum load factor, must be less than 1.
+     */
+    private final double loadFactor;
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private static final double DEFAULT_LOAD_FACTOR = .75;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The sentinel key of a free slot.
+     */
+    private static final long EMPTY = 0L;
+
+    public LongHashST() {
+        this(DEFAULT_SIZE, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongHashST(int M) {
+        this(M, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     *
+     * @param M Initial number of slots, which must be positive. <br />
+     *          It is rounded up to a power of two.
+     * @param loadFactor Maximum load factor, must be between 0 and 1 (exclusive).
+     * @throws SymbolTableInitialException
+     * Symbol table initialization exception is usually <br />
+     * thrown due to incorrect initialization parameters.
+     */
+    public LongHashST(int M, double loadFactor) {
+        if (M < 1)
+            throw new SymbolTableInitialException("initial capacity is invalid, capacity:" + M);
+        if (loadFactor <= 0 || loadFactor >= 1)
+            throw new SymbolTableInitialException("initial loadFactor is invalid, loadFactor:" + loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(M));
+    }
+
+    /**
+     * Insertion operation. Inserting a null value is the same as deleting the key.
+     * @param key The unique identification of the data element
+     * @param value Data element value
+     */
+    public void put(long key, V value) {
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        if (key == EMPTY) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                N++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int pos = hash(key) & mask;
+        for (long k; (k = keys[pos]) != EMPTY; pos = (pos + 1) & mask) {
+            if (k == key) {
+                values[pos] = value;
+                return;
+            }
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        if (++N >= threshold)
+            resize(keys.length << 1);
+    }
+
+    /**
+     * Search operation.
+     * @param key The unique identification of the data element
+     * @return The value of the data element, or null if the key is absent
+     */
+    public V get(long key) {
+        if (key == EMPTY)
+            return zeroValue;
+        int pos = hash(key) & mask;
+        for (long k; (k = keys[pos]) != EMPTY; pos = (pos + 1) & mask) {
+            if (k == key)
+                return values[pos];
+        }
+        return null;
+    }
+
+    /**
+     * Search operation returning a fallback for absent keys.
+     * @param key The unique identification of the data element
+     * @param defaultValue the value returned if the key is absent
+     * @return The value of the data element, or the default value
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        V v = get(key);
+        return v == null ? defaultValue : v;
+    }
+
+    /**
+     * Whether the symbol table contains the key.
+     * @param key The unique identification of the data element
+     * @return true if the key is present
+     */
+    public boolean contains(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Deletion operation.
+     * The slots following the deleted one are shifted back while their <br />
+     * keys may legally live in the freed slot, so no tombstones are needed.
+     * @param key The unique identification of the data element
+     */
+    public void delete(long key) {
+        if (key == EMPTY) {
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = null;
+                N--;
+            }
+            return;
+        }
+        int pos = hash(key) & mask;
+        for (long k; (k = keys[pos]) != key; pos = (pos + 1) & mask) {
+            if (k == EMPTY)
+                return;
+        }
+        int gap = pos;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        N--;
+    }
+
+    /**
+     * The number of data elements in the symbol table.
+     * @return The number of data elements in the symbol table.
+     */
+    public int size() {
+        return N;
+    }
+
+    public boolean isEmpty() {
+        return N == 0;
+    }
+
+    /**
+     * Returns all keys in the symbol table.
+     * @return all keys in the symbol table, in no particular order
+     */
+    public long[] keys() {
+        long[] res = new long[N];
+        int i = 0;
+        if (hasZeroKey)
+            res[i++] = EMPTY;
+        for (long k : keys) {
+            if (k != EMPTY)
+                res[i++] = k;
+        }
+        return res;
+    }
+
+    /**
+     * The iteration operation provided internally supports lambda expression, <br />
+     * keys are passed to the action without being boxed.
+     * @param action Circulatory body
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        if (hasZeroKey)
+            action.accept(EMPTY, zeroValue);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY)
+                action.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Remove all the elements, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        N = 0;
+    }
+
+    /**
+     * Returns the current load factor of the symbol table.
+     * @return  current load factor of the symbol table
+     */
+    public double loadFactor() {
+        return (double) N / (double) keys.length;
+    }
+
+    /**
+     * Convert all the key value pairs to string.
+     * @return string value
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        forEach((k, v) -> sb.append(k).append("=").append(v).append(","));
+        if (sb.charAt(sb.length() - 1) == ',')
+            sb.replace(sb.length() - 1, sb.length(), "");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private void resize(int capacity) {
+        if (keys.length == MAXIMUM_CAPACITY)
+            throw new IllegalStateException("symbol table is full, size:" + N);
+        long[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != EMPTY) {
+                int pos = hash(k) & mask;
+                while (keys[pos] != EMPTY) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        mask = capacity - 1;
+        threshold = Math.min((int) (loadFactor * capacity), capacity - 1);
+        keys = new long[capacity];
+        values = (V[]) new Object[capacity];
+    }
+
+    /**
+     * Calculate the hash value of the key with the finalization step <br />
+     * of MurmurHash3, so that the low bits depend on every bit of the key.
+     * @param key Unique identification of data
+     * @return Hash value of the data, to be masked by the array size
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Returns the smallest power of two that is not less than the capacity.
+     */
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(capacity - 1);
+        return (n < 1) ? 2 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+}
@@ -0,0 +1,642 @@
+package main.top.kindless.search.hash;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.annotation.UnSafe;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Implementation of symbol table for binary keys and values whose data <br />
+ * and index both live outside of the java heap.<br />
+ * Records are appended to fixed size direct {@link ByteBuffer} segments <br />
+ * as {@code [key length][value length][key][value]}, and the table grows <br />
+ * by adding segments. The index is an open addressing hash table stored <br />
+ * in direct buffers as well, every slot holding the address of a record <br />
+ * and the hash of its key. Keys are compared in place against the segment <br />
+ * bytes, so a lookup never copies a stored key onto the heap, and the heap <br />
+ * footprint of the table does not depend on the number of entries. <br />
+ * Like {@link ByteBuffer#equals}, keys only depend on their bytes and not <br />
+ * on the byte order of the buffer they are passed in. <br />
+ * Updated and deleted records stay in their segment as garbage until <br />
+ * {@link #compact()} is called. The native memory is released by {@link #close()}, <br />
+ * after which the table can no longer be used.
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.ST
+ */
+@UnSafe
+public class OffHeapHashST implements ST<byte[], byte[]>, Closeable {
+
+    /*----------Fields----------*/
+    /**
+     * The current number of elements in the symbol table.
+     */
+    private int N;
+
+    /**
+     * The size in bytes of every data segment.
+     */
+    private final int segmentSize;
+
+    /**
+     * The data segments, records are only appended to the last one.
+     */
+    private List<ByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * The offset of the next record in the last segment.
+     */
+    private int writeOffset;
+
+    /**
+     * The pages of the index, each holding at most {@code 1 << PAGE_SHIFT} slots.
+     */
+    private ByteBuffer[] index;
+
+    /**
+     * The number of index slots, always a power of two.
+     */
+    private long capacity;
+
+    /**
+     * When the number of elements reaches this value, the index will be doubled.
+     */
+    private long threshold;
+
+    /**
+     * Bytes of the segments taken by overwritten or deleted records.
+     */
+    private long garbageBytes;
+
+    private boolean closed;
+
+    /*-----------Constants----------*/
+    /**
+     * 64 MB per segment by default.
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+    private static final int DEFAULT_SIZE = 1024;
+
+    private static final double LOAD_FACTOR = .75;
+
+    /**
+     * Every slot is {@code [long address + 1][int hash][int key length]}, <br />
+     * an address of 0 marks a free slot.
+     */
+    private static final int SLOT_SHIFT = 4;
+
+    /**
+     * A page of the index holds 2^26 slots, that is 1 GB.
+     */
+    private static final int PAGE_SHIFT = 26;
+
+    private static final long MAXIMUM_CAPACITY = 1L << 31;
+
+    /**
+     * The size of the record header holding the two lengths.
+     */
+    private static final int HEADER = 8;
+
+    public OffHeapHashST() {
+        this(DEFAULT_SIZE, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public OffHeapHashST(int M) {
+        this(M, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     *
+     * @param M Initial number of index slots, which must be positive. <br />
+     *          It is rounded up to a power of two.
+     * @param segmentSize The size in bytes of every data segment, <br />
+     *                    which bounds the size of a single record.
+     * @throws SymbolTableInitialException
+     * Symbol table initialization exception is usually <br />
+     * thrown due to incorrect initialization parameters.
+     */
+    public OffHeapHashST(int M, int segmentSize) {
+        if (M < 1)
+            throw new SymbolTableInitialException("initial capacity is invalid, capacity:" + M);
+        if (segmentSize <= HEADER)
+            throw new SymbolTableInitialException("segment size is invalid, segmentSize:" + segmentSize);
+        this.segmentSize = segmentSize;
+        allocateIndex(Math.max(2, Long.highestOneBit(M - 1) << 1));
+        addSegment();
+    }
+
+    /*----------Operations----------*/
+    /**
+     * Insertion operation. The key and the value are copied into the <br />
+     * last segment, a new segment is added if it is full. <br />
+     * Inserting a null value is the same as deleting the key.
+     * @param key The unique identification of the data element
+     * @param value Data element value
+     */
+    @Override
+    public void put(byte[] key, byte[] value) {
+        if (key == null) throw new IllegalArgumentException("argument to put() is null");
+        put(ByteBuffer.wrap(key), value == null ? null : ByteBuffer.wrap(value));
+    }
+
+    /**
+     * Insertion operation for the remaining bytes of two buffers, <br />
+     * whose positions are not changed.
+     * @param key The unique identification of the data element
+     * @param value Data element value
+     */
+    public void put(ByteBuffer key, ByteBuffer value) {
+        ensureOpen();
+        if (key == null) throw new IllegalArgumentException("argument to put() is null");
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        key = bigEndian(key);
+        int h = hash(key);
+        long slot = find(key, h);
+        long address = append(key, value);
+        if (slot >= 0) {
+            garbageBytes += recordSize(address(slot));
+            setAddress(slot, address);
+            return;
+        }
+        insert(address, h, key.remaining());
+        if (++N >= threshold)
+            resize(capacity << 1);
+    }
+
+    /**
+     * Search operation, the value is copied onto the heap.
+     * @param key The unique identification of the data element
+     * @return The value of the data element
+     */
+    @Override
+    public byte[] get(byte[] key) {
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        ByteBuffer value = get(ByteBuffer.wrap(key));
+        if (value == null)
+            return null;
+        byte[] res = new byte[value.remaining()];
+        value.get(res);
+        return res;
+    }
+
+    /**
+     * Search operation without copying.
+     * @param key The unique identification of the data element
+     * @return a read only view of the value inside its segment, or null. <br />
+     * The view stays valid after {@link #compact()}, but must not be used <br />
+     * after {@link #close()}.
+     */
+    public ByteBuffer get(ByteBuffer key) {
+        ensureOpen();
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        key = bigEndian(key);
+        long slot = find(key, hash(key));
+        if (slot < 0)
+            return null;
+        long address = address(slot);
+        ByteBuffer segment = segments.get(segmentOf(address));
+        int offset = offsetOf(address);
+        ByteBuffer view = segment.duplicate();
+        int from = offset + HEADER + segment.getInt(offset);
+        view.limit(from + segment.getInt(offset + 4)).position(from);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean contains(byte[] key) {
+        if (key == null) throw new IllegalArgumentException("argument to contains() is null");
+        return contains(ByteBuffer.wrap(key));
+    }
+
+    public boolean contains(ByteBuffer key) {
+        ensureOpen();
+        if (key == null) throw new IllegalArgumentException("argument to contains() is null");
+        key = bigEndian(key);
+        return find(key, hash(key)) >= 0;
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        delete(ByteBuffer.wrap(key));
+    }
+
+    /**
+     * Deletion operation. The index slot is freed by backward shifting, <br />
+     * the record becomes garbage of its segment.
+     * @param key The unique identification of the data element
+     */
+    public void delete(ByteBuffer key) {
+        ensureOpen();
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        key = bigEndian(key);
+        long slot = find(key, hash(key));
+        if (slot < 0)
+            return;
+        garbageBytes += recordSize(address(slot));
+        long mask = capacity - 1;
+        long gap = slot;
+        for (long next = (gap + 1) & mask; !isFree(next); next = (next + 1) & mask) {
+            long home = hashOf(next) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                copySlot(next, gap);
+                gap = next;
+            }
+        }
+        clearSlot(gap);
+        N--;
+    }
+
+    /**
+     * The number of data elements in the symbol table.
+     * @return The number of data elements in the symbol table.
+     */
+    @Override
+    public int size() {
+        return N;
+    }
+
+    /**
+     * Returns all keys in the symbol table, copied onto the heap.
+     * @return all keys in the symbol table
+     */
+    @Override
+    public Iterable<byte[]> keys() {
+        List<byte[]> list = new ArrayList<>(N);
+        forEach((key, value) -> list.add(key));
+        return list;
+    }
+
+    /**
+     * The iteration operation provided internally supports lambda expression, <br />
+     * keys and values are copied onto the heap.
+     * @param action Circulatory body
+     */
+    @Override
+    public void forEach(BiConsumer<? super byte[], ? super byte[]> action) {
+        Objects.requireNonNull(action);
+        ensureOpen();
+        for (long slot = 0; slot < capacity; slot++) {
+            if (isFree(slot))
+                continue;
+            long address = address(slot);
+            ByteBuffer segment = segments.get(segmentOf(address));
+            int offset = offsetOf(address);
+            byte[] key = new byte[segment.getInt(offset)];
+            byte[] value = new byte[segment.getInt(offset + 4)];
+            ByteBuffer record = segment.duplicate();
+            record.position(offset + HEADER);
+            record.get(key).get(value);
+            action.accept(key, value);
+        }
+    }
+
+    /**
+     * Copy the live records into new segments and drop the old ones, <br />
+     * so that the garbage left by updates and deletions is reclaimed. <br />
+     * Afterwards the only garbage is the unused tail of every segment <br />
+     * but the last, which {@link #reserve} counts while copying.
+     */
+    public void compact() {
+        ensureOpen();
+        List<ByteBuffer> old = segments;
+        segments = new ArrayList<>();
+        garbageBytes = 0;
+        addSegment();
+        for (long slot = 0; slot < capacity; slot++) {
+            if (isFree(slot))
+                continue;
+            long address = address(slot);
+            ByteBuffer record = old.get(segmentOf(address)).duplicate();
+            int offset = offsetOf(address);
+            record.limit(offset + recordSize(record, offset)).position(offset);
+            setAddress(slot, appendRecord(record));
+        }
+        // the old segments are not freed explicitly: views returned by
+        // get(ByteBuffer) keep them reachable until they are dropped
+    }
+
+    /**
+     * Release all the native memory held by this symbol table.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (ByteBuffer segment : segments) {
+            free(segment);
+        }
+        for (ByteBuffer page : index) {
+            free(page);
+        }
+        segments = null;
+        index = null;
+        N = 0;
+    }
+
+    /**
+     * Returns the native memory reserved by the segments and the index.
+     * @return reserved off heap bytes
+     */
+    public long offHeapBytes() {
+        ensureOpen();
+        return (long) segments.size() * segmentSize + (capacity << SLOT_SHIFT);
+    }
+
+    /**
+     * Returns the bytes of the segments taken by records that have been <br />
+     * overwritten or deleted, which {@link #compact()} would reclaim.
+     * @return garbage bytes
+     */
+    public long garbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * Returns the number of data segments.
+     * @return the number of data segments
+     */
+    public int segmentNum() {
+        ensureOpen();
+        return segments.size();
+    }
+
+    /*----------Records----------*/
+    /**
+     * Write a record for the remaining bytes of key and value.
+     * @return the address of the record
+     */
+    private long append(ByteBuffer key, ByteBuffer value) {
+        long size = (long) HEADER + key.remaining() + value.remaining();
+        if (size > segmentSize)
+            throw new IllegalArgumentException("record is larger than a segment, size:" + size);
+        reserve((int) size);
+        ByteBuffer segment = segments.get(segments.size() - 1);
+        int offset = writeOffset;
+        segment.putInt(offset, key.remaining());
+        segment.putInt(offset + 4, value.remaining());
+        ByteBuffer dst = segment.duplicate();
+        dst.position(offset + HEADER);
+        dst.put(key.duplicate()).put(value.duplicate());
+        writeOffset += (int) size;
+        return address(segments.size() - 1, offset);
+    }
+
+    /**
+     * Copy a whole record, used by {@link #compact()}.
+     * @return the new address of the record
+     */
+    private long appendRecord(ByteBuffer record) {
+        reserve(record.remaining());
+        ByteBuffer dst = segments.get(segments.size() - 1).duplicate();
+        int offset = writeOffset;
+        dst.position(offset);
+        writeOffset += record.remaining();
+        dst.put(record);
+        return address(segments.size() - 1, offset);
+    }
+
+    /**
+     * Make sure the last segment has room for the given number of bytes.
+     */
+    private void reserve(int size) {
+        if (writeOffset + size > segmentSize) {
+            garbageBytes += segmentSize - writeOffset;
+            addSegment();
+        }
+    }
+
+    private void addSegment() {
+        segments.add(ByteBuffer.allocateDirect(segmentSize));
+        writeOffset = 0;
+    }
+
+    private int recordSize(long address) {
+        return recordSize(segments.get(segmentOf(address)), offsetOf(address));
+    }
+
+    private static int recordSize(ByteBuffer segment, int offset) {
+        return HEADER + segment.getInt(offset) + segment.getInt(offset + 4);
+    }
+
+    /**
+     * Compare the remaining bytes of the key with the key of a record, in place. <br />
+     * The key must be big endian like the segments, see {@link #bigEndian}.
+     */
+    private boolean keyEquals(long address, ByteBuffer key) {
+        ByteBuffer segment = segments.get(segmentOf(address));
+        int offset = offsetOf(address);
+        int length = key.remaining();
+        if (segment.getInt(offset) != length)
+            return false;
+        int from = key.position();
+        int to = offset + HEADER;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            if (segment.getLong(to + i) != key.getLong(from + i))
+                return false;
+        }
+        for (; i < length; i++) {
+            if (segment.get(to + i) != key.get(from + i))
+                return false;
+        }
+        return true;
+    }
+
+    private static long address(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int segmentOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    /*----------Index----------*/
+    /**
+     * Find the index slot of the key.
+     * @return the slot, or -1 if the key is absent
+     */
+    private long find(ByteBuffer key, int h) {
+        long mask = capacity - 1;
+        for (long slot = (h & 0xffffffffL) & mask; ; slot = (slot + 1) & mask) {
+            if (isFree(slot))
+                return -1;
+            if (hashOf(slot) == h && keyLengthOf(slot) == key.remaining() && keyEquals(address(slot), key))
+                return slot;
+        }
+    }
+
+    /**
+     * Place the address of a record whose key is known to be absent.
+     */
+    private void insert(long address, int h, int keyLength) {
+        long mask = capacity - 1;
+        long slot = (h & 0xffffffffL) & mask;
+        while (!isFree(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        ByteBuffer page = page(slot);
+        int offset = slotOffset(slot);
+        page.putLong(offset, address + 1);
+        page.putInt(offset + 8, h);
+        page.putInt(offset + 12, keyLength);
+    }
+
+    private void resize(long newCapacity) {
+        if (capacity >= MAXIMUM_CAPACITY)
+            throw new IllegalStateException("symbol table is full, size:" + N);
+        ByteBuffer[] oldIndex = index;
+        long oldCapacity = capacity;
+        allocateIndex(newCapacity);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer page = oldIndex[(int) (slot >>> PAGE_SHIFT)];
+            int offset = slotOffset(slot);
+            long address = page.getLong(offset);
+            if (address != 0)
+                insert(address - 1, page.getInt(offset + 8), page.getInt(offset + 12));
+        }
+        for (ByteBuffer page : oldIndex) {
+            free(page);
+        }
+    }
+
+    private void allocateIndex(long newCapacity) {
+        long slotsPerPage = 1L << PAGE_SHIFT;
+        int pages = (int) ((newCapacity + slotsPerPage - 1) >>> PAGE_SHIFT);
+        index = new ByteBuffer[pages];
+        for (int i = 0; i < pages; i++) {
+            index[i] = ByteBuffer.allocateDirect((int) (Math.min(newCapacity, slotsPerPage) << SLOT_SHIFT));
+        }
+        capacity = newCapacity;
+        threshold = (long) (newCapacity * LOAD_FACTOR);
+    }
+
+    private ByteBuffer page(long slot) {
+        return index[(int) (slot >>> PAGE_SHIFT)];
+    }
+
+    private static int slotOffset(long slot) {
+        return (int) (slot & ((1L << PAGE_SHIFT) - 1)) << SLOT_SHIFT;
+    }
+
+    /**
+     * Returns the address of the record in a slot, the slot must not be free.
+     */
+    private long address(long slot) {
+        return page(slot).getLong(slotOffset(slot)) - 1;
+    }
+
+    private boolean isFree(long slot) {
+        return page(slot).getLong(slotOffset(slot)) == 0;
+    }
+
+    private void setAddress(long slot, long address) {
+        page(slot).putLong(slotOffset(slot), address + 1);
+    }
+
+    private int hashOf(long slot) {
+        return page(slot).getInt(slotOffset(slot) + 8);
+    }
+
+    private int keyLengthOf(long slot) {
+        return page(slot).getInt(slotOffset(slot) + 12);
+    }
+
+    private void copySlot(long from, long to) {
+        ByteBuffer src = page(from);
+        ByteBuffer dst = page(to);
+        int f = slotOffset(from);
+        int t = slotOffset(to);
+        dst.putLong(t, src.getLong(f));
+        dst.putLong(t + 8, src.getLong(f + 8));
+    }
+
+    private void clearSlot(long slot) {
+        ByteBuffer page = page(slot);
+        int offset = slotOffset(slot);
+        page.putLong(offset, 0L);
+        page.putLong(offset + 8, 0L);
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("symbol table is closed");
+    }
+
+    /**
+     * Returns a view of the key in the byte order of the segments, so that <br />
+     * words read by {@link #hash} and {@link #keyEquals} do not depend on <br />
+     * the order of the caller's buffer. The position and limit are shared.
+     */
+    private static ByteBuffer bigEndian(ByteBuffer key) {
+        return key.order() == ByteOrder.BIG_ENDIAN ? key : key.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Calculate the hash value of the remaining bytes, eight bytes at a time. <br />
+     * The key must be big endian, see {@link #bigEndian}.
+     * @param key Unique identification of data
+     * @return Hash value of the data
+     */
+    private static int hash(ByteBuffer key) {
+        int from = key.position();
+        int length = key.remaining();
+        long h = 0x9E3779B97F4A7C15L ^ length;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            h = Long.rotateLeft(h ^ key.getLong(from + i) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        }
+        for (; i < length; i++) {
+            h = (h ^ (key.get(from + i) & 0xff)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Release the native memory of a direct buffer right away instead of <br />
+     * waiting for the buffer object to be collected. The cleaner is reached <br />
+     * by reflection because it is not part of the public API; if that fails <br />
+     * the memory is released when the buffer is collected.
+     */
+    private static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect())
+            return;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            try {
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(buffer);
+                if (c != null)
+                    c.getClass().getMethod("clean").invoke(c);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package main.top.kindless.search.hash;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.annotation.Safe;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable symbol table based on a minimal perfect hash function.<br />
+ * It is built once by {@link #freeze(ST)} from any symbol table, and only <br />
+ * supports reads afterwards. The hash function maps the n keys of the set <br />
+ * to n distinct slots, so keys and values are packed densely into arrays <br />
+ * of exactly n elements, without chains, empty buckets or load factor. <br />
+ * The function follows PTHash: the keys are split into partitions, built <br />
+ * independently and in parallel; inside a partition they are distributed <br />
+ * into small buckets, and every bucket gets a "pilot", the first value <br />
+ * for which the positions {@code hash(key, pilot)} of all its keys are <br />
+ * free. Only the pilots are stored, bit-packed, which takes about 3 bits <br />
+ * per key. Slots are searched in a range 1% larger than needed, which <br />
+ * keeps the pilots small; the few keys that land beyond the n slots are <br />
+ * remapped to the free ones. <br />
+ * A lookup is one hash of the key and a few reads of small arrays to find <br />
+ * the slot, then a one byte fingerprint check, so that most absent keys are <br />
+ * rejected without touching the stored key, and one {@code equals} call. <br />
+ * Keys whose 64 bit hash values are equal (possible for keys with equal <br />
+ * {@code hashCode()}, other than {@code String}) cannot be separated by <br />
+ * any hash function: they are kept in a small overflow table.
+ * @param <Key>
+ * @param <Value>
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.ST
+ * @see main.top.kindless.search.hash.SeparateChainingHashST
+ */
+@Safe
+public class PerfectHashST<Key, Value> implements ST<Key, Value>, Serializable {
+
+    /*----------Fields----------*/
+    /**
+     * The keys, indexed by slot.
+     */
+    private final Object[] keys;
+
+    /**
+     * The values, indexed by slot.
+     */
+    private final Object[] values;
+
+    /**
+     * A byte of the hash value of every key, indexed by slot.
+     */
+    private final byte[] fingerprints;
+
+    /**
+     * The number of partitions.
+     */
+    private final int partitions;
+
+    /**
+     * The first slot of every partition, followed by the number of slots.
+     */
+    private final int[] keyOffset;
+
+    /**
+     * The first bucket of every partition in {@link #pilots}, <br />
+     * followed by the number of buckets.
+     */
+    private final int[] bucketOffset;
+
+    /**
+     * The first entry of every partition in {@link #remap}, <br />
+     * followed by the number of entries.
+     */
+    private final int[] remapOffset;
+
+    /**
+     * The pilot of every bucket.
+     */
+    private final PackedInts pilots;
+
+    /**
+     * The slot of every position beyond the slots of its partition.
+     */
+    private final PackedInts remap;
+
+    /**
+     * Keys that share their hash value with another key, or null.
+     */
+    private final RobinHoodHashST<Key, Value> overflow;
+
+    /*-----------Constants----------*/
+    /**
+     * The number of keys of a partition. Partitions are built in <br />
+     * parallel, and the arrays used to build one fit in the cache.
+     */
+    private static final int PARTITION_SIZE = 1 << 15;
+
+    /**
+     * The number of buckets is {@code C * n / log2(n)}. More buckets <br />
+     * make the build faster and the pilots smaller, but more numerous.
+     */
+    private static final double C = 3.5;
+
+    /**
+     * The ratio of keys to positions searched by the build.
+     */
+    private static final double ALPHA = .99;
+
+    /**
+     * The pilot search gives up after this many tries, which only happens <br />
+     * if the hash function is broken.
+     */
+    private static final int MAX_PILOT = 1 << 24;
+
+    /**
+     * The seed of the hash function.
+     */
+    private static final long SEED = 0x2d358dccaa6c78a5L;
+
+    /*----------Constructors----------*/
+    private PerfectHashST(Object[] keys, Object[] values, byte[] fingerprints, int partitions,
+                          int[] keyOffset, int[] bucketOffset, int[] remapOffset,
+                          PackedInts pilots, PackedInts remap, RobinHoodHashST<Key, Value> overflow) {
+        this.keys = keys;
+        this.values = values;
+        this.fingerprints = fingerprints;
+        this.partitions = partitions;
+        this.keyOffset = keyOffset;
+        this.bucketOffset = bucketOffset;
+        this.remapOffset = remapOffset;
+        this.pilots = pilots;
+        this.remap = remap;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Build an immutable copy of a symbol table. The partitions <br />
+     * are built in parallel in the common fork join pool.
+     * @param st The symbol table to copy, it is not modified.
+     * @return the frozen symbol table
+     */
+    public static <Key, Value> PerfectHashST<Key, Value> freeze(ST<Key, Value> st) {
+        Objects.requireNonNull(st);
+        List<Key> keyList = new ArrayList<>(st.size());
+        List<Value> valueList = new ArrayList<>(st.size());
+        st.forEach((k, v) -> {
+            keyList.add(k);
+            valueList.add(v);
+        });
+        int total = keyList.size();
+        long[] hashes = new long[total];
+        IntStream.range(0, total).parallel().forEach(i -> hashes[i] = hash64(keyList.get(i)));
+
+        //哈希值相同的键无法区分，放进溢出表
+        long[] sorted = hashes.clone();
+        Arrays.parallelSort(sorted);
+        long[] duplicates = new long[0];
+        int d = 0;
+        for (int i = 1; i < total; i++) {
+            if (sorted[i] == sorted[i - 1] && (d == 0 || duplicates[d - 1] != sorted[i])) {
+                if (d == duplicates.length)
+                    duplicates = Arrays.copyOf(duplicates, Math.max(4, d * 2));
+                duplicates[d++] = sorted[i];
+            }
+        }
+        RobinHoodHashST<Key, Value> overflow = d == 0 ? null : new RobinHoodHashST<>();
+        boolean[] overflowed = new boolean[total];
+        if (d > 0) {
+            long[] dups = Arrays.copyOf(duplicates, d);
+            for (int i = 0; i < total; i++) {
+                if (Arrays.binarySearch(dups, hashes[i]) >= 0) {
+                    overflowed[i] = true;
+                    overflow.put(keyList.get(i), valueList.get(i));
+                }
+            }
+        }
+
+        //按分区计数排序
+        int n = overflow == null ? total : total - overflow.size();
+        int partitions = Math.max(1, (n + PARTITION_SIZE - 1) / PARTITION_SIZE);
+        int[] keyOffset = new int[partitions + 1];
+        for (int i = 0; i < total; i++) {
+            if (!overflowed[i])
+                keyOffset[partitionOf(hashes[i], partitions) + 1]++;
+        }
+        int[] bucketOffset = new int[partitions + 1];
+        int[] remapOffset = new int[partitions + 1];
+        for (int p = 0; p < partitions; p++) {
+            int size = keyOffset[p + 1];
+            keyOffset[p + 1] = keyOffset[p] + size;
+            bucketOffset[p + 1] = bucketOffset[p] + bucketsFor(size);
+            remapOffset[p + 1] = remapOffset[p] + positionsFor(size) - size;
+        }
+        int[] next = Arrays.copyOf(keyOffset, partitions);
+        long[] partHashes = new long[n];
+        int[] partIndex = new int[n];
+        for (int i = 0; i < total; i++) {
+            if (!overflowed[i]) {
+                int j = next[partitionOf(hashes[i], partitions)]++;
+                partHashes[j] = hashes[i];
+                partIndex[j] = i;
+            }
+        }
+
+        int[] pilots = new int[bucketOffset[partitions]];
+        int[] remap = new int[remapOffset[partitions]];
+        Object[] keys = new Object[n];
+        Object[] values = new Object[n];
+        byte[] fingerprints = new byte[n];
+        IntStream.range(0, partitions).parallel().forEach(p -> {
+            int from = keyOffset[p];
+            int[] slots = buildPartition(partHashes, from, keyOffset[p + 1], pilots, bucketOffset[p],
+                    bucketOffset[p + 1] - bucketOffset[p], remap, remapOffset[p]);
+            for (int i = 0; i < slots.length; i++) {
+                int slot = from + slots[i];
+                int index = partIndex[from + i];
+                keys[slot] = keyList.get(index);
+                values[slot] = valueList.get(index);
+                fingerprints[slot] = fingerprint(partHashes[from + i]);
+            }
+        });
+        return new PerfectHashST<>(keys, values, fingerprints, partitions, keyOffset, bucketOffset,
+                remapOffset, new PackedInts(pilots), new PackedInts(remap), overflow);
+    }
+
+    /*----------Methods----------*/
+    /**
+     * Search operation.
+     * @param key The unique identification of the data element
+     * @return The value of the data element
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Value get(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        long h = hash64(key);
+        int slot = slotOf(h);
+        if (slot >= 0 && fingerprints[slot] == fingerprint(h) && key.equals(keys[slot]))
+            return (Value) values[slot];
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public boolean contains(Key key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Not supported, the symbol table is immutable.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void put(Key key, Value value) {
+        throw new UnsupportedOperationException("PerfectHashST is immutable");
+    }
+
+    /**
+     * Not supported, the symbol table is immutable.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void delete(Key key) {
+        throw new UnsupportedOperationException("PerfectHashST is immutable");
+    }
+
+    @Override
+    public int size() {
+        return keys.length + (overflow == null ? 0 : overflow.size());
+    }
+
+    @Override
+    public Iterable<Key> keys() {
+        List<Key> list = new ArrayList<>(size());
+        forEach((k, v) -> list.add(k));
+        return list;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super Key, ? super Value> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < keys.length; i++) {
+            action.accept((Key) keys[i], (Value) values[i]);
+        }
+        if (overflow != null)
+            overflow.forEach(action);
+    }
+
+    /**
+     * Returns the size of the hash function itself, that is the pilots, <br />
+     * the remapped positions and the partition offsets, in bits per key. <br />
+     * The keys, values and fingerprints are not included.
+     * @return the number of bits per key of the hash function
+     */
+    public double bitsPerKey() {
+        long bits = (pilots.words.length + remap.words.length) * 64L
+                + (keyOffset.length + bucketOffset.length + remapOffset.length) * 32L;
+        return keys.length == 0 ? 0 : (double) bits / keys.length;
+    }
+
+    /**
+     * Returns the number of keys kept in the overflow table <br />
+     * because their hash value is not unique.
+     * @return the number of overflowed keys
+     */
+    public int overflowSize() {
+        return overflow == null ? 0 : overflow.size();
+    }
+
+    /**
+     * Returns the slot of a hash value, or -1 if its partition is empty.
+     */
+    private int slotOf(long h) {
+        int p = partitionOf(h, partitions);
+        int from = keyOffset[p];
+        int n = keyOffset[p + 1] - from;
+        if (n == 0)
+            return -1;
+        int b = bucketOffset[p];
+        int r = remapOffset[p];
+        int position = positionOf(h, pilots.get(b + bucketOf(h, bucketOffset[p + 1] - b)),
+                n + remapOffset[p + 1] - r);
+        if (position >= n)
+            position = remap.get(r + position - n);
+        return from + position;
+    }
+
+    /**
+     * Build the hash function of one partition. <br />
+     * The buckets are handled from the largest to the smallest, since <br />
+     * large buckets are hard to place once the table fills up.
+     * @param hashes The hash values of the keys, grouped by partition
+     * @param from The first key of the partition
+     * @param to The end of the keys of the partition
+     * @param pilots Receives the pilots of the buckets from {@code bucketFrom}
+     * @param buckets The number of buckets of the partition
+     * @param remap Receives the remapped positions from {@code remapFrom}
+     * @return the slot in the partition of every key
+     */
+    private static int[] buildPartition(long[] hashes, int from, int to, int[] pilots, int bucketFrom, int buckets,
+                                        int[] remap, int remapFrom) {
+        int n = to - from;
+        int m = positionsFor(n);
+        int[] slots = new int[n];
+        if (n == 0)
+            return slots;
+        //按桶计数排序
+        int[] start = new int[buckets + 1];
+        for (int i = from; i < to; i++) {
+            start[bucketOf(hashes[i], buckets) + 1]++;
+        }
+        int maxSize = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxSize = Math.max(maxSize, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        int[] order = new int[n];
+        int[] next = Arrays.copyOf(start, buckets);
+        for (int i = from; i < to; i++) {
+            order[next[bucketOf(hashes[i], buckets)]++] = i - from;
+        }
+        //按桶大小从大到小排序
+        int[] bySize = new int[maxSize + 2];
+        for (int b = 0; b < buckets; b++) {
+            bySize[maxSize - (start[b + 1] - start[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxSize; s++) {
+            bySize[s + 1] += bySize[s];
+        }
+        int[] bucketOrder = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            bucketOrder[bySize[maxSize - (start[b + 1] - start[b])]++] = b;
+        }
+
+        long[] taken = new long[(m + 63) >>> 6];
+        int[] positions = new int[maxSize];
+        for (int b : bucketOrder) {
+            int size = start[b + 1] - start[b];
+            if (size == 0)
+                break;
+            int pilot = 0;
+            search:
+            for (; ; pilot++) {
+                if (pilot == MAX_PILOT)
+                    throw new IllegalStateException("no pilot found for a bucket of size " + size);
+                for (int j = 0; j < size; j++) {
+                    int position = positionOf(hashes[from + order[start[b] + j]], pilot, m);
+                    if ((taken[position >>> 6] & (1L << position)) != 0)
+                        continue search;
+                    for (int k = 0; k < j; k++) {
+                        if (positions[k] == position)
+                            continue search;
+                    }
+                    positions[j] = position;
+                }
+                break;
+            }
+            pilots[bucketFrom + b] = pilot;
+            for (int j = 0; j < size; j++) {
+                taken[positions[j] >>> 6] |= 1L << positions[j];
+                slots[order[start[b] + j]] = positions[j];
+            }
+        }
+
+        //把超出n的位置重新映射到空闲的位置上
+        int free = 0;
+        for (int position = n; position < m; position++) {
+            if ((taken[position >>> 6] & (1L << position)) != 0) {
+                while ((taken[free >>> 6] & (1L << free)) != 0) {
+                    free++;
+                }
+                remap[remapFrom + position - n] = free++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (slots[i] >= n)
+                slots[i] = remap[remapFrom + slots[i] - n];
+        }
+        return slots;
+    }
+
+    private static int bucketsFor(int n) {
+        if (n == 0)
+            return 0;
+        return (int) Math.max(1, Math.ceil(C * n / (Math.log(Math.max(n, 2)) / Math.log(2))));
+    }
+
+    private static int positionsFor(int n) {
+        return n == 0 ? 0 : Math.max(n, (int) Math.ceil(n / ALPHA));
+    }
+
+    private static int partitionOf(long h, int partitions) {
+        return (int) (((h >>> 32) * partitions) >>> 32);
+    }
+
+    /**
+     * The bucket of a hash value. The buckets are skewed: 60% of the <br />
+     * keys go to the first 30% of the buckets, which makes a few large <br />
+     * buckets that are placed early, while the table is still empty, <br />
+     * and many small buckets that are easy to place at the end.
+     */
+    private static int bucketOf(long h, int buckets) {
+        long r = (h * 0x9E3779B97F4A7C15L) >>> 32;
+        int dense = (int) (buckets * 3L / 10);
+        if (dense == 0)
+            return (int) ((r * buckets) >>> 32);
+        if ((h & 0xff) < 154)
+            return (int) ((r * dense) >>> 32);
+        return dense + (int) ((r * (buckets - dense)) >>> 32);
+    }
+
+    private static int positionOf(long h, int pilot, int m) {
+        return (int) (((fmix64(h ^ (pilot * 0xbf58476d1ce4e5b9L)) >>> 32) * m) >>> 32);
+    }
+
+    private static byte fingerprint(long h) {
+        return (byte) ((h * 0xC2B2AE3D27D4EB4FL) >>> 56);
+    }
+
+    /**
+     * The 64 bit hash value of a key. {@code String} keys are hashed <br />
+     * over their characters, other keys over their hash code.
+     */
+    private static long hash64(Object key) {
+        if (key instanceof String) {
+            String s = (String) key;
+            int n = s.length();
+            long h = SEED ^ n;
+            int i = 0;
+            for (; i + 4 <= n; i += 4) {
+                long w = s.charAt(i) | (long) s.charAt(i + 1) << 16
+                        | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+                h = (h ^ w) * 0x9E3779B97F4A7C15L;
+                h ^= h >>> 32;
+            }
+            long w = 0;
+            for (int shift = 0; i < n; i++, shift += 16) {
+                w |= (long) s.charAt(i) << shift;
+            }
+            return fmix64(h ^ w);
+        }
+        return fmix64(SEED ^ key.hashCode() * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * The finalization step of MurmurHash3.
+     */
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * An array of non-negative ints, each stored in as many bits <br />
+     * as the largest one needs.
+     */
+    private static final class PackedInts implements Serializable {
+
+        final long[] words;
+
+        final int width;
+
+        final long mask;
+
+        PackedInts(int[] values) {
+            int max = 0;
+            for (int value : values) {
+                max = Math.max(max, value);
+            }
+            width = Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+            mask = (1L << width) - 1;
+            //多留一个字，读取时不需要判断是否越界
+            words = new long[(int) (((long) values.length * width + 63) >>> 6) + 1];
+            for (int i = 0; i < values.length; i++) {
+                long bit = (long) i * width;
+                int w = (int) (bit >>> 6);
+                int shift = (int) bit & 63;
+                words[w] |= (long) values[i] << shift;
+                if (shift + width > 64)
+                    words[w + 1] |= (long) values[i] >>> (64 - shift);
+            }
+        }
+
+        int get(int i) {
+            long bit = (long) i * width;
+            int w = (int) (bit >>> 6);
+            int shift = (int) bit & 63;
+            return (int) (((words[w] >>> shift) | ((words[w + 1] << 1) << (63 - shift))) & mask);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package main.top.kindless.search.hash;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.annotation.UnSafe;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Implementation of symbol table based on an open addressing hash table.<br />
+ * Keys, values and the spread hash of every key are kept in three flat <br />
+ * parallel arrays, so a lookup walks consecutive slots instead of chasing <br />
+ * linked nodes across the heap. Collisions are resolved by linear probing <br />
+ * with Robin Hood displacement: an element that is farther away from its <br />
+ * home slot takes the place of a "richer" one, which keeps the variance of <br />
+ * probe lengths low and lets unsuccessful searches stop early. <br />
+ * Deletion uses backward shifting, so no tombstones are ever left behind.
+ * @param <Key>
+ * @param <Value>
+ * @author kindless
+ * @since 1.0
+ * @see main.top.kindless.search.ST
+ * @see main.top.kindless.search.hash.SeparateChainingHashST
+ */
+@UnSafe
+public class RobinHoodHashST<Key, Value> implements ST<Key, Value>, Serializable {
+
+    /*----------Fields----------*/
+    /**
+     * The current number of elements in the symbol table.
+     */
+    private int N;
+
+    /**
+     * The number of slots of this symbol table, always a power of two.
+     */
+    private int M;
+
+    /**
+     * {@code M - 1}, used to map a hash value to a slot.
+     */
+    private int mask;
+
+    /**
+     * When the number of elements reaches this value, <br />
+     * the slot arrays will be doubled.
+     */
+    private int threshold;
+
+    /**
+     * The keys, indexed by slot.
+     */
+    private Key[] keys;
+
+    /**
+     * The values, indexed by slot.
+     */
+    private Value[] values;
+
+    /**
+     * The spread hash of the key in each slot, <br />
+     * {@link #EMPTY} marks a free slot.
+     */
+    private int[] hashes;
+
+    /*-----------Constants----------*/
+    /**
+     * The maximum load factor, which must be initialized when <br />
+     * the object is created. Open addressing needs free slots <br />
+     * to terminate a probe, so it must be less than 1.
+     */
+    private final double loadFactor;
+
+    /**
+     * The default number of slots.
+     */
+    private static final int DEFAULT_SIZE = 16;
+
+    /**
+     * Default maximum load factor. <br />
+     * Robin Hood hashing keeps probe sequences short even at <br />
+     * high occupancy, so a larger value than the chaining <br />
+     * table's 0.75 is still cheap.
+     */
+    private static final double DEFAULT_LOAD_FACTOR = .875;
+
+    /**
+     * The largest power of two that can be used as an array length.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * Hash value of a free slot. {@link #hash(Object)} never returns it.
+     */
+    private static final int EMPTY = 0;
+
+    public RobinHoodHashST() {
+        this(DEFAULT_SIZE, DEFAULT_LOAD_FACTOR);
+    }
+
+    public RobinHoodHashST(int M) {
+        this(M, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     *
+     * @param M Initial number of slots, which must be positive. <br />
+     *          It is rounded up to a power of two.
+     * @param loadFactor Maximum load factor, must be between 0 and 1 (exclusive).
+     * @throws SymbolTableInitialException
+     * Symbol table initialization exception is usually <br />
+     * thrown due to incorrect initialization parameters.
+     */
+    public RobinHoodHashST(int M, double loadFactor) {
+        if (M < 1)
+            throw new SymbolTableInitialException("initial capacity is invalid, capacity:" + M);
+        if (loadFactor <= 0 || loadFactor >= 1)
+            throw new SymbolTableInitialException("initial loadFactor is invalid, loadFactor:" + loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(M));
+    }
+
+    /**
+     * Insertion operation.
+     * The key is probed from its home slot. If it is found, its value <br />
+     * is replaced. Otherwise the first slot whose element is closer to <br />
+     * its own home slot than the new key is taken over, and the evicted <br />
+     * element continues probing in the same way until a free slot is found. <br />
+     * Inserting a null value is the same as deleting the key.
+     * @param key The unique identification of the data element
+     * @param value Data element value
+     */
+    @Override
+    public void put(Key key, Value value) {
+        if (key == null) throw new IllegalArgumentException("argument to put() is null");
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        int h = hash(key);
+        int pos = h & mask;
+        for (int dist = 0; ; pos = (pos + 1) & mask, dist++) {
+            int sh = hashes[pos];
+            if (sh == EMPTY || probeDistance(sh, pos) < dist)
+                break;
+            if (sh == h && key.equals(keys[pos])) {
+                values[pos] = value;
+                return;
+            }
+        }
+        if (N >= threshold) {
+            resize(M << 1);
+        }
+        insert(h, key, value);
+        N++;
+    }
+
+    /**
+     * Deletion operation.
+     * After the slot of the key is cleared, the following elements <br />
+     * of the same cluster are shifted back by one slot, until a free <br />
+     * slot or an element sitting in its home slot is reached.
+     * @param key The unique identification of the data element
+     */
+    @Override
+    public void delete(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        int pos = indexOf(key);
+        if (pos < 0)
+            return;
+        int next = (pos + 1) & mask;
+        while (hashes[next] != EMPTY && probeDistance(hashes[next], next) > 0) {
+            hashes[pos] = hashes[next];
+            keys[pos] = keys[next];
+            values[pos] = values[next];
+            pos = next;
+            next = (next + 1) & mask;
+        }
+        hashes[pos] = EMPTY;
+        keys[pos] = null;
+        values[pos] = null;
+        N--;
+    }
+
+    /**
+     * Search operation.
+     * The probe stops at a free slot or as soon as it meets an element <br />
+     * closer to its home slot than the searched key would be.
+     * @param key The unique identification of the data element
+     * @return The value of the data element
+     */
+    @Override
+    public Value get(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        int pos = indexOf(key);
+        return pos < 0 ? null : values[pos];
+    }
+
+    @Override
+    public boolean contains(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to contains() is null");
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * The number of data elements in the symbol table.
+     * @return The number of data elements in the symbol table.
+     */
+    @Override
+    public int size() {
+        return N;
+    }
+
+    /**
+     * Returns all keys in the symbol table, which is iterable.
+     * @return all keys in the symbol table
+     */
+    @Override
+    public Iterable<Key> keys() {
+        List<Key> list = new ArrayList<>(N);
+        forEach((key, value) -> list.add(key));
+        return list;
+    }
+
+    /**
+     * The iteration operation provided internally supports lambda expression.
+     * @param action Circulatory body
+     */
+    @Override
+    public void forEach(BiConsumer<? super Key, ? super Value> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < M; i++) {
+            if (hashes[i] != EMPTY)
+                action.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Convert all the key value pairs to string.
+     * @return string value
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        forEach((k, v) -> sb.append(k).append("=").append(v).append(","));
+        if (sb.charAt(sb.length() - 1) == ',')
+            sb.replace(sb.length() - 1, sb.length(), "");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the current load factor of the symbol table.
+     * @return  current load factor of the symbol table
+     */
+    public double loadFactor() {
+        return (double) N / (double) M;
+    }
+
+    /**
+     * Returns the longest distance between an element and its home slot, <br />
+     * which bounds the number of slots touched by any search.
+     * @return the maximum probe distance
+     */
+    public int maxProbeDistance() {
+        int max = 0;
+        for (int i = 0; i < M; i++) {
+            if (hashes[i] != EMPTY)
+                max = Math.max(max, probeDistance(hashes[i], i));
+        }
+        return max;
+    }
+
+    /**
+     * Find the slot of the key.
+     * @param key Unique identification of data
+     * @return the slot of the key, or -1 if the key is absent
+     */
+    private int indexOf(Key key) {
+        int h = hash(key);
+        int pos = h & mask;
+        for (int dist = 0; ; pos = (pos + 1) & mask, dist++) {
+            int sh = hashes[pos];
+            if (sh == EMPTY || probeDistance(sh, pos) < dist)
+                return -1;
+            if (sh == h && key.equals(keys[pos]))
+                return pos;
+        }
+    }
+
+    /**
+     * Place an element which is known to be absent, <br />
+     * displacing richer elements on the way.
+     */
+    private void insert(int h, Key key, Value value) {
+        int pos = h & mask;
+        for (int dist = 0; ; pos = (pos + 1) & mask, dist++) {
+            int sh = hashes[pos];
+            if (sh == EMPTY) {
+                hashes[pos] = h;
+                keys[pos] = key;
+                values[pos] = value;
+                return;
+            }
+            int existing = probeDistance(sh, pos);
+            if (existing < dist) {
+                Key k = keys[pos];
+                Value v = values[pos];
+                hashes[pos] = h;
+                keys[pos] = key;
+                values[pos] = value;
+                h = sh;
+                key = k;
+                value = v;
+                dist = existing;
+            }
+        }
+    }
+
+    /**
+     * Distance between a slot and the home slot of the hash stored in it.
+     */
+    private int probeDistance(int h, int pos) {
+        return (pos - (h & mask)) & mask;
+    }
+
+    /**
+     * Rebuild the slot arrays with a new capacity, <br />
+     * reinserting every element.
+     * @param capacity the new number of slots, a power of two
+     */
+    private void resize(int capacity) {
+        if (M == MAXIMUM_CAPACITY)
+            throw new IllegalStateException("symbol table is full, size:" + N);
+        int[] oldHashes = hashes;
+        Key[] oldKeys = keys;
+        Value[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != EMPTY)
+                insert(oldHashes[i], oldKeys[i], oldValues[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        M = capacity;
+        mask = capacity - 1;
+        threshold = Math.min((int) (loadFactor * capacity), capacity - 1);
+        keys = (Key[]) new Object[capacity];
+        values = (Value[]) new Object[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Calculate the hash value of the key. The hash code is mixed by <br />
+     * a multiplicative step so that the low bits used as the slot index <br />
+     * depend on all bits of the hash code. The result is never {@link #EMPTY}.
+     * @param key Unique identification of data
+     * @return Hash value of the data
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h == EMPTY ? 1 : h;
+    }
+
+    /**
+     * Returns the smallest power of two that is not less than the capacity.
+     */
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(capacity - 1);
+        return (n < 1) ? 2 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+}
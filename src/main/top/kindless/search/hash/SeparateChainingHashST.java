@@ -9,12 +9,24 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiConsumer;
 
 /**
  * Implementation of symbol table based on hash table.<br />
  * In order to adapt to the red black tree search structure <br />
- * beyond the treeify threshold, the key must implement the compatible interface.
+ * beyond the treeify threshold, the key must implement the compatible interface. <br />
+ * Storage is materialized lazily: the bucket array is allocated by the <br />
+ * first insertion, and a bucket grows from an empty slot to a single <br />
+ * inline entry, to a linked list, and to a red black tree. The bucket <br />
+ * array is halved when deletions leave it mostly empty, and released <br />
+ * when the symbol table becomes empty. <br />
+ * To resist hash flooding, {@code String} keys can be hashed with a <br />
+ * per-instance random seed (SipHash-1-3 over their characters) instead of <br />
+ * their {@code hashCode()}. This keyed mode is either chosen at construction, <br />
+ * or switched on automatically by a collision storm: when a bucket of <br />
+ * {@code String} keys has to be treeified, the table draws a new seed and <br />
+ * rehashes progressively into a bucket array of the same size.
  * @param <Key>
  * @param <Value>
  * @author kindless
@@ -31,49 +43,88 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
     private int N;
 
     /**
-     * The number of hash buckets of this symbol table.
+     * The number of hash buckets of this symbol table, always a power of two. <br />
+     * While a rehash is in progress it is the size of the old bucket array. <br />
+     * While the bucket array is not allocated it is the size it will have.
      */
     private int M;
 
     /**
-     * The treeify threshold.<br />
-     * When the number of elements in the hash bucket <br />
-     * exceeds this value, the data structure of the <br />
-     * hash bucket will be converted from a linked <br />
-     * list to a red black tree.
+     * The rounded initial number of hash buckets, the bucket <br />
+     * array is never shrunk below it.
+     */
+    private final int initialCapacity;
+
+    /**
+     * The resize threshold.<br />
+     * When the number of elements in the symbol table <br />
+     * reaches this value, the hash bucket array will be <br />
+     * doubled and a progressive rehash is started.
      */
     private int threshold;
 
     /**
-     * The number of hash buckets that have been filled.
+     * The hash bucket array, or null until the first insertion. <br />
+     * A bucket is null while it is empty, an {@link Entry} while it <br />
+     * holds a single element, and otherwise a symbol table: a <br />
+     * sequential symbol table (based on linked list), or a <br />
+     * balanced binary search tree symbol table (based on red black tree) <br />
+     * beyond the treeify threshold.
+     */
+    private Object[] sts;
+
+    /**
+     * The doubled (or halved) hash bucket array that the buckets of <br />
+     * {@link #sts} are being migrated to, or null if no rehash is in <br />
+     * progress. Its buckets are created on demand, so starting a rehash <br />
+     * costs no more than allocating the array itself.
      */
-    private int filledNum;
+    private Object[] newSts;
 
     /**
-     * The hash bucket array, can accommodate a variety <br />
-     * of symbol tables, this implementation only uses <br />
-     * sequential symbol table (based on linked list), <br />
-     * and balanced binary search tree symbol table <br />
-     * (based on red black tree).
+     * The migration cursor. Buckets of {@link #sts} below this index <br />
+     * have already been moved to {@link #newSts}; -1 means that <br />
+     * no rehash is in progress.
      */
-    private ST<Key, Value>[] sts;
+    private int rehashIndex = -1;
+
+    /**
+     * The hash seed of {@link #sts}, 0 while the keyed hash is not used.
+     */
+    private long seed;
+
+    /**
+     * The hash seed of {@link #newSts}. It is the same as {@link #seed} <br />
+     * unless the rehash in progress was started by a reseed.
+     */
+    private long newSeed;
+
+    /**
+     * The number of times the table has been reseeded.
+     */
+    private int reseedNum;
+
+    /**
+     * Set when an insertion treeifies a bucket of {@code String} keys.
+     */
+    private transient boolean storm;
     
     /*-----------Constants----------*/
     /**
      * The hash table load factor, which must be initialized <br />
-     * when the object is created. If the filling ratio of hash <br />
-     * bucket exceeds this value, the hash bucket array needs <br />
+     * when the object is created. If the ratio of elements to <br />
+     * hash buckets exceeds this value, the hash bucket array needs <br />
      * to be expanded.
      */
     private final double loadFactor;
 
     /**
-     * The default number of hash buckets. This number seems too large, <br />
-     * so if you do not need such a large capacity, please be sure to <br />
-     * set the number of initialization hash buckets in the <br />
-     * initialization parameter.
+     * The default number of hash buckets. It is kept small because <br />
+     * a process may hold a great many small symbol tables, and the <br />
+     * progressive rehash makes growing cheap anyway. If the final <br />
+     * size is known, pass it to the constructor to avoid the rehashes.
      */
-    private static final int DEFAULT_SIZE = 997;
+    private static final int DEFAULT_SIZE = 16;
 
     /**
      * Default initialization load factor. <br />
@@ -98,6 +149,43 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
      */
     private static final int TREEIFY_THRESHOLD = 8;
 
+    /**
+     * Untreeify threshold. <br />
+     * When deletions leave no more than this many elements in a red black <br />
+     * tree bucket, it is converted back to a linked list. It is lower than <br />
+     * the treeify threshold, so that a bucket whose size goes up and down <br />
+     * around 8 is not converted back and forth.
+     */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * The maximum number of reseeds of a table. A storm that survives <br />
+     * them is not caused by the seed, and is left to the red black trees.
+     */
+    private static final int MAX_RESEEDS = 4;
+
+    /**
+     * The number of old hash buckets migrated by every operation <br />
+     * while a rehash is in progress. The old array has to be drained <br />
+     * before the doubled array reaches its own threshold, which takes <br />
+     * at least {@code loadFactor * M} insertions, so any value above <br />
+     * {@code 1 / loadFactor} finishes in time for sane load factors; <br />
+     * otherwise the remaining buckets are migrated at once.
+     */
+    private static final int REHASH_STEP = 4;
+
+    /**
+     * When deletions bring the number of elements below <br />
+     * {@code threshold / SHRINK_DIVISOR}, the bucket array is halved, <br />
+     * which leaves it half as full as it may become before growing again.
+     */
+    private static final int SHRINK_DIVISOR = 4;
+
+    /**
+     * The largest power of two that can be used as an array length.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
     public SeparateChainingHashST() {
         this(DEFAULT_SIZE, DEFAULT_LOAD_FACTOR);
     }
@@ -108,33 +196,55 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
 
     /**
      *
-     * @param M Initial number of hash buckets, which must be positive.
+     * @param M Initial number of hash buckets, which must be positive. <br />
+     *          It is rounded up to a power of two. The bucket array is <br />
+     *          only allocated by the first insertion.
      * @param loadFactor Hash table load factor, must be between 0 and 1.
      * @throws SymbolTableInitialException
      * Symbol table initialization exception is usually <br />
      * thrown due to incorrect initialization parameters.
      */
-    @SuppressWarnings("unchecked")
     public SeparateChainingHashST(int M, double loadFactor) {
+        this(M, loadFactor, false);
+    }
+
+    /**
+     *
+     * @param M Initial number of hash buckets, which must be positive. <br />
+     *          It is rounded up to a power of two. The bucket array is <br />
+     *          only allocated by the first insertion.
+     * @param loadFactor Hash table load factor, must be between 0 and 1.
+     * @param keyedHash Whether {@code String} keys are hashed with a random <br />
+     *                  per-instance seed from the start, instead of only <br />
+     *                  after a collision storm.
+     * @throws SymbolTableInitialException
+     * Symbol table initialization exception is usually <br />
+     * thrown due to incorrect initialization parameters.
+     */
+    public SeparateChainingHashST(int M, double loadFactor, boolean keyedHash) {
         if (M < 1)
             throw new SymbolTableInitialException("initial capacity is invalid, capacity:" + M);
         if (loadFactor <= 0 || loadFactor > 1)
             throw new SymbolTableInitialException("initial loadFactor is invalid, loadFactor:" + loadFactor);
+        M = tableSizeFor(M);
         this.M = M;
+        this.initialCapacity = M;
         this.loadFactor = loadFactor;
         threshold = (int) (loadFactor * M);
-        sts = new ST[M];
-        for (int i = 0; i < M; i++) {
-            sts[i] = new SequentialSearchST<>();
-        }
+        if (keyedHash)
+            seed = newSeed = randomSeed();
     }
 
     /**
      * Insertion operation.
-     * First, it checks whether the number of hash buckets filled exceeds
-     * the threshold value. If it exceeds the threshold value, the system
-     * will reset. Then insert. The insert operation actually calls the
-     * insert method of the symbol table in the hash bucket.
+     * First, a few buckets are migrated if a rehash is in progress. <br />
+     * Then the key is inserted into the bucket it currently lives in, <br />
+     * which is in the new bucket array if its old bucket has already <br />
+     * been migrated. The insert operation actually calls the insert <br />
+     * method of the symbol table in the hash bucket. If the number <br />
+     * of elements reaches the threshold, a new rehash is started, and if <br />
+     * the insertion caused a collision storm, the table is reseeded. <br />
+     * Inserting a null value is the same as deleting the key.
      * @param key The unique identification of the data element
      * @param value Data element value
      * @see main.top.kindless.search.sequential.SequentialSearchST
@@ -142,31 +252,54 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
      */
     @Override
     public void put(Key key, Value value) {
-        int hash;
-        if (filledNum >= threshold) {
-            resize();
+        if (key == null) throw new IllegalArgumentException("argument to put() is null");
+        if (value == null) {
+            delete(key);
+            return;
         }
-        if (sts[hash = hash(key)].size() == 0) {
-            filledNum++;
+        if (sts == null)
+            sts = new Object[M];
+        rehashStep();
+        int hash = hash(key, seed);
+        Object[] table = tableOf(hash);
+        if (table != sts)
+            hash = newHash(key, hash);
+        storm = false;
+        if (putInBucket(table, hash & (table.length - 1), hash, key, value)) {
+            if (++N >= threshold)
+                grow();
         }
-        sts[hash].put(key, value);
-        if (sts[hash].size() >= TREEIFY_THRESHOLD) {
-            treeify(hash);
-        }
-        N++;
+        if (storm)
+            reseed();
     }
 
     /**
      * Deletion operation.
-     * It actually calls the deletion method of the symbol table in the hash bucket.
+     * It actually calls the deletion method of the symbol table in the hash bucket. <br />
+     * A bucket left with a single element is turned back into an inline entry. <br />
+     * If the number of elements falls far enough below the threshold, <br />
+     * a progressive rehash into a halved bucket array is started; <br />
+     * if the symbol table becomes empty, the bucket array is released.
      * @param key The unique identification of the data element
      * @see main.top.kindless.search.sequential.SequentialSearchST
      * @see main.top.kindless.search.redblackbst.RedBlackBST
      */
     @Override
     public void delete(Key key) {
-        sts[hash(key)].delete(key);
-        N--;
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        if (sts == null)
+            return;
+        rehashStep();
+        int hash = hash(key, seed);
+        Object[] table = tableOf(hash);
+        if (table != sts)
+            hash = newHash(key, hash);
+        if (!deleteInBucket(table, hash & (table.length - 1), hash, key))
+            return;
+        if (--N == 0)
+            release();
+        else if (N < threshold / SHRINK_DIVISOR)
+            shrink();
     }
 
     /**
@@ -179,7 +312,15 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
      */
     @Override
     public Value get(Key key) {
-        return sts[hash(key)].get(key);
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        if (sts == null)
+            return null;
+        rehashStep();
+        int hash = hash(key, seed);
+        Object[] table = tableOf(hash);
+        if (table != sts)
+            hash = newHash(key, hash);
+        return getInBucket(table[hash & (table.length - 1)], hash, key);
     }
 
     /**
@@ -203,15 +344,23 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
     }
 
     /**
-     * The iteration operation provided internally supports lambda expression.
+     * The iteration operation provided internally supports lambda expression. <br />
+     * While a rehash is in progress, the buckets that have not been migrated <br />
+     * yet are visited first, followed by the new bucket array.
      * @param action Circulatory body
      */
     @Override
     public void forEach(BiConsumer<? super Key, ? super Value> action) {
         Objects.requireNonNull(action);
-        System.out.println(action);
-        for (ST<Key, Value> st : sts) {
-            st.forEach(action);
+        if (sts == null)
+            return;
+        for (int i = Math.max(rehashIndex, 0); i < M; i++) {
+            forEachInBucket(sts[i], action);
+        }
+        if (newSts != null) {
+            for (Object bucket : newSts) {
+                forEachInBucket(bucket, action);
+            }
         }
     }
 
@@ -223,11 +372,7 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
-        for (ST<Key, Value> st : sts) {
-            if (st != null) {
-                st.forEach((k, v) -> sb.append(k).append("=").append(v).append(","));
-            }
-        }
+        forEach((k, v) -> sb.append(k).append("=").append(v).append(","));
         if (sb.charAt(sb.length() - 1) == ',')
             sb.replace(sb.length() - 1, sb.length(), "");
         sb.append("}");
@@ -235,22 +380,24 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
     }
 
     /**
-     * Returns the current load factor of the symbol table.
+     * Returns the current load factor of the symbol table, <br />
+     * that is the number of elements per hash bucket.
      * @return  current load factor of the symbol table
      */
     public double loadFactor() {
-        return (double) filledNum() / (double) M;
+        return (double) N / (double) capacity();
     }
 
     /**
-     * Returns the number of data elements per hash bucket.
+     * Returns the number of data elements per hash bucket <br />
+     * of the newest bucket array.
      * @return the number of data elements per hash bucket
      */
     public int[] sizeOfEachButton() {
-        int[] res = new int[M];
-        for (int i = 0; i < M; i++) {
-            res[i] = sts[i].size();
-        }
+        int capacity = capacity();
+        int[] res = new int[capacity];
+        long seed = newSts == null ? this.seed : newSeed;
+        forEach((k, v) -> res[hash(k, seed) & (capacity - 1)]++);
         return res;
     }
 
@@ -260,87 +407,447 @@ public class SeparateChainingHashST<Key extends Comparable<Key>, Value> implemen
      */
     public int treeNum() {
         int num = 0;
-        for (ST<Key, Value> st : sts) {
-            if (st instanceof RedBlackBST)
-                num++;
+        if (sts != null) {
+            for (Object bucket : sts) {
+                if (bucket instanceof RedBlackBST)
+                    num++;
+            }
+        }
+        if (newSts != null) {
+            for (Object bucket : newSts) {
+                if (bucket instanceof RedBlackBST)
+                    num++;
+            }
         }
         return num;
     }
 
     /**
-     * When the load factor of the current symbol table exceeds the set load <br />
-     * factor, the size of hash buckets will be increased to twice the previous capacity.
+     * Returns whether {@code String} keys are hashed with a random seed, <br />
+     * either since construction or since a collision storm.
+     * @return true if the keyed hash is used
+     */
+    public boolean isKeyedHash() {
+        return (newSts == null ? seed : newSeed) != 0;
+    }
+
+    /**
+     * Returns the number of times a collision storm made the table reseed.
+     * @return the number of reseeds
+     */
+    public int reseedNum() {
+        return reseedNum;
+    }
+
+    /**
+     * Returns whether a progressive rehash is in progress.
+     * @return true if buckets are being migrated to a doubled bucket array
+     */
+    public boolean isRehashing() {
+        return rehashIndex >= 0;
+    }
+
+    /**
+     * Returns the number of hash buckets of the newest bucket array, <br />
+     * or the size it will have if it is not allocated yet.
+     * @return the number of hash buckets
+     */
+    public int capacity() {
+        return newSts == null ? M : newSts.length;
+    }
+
+    /**
+     * When the number of elements reaches the threshold, a doubled <br />
+     * bucket array is allocated and a progressive rehash is started. <br />
+     * No element is moved here: every later operation migrates <br />
+     * {@link #REHASH_STEP} buckets, so no single insertion pays <br />
+     * for rehashing the whole table.
+     */
+    private void grow() {
+        if (rehashIndex >= 0)
+            finishRehash();
+        if (M == MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        newSts = new Object[M << 1];
+        newSeed = seed;
+        rehashIndex = 0;
+        threshold = (int) (loadFactor * (M << 1));
+    }
+
+    /**
+     * Start a progressive rehash into a halved bucket array. The same <br />
+     * migration as for growing is used: the buckets {@code i} and <br />
+     * {@code i + M / 2} of the old array both land in the bucket {@code i}.
+     */
+    private void shrink() {
+        if (rehashIndex >= 0 || M <= initialCapacity)
+            return;
+        newSts = new Object[M >>> 1];
+        newSeed = seed;
+        rehashIndex = 0;
+        threshold = (int) (loadFactor * (M >>> 1));
+    }
+
+    /**
+     * Start a progressive rehash into a bucket array of the same size <br />
+     * with a new random seed. Any rehash in progress is finished first. <br />
+     * Every element of the old array is hashed again with the new seed <br />
+     * as its bucket is migrated.
+     */
+    private void reseed() {
+        storm = false;
+        if (rehashIndex >= 0)
+            finishRehash();
+        newSts = new Object[M];
+        newSeed = randomSeed();
+        rehashIndex = 0;
+        reseedNum++;
+    }
+
+    /**
+     * Drop the bucket arrays of an empty symbol table, they will be <br />
+     * allocated again, at the initial size, by the next insertion.
+     */
+    private void release() {
+        sts = null;
+        newSts = null;
+        rehashIndex = -1;
+        M = initialCapacity;
+        threshold = (int) (loadFactor * M);
+    }
+
+    /**
+     * Migrate the next {@link #REHASH_STEP} buckets of the old <br />
+     * bucket array, if a rehash is in progress.
+     */
+    private void rehashStep() {
+        if (rehashIndex < 0)
+            return;
+        int end = Math.min(rehashIndex + REHASH_STEP, M);
+        while (rehashIndex < end) {
+            migrate(rehashIndex++);
+        }
+        if (rehashIndex == M)
+            completeRehash();
+    }
+
+    /**
+     * Migrate all the remaining buckets at once.
+     */
+    private void finishRehash() {
+        while (rehashIndex < M) {
+            migrate(rehashIndex++);
+        }
+        completeRehash();
+    }
+
+    private void completeRehash() {
+        sts = newSts;
+        seed = newSeed;
+        M = newSts.length;
+        newSts = null;
+        rehashIndex = -1;
+    }
+
+    /**
+     * Move the elements of one old bucket to the new bucket array. <br />
+     * When the new array is twice as large, they can only land in <br />
+     * the buckets {@code index} and {@code index + M}; when it is <br />
+     * half as large, only in the bucket {@code index & (M / 2 - 1)}; <br />
+     * when the table is reseeded, anywhere. An inline entry moved to <br />
+     * an empty bucket with the same seed is reused as it is.
+     * @param index the index of the old bucket
      */
     @SuppressWarnings("unchecked")
-    private void resize() {
-        ST<Key, Value>[] tmp = new ST[M = M << 1];
-        int i;
-        for (i = 0; i < sts.length; i++) {
-            tmp[i] = sts[i];
+    private void migrate(int index) {
+        Object bucket = sts[index];
+        sts[index] = null;
+        if (bucket == null)
+            return;
+        int mask = newSts.length - 1;
+        if (bucket instanceof Entry) {
+            Entry<Key, Value> e = (Entry<Key, Value>) bucket;
+            int hash = newHash(e.key, e.hash);
+            int i = hash & mask;
+            if (newSts[i] == null && hash == e.hash)
+                newSts[i] = e;
+            else
+                putInBucket(newSts, i, hash, e.key, e.value);
+        } else {
+            ((ST<Key, Value>) bucket).forEach((k, v) -> {
+                int hash = hash(k, newSeed);
+                putInBucket(newSts, hash & mask, hash, k, v);
+            });
         }
-        while (i < M) {
-            tmp[i++] = new SequentialSearchST<>();
+    }
+
+    /**
+     * Returns the bucket array that the bucket of the hash value <br />
+     * currently lives in.
+     * @param hash Hash value of the key
+     * @return the old bucket array if the bucket has not been migrated yet
+     */
+    private Object[] tableOf(int hash) {
+        return rehashIndex >= 0 && (hash & (M - 1)) < rehashIndex ? newSts : sts;
+    }
+
+    /**
+     * Returns the hash value of the key in {@link #newSts}, <br />
+     * given its hash value in {@link #sts}.
+     */
+    private int newHash(Key key, int hash) {
+        return newSeed == seed ? hash : hash(key, newSeed);
+    }
+
+    /**
+     * Returns the hash seed of a bucket array.
+     */
+    private long seedOf(Object[] table) {
+        return table == sts ? seed : newSeed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Value getInBucket(Object bucket, int hash, Key key) {
+        if (bucket == null)
+            return null;
+        if (bucket instanceof Entry) {
+            Entry<Key, Value> e = (Entry<Key, Value>) bucket;
+            return e.hash == hash && key.equals(e.key) ? e.value : null;
         }
-        sts = tmp;
-        threshold = (int) (loadFactor * M);
+        return ((ST<Key, Value>) bucket).get(key);
     }
 
     /**
-     * Represents the number of buckets filled in the current hash table,<br />
-     * the more hash buckets are filled, the less hash conflicts are.<br />
-     * However, when the filling ratio of the current hash table is greater than. 75 (default load factor),<br />
-     * the probability of hash conflict will increase, and the capacity of hash bucket needs to be expanded.<br />
-     * @return The number of hash buckets that have been filled
-     * @author kindless
-     * @since 1.0
+     * Insert into one bucket. An empty bucket becomes an inline entry, <br />
+     * an inline entry becomes a linked list when a second key arrives, <br />
+     * and a linked list is treeified if necessary. Treeifying a bucket <br />
+     * of {@code String} keys is reported as a collision storm.
+     * @return true if the key was not present before
      */
-    private int filledNum() {
-        return filledNum;
+    @SuppressWarnings("unchecked")
+    private boolean putInBucket(Object[] table, int index, int hash, Key key, Value value) {
+        Object bucket = table[index];
+        if (bucket == null) {
+            table[index] = new Entry<>(hash, key, value);
+            return true;
+        }
+        ST<Key, Value> st;
+        if (bucket instanceof Entry) {
+            Entry<Key, Value> e = (Entry<Key, Value>) bucket;
+            if (e.hash == hash && key.equals(e.key)) {
+                e.value = value;
+                return false;
+            }
+            st = new SequentialSearchST<>();
+            st.put(e.key, e.value);
+            st.put(key, value);
+            table[index] = st;
+            return true;
+        }
+        st = (ST<Key, Value>) bucket;
+        int size = st.size();
+        st.put(key, value);
+        if (st.size() == size)
+            return false;
+        if (st.size() >= TREEIFY_THRESHOLD && !(st instanceof RedBlackBST)) {
+            treeify(table, index);
+            if (key instanceof String && reseedNum < MAX_RESEEDS)
+                storm = true;
+        }
+        return true;
+    }
+
+    /**
+     * Delete from one bucket. An emptied bucket is cleared, a red black <br />
+     * tree that shrinks to the untreeify threshold becomes a linked list, <br />
+     * and a linked list left with a single element becomes an inline entry again.
+     * @return true if the key was present
+     */
+    @SuppressWarnings("unchecked")
+    private boolean deleteInBucket(Object[] table, int index, int hash, Key key) {
+        Object bucket = table[index];
+        if (bucket == null)
+            return false;
+        if (bucket instanceof Entry) {
+            Entry<Key, Value> e = (Entry<Key, Value>) bucket;
+            if (e.hash != hash || !key.equals(e.key))
+                return false;
+            table[index] = null;
+            return true;
+        }
+        ST<Key, Value> st = (ST<Key, Value>) bucket;
+        int size = st.size();
+        st.delete(key);
+        if (st.size() == size)
+            return false;
+        if (st instanceof RedBlackBST) {
+            if (st.size() <= UNTREEIFY_THRESHOLD)
+                untreeify(table, index);
+        } else if (st.size() == 1) {
+            long seed = seedOf(table);
+            st.forEach((k, v) -> table[index] = new Entry<>(hash(k, seed), k, v));
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEachInBucket(Object bucket, BiConsumer<? super Key, ? super Value> action) {
+        if (bucket == null)
+            return;
+        if (bucket instanceof Entry) {
+            Entry<Key, Value> e = (Entry<Key, Value>) bucket;
+            action.accept(e.key, e.value);
+        } else {
+            ((ST<Key, Value>) bucket).forEach(action);
+        }
     }
 
     /**
      * This method is triggered when the number of nodes in <br />
      * the hash bucket is greater than 8,<br />
-     * The data structure of hash bucket is transformed <be />
+     * The data structure of hash bucket is transformed <br />
      * from linked list to red black tree to improve the efficiency of search and insert.
-     * @param hash The array index of the hash bucket to be converted, <br />
-     *             which is also the hash value of the key
+     * @param table The bucket array that holds the bucket
+     * @param index The array index of the hash bucket to be converted
      * @author kindless
      * @since 1.0
      */
-    private void treeify(int hash) {
-        ST<Key, Value> st = sts[hash];
-        sts[hash] = new RedBlackBST<>();
-        st.forEach((k, v) -> sts[hash].put(k, v));
+    @SuppressWarnings("unchecked")
+    private void treeify(Object[] table, int index) {
+        ST<Key, Value> st = (ST<Key, Value>) table[index];
+        ST<Key, Value> tree = new RedBlackBST<>();
+        st.forEach(tree::put);
+        table[index] = tree;
+    }
+
+    /**
+     * This method is triggered when the number of nodes in a red black <br />
+     * tree bucket drops to the untreeify threshold. The bucket is <br />
+     * transformed back to a linked list, which is smaller and, <br />
+     * for so few elements, faster.
+     * @param table The bucket array that holds the bucket
+     * @param index The array index of the hash bucket to be converted
+     */
+    @SuppressWarnings("unchecked")
+    private void untreeify(Object[] table, int index) {
+        ST<Key, Value> tree = (ST<Key, Value>) table[index];
+        ST<Key, Value> list = new SequentialSearchST<>();
+        tree.forEach(list::put);
+        table[index] = list;
     }
 
     /**
-     * Calculate the hash value of the key, and the hash code of the key <br />
-     * and <strong>0x7fffffff</strong> are combined to obtain a non negative number.<br/>
+     * Calculate the hash value of the key. The hash code is spread by <br />
+     * the finalization step of MurmurHash3, so that the low bits selected <br />
+     * by the power of two mask depend on every bit of the hash code.<br />
+     * With a nonzero seed, a {@code String} key is hashed by SipHash-1-3 <br />
+     * over its characters, keyed by the seed, so that collisions cannot <br />
+     * be predicted without knowing the seed. Other keys only have the seed <br />
+     * mixed into their hash code: keys with equal hash codes still collide. <br />
      * If the key passed in is null, a hash value of 0 is returned.
      * @param key Unique identification of data
-     * @return Hash value of the data
+     * @param seed The hash seed, 0 for the unkeyed hash
+     * @return Hash value of the data, to be masked by the bucket array size
      * @author kindless
      * @since 1.0
      */
-    private int hash(Key key) {
-        return key == null ? 0 : (key.hashCode() & 0x7fffffff) % M;
+    private static int hash(Object key, long seed) {
+        if (key == null)
+            return 0;
+        if (seed != 0 && key instanceof String)
+            return sipHash((String) key, seed);
+        int h = key.hashCode() ^ (int) seed ^ (int) (seed >>> 32);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
     }
-}
 
-/**
- * Symbol table initialization exception.
- * @see java.lang.Exception
- * @see java.lang.RuntimeException
- * @see java.lang.Throwable
- */
-class SymbolTableInitialException extends RuntimeException {
+    /**
+     * SipHash-1-3 of the characters of a string, four characters per <br />
+     * 64 bit word, with the key {@code (seed, ~seed)}. The last word holds <br />
+     * the remaining characters and the length. The result is folded to 32 bits.
+     */
+    private static int sipHash(String s, long seed) {
+        long v0 = seed ^ 0x736f6d6570736575L;
+        long v1 = ~seed ^ 0x646f72616e646f6dL;
+        long v2 = seed ^ 0x6c7967656e657261L;
+        long v3 = ~seed ^ 0x7465646279746573L;
+        int n = s.length();
+        int i = 0;
+        while (true) {
+            long m;
+            boolean last = i + 4 > n;
+            if (last) {
+                m = (long) n << 48;
+                for (int shift = 0; i < n; i++, shift += 16) {
+                    m |= (long) s.charAt(i) << shift;
+                }
+            } else {
+                m = s.charAt(i) | (long) s.charAt(i + 1) << 16
+                        | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+                i += 4;
+            }
+            v3 ^= m;
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+            if (last)
+                break;
+        }
+        v2 ^= 0xff;
+        for (int r = 0; r < 3; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        long h = v0 ^ v1 ^ v2 ^ v3;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * A nonzero random seed, 0 being reserved for the unkeyed hash.
+     */
+    private static long randomSeed() {
+        long seed;
+        do {
+            seed = ThreadLocalRandom.current().nextLong();
+        } while (seed == 0);
+        return seed;
+    }
 
-    public SymbolTableInitialException(String message) {
-        super(message);
+    /**
+     * A bucket holding a single element, stored directly in the bucket <br />
+     * array instead of a one-node linked list. The hash value is kept <br />
+     * so that most mismatches are rejected without calling {@code equals}.
+     */
+    private static final class Entry<Key, Value> implements Serializable {
+
+        final int hash;
+
+        final Key key;
+
+        Value value;
+
+        Entry(int hash, Key key, Value value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
     }
 
-    public SymbolTableInitialException(String message, Throwable e) {
-        super(message, e);
+    /**
+     * Returns the smallest power of two that is not less than the capacity.
+     */
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(capacity - 1);
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
     }
-}
\ No newline at end of file
+}
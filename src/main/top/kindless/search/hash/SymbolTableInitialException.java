@@ -0,0 +1,18 @@
+package main.top.kindless.search.hash;
+
+/**
+ * Symbol table initialization exception.
+ * @see java.lang.Exception
+ * @see java.lang.RuntimeException
+ * @see java.lang.Throwable
+ */
+class SymbolTableInitialException extends RuntimeException {
+
+    public SymbolTableInitialException(String message) {
+        super(message);
+    }
+
+    public SymbolTableInitialException(String message, Throwable e) {
+        super(message, e);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,744 @@
+package main.top.kindless.search.redblackbst;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.annotation.Safe;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * 持久化（路径复制）的红黑树。
+ * <br />
+ * 树的每一个版本都是不可变的{@link Snapshot}，修改时只复制从根结点到被修改结点的
+ * <br />
+ * 路径以及旋转、变色涉及的结点，共O(logn)个，其余的结点新旧版本共享。
+ * <br />
+ * 这个类本身只是指向当前版本的引用：写操作基于当前版本生成新版本，再用CAS替换，
+ * <br />
+ * 失败就基于最新的版本重试，所以写操作之间不需要锁；{@link #snapshot()}只是读取
+ * <br />
+ * 这个引用，是O(1)的，拿到快照之后的所有读操作都不受之后的写操作影响。
+ * <br />
+ * 旧版本没有被引用之后，只属于旧版本的结点会被垃圾回收
+ * @param <Key> 键
+ * @param <Value> 值
+ */
+@Safe
+public class PersistentRedBlackBST<Key extends Comparable<Key>, Value> implements OrderedST<Key, Value> {
+
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    private final AtomicReference<Snapshot<Key, Value>> current;
+
+    public PersistentRedBlackBST() {
+        current = new AtomicReference<>(Snapshot.empty());
+    }
+
+    /**
+     * 从一个快照开始，新的修改不会影响这个快照
+     * @param snapshot
+     */
+    public PersistentRedBlackBST(Snapshot<Key, Value> snapshot) {
+        current = new AtomicReference<>(Objects.requireNonNull(snapshot));
+    }
+
+    /**
+     * 当前版本，O(1)
+     * @return 不可变的快照
+     */
+    public Snapshot<Key, Value> snapshot() {
+        return current.get();
+    }
+
+    @Override
+    public void put(Key key, Value value) {
+        if (key == null) throw new IllegalArgumentException("first argument to put() is null");
+        update(s -> s.with(key, value));
+    }
+
+    @Override
+    public void delete(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        update(s -> s.without(key));
+    }
+
+    /**
+     * 与{@link RedBlackBST#deleteMin()}不同，表为空时什么也不做，
+     * <br />
+     * 因为检查和删除之间表可能已经被其他线程清空了
+     */
+    @Override
+    public void deleteMin() {
+        update(Snapshot::withoutMin);
+    }
+
+    @Override
+    public void deleteMax() {
+        update(Snapshot::withoutMax);
+    }
+
+    /**
+     * 基于当前版本生成新版本并用CAS发布，失败时基于最新的版本重试
+     * @param change 从旧版本生成新版本，可能被调用多次
+     * @return 发布的新版本
+     */
+    public Snapshot<Key, Value> update(UnaryOperator<Snapshot<Key, Value>> change) {
+        while (true) {
+            Snapshot<Key, Value> snapshot = current.get();
+            Snapshot<Key, Value> next = change.apply(snapshot);
+            if (next == snapshot || current.compareAndSet(snapshot, next))
+                return next;
+        }
+    }
+
+    @Override
+    public Value get(Key key) {
+        return snapshot().get(key);
+    }
+
+    @Override
+    public boolean contains(Key key) {
+        return snapshot().contains(key);
+    }
+
+    @Override
+    public int size() {
+        return snapshot().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot().isEmpty();
+    }
+
+    @Override
+    public Key min() {
+        return snapshot().min();
+    }
+
+    @Override
+    public Key max() {
+        return snapshot().max();
+    }
+
+    @Override
+    public Key floor(Key key) {
+        return snapshot().floor(key);
+    }
+
+    @Override
+    public Key ceiling(Key key) {
+        return snapshot().ceiling(key);
+    }
+
+    @Override
+    public int rank(Key key) {
+        return snapshot().rank(key);
+    }
+
+    @Override
+    public Key select(int i) {
+        return snapshot().select(i);
+    }
+
+    @Override
+    public int size(Key lo, Key hi) {
+        return snapshot().size(lo, hi);
+    }
+
+    /**
+     * 遍历调用时的版本
+     */
+    @Override
+    public Iterable<Key> keys() {
+        return snapshot().keys();
+    }
+
+    /**
+     * 遍历调用时的版本
+     */
+    @Override
+    public Iterable<Key> keys(Key lo, Key hi) {
+        return snapshot().keys(lo, hi);
+    }
+
+    @Override
+    public Iterable<Key> descendingKeys(Key lo, Key hi) {
+        return snapshot().descendingKeys(lo, hi);
+    }
+
+    @Override
+    public Iterable<Map.Entry<Key, Value>> entries(Key lo, Key hi) {
+        return snapshot().entries(lo, hi);
+    }
+
+    @Override
+    public Iterable<Map.Entry<Key, Value>> descendingEntries(Key lo, Key hi) {
+        return snapshot().descendingEntries(lo, hi);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Key, ? super Value> action) {
+        snapshot().forEach(action);
+    }
+
+    /**
+     * 结点发布之后就不再修改。一次修改中新建的结点都属于这次修改的owner，
+     * <br />
+     * 在发布之前可以直接旋转、变色，其他结点要先复制一份
+     */
+    private static final class Node<K, V> {
+        K key;
+        V value;
+        Node<K, V> left, right;
+        boolean color;
+        int N;
+        final Object owner;
+
+        Node(K key, V value, int N, boolean color, Object owner) {
+            this.key = key;
+            this.value = value;
+            this.N = N;
+            this.color = color;
+            this.owner = owner;
+        }
+
+        Node(Node<K, V> node, Object owner) {
+            this(node.key, node.value, node.N, node.color, owner);
+            left = node.left;
+            right = node.right;
+        }
+    }
+
+    /**
+     * 红黑树的一个不可变版本，可以在任意线程中不加锁地读取。
+     * <br />
+     * {@link #with}和{@link #without}返回新版本，原来的版本不变；
+     * <br />
+     * 继承来的put和delete不能使用
+     * @param <K> 键
+     * @param <V> 值
+     */
+    @Safe
+    public static final class Snapshot<K extends Comparable<K>, V> implements OrderedST<K, V> {
+
+        private static final Snapshot<?, ?> EMPTY = new Snapshot<>(null);
+
+        private final Node<K, V> root;
+
+        /**
+         * 当前修改的owner，只在生成新版本的过程中使用
+         */
+        private Object owner;
+
+        private Snapshot(Node<K, V> root) {
+            this.root = root;
+        }
+
+        @SuppressWarnings("unchecked")
+        public static <K extends Comparable<K>, V> Snapshot<K, V> empty() {
+            return (Snapshot<K, V>) EMPTY;
+        }
+
+        /**
+         * 插入或者修改一个键，复制查找路径上的结点
+         * @param key
+         * @param value 为null时删除这个键
+         * @return 新版本，值没有变化时返回这个版本
+         */
+        public Snapshot<K, V> with(K key, V value) {
+            if (key == null) throw new IllegalArgumentException("first argument to with() is null");
+            if (value == null)
+                return without(key);
+            if (get(key) == value)
+                return this;
+            Snapshot<K, V> next = editor();
+            return next.publish(next.put(root, key, value));
+        }
+
+        /**
+         * 删除一个键，复制查找路径上的结点
+         * @param key
+         * @return 新版本，键不存在时返回这个版本
+         */
+        public Snapshot<K, V> without(K key) {
+            if (key == null) throw new IllegalArgumentException("argument to without() is null");
+            if (!contains(key))
+                return this;
+            Snapshot<K, V> next = editor();
+            Node<K, V> root = next.redRoot(this.root);
+            return next.publish(next.delete(root, key));
+        }
+
+        /**
+         * @return 删除最小键之后的新版本，为空时返回这个版本
+         */
+        public Snapshot<K, V> withoutMin() {
+            if (isEmpty())
+                return this;
+            Snapshot<K, V> next = editor();
+            return next.publish(next.deleteMin(next.redRoot(root)));
+        }
+
+        /**
+         * @return 删除最大键之后的新版本，为空时返回这个版本
+         */
+        public Snapshot<K, V> withoutMax() {
+            if (isEmpty())
+                return this;
+            Snapshot<K, V> next = editor();
+            return next.publish(next.deleteMax(next.redRoot(root)));
+        }
+
+        /**
+         * 快照不能修改，请使用{@link #with}
+         */
+        @Override
+        public void put(K key, V value) {
+            throw new UnsupportedOperationException("snapshot is immutable, use with()");
+        }
+
+        /**
+         * 快照不能修改，请使用{@link #without}
+         */
+        @Override
+        public void delete(K key) {
+            throw new UnsupportedOperationException("snapshot is immutable, use without()");
+        }
+
+        @Override
+        public void deleteMin() {
+            throw new UnsupportedOperationException("snapshot is immutable, use withoutMin()");
+        }
+
+        @Override
+        public void deleteMax() {
+            throw new UnsupportedOperationException("snapshot is immutable, use withoutMax()");
+        }
+
+        @Override
+        public V get(K key) {
+            if (key == null) throw new IllegalArgumentException("argument to get() is null");
+            Node<K, V> node = root;
+            while (node != null) {
+                int cmp = key.compareTo(node.key);
+                if (cmp == 0)
+                    return node.value;
+                node = cmp < 0 ? node.left : node.right;
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return size(root);
+        }
+
+        @Override
+        public K min() {
+            if (isEmpty()) throw new NoSuchElementException("calls min() with empty symbol table");
+            Node<K, V> node = root;
+            while (node.left != null)
+                node = node.left;
+            return node.key;
+        }
+
+        @Override
+        public K max() {
+            if (isEmpty()) throw new NoSuchElementException("calls max() with empty symbol table");
+            Node<K, V> node = root;
+            while (node.right != null)
+                node = node.right;
+            return node.key;
+        }
+
+        /**
+         * @param key
+         * @return 不存在则返回null
+         */
+        @Override
+        public K floor(K key) {
+            if (key == null) throw new IllegalArgumentException("argument to floor() is null");
+            Node<K, V> node = root;
+            Node<K, V> floor = null;
+            while (node != null) {
+                int cmp = key.compareTo(node.key);
+                if (cmp == 0)
+                    return node.key;
+                if (cmp < 0)
+                    node = node.left;
+                else {
+                    floor = node;
+                    node = node.right;
+                }
+            }
+            return floor == null ? null : floor.key;
+        }
+
+        /**
+         * @param key
+         * @return 不存在则返回null
+         */
+        @Override
+        public K ceiling(K key) {
+            if (key == null) throw new IllegalArgumentException("argument to ceiling() is null");
+            Node<K, V> node = root;
+            Node<K, V> ceiling = null;
+            while (node != null) {
+                int cmp = key.compareTo(node.key);
+                if (cmp == 0)
+                    return node.key;
+                if (cmp > 0)
+                    node = node.right;
+                else {
+                    ceiling = node;
+                    node = node.left;
+                }
+            }
+            return ceiling == null ? null : ceiling.key;
+        }
+
+        @Override
+        public int rank(K key) {
+            if (key == null) throw new IllegalArgumentException("argument to rank() is null");
+            Node<K, V> node = root;
+            int rank = 0;
+            while (node != null) {
+                int cmp = key.compareTo(node.key);
+                if (cmp == 0)
+                    return rank + size(node.left);
+                if (cmp > 0) {
+                    rank += size(node.left) + 1;
+                    node = node.right;
+                } else node = node.left;
+            }
+            return rank;
+        }
+
+        @Override
+        public K select(int i) {
+            if (i < 0 || i >= size())
+                throw new IllegalArgumentException("argument to select() is invalid: " + i);
+            Node<K, V> node = root;
+            while (true) {
+                int t = size(node.left);
+                if (i < t)
+                    node = node.left;
+                else if (i > t) {
+                    i -= t + 1;
+                    node = node.right;
+                } else return node.key;
+            }
+        }
+
+        @Override
+        public int size(K lo, K hi) {
+            if (lo == null) throw new IllegalArgumentException("first argument to size() is null");
+            if (hi == null) throw new IllegalArgumentException("second argument to size() is null");
+            if (lo.compareTo(hi) > 0)
+                return 0;
+            int n = rank(hi) - rank(lo);
+            return contains(hi) ? n + 1 : n;
+        }
+
+        @Override
+        public Iterable<K> keys() {
+            return new RangeIterable<>(() -> new Cursor<>(0, size(), false, true, node -> node.key));
+        }
+
+        @Override
+        public Iterable<K> keys(K lo, K hi) {
+            return range(lo, hi, false, true, node -> node.key);
+        }
+
+        @Override
+        public Iterable<K> descendingKeys(K lo, K hi) {
+            return range(lo, hi, true, true, node -> node.key);
+        }
+
+        @Override
+        public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+            return range(lo, hi, false, false, node -> new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+        }
+
+        @Override
+        public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+            return range(lo, hi, true, false, node -> new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+        }
+
+        /**
+         * 中序遍历，用栈代替递归
+         */
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action) {
+            Objects.requireNonNull(action);
+            Deque<Node<K, V>> stack = new ArrayDeque<>();
+            Node<K, V> node = root;
+            while (node != null || !stack.isEmpty()) {
+                for (; node != null; node = node.left)
+                    stack.push(node);
+                node = stack.pop();
+                action.accept(node.key, node.value);
+                node = node.right;
+            }
+        }
+
+        private <T> Iterable<T> range(K lo, K hi, boolean descending, boolean sortedKeys, Function<Node<K, V>, T> element) {
+            if (lo == null) throw new IllegalArgumentException("first argument to keys() is null");
+            if (hi == null) throw new IllegalArgumentException("second argument to keys() is null");
+            return new RangeIterable<>(() -> {
+                int from = rank(lo);
+                return new Cursor<>(from, from + size(lo, hi), descending, sortedKeys, element);
+            });
+        }
+
+        /*----------生成新版本----------*/
+
+        private Snapshot<K, V> editor() {
+            Snapshot<K, V> next = new Snapshot<>(null);
+            next.owner = new Object();
+            return next;
+        }
+
+        /**
+         * 修改完成，之后这些结点都不能再修改了
+         */
+        private Snapshot<K, V> publish(Node<K, V> root) {
+            if (root == null)
+                return empty();
+            if (root.color == RED)
+                root = mutable(root);
+            root.color = BLACK;
+            return new Snapshot<>(root);
+        }
+
+        /**
+         * 这次修改可以直接改动的结点：已经属于这次修改就是它本身，否则复制一份
+         */
+        private Node<K, V> mutable(Node<K, V> node) {
+            return node.owner == owner ? node : new Node<>(node, owner);
+        }
+
+        /**
+         * 删除前如果根结点的两个孩子都是黑色，把根结点变红
+         */
+        private Node<K, V> redRoot(Node<K, V> root) {
+            if (!isRed(root.left) && !isRed(root.right)) {
+                root = mutable(root);
+                root.color = RED;
+            }
+            return root;
+        }
+
+        private Node<K, V> put(Node<K, V> node, K key, V value) {
+            if (node == null)
+                return new Node<>(key, value, 1, RED, owner);
+            node = mutable(node);
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) node.left = put(node.left, key, value);
+            else if (cmp > 0) node.right = put(node.right, key, value);
+            else node.value = value;
+
+            if (isRed(node.right) && !isRed(node.left))
+                node = rotateLeft(node);
+            if (isRed(node.left) && isRed(node.left.left))
+                node = rotateRight(node);
+            if (isRed(node.left) && isRed(node.right))
+                flipColors(node);
+            resize(node);
+            return node;
+        }
+
+        private Node<K, V> delete(Node<K, V> h, K key) {
+            h = mutable(h);
+            if (key.compareTo(h.key) < 0) {
+                if (!isRed(h.left) && !isRed(h.left.left))
+                    h = moveRedLeft(h);
+                h.left = delete(h.left, key);
+            } else {
+                if (isRed(h.left))
+                    h = rotateRight(h);
+                if (key.compareTo(h.key) == 0 && (h.right == null))
+                    return null;
+                if (!isRed(h.right) && !isRed(h.right.left))
+                    h = moveRedRight(h);
+                if (key.compareTo(h.key) == 0) {
+                    Node<K, V> x = h.right;
+                    while (x.left != null)
+                        x = x.left;
+                    h.key = x.key;
+                    h.value = x.value;
+                    h.right = deleteMin(h.right);
+                } else h.right = delete(h.right, key);
+            }
+            return balance(h);
+        }
+
+        private Node<K, V> deleteMin(Node<K, V> h) {
+            if (h.left == null)
+                return null;
+            h = mutable(h);
+            if (!isRed(h.left) && !isRed(h.left.left))
+                h = moveRedLeft(h);
+            h.left = deleteMin(h.left);
+            return balance(h);
+        }
+
+        private Node<K, V> deleteMax(Node<K, V> h) {
+            h = mutable(h);
+            if (isRed(h.left))
+                h = rotateRight(h);
+            if (h.right == null)
+                return null;
+            if (!isRed(h.right) && !isRed(h.right.left))
+                h = moveRedRight(h);
+            h.right = deleteMax(h.right);
+            return balance(h);
+        }
+
+        /**
+         * 以下方法的参数h都已经属于这次修改，会被改动的孩子结点在改动前复制
+         */
+        private Node<K, V> moveRedLeft(Node<K, V> h) {
+            flipColors(h);
+            if (isRed(h.right.left)) {
+                h.right = rotateRight(h.right);
+                h = rotateLeft(h);
+                flipColors(h);
+            }
+            return h;
+        }
+
+        private Node<K, V> moveRedRight(Node<K, V> h) {
+            flipColors(h);
+            if (isRed(h.left.left)) {
+                h = rotateRight(h);
+                flipColors(h);
+            }
+            return h;
+        }
+
+        private Node<K, V> balance(Node<K, V> h) {
+            if (isRed(h.right)) h = rotateLeft(h);
+            if (isRed(h.left) && isRed(h.left.left)) h = rotateRight(h);
+            if (isRed(h.left) && isRed(h.right)) flipColors(h);
+            resize(h);
+            return h;
+        }
+
+        private Node<K, V> rotateLeft(Node<K, V> node) {
+            Node<K, V> x = mutable(node.right);
+            node.right = x.left;
+            x.left = node;
+            x.color = node.color;
+            node.color = RED;
+            x.N = node.N;
+            resize(node);
+            return x;
+        }
+
+        private Node<K, V> rotateRight(Node<K, V> node) {
+            Node<K, V> x = mutable(node.left);
+            node.left = x.right;
+            x.right = node;
+            x.color = node.color;
+            node.color = RED;
+            x.N = node.N;
+            resize(node);
+            return x;
+        }
+
+        private void flipColors(Node<K, V> node) {
+            node.left = mutable(node.left);
+            node.right = mutable(node.right);
+            node.color = !node.color;
+            node.left.color = !node.left.color;
+            node.right.color = !node.right.color;
+        }
+
+        private static boolean isRed(Node<?, ?> x) {
+            return x != null && x.color == RED;
+        }
+
+        private static void resize(Node<?, ?> node) {
+            node.N = size(node.left) + size(node.right) + 1;
+        }
+
+        private static int size(Node<?, ?> node) {
+            return node == null ? 0 : node.N;
+        }
+
+        /**
+         * 和{@link RedBlackBST}相同的范围游标，快照不会被修改，
+         * <br />
+         * 所以遍历期间其他线程可以继续写
+         */
+        private class Cursor<T> extends RangeCursor<T> {
+
+            private final boolean sortedKeys;
+
+            private final Function<Node<K, V>, T> element;
+
+            private Deque<Node<K, V>> stack;
+
+            Cursor(int lo, int hi, boolean descending, boolean sortedKeys, Function<Node<K, V>, T> element) {
+                super(lo, hi, descending, sortedKeys);
+                this.sortedKeys = sortedKeys;
+                this.element = element;
+            }
+
+            @Override
+            protected T nextElement(boolean first) {
+                if (first) {
+                    stack = new ArrayDeque<>();
+                    locate(descending ? hi - 1 : lo);
+                }
+                Node<K, V> node = stack.pop();
+                if (descending) {
+                    for (Node<K, V> x = node.left; x != null; x = x.right)
+                        stack.push(x);
+                } else {
+                    for (Node<K, V> x = node.right; x != null; x = x.left)
+                        stack.push(x);
+                }
+                return element.apply(node);
+            }
+
+            private void locate(int i) {
+                Node<K, V> node = root;
+                while (node != null) {
+                    int t = size(node.left);
+                    if (i < t) {
+                        if (!descending)
+                            stack.push(node);
+                        node = node.left;
+                    } else if (i > t) {
+                        if (descending)
+                            stack.push(node);
+                        i -= t + 1;
+                        node = node.right;
+                    } else {
+                        stack.push(node);
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            protected RangeCursor<T> subCursor(int lo, int hi) {
+                return new Cursor<>(lo, hi, descending, sortedKeys, element);
+            }
+        }
+    }
+}
@@ -1,19 +1,37 @@
 package main.top.kindless.search.redblackbst;
 
 import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+import main.top.kindless.search.utils.SortedInput;
 import main.top.kindless.search.sequential.SequentialSearchST;
 
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
 
 public class RedBlackBST<Key extends Comparable<Key>, Value>
         implements OrderedST<Key, Value> {
 
     private static final boolean RED = true;
     private static final boolean BLACK = false;
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
     private Node root;
+    private Node[] path;
+    private boolean[] directions;
 
     private class Node {
         Key key;
@@ -30,10 +48,184 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
         }
     }
 
+    /**
+     * 从已排序的键值对批量构建，先读入数组再调用{@link #fromSorted(Comparable[], Object[], boolean)}
+     * @param sorted 按键从小到大排列、键不重复的键值对
+     * @return 红黑树
+     */
+    public static <K extends Comparable<K>, V> RedBlackBST<K, V> bulkLoad(Iterator<? extends Map.Entry<K, V>> sorted) {
+        return build(SortedInput.drain(sorted, true), false);
+    }
+
+    public static <K extends Comparable<K>, V> RedBlackBST<K, V> fromSorted(K[] keys, V[] values) {
+        return fromSorted(keys, values, false);
+    }
+
+    /**
+     * 从已排序的数组直接构建，每个键只创建一个结点，不旋转，O(n)。
+     * <br />
+     * 把键分配到一棵所有叶子深度相同的2-3树中：能用2-结点就用2-结点并且左右平分，
+     * <br />
+     * 放不下时才用3-结点（左倾的红链接），所以树高不超过⌊lg(n+1)⌋再加上少量红结点
+     * @param keys 严格递增的键
+     * @param values 和键一一对应的值
+     * @param parallel 是否用ForkJoin并行地构建较大的子树
+     * @return 红黑树
+     */
+    public static <K extends Comparable<K>, V> RedBlackBST<K, V> fromSorted(K[] keys, V[] values, boolean parallel) {
+        return build(SortedInput.of(keys, values, true), parallel);
+    }
+
+    private static <K extends Comparable<K>, V> RedBlackBST<K, V> build(SortedInput<K, V> input, boolean parallel) {
+        RedBlackBST<K, V> st = new RedBlackBST<>();
+        st.root = st.build(input.keys, input.values, input.size, parallel);
+        return st;
+    }
+
+    private Node build(Key[] keys, Value[] values, int n, boolean parallel) {
+        int height = 31 - Integer.numberOfLeadingZeros(n + 1);
+        if (parallel && n > Builder.THRESHOLD)
+            return ForkJoinPool.commonPool().invoke(new Builder(keys, values, 0, n, height));
+        return build(keys, values, 0, n, height);
+    }
+
+    /**
+     * 构建[lo,lo+n)的子树，子树对应的2-3树有height层，
+     * <br />
+     * height层的2-3树能放下的键数在[2^height-1, 3^height-1]之间
+     */
+    private Node build(Key[] keys, Value[] values, int lo, int n, int height) {
+        if (n == 0)
+            return null;
+        int left = leftSize(n, height);
+        if (left >= 0) {
+            Node node = new Node(keys[lo + left], values[lo + left], n, BLACK);
+            node.left = build(keys, values, lo, left, height - 1);
+            node.right = build(keys, values, lo + left + 1, n - 1 - left, height - 1);
+            return node;
+        }
+        int rest = n - 2, a = rest / 3, b = (rest - a) / 2;
+        Node black = node3(keys, values, lo, n, a, b);
+        black.left.left = build(keys, values, lo, a, height - 1);
+        black.left.right = build(keys, values, lo + a + 1, b, height - 1);
+        black.right = build(keys, values, lo + a + b + 2, rest - a - b, height - 1);
+        return black;
+    }
+
+    /**
+     * 能用2-结点时返回左子树的键数，左右平分；否则返回-1，需要用3-结点
+     */
+    private static int leftSize(int n, int height) {
+        //每棵子树最多能放下3^(height-1)-1个键
+        long max = 1;
+        for (int i = 1; i < height && max <= n; i++)
+            max *= 3;
+        return n - 1 <= 2 * (max - 1) ? (n - 1) / 2 : -1;
+    }
+
+    /**
+     * 3-结点：红色的左孩子和它的父结点各放一个键，三棵子树平分剩下的键
+     */
+    private Node node3(Key[] keys, Value[] values, int lo, int n, int a, int b) {
+        Node red = new Node(keys[lo + a], values[lo + a], a + b + 1, RED);
+        Node black = new Node(keys[lo + a + b + 1], values[lo + a + b + 1], n, BLACK);
+        black.left = red;
+        return black;
+    }
+
+    /**
+     * 并行地构建较大的子树，子树足够小时改为递归
+     */
+    private class Builder extends RecursiveTask<Node> {
+
+        static final int THRESHOLD = 1 << 14;
+
+        private final Key[] keys;
+        private final Value[] values;
+        private final int lo, n, height;
+
+        Builder(Key[] keys, Value[] values, int lo, int n, int height) {
+            this.keys = keys;
+            this.values = values;
+            this.lo = lo;
+            this.n = n;
+            this.height = height;
+        }
+
+        @Override
+        protected Node compute() {
+            if (n <= THRESHOLD)
+                return build(keys, values, lo, n, height);
+            int left = leftSize(n, height);
+            if (left >= 0) {
+                Node node = new Node(keys[lo + left], values[lo + left], n, BLACK);
+                Builder l = new Builder(keys, values, lo, left, height - 1);
+                l.fork();
+                node.right = new Builder(keys, values, lo + left + 1, n - 1 - left, height - 1).compute();
+                node.left = l.join();
+                return node;
+            }
+            int rest = n - 2, a = rest / 3, b = (rest - a) / 2;
+            Node black = node3(keys, values, lo, n, a, b);
+            Builder l = new Builder(keys, values, lo, a, height - 1);
+            Builder m = new Builder(keys, values, lo + a + 1, b, height - 1);
+            l.fork();
+            m.fork();
+            black.right = new Builder(keys, values, lo + a + b + 2, rest - a - b, height - 1).compute();
+            black.left.right = m.join();
+            black.left.left = l.join();
+            return black;
+        }
+    }
+
+    /**
+     * 非递归的插入。向下查找时记录路径，键已经存在就只修改值，不需要任何调整；<br/>
+     * 否则把路径上的子树大小加一，挂上新的红结点之后<br/>
+     * 沿着路径向上旋转和变色。某个黑结点没有发生旋转和变色时，上面的结点都不受影响，<br/>
+     * 可以提前结束
+     *
+     * @param key
+     * @param value
+     */
     @Override
     public void put(Key key, Value value) {
-        root = put(root, key, value);
+        if (key == null) throw new IllegalArgumentException("first argument to put() is null");
+        if (root == null) {
+            root = new Node(key, value, 1, BLACK);
+            return;
+        }
+        Node[] path = path();
+        boolean[] left = directions;
+        int d = 0;
+        for (Node node = root; node != null; d++) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                node.value = value;
+                Arrays.fill(path, 0, d, null);
+                return;
+            }
+            path[d] = node;
+            left[d] = cmp < 0;
+            node = left[d] ? node.left : node.right;
+        }
+        for (int i = 0; i < d; i++)
+            path[i].N++;
+        Node child = new Node(key, value, 1, RED);
+        int depth = d;
+        while (--d >= 0) {
+            Node h = path[d];
+            if (left[d]) h.left = child;
+            else h.right = child;
+            boolean color = h.color;
+            child = fixUp(h);
+            //黑结点没有旋转也没有变色时，父结点看到的子结点颜色都没有变化
+            if (child == h && color == BLACK && child.color == BLACK)
+                break;
+        }
+        if (d < 0)
+            root = child;
         root.color = BLACK;
+        Arrays.fill(path, 0, depth, null);
     }
 
     @Override
@@ -57,7 +249,7 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
 
     @Override
     public Iterable<Key> keys() {
-        return null;
+        return new RangeIterable<>(() -> new Cursor<>(0, size(), false, true, node -> node.key));
     }
 
     @Override
@@ -79,6 +271,118 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
         if (!isEmpty()) root.color = BLACK;
     }
 
+    /**
+     * 分裂，O(logn)。这棵树只保留小于key的键，不小于key的键移到返回的新树中
+     *
+     * @param key
+     * @return 不小于key的键组成的红黑树
+     */
+    public RedBlackBST<Key, Value> split(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to split() is null");
+        Split parts = split(tree(root), key);
+        root = parts.left.root;
+        RedBlackBST<Key, Value> right = new RedBlackBST<>();
+        right.root = parts.node == null ? parts.right.root : join(new Tree(null, 0), parts.node, parts.right).root;
+        return right;
+    }
+
+    /**
+     * 连接两棵红黑树，O(logn)。left中所有的键都必须小于right中所有的键，
+     * <br/>
+     * 两棵树的结点都移到返回的新树中，之后left和right都为空
+     *
+     * @param left
+     * @param right
+     * @return 包含两棵树所有键的红黑树
+     */
+    public static <K extends Comparable<K>, V> RedBlackBST<K, V> join(RedBlackBST<K, V> left, RedBlackBST<K, V> right) {
+        if (left == right) throw new IllegalArgumentException("cannot join a tree with itself");
+        if (!left.isEmpty() && !right.isEmpty() && left.max().compareTo(right.min()) >= 0)
+            throw new IllegalArgumentException("keys of left tree must be less than keys of right tree");
+        RedBlackBST<K, V> st = new RedBlackBST<>();
+        st.root = st.join(left.tree(left.root), right.tree(right.root)).root;
+        left.root = right.root = null;
+        return st;
+    }
+
+    /**
+     * 删除[lo,hi]范围内的所有键：分裂出小于lo的部分和大于hi的部分再连接起来，
+     * <br/>
+     * 不论删除多少个键都只需要O(logn)
+     *
+     * @param lo
+     * @param hi
+     * @return 删除的键的数量
+     */
+    @Override
+    public int deleteRange(Key lo, Key hi) {
+        if (lo == null) throw new IllegalArgumentException("first argument to deleteRange() is null");
+        if (hi == null) throw new IllegalArgumentException("second argument to deleteRange() is null");
+        if (lo.compareTo(hi) > 0 || isEmpty())
+            return 0;
+        Split lower = split(tree(root), lo);
+        Split upper = split(lower.right, hi);
+        root = join(lower.left, upper.right).root;
+        return size(upper.left.root) + (lower.node == null ? 0 : 1) + (upper.node == null ? 0 : 1);
+    }
+
+    /**
+     * 并集，较大的子问题在ForkJoinPool中并行计算。两棵树的结点都移到返回的新树中，之后a和b都为空
+     *
+     * @param a
+     * @param b
+     * @param merge 两棵树都有的键，新值是merge(a中的值, b中的值)，返回null时删除这个键
+     * @return 包含a和b所有键的红黑树
+     */
+    public static <K extends Comparable<K>, V> RedBlackBST<K, V> union(RedBlackBST<K, V> a, RedBlackBST<K, V> b, BinaryOperator<V> merge) {
+        return setOperation(UNION, a, b, Objects.requireNonNull(merge));
+    }
+
+    /**
+     * 交集，之后a和b都为空
+     *
+     * @param a
+     * @param b
+     * @param merge 新值是merge(a中的值, b中的值)，返回null时删除这个键
+     * @return 只包含a和b都有的键的红黑树
+     */
+    public static <K extends Comparable<K>, V> RedBlackBST<K, V> intersection(RedBlackBST<K, V> a, RedBlackBST<K, V> b, BinaryOperator<V> merge) {
+        return setOperation(INTERSECTION, a, b, Objects.requireNonNull(merge));
+    }
+
+    /**
+     * 差集，之后a和b都为空
+     *
+     * @param a
+     * @param b
+     * @return 包含a中有而b中没有的键的红黑树，值来自a
+     */
+    public static <K extends Comparable<K>, V> RedBlackBST<K, V> difference(RedBlackBST<K, V> a, RedBlackBST<K, V> b) {
+        return setOperation(DIFFERENCE, a, b, null);
+    }
+
+    private static <K extends Comparable<K>, V> RedBlackBST<K, V> setOperation(int operation, RedBlackBST<K, V> a, RedBlackBST<K, V> b, BinaryOperator<V> merge) {
+        if (a == b) throw new IllegalArgumentException("both arguments are the same tree");
+        RedBlackBST<K, V> st = new RedBlackBST<>();
+        st.root = st.apply(operation, a.tree(a.root), b.tree(b.root), merge);
+        a.root = b.root = null;
+        return st;
+    }
+
+    /**
+     * 修改时记录的路径，在多次修改之间复用。<br/>
+     * 红黑树的高度不超过2lg(n+1)，删除时向下调整的路径最多再多一个结点
+     */
+    @SuppressWarnings("unchecked")
+    private Node[] path() {
+        int length = 2 * (32 - Integer.numberOfLeadingZeros(size() + 1)) + 2;
+        if (path == null || path.length < length) {
+            path = (Node[]) new RedBlackBST.Node[length + 8];
+            directions = new boolean[length + 8];
+        }
+        return path;
+    }
+
     @Override
     public Key min() {
         if (isEmpty()) throw new NoSuchElementException("calls min() with empty symbol table");
@@ -91,29 +395,174 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
         return max(root).key;
     }
 
+    /**
+     * 向下查找，每向右走一步，当前结点就是目前为止最大的不大于key的结点
+     *
+     * @param key
+     * @return 不存在则返回null
+     */
     @Override
     public Key floor(Key key) {
-        return null;
+        if (key == null) throw new IllegalArgumentException("argument to floor() is null");
+        Node node = root;
+        Node floor = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return node.key;
+            if (cmp < 0)
+                node = node.left;
+            else {
+                floor = node;
+                node = node.right;
+            }
+        }
+        return floor == null ? null : floor.key;
     }
 
+    /**
+     * 和floor对称，每向左走一步，当前结点就是目前为止最小的不小于key的结点
+     *
+     * @param key
+     * @return 不存在则返回null
+     */
     @Override
     public Key ceiling(Key key) {
-        return null;
+        if (key == null) throw new IllegalArgumentException("argument to ceiling() is null");
+        Node node = root;
+        Node ceiling = null;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return node.key;
+            if (cmp > 0)
+                node = node.right;
+            else {
+                ceiling = node;
+                node = node.left;
+            }
+        }
+        return ceiling == null ? null : ceiling.key;
     }
 
+    /**
+     * 向下查找，每向右走一步，左子树和当前结点都小于key
+     *
+     * @param key
+     * @return
+     */
     @Override
     public int rank(Key key) {
-        return 0;
+        if (key == null) throw new IllegalArgumentException("argument to rank() is null");
+        Node node = root;
+        int rank = 0;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return rank + size(node.left);
+            if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else node = node.left;
+        }
+        return rank;
     }
 
+    /**
+     * 根据左子树的大小决定向左还是向右
+     *
+     * @param i
+     * @return
+     */
     @Override
     public Key select(int i) {
-        return null;
+        if (i < 0 || i >= size())
+            throw new IllegalArgumentException("argument to select() is invalid: " + i);
+        Node node = root;
+        while (true) {
+            int t = size(node.left);
+            if (i < t)
+                node = node.left;
+            else if (i > t) {
+                i -= t + 1;
+                node = node.right;
+            } else return node.key;
+        }
     }
 
+    /**
+     * 惰性的范围，遍历时才定位到lo，只需要O(logn)就能取到第一个键
+     *
+     * @param lo
+     * @param hi
+     * @return
+     */
     @Override
     public Iterable<Key> keys(Key lo, Key hi) {
-        return null;
+        return range(lo, hi, false, true, node -> node.key);
+    }
+
+    @Override
+    public Iterable<Key> descendingKeys(Key lo, Key hi) {
+        return range(lo, hi, true, true, node -> node.key);
+    }
+
+    @Override
+    public Iterable<Map.Entry<Key, Value>> entries(Key lo, Key hi) {
+        return range(lo, hi, false, false, node -> new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+    }
+
+    @Override
+    public Iterable<Map.Entry<Key, Value>> descendingEntries(Key lo, Key hi) {
+        return range(lo, hi, true, false, node -> new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+    }
+
+    /**
+     * 找到lo和hi的查找路径分叉的结点，再分别统计它左子树中不小于lo的键<br/>
+     * 和右子树中不大于hi的键，只需要一次向下查找
+     *
+     * @param lo
+     * @param hi
+     * @return
+     */
+    @Override
+    public int size(Key lo, Key hi) {
+        if (lo == null) throw new IllegalArgumentException("first argument to size() is null");
+        if (hi == null) throw new IllegalArgumentException("second argument to size() is null");
+        if (lo.compareTo(hi) > 0)
+            return 0;
+        Node node = root;
+        while (node != null) {
+            if (lo.compareTo(node.key) > 0)
+                node = node.right;
+            else if (hi.compareTo(node.key) < 0)
+                node = node.left;
+            else break;
+        }
+        if (node == null)
+            return 0;
+        int count = 1;
+        //左子树中不小于lo的键
+        for (Node x = node.left; x != null; ) {
+            int cmp = lo.compareTo(x.key);
+            if (cmp > 0)
+                x = x.right;
+            else {
+                count += size(x.right) + 1;
+                x = cmp == 0 ? null : x.left;
+            }
+        }
+        //右子树中不大于hi的键
+        for (Node x = node.right; x != null; ) {
+            int cmp = hi.compareTo(x.key);
+            if (cmp < 0)
+                x = x.left;
+            else {
+                count += size(x.left) + 1;
+                x = cmp == 0 ? null : x.right;
+            }
+        }
+        return count;
     }
 
     @Override
@@ -153,22 +602,20 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
         return x != null && x.color == RED;
     }
 
-    private Node put(Node node, Key key, Value value) {
-        if (node == null)
-            return new Node(key, value, 1, RED);
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0) node.left = put(node.left, key, value);
-        else if (cmp > 0) node.right = put(node.right, key, value);
-        else node.value = value;
-
-        //开始旋转以及变色
+    /**
+     * 插入之后的旋转以及变色。子树大小在向下查找时已经加过了，<br/>
+     * 旋转会维护子树大小，所以这里不需要再重新计算
+     *
+     * @param node
+     * @return 调整之后的子树根结点
+     */
+    private Node fixUp(Node node) {
         if (isRed(node.right) && !isRed(node.left))
             node = rotateLeft(node);
         if (isRed(node.left) && isRed(node.left.left))
             node = rotateRight(node);
         if (isRed(node.left) && isRed(node.right))
             flipColors(node);
-        resize(node);
         return node;
     }
 
@@ -209,10 +656,16 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
         return x;
     }
 
+    /**
+     * 变色操作。插入时将一个临时的4结点分解（根结点变红，两个孩子结点变黑），<br/>
+     * 删除时反过来将根结点和两个孩子结点合并为一个临时的4结点，所以这里是取反而不是直接赋值。
+     *
+     * @param node
+     */
     private void flipColors(Node node) {
-        node.color = RED;
-        node.left.color = BLACK;
-        node.right.color = BLACK;
+        node.color = !node.color;
+        node.left.color = !node.left.color;
+        node.right.color = !node.right.color;
     }
 
     private void resize(Node node) {
@@ -239,31 +692,87 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
         }
     }
 
+    /**
+     * [lo,hi]的排名区间在每次遍历开始时计算
+     */
+    private <T> Iterable<T> range(Key lo, Key hi, boolean descending, boolean sortedKeys, Function<Node, T> element) {
+        if (lo == null) throw new IllegalArgumentException("first argument to keys() is null");
+        if (hi == null) throw new IllegalArgumentException("second argument to keys() is null");
+        return new RangeIterable<>(() -> {
+            int from = rank(lo);
+            return new Cursor<>(from, from + size(lo, hi), descending, sortedKeys, element);
+        });
+    }
+
+    /**
+     * 非递归的删除。向下查找时和递归版本一样先做调整，保证当前结点不是2结点，<br/>
+     * 调整之后的结点记录在路径上，找到之后再沿着路径向上恢复平衡，<br/>
+     * 只有路径上的结点需要重新计算子树大小
+     *
+     * @param h
+     * @param key
+     * @return
+     */
     private Node delete(Node h, Key key) {
         // assert get(h, key) != null;
-
-        if (key.compareTo(h.key) < 0) {
-            if (!isRed(h.left) && !isRed(h.left.left)) {
-                h = moveRedLeft(h);
+        Node[] path = path();
+        boolean[] left = directions;
+        int d = 0;
+        Node x;
+        while (true) {
+            if (key.compareTo(h.key) < 0) {
+                if (!isRed(h.left) && !isRed(h.left.left)) {
+                    h = moveRedLeft(h);
+                }
+                path[d] = h;
+                left[d++] = true;
+                h = h.left;
+            } else {
+                if (isRed(h.left))
+                    h = rotateRight(h);
+                if (key.compareTo(h.key) == 0 && (h.right == null)) {
+                    x = null;
+                    break;
+                }
+                if (!isRed(h.right) && !isRed(h.right.left))
+                    h = moveRedRight(h);
+                if (key.compareTo(h.key) == 0) {
+                    Node min = min(h.right);
+                    h.key = min.key;
+                    h.value = min.value;
+                    //继续在同一条路径上删除右子树的最小结点
+                    path[d] = h;
+                    left[d++] = false;
+                    d = descendMin(h.right, path, left, d);
+                    x = null;
+                    break;
+                }
+                path[d] = h;
+                left[d++] = false;
+                h = h.right;
             }
-            h.left = delete(h.left, key);
-        } else {
-            if (isRed(h.left))
-                h = rotateRight(h);
-            if (key.compareTo(h.key) == 0 && (h.right == null))
-                return null;
-            if (!isRed(h.right) && !isRed(h.right.left))
-                h = moveRedRight(h);
-            if (key.compareTo(h.key) == 0) {
-                Node x = min(h.right);
-                h.key = x.key;
-                h.value = x.value;
-                // h.val = get(h.right, min(h.right).key);
-                // h.key = min(h.right).key;
-                h.right = deleteMin(h.right);
-            } else h.right = delete(h.right, key);
         }
-        return balance(h);
+        return unwind(path, left, d, x);
+    }
+
+    /**
+     * 沿着记录的路径向上，把子树重新挂到父结点上并恢复平衡
+     *
+     * @param path 路径上调整之后的结点
+     * @param left 每个结点向下走的方向
+     * @param d 路径长度
+     * @param x 最下面一层的结果
+     * @return 新的根结点
+     */
+    private Node unwind(Node[] path, boolean[] left, int d, Node x) {
+        while (--d >= 0) {
+            Node h = path[d];
+            path[d] = null;
+            if (left[d]) h.left = x;
+            else h.right = x;
+            x = balance(h);
+        }
+        return x;
     }
 
     private Node moveRedLeft(Node h) {
@@ -294,25 +803,38 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
 
     private Node min(Node x) {
         // assert x != null;
-        if (x.left == null) return x;
-        else return min(x.left);
+        while (x.left != null)
+            x = x.left;
+        return x;
     }
 
     private Node max(Node x) {
         // assert x != null;
-        if (x.right == null) return x;
-        else return max(x.right);
+        while (x.right != null)
+            x = x.right;
+        return x;
     }
 
     private Node deleteMin(Node h) {
-        if (h.left == null)
-            return null;
-
-        if (!isRed(h.left) && !isRed(h.left.left))
-            h = moveRedLeft(h);
+        Node[] path = path();
+        boolean[] left = directions;
+        return unwind(path, left, descendMin(h, path, left, 0), null);
+    }
 
-        h.left = deleteMin(h.left);
-        return balance(h);
+    /**
+     * 向最小结点走，沿途保证当前结点不是2结点
+     *
+     * @return 记录之后的路径长度，不包含最小结点本身
+     */
+    private int descendMin(Node h, Node[] path, boolean[] left, int d) {
+        while (h.left != null) {
+            if (!isRed(h.left) && !isRed(h.left.left))
+                h = moveRedLeft(h);
+            path[d] = h;
+            left[d++] = true;
+            h = h.left;
+        }
+        return d;
     }
 
     private Node balance(Node h) {
@@ -327,17 +849,307 @@ public class RedBlackBST<Key extends Comparable<Key>, Value>
     }
 
     private Node deleteMax(Node h) {
-        if (isRed(h.left))
-            h = rotateRight(h);
+        Node[] path = path();
+        boolean[] left = directions;
+        int d = 0;
+        while (true) {
+            if (isRed(h.left))
+                h = rotateRight(h);
 
-        if (h.right == null)
-            return null;
+            if (h.right == null)
+                break;
 
-        if (!isRed(h.right) && !isRed(h.right.left))
-            h = moveRedRight(h);
+            if (!isRed(h.right) && !isRed(h.right.left))
+                h = moveRedRight(h);
+
+            path[d] = h;
+            left[d++] = false;
+            h = h.right;
+        }
+        return unwind(path, left, d, null);
+    }
+
+    /**
+     * 分裂和连接时使用的子树，根结点总是黑色的，同时记录它的黑高度，<br/>
+     * 即从根结点到空链接经过的黑结点数量，空树为0。<br/>
+     * 黑高度随着子树一起传递，不需要每次都沿着链接向下数
+     */
+    private class Tree {
+        final Node root;
+        final int height;
+
+        Tree(Node root, int height) {
+            this.root = root;
+            this.height = height;
+        }
+    }
 
-        h.right = deleteMax(h.right);
+    /**
+     * 沿着左链接数黑结点得到整棵树的黑高度，只在分裂和连接开始时调用一次
+     */
+    private Tree tree(Node root) {
+        int height = 0;
+        for (Node x = root; x != null; x = x.left)
+            if (!isRed(x)) height++;
+        return new Tree(root, height);
+    }
 
-        return balance(h);
+    /**
+     * 把拆下来的子树作为一棵独立的树，红色的根结点变黑，黑高度加一
+     *
+     * @param node 子树的根结点
+     * @param height 子树不算根结点的黑高度
+     */
+    private Tree subtree(Node node, int height) {
+        if (isRed(node)) {
+            node.color = BLACK;
+            height++;
+        }
+        return new Tree(node, height);
+    }
+
+    /**
+     * 分裂的结果：小于key的树、等于key的结点（没有则为null）和大于key的树
+     */
+    private class Split {
+        final Tree left;
+        final Node node;
+        final Tree right;
+
+        Split(Tree left, Node node, Tree right) {
+            this.left = left;
+            this.node = node;
+            this.right = right;
+        }
+    }
+
+    /**
+     * 沿着查找路径把结点分到两边，每个结点连同它另一侧的子树连接到对应的部分上。<br/>
+     * 越往下连接的两棵树黑高度越接近，所有连接的开销加起来是O(logn)。<br/>
+     * 等于key的结点不属于任何一边，它的链接和颜色都不再有意义
+     *
+     * @param t
+     * @param key
+     * @return
+     */
+    private Split split(Tree t, Key key) {
+        Node node = t.root;
+        if (node == null)
+            return new Split(t, null, t);
+        Tree left = subtree(node.left, t.height - 1);
+        Tree right = subtree(node.right, t.height - 1);
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0)
+            return new Split(left, node, right);
+        if (cmp < 0) {
+            Split parts = split(left, key);
+            return new Split(parts.left, parts.node, join(parts.right, node, right));
+        }
+        Split parts = split(right, key);
+        return new Split(join(left, node, parts.left), parts.node, parts.right);
+    }
+
+    /**
+     * 连接两棵树，把右边的最小结点分裂出来作为中间的结点
+     */
+    private Tree join(Tree left, Tree right) {
+        if (right.root == null)
+            return left;
+        if (left.root == null)
+            return right;
+        Node min = min(right.root);
+        return join(left, min, split(right, min.key).right);
+    }
+
+    /**
+     * 用结点k连接两棵树，left中的键都小于k，right中的键都大于k。<br/>
+     * 黑高度相同时k作为黑色的根结点；否则在较高的树中找到黑高度相同的黑结点，<br/>
+     * 用红色的k替换它，再像插入一样沿路径向上调整
+     */
+    private Tree join(Tree left, Node k, Tree right) {
+        if (left.height == right.height) {
+            k.left = left.root;
+            k.right = right.root;
+            k.color = BLACK;
+            resize(k);
+            return new Tree(k, left.height + 1);
+        }
+        Node node = left.height > right.height ? joinRight(left.root, left.height, k, right)
+                : joinLeft(right.root, right.height, k, left);
+        int height = Math.max(left.height, right.height);
+        if (isRed(node)) {
+            node.color = BLACK;
+            height++;
+        }
+        return new Tree(node, height);
+    }
+
+    /**
+     * 沿着右链接向下，右链接都是黑色的，每一步黑高度减一
+     */
+    private Node joinRight(Node node, int height, Node k, Tree right) {
+        if (height == right.height) {
+            k.left = node;
+            k.right = right.root;
+            k.color = RED;
+            resize(k);
+            return k;
+        }
+        node.right = joinRight(node.right, height - 1, k, right);
+        resize(node);
+        return fixUp(node);
+    }
+
+    /**
+     * 沿着左链接向下，跳过红结点，直到黑高度相同的黑结点
+     */
+    private Node joinLeft(Node node, int height, Node k, Tree left) {
+        if (height == left.height && !isRed(node)) {
+            k.left = left.root;
+            k.right = node;
+            k.color = RED;
+            resize(k);
+            return k;
+        }
+        node.left = joinLeft(node.left, isRed(node) ? height : height - 1, k, left);
+        resize(node);
+        return fixUp(node);
+    }
+
+    private Node apply(int operation, Tree a, Tree b, BinaryOperator<Value> merge) {
+        if (size(a.root) + size(b.root) > SetOperation.THRESHOLD)
+            return ForkJoinPool.commonPool().invoke(new SetOperation(operation, a, b, merge)).root;
+        return apply(operation, a, b, merge, false).root;
+    }
+
+    /**
+     * 基于分裂和连接的集合运算：用a的根结点分裂b，两边分别递归地求解之后<br/>
+     * 再用根结点（或者不用）连接起来。两边的结点互不相交，可以并行计算，<br/>
+     * 总的工作量是O(mlog(n/m+1))，m是较小的一棵树的大小
+     *
+     * @param parallel 是否在ForkJoinPool中，是的话较大的子问题拆分成任务
+     */
+    private Tree apply(int operation, Tree a, Tree b, BinaryOperator<Value> merge, boolean parallel) {
+        if (a.root == null)
+            return operation == UNION ? b : a;
+        if (b.root == null)
+            return operation == INTERSECTION ? b : a;
+        parallel = parallel && size(a.root) + size(b.root) > SetOperation.THRESHOLD;
+        Node k = a.root;
+        Split parts = split(b, k.key);
+        Tree left = subtree(k.left, a.height - 1);
+        Tree right = subtree(k.right, a.height - 1);
+        Tree l, r;
+        if (parallel) {
+            SetOperation task = new SetOperation(operation, left, parts.left, merge);
+            task.fork();
+            r = apply(operation, right, parts.right, merge, true);
+            l = task.join();
+        } else {
+            l = apply(operation, left, parts.left, merge, false);
+            r = apply(operation, right, parts.right, merge, false);
+        }
+        boolean keep;
+        if (parts.node == null)
+            keep = operation != INTERSECTION;
+        else if (operation == DIFFERENCE)
+            keep = false;
+        else {
+            k.value = merge.apply(k.value, parts.node.value);
+            keep = k.value != null;
+        }
+        return keep ? join(l, k, r) : join(l, r);
+    }
+
+    /**
+     * 在ForkJoinPool中执行的集合运算子问题
+     */
+    private class SetOperation extends RecursiveTask<Tree> {
+
+        /**
+         * 子问题的规模小于这个值时不再拆分任务，在当前线程中递归
+         */
+        static final int THRESHOLD = 1 << 13;
+
+        private final int operation;
+        private final Tree a, b;
+        private final BinaryOperator<Value> merge;
+
+        SetOperation(int operation, Tree a, Tree b, BinaryOperator<Value> merge) {
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+            this.merge = merge;
+        }
+
+        @Override
+        protected Tree compute() {
+            return apply(operation, a, b, merge, true);
+        }
+    }
+
+    /**
+     * 基于排名的范围游标，第一次取元素时按子树大小定位到起始排名，
+     * <br />
+     * 之后只保存一条从根结点出发的路径，大小和树高成正比
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final Function<Node, T> element;
+
+        private Deque<Node> stack;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, Function<Node, T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            if (first) {
+                stack = new ArrayDeque<>();
+                locate(descending ? hi - 1 : lo);
+            }
+            Node node = stack.pop();
+            if (descending) {
+                for (Node x = node.left; x != null; x = x.right)
+                    stack.push(x);
+            } else {
+                for (Node x = node.right; x != null; x = x.left)
+                    stack.push(x);
+            }
+            return element.apply(node);
+        }
+
+        /**
+         * 查找排名为i的结点，把路径上之后还要访问的结点压栈
+         */
+        private void locate(int i) {
+            Node node = root;
+            while (node != null) {
+                int t = size(node.left);
+                if (i < t) {
+                    if (!descending)
+                        stack.push(node);
+                    node = node.left;
+                } else if (i > t) {
+                    if (descending)
+                        stack.push(node);
+                    i -= t + 1;
+                    node = node.right;
+                } else {
+                    stack.push(node);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
     }
 }
@@ -0,0 +1,559 @@
+package main.top.kindless.search.skiplist;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.annotation.Safe;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Thread safe ordered symbol table based on a lock-free skip list.<br />
+ * No operation ever takes a lock. A key is present while its node is <br />
+ * linked at the bottom level and holds a non-null value: {@link #put} <br />
+ * links a new node with a single CAS at the bottom level and then links <br />
+ * its upper levels one by one, or replaces the value of an existing node <br />
+ * with a CAS; {@link #delete} removes a key by setting its value to null <br />
+ * with a CAS, then marks the links of the node so that no node can be <br />
+ * inserted after it, and any thread that meets a marked node unlinks it <br />
+ * (Herlihy and Shavit's lock-free skip list). Readers never unlink and <br />
+ * never retry: {@link #get} is a plain walk down the levels. <br />
+ * Iterators, {@link #forEach} and range queries are weakly consistent: <br />
+ * they never throw {@link java.util.ConcurrentModificationException}, <br />
+ * return each key at most once in order, and reflect every modification <br />
+ * that completed before they started, possibly some after. <br />
+ * {@link #size()} is the sum of a striped counter, exact only in <br />
+ * quiescent states. {@link #rank} and {@link #select} walk the bottom <br />
+ * level; {@link #estimateRank} is a logarithmic estimate from the upper levels. <br />
+ * Node heights are drawn with probability 1/4 per level, like the index <br />
+ * levels of {@link java.util.concurrent.ConcurrentSkipListMap}.
+ * @param <Key>
+ * @param <Value>
+ * @author kindless
+ * @since 1.0
+ */
+@Safe
+public class ConcurrentSkipListST<Key extends Comparable<Key>, Value> implements OrderedST<Key, Value> {
+
+    /*----------Fields----------*/
+    /**
+     * Sentinel with no key, linked to the first node of every level.
+     */
+    private final Node<Key, Value> head;
+
+    /**
+     * The highest level in use. It never decreases, and a writer raises <br />
+     * it before linking a node of that height, so searches that start <br />
+     * there see every level of every node.
+     */
+    private volatile int levels = 1;
+
+    /**
+     * Striped counters, heights[i] counts the keys whose node is taller <br />
+     * than i, so heights[0] is the number of keys.
+     */
+    private final LongAdder[] heights;
+
+    /*-----------Constants----------*/
+    private static final int MAX_LEVEL = 16;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<ConcurrentSkipListST> LEVELS =
+            AtomicIntegerFieldUpdater.newUpdater(ConcurrentSkipListST.class, "levels");
+
+    public ConcurrentSkipListST() {
+        head = new Node<>(null, null, MAX_LEVEL);
+        heights = new LongAdder[MAX_LEVEL];
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            heights[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * A key with a tower of links, one per level. Each link holds the <br />
+     * next node, or a {@link Marked} wrapping it once the node has been <br />
+     * deleted, so a CAS that would link a new node after a deleted one <br />
+     * fails. Unlike {@link java.util.concurrent.atomic.AtomicMarkableReference} <br />
+     * this costs no extra object until a node is deleted.
+     */
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        final AtomicReferenceArray<Object> next;
+
+        Node(K key, V value, int height) {
+            this.key = key;
+            this.value = value;
+            next = new AtomicReferenceArray<>(height);
+        }
+
+        int height() {
+            return next.length();
+        }
+
+        Node<K, V> next(int level) {
+            return successor(next.get(level));
+        }
+
+        boolean isMarked(int level) {
+            return next.get(level) instanceof Marked;
+        }
+    }
+
+    /**
+     * A link of a deleted node.
+     */
+    private static final class Marked {
+        final Object node;
+
+        Marked(Object node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * The node a link points to, whether it is marked or not.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> successor(Object link) {
+        return (Node<K, V>) (link instanceof Marked ? ((Marked) link).node : link);
+    }
+
+    /*----------Methods----------*/
+    @Override
+    public Value get(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to get() is null");
+        Node<Key, Value> x = lowerNode(key, true);
+        return x == head || x.key.compareTo(key) != 0 ? null : x.value;
+    }
+
+    /**
+     * If the key is present its value is replaced with a CAS, otherwise <br />
+     * a new node is linked at the bottom level, which makes it visible, <br />
+     * and then at its upper levels.
+     * @param key
+     * @param value A null value deletes the key.
+     */
+    @Override
+    public void put(Key key, Value value) {
+        if (key == null) throw new IllegalArgumentException("first argument to put() is null");
+        if (value == null) {
+            delete(key);
+            return;
+        }
+        int height = randomHeight();
+        raiseLevels(height);
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] preds = new Node[MAX_LEVEL], succs = new Node[MAX_LEVEL];
+        Node<Key, Value> node;
+        while (true) {
+            if (find(key, preds, succs)) {
+                Node<Key, Value> x = succs[0];
+                Value old = x.value;
+                if (old == null) {
+                    //deleted but not unlinked yet, help the deleting thread
+                    markTower(x);
+                } else if (VALUE.compareAndSet(x, old, value)) {
+                    return;
+                }
+                continue;
+            }
+            node = new Node<>(key, value, height);
+            for (int i = 0; i < height; i++) {
+                node.next.lazySet(i, succs[i]);
+            }
+            if (preds[0].next.compareAndSet(0, succs[0], node))
+                break;
+        }
+        for (int i = 0; i < height; i++) {
+            heights[i].increment();
+        }
+        for (int i = 1; i < height; i++) {
+            while (true) {
+                Node<Key, Value> succ = succs[i];
+                Node<Key, Value> current = node.next(i);
+                //fails if the node has been deleted in the meantime, then it must not be linked any more
+                if (current != succ && !node.next.compareAndSet(i, current, succ))
+                    return;
+                if (node.isMarked(i))
+                    return;
+                if (preds[i].next.compareAndSet(i, succ, node))
+                    break;
+                find(key, preds, succs);
+                if (succs[0] != node)
+                    return;
+            }
+        }
+    }
+
+    /**
+     * The CAS that sets the value to null is the deletion, the node is <br />
+     * then marked and unlinked.
+     * @param key
+     */
+    @Override
+    public void delete(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to delete() is null");
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] preds = new Node[MAX_LEVEL], succs = new Node[MAX_LEVEL];
+        while (find(key, preds, succs)) {
+            Node<Key, Value> x = succs[0];
+            Value old = x.value;
+            if (old == null) {
+                //another thread is deleting it
+                markTower(x);
+                find(key, preds, succs);
+                return;
+            }
+            if (VALUE.compareAndSet(x, old, null)) {
+                for (int i = 0; i < x.height(); i++) {
+                    heights[i].decrement();
+                }
+                markTower(x);
+                find(key, preds, succs);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(Key key) {
+        return get(key) != null;
+    }
+
+    /**
+     * The number of keys, exact only if no write is in progress.
+     */
+    @Override
+    public int size() {
+        long n = heights[0].sum();
+        return n < 0 ? 0 : n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return firstLive(head.next(0)) == null;
+    }
+
+    @Override
+    public Key min() {
+        Node<Key, Value> x = firstLive(head.next(0));
+        if (x == null)
+            throw new NoSuchElementException("calls min() with empty symbol table");
+        return x.key;
+    }
+
+    @Override
+    public Key max() {
+        Node<Key, Value> x = head;
+        for (int i = levels - 1; i >= 0; i--) {
+            for (Node<Key, Value> next = x.next(i); next != null; next = x.next(i))
+                x = next;
+        }
+        while (x != head && x.value == null)
+            x = lowerNode(x.key, false);
+        if (x == head)
+            throw new NoSuchElementException("calls max() with empty symbol table");
+        return x.key;
+    }
+
+    /**
+     * The greatest key not greater than the key. A deleted candidate is <br />
+     * skipped by searching again below it.
+     * @param key
+     * @return null if there is none
+     */
+    @Override
+    public Key floor(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to floor() is null");
+        Node<Key, Value> x = lowerNode(key, true);
+        while (x != head && x.value == null)
+            x = lowerNode(x.key, false);
+        return x == head ? null : x.key;
+    }
+
+    /**
+     * The smallest key not smaller than the key.
+     * @param key
+     * @return null if there is none
+     */
+    @Override
+    public Key ceiling(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to ceiling() is null");
+        Node<Key, Value> x = firstLive(lowerNode(key, false).next(0));
+        return x == null ? null : x.key;
+    }
+
+    /**
+     * The number of keys smaller than the key, counted on the bottom <br />
+     * level, so it takes O(rank) steps; see {@link #estimateRank} for an <br />
+     * O(log n) estimate.
+     * @param key
+     * @return
+     */
+    @Override
+    public int rank(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to rank() is null");
+        int rank = 0;
+        for (Node<Key, Value> x = firstLive(head.next(0)); x != null && x.key.compareTo(key) < 0; x = firstLive(x.next(0))) {
+            rank++;
+        }
+        return rank;
+    }
+
+    /**
+     * An estimate of the number of keys smaller than the key, in the same <br />
+     * O(log n) steps as a search. With n keys of which n_i reach level i, <br />
+     * the n_i nodes split the others into n_i+1 gaps, so every step taken <br />
+     * at level i on the way down passes about (n-n_i)/(n_i+1)+1 keys. <br />
+     * Steps at the bottom level are counted exactly, so the estimate is <br />
+     * exact when the search never leaves it; otherwise the error comes <br />
+     * from the random gaps between the few nodes of the upper levels and <br />
+     * is typically a tenth to a fifth of the size of the table. It is meant <br />
+     * for coarse decisions such as picking split points, not for paging.
+     * @param key
+     * @return
+     */
+    public int estimateRank(Key key) {
+        if (key == null) throw new IllegalArgumentException("argument to estimateRank() is null");
+        long n = heights[0].sum();
+        double rank = 0;
+        Node<Key, Value> x = head;
+        for (int i = levels - 1; i >= 0; i--) {
+            long ni = heights[i].sum();
+            double span = i == 0 ? 1 : (double) (n - ni) / (ni + 1) + 1;
+            for (Node<Key, Value> next = x.next(i); next != null && next.key.compareTo(key) < 0; next = x.next(i)) {
+                x = next;
+                rank += span;
+            }
+        }
+        return (int) Math.max(0, Math.min(Math.round(rank), size()));
+    }
+
+    /**
+     * Walks the bottom level, so it takes O(i) steps.
+     * @param i
+     * @return
+     */
+    @Override
+    public Key select(int i) {
+        if (i < 0)
+            throw new IllegalArgumentException("argument to select() is invalid: " + i);
+        int n = i;
+        for (Node<Key, Value> x = firstLive(head.next(0)); x != null; x = firstLive(x.next(0))) {
+            if (n-- == 0)
+                return x.key;
+        }
+        throw new IllegalArgumentException("argument to select() is invalid: " + i);
+    }
+
+    /**
+     * Counts the keys of the range on the bottom level, starting from a search for lo.
+     */
+    @Override
+    public int size(Key lo, Key hi) {
+        int n = 0;
+        for (Key ignored : keys(lo, hi)) {
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public Iterable<Key> keys() {
+        return () -> new Itr<>(head, null, (k, v) -> k);
+    }
+
+    /**
+     * Weakly consistent range, the search for lo happens when <br />
+     * the iteration starts.
+     * @param lo
+     * @param hi
+     * @return
+     */
+    @Override
+    public Iterable<Key> keys(Key lo, Key hi) {
+        if (lo == null || hi == null) throw new IllegalArgumentException("argument to keys() is null");
+        return () -> new Itr<>(lowerNode(lo, false), hi, (k, v) -> k);
+    }
+
+    @Override
+    public Iterable<Map.Entry<Key, Value>> entries(Key lo, Key hi) {
+        if (lo == null || hi == null) throw new IllegalArgumentException("argument to entries() is null");
+        return () -> new Itr<>(lowerNode(lo, false), hi, AbstractMap.SimpleImmutableEntry::new);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Key, ? super Value> action) {
+        Objects.requireNonNull(action);
+        for (Node<Key, Value> x = head.next(0); x != null; x = x.next(0)) {
+            Value value = x.value;
+            if (value != null)
+                action.accept(x.key, value);
+        }
+    }
+
+    /**
+     * Fill preds and succs with the nodes around the key at every level, <br />
+     * unlinking the marked nodes met on the way, and restart from the head <br />
+     * if an unlink fails because the predecessor changed.
+     * @return whether the bottom level holds a node with the key
+     */
+    private boolean find(Key key, Node<Key, Value>[] preds, Node<Key, Value>[] succs) {
+        retry:
+        while (true) {
+            Node<Key, Value> pred = head;
+            for (int i = levels - 1; i >= 0; i--) {
+                Node<Key, Value> curr = pred.next(i);
+                while (curr != null) {
+                    Object link = curr.next.get(i);
+                    Node<Key, Value> succ = successor(link);
+                    if (link instanceof Marked) {
+                        if (!pred.next.compareAndSet(i, curr, succ))
+                            continue retry;
+                        curr = succ;
+                    } else if (curr.key.compareTo(key) < 0) {
+                        pred = curr;
+                        curr = succ;
+                    } else break;
+                }
+                preds[i] = pred;
+                succs[i] = curr;
+            }
+            return succs[0] != null && succs[0].key.compareTo(key) == 0;
+        }
+    }
+
+    /**
+     * The last node whose key is smaller than the key, or not greater <br />
+     * if inclusive, whether it is deleted or not; the head if there is none.
+     */
+    private Node<Key, Value> lowerNode(Key key, boolean inclusive) {
+        Node<Key, Value> x = head;
+        for (int i = levels - 1; i >= 0; i--) {
+            for (Node<Key, Value> next = x.next(i); next != null; next = x.next(i)) {
+                int cmp = next.key.compareTo(key);
+                if (cmp < 0 || inclusive && cmp == 0)
+                    x = next;
+                else break;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * The first node from x on at the bottom level that is not deleted.
+     */
+    private Node<Key, Value> firstLive(Node<Key, Value> x) {
+        while (x != null && x.value == null)
+            x = x.next(0);
+        return x;
+    }
+
+    /**
+     * Mark every link of a deleted node, top down, so the bottom level, <br />
+     * the one that decides membership, is frozen last.
+     */
+    private void markTower(Node<Key, Value> x) {
+        for (int i = x.height() - 1; i >= 0; i--) {
+            Object link;
+            do {
+                link = x.next.get(i);
+            } while (!(link instanceof Marked) && !x.next.compareAndSet(i, link, new Marked(link)));
+        }
+    }
+
+    private void raiseLevels(int height) {
+        int current;
+        while ((current = levels) < height && !LEVELS.compareAndSet(this, current, height)) {
+        }
+    }
+
+    /**
+     * Two random bits per level, so a node reaches each level with probability 1/4.
+     */
+    private static int randomHeight() {
+        int r = ThreadLocalRandom.current().nextInt();
+        int height = 1;
+        while ((r & 3) == 0 && height < MAX_LEVEL) {
+            height++;
+            r >>>= 2;
+        }
+        return height;
+    }
+
+    /**
+     * Weakly consistent iterator over the bottom level. The next live <br />
+     * node is found ahead, and its value is read when it is found.
+     */
+    private final class Itr<T> implements Iterator<T> {
+
+        private final Key hi;
+
+        private final BiFunction<Key, Value, T> element;
+
+        private Node<Key, Value> next;
+
+        /**
+         * The value of next when it was found, so the element is <br />
+         * consistent even if next is deleted before it is returned.
+         */
+        private Value value;
+
+        /**
+         *
+         * @param from The node before the first one to return.
+         * @param hi The greatest key to return, or null for no bound.
+         */
+        Itr(Node<Key, Value> from, Key hi, BiFunction<Key, Value, T> element) {
+            this.hi = hi;
+            this.element = element;
+            advance(from);
+        }
+
+        private void advance(Node<Key, Value> from) {
+            Node<Key, Value> x = from.next(0);
+            while (x != null) {
+                if (hi != null && x.key.compareTo(hi) > 0) {
+                    x = null;
+                    break;
+                }
+                Value v = x.value;
+                if (v != null) {
+                    value = v;
+                    break;
+                }
+                x = x.next(0);
+            }
+            next = x;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            Node<Key, Value> x = next;
+            if (x == null)
+                throw new NoSuchElementException();
+            T t = element.apply(x.key, value);
+            advance(x);
+            return t;
+        }
+    }
+}
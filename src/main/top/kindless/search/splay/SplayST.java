@@ -0,0 +1,490 @@
+package main.top.kindless.search.splay;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.annotation.UnSafe;
+import main.top.kindless.search.utils.RangeCursor;
+import main.top.kindless.search.utils.RangeIterable;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 伸展树。每次查找之后都把最后访问的结点旋转到根结点，
+ * <br />
+ * 经常访问的键会停留在根结点附近，访问分布越倾斜，平均的查找路径越短，
+ * <br />
+ * 均摊复杂度是O(logn)，对于热点键接近O(1)。
+ * <br />
+ * 半伸展模式下，一字形的情况只旋转一次，结点每一步只上升一层，
+ * <br />
+ * 旋转的次数减少一半，热点集合稳定时调整的开销更小。
+ * <br />
+ * 注意get等只读操作也会修改树的结构，多个线程同时读也需要同步
+ * @param <K> 键
+ * @param <V> 值
+ */
+@UnSafe
+public class SplayST<K extends Comparable<K>, V> implements OrderedST<K, V> {
+
+    private Node root;
+
+    private final boolean semiSplay;
+
+    /**
+     * 查找时记录的路径和方向（是否走向左孩子），在多次操作之间复用。
+     * <br />
+     * 伸展树的高度可能达到n，所以按需扩容
+     */
+    private Node[] path;
+
+    private boolean[] directions;
+
+    private class Node {
+        K key;
+        V value;
+        int N;
+        Node left, right;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+            this.N = 1;
+        }
+    }
+
+    public SplayST() {
+        this(false);
+    }
+
+    /**
+     *
+     * @param semiSplay 是否使用半伸展
+     */
+    @SuppressWarnings("unchecked")
+    public SplayST(boolean semiSplay) {
+        this.semiSplay = semiSplay;
+        path = (Node[]) new SplayST.Node[32];
+        directions = new boolean[32];
+    }
+
+    @Override
+    public V get(K k) {
+        nullValueCheck(k);
+        Node node = search(k, semiSplay);
+        return node != null && k.compareTo(node.key) == 0 ? node.value : null;
+    }
+
+    /**
+     * 键已经存在时修改值，否则挂上新结点，然后都把它伸展到根结点
+     */
+    @Override
+    public void put(K k, V v) {
+        nullValueCheck(k);
+        if (root == null) {
+            root = new Node(k, v);
+            return;
+        }
+        int d = 0;
+        Node node = root;
+        while (true) {
+            int cmp = k.compareTo(node.key);
+            if (cmp == 0) {
+                node.value = v;
+                root = splay(d, node, semiSplay);
+                return;
+            }
+            push(d++, node, cmp < 0);
+            Node next = cmp < 0 ? node.left : node.right;
+            if (next == null)
+                break;
+            node = next;
+        }
+        Node x = new Node(k, v);
+        if (directions[d - 1]) node.left = x;
+        else node.right = x;
+        for (int i = 0; i < d; i++)
+            path[i].N++;
+        root = splay(d, x, semiSplay);
+    }
+
+    /**
+     * 把要删除的结点伸展到根结点，再把左子树中最大的结点伸展到左子树的根，
+     * <br />
+     * 它没有右孩子，右子树直接挂到它的右边
+     */
+    @Override
+    public void delete(K k) {
+        nullValueCheck(k);
+        Node node = search(k, false);
+        if (node == null || k.compareTo(node.key) != 0)
+            return;
+        root = remove(root);
+    }
+
+    @Override
+    public void deleteMin() {
+        if (isEmpty()) throw new NoSuchElementException("called deleteMin() with empty symbol table");
+        root = remove(extreme(true));
+    }
+
+    @Override
+    public void deleteMax() {
+        if (isEmpty()) throw new NoSuchElementException("called deleteMax() with empty symbol table");
+        root = remove(extreme(false));
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public K min() {
+        if (isEmpty()) throw new NoSuchElementException("called min() with empty symbol table");
+        return extreme(true).key;
+    }
+
+    @Override
+    public K max() {
+        if (isEmpty()) throw new NoSuchElementException("called max() with empty symbol table");
+        return extreme(false).key;
+    }
+
+    /**
+     * 查找之后k或者它的前驱、后继之一在根结点，只需要再看一个子树
+     */
+    @Override
+    public K floor(K k) {
+        nullValueCheck(k);
+        Node node = search(k, false);
+        if (node == null)
+            return null;
+        if (k.compareTo(node.key) >= 0)
+            return node.key;
+        Node x = node.left;
+        if (x == null)
+            return null;
+        while (x.right != null)
+            x = x.right;
+        return x.key;
+    }
+
+    @Override
+    public K ceiling(K k) {
+        nullValueCheck(k);
+        Node node = search(k, false);
+        if (node == null)
+            return null;
+        if (k.compareTo(node.key) <= 0)
+            return node.key;
+        Node x = node.right;
+        if (x == null)
+            return null;
+        while (x.left != null)
+            x = x.left;
+        return x.key;
+    }
+
+    /**
+     * 查找之后最后访问的结点在根结点，它的左子树都比它小
+     */
+    @Override
+    public int rank(K k) {
+        nullValueCheck(k);
+        Node node = search(k, false);
+        if (node == null)
+            return 0;
+        return k.compareTo(node.key) > 0 ? size(node.left) + 1 : size(node.left);
+    }
+
+    @Override
+    public K select(int i) {
+        if (i < 0 || i >= size())
+            throw new IllegalArgumentException("argument to select() is invalid: " + i);
+        int d = 0;
+        Node node = root;
+        while (true) {
+            int t = size(node.left);
+            if (i == t)
+                break;
+            push(d++, node, i < t);
+            if (i < t)
+                node = node.left;
+            else {
+                i -= t + 1;
+                node = node.right;
+            }
+        }
+        root = splay(d, node, false);
+        return node.key;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return new RangeIterable<>(() -> new Cursor<>(0, size(), false, true, node -> node.key));
+    }
+
+    /**
+     * 遍历时不伸展，只在开始时查找两次排名
+     */
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return range(lo, hi, false, true, node -> node.key);
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return range(lo, hi, true, true, node -> node.key);
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> entries(K lo, K hi) {
+        return range(lo, hi, false, false, node -> new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+    }
+
+    @Override
+    public Iterable<Map.Entry<K, V>> descendingEntries(K lo, K hi) {
+        return range(lo, hi, true, false, node -> new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+    }
+
+    /**
+     * 中序遍历，用栈代替递归，树可能很高
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !stack.isEmpty()) {
+            for (; node != null; node = node.left)
+                stack.push(node);
+            node = stack.pop();
+            action.accept(node.key, node.value);
+            node = node.right;
+        }
+    }
+
+    /**
+     * @return 是否是半伸展模式
+     */
+    public boolean isSemiSplay() {
+        return semiSplay;
+    }
+
+    private <T> Iterable<T> range(K lo, K hi, boolean descending, boolean sortedKeys, Function<Node, T> element) {
+        nullValueCheck(lo, hi);
+        return new RangeIterable<>(() -> {
+            int from = rank(lo);
+            return new Cursor<>(from, from + size(lo, hi), descending, sortedKeys, element);
+        });
+    }
+
+    /**
+     * 查找k，把找到的结点或者最后访问的结点伸展到根结点，
+     * <br />
+     * 半伸展时它只会上升到根结点附近
+     * @param k
+     * @param semi 是否半伸展
+     * @return 找到的结点或者最后访问的结点，树为空时返回null
+     */
+    private Node search(K k, boolean semi) {
+        if (root == null)
+            return null;
+        int d = 0;
+        Node node = root;
+        while (true) {
+            int cmp = k.compareTo(node.key);
+            if (cmp == 0)
+                break;
+            Node next = cmp < 0 ? node.left : node.right;
+            if (next == null)
+                break;
+            push(d++, node, cmp < 0);
+            node = next;
+        }
+        root = splay(d, node, semi);
+        return node;
+    }
+
+    /**
+     * 把最小或最大的结点伸展到根结点
+     */
+    private Node extreme(boolean min) {
+        int d = 0;
+        Node node = root;
+        for (Node next = min ? node.left : node.right; next != null; next = min ? node.left : node.right) {
+            push(d++, node, min);
+            node = next;
+        }
+        root = splay(d, node, false);
+        return root;
+    }
+
+    /**
+     * 删除根结点，返回新的根结点
+     */
+    private Node remove(Node top) {
+        Node left = top.left, right = top.right;
+        top.left = top.right = null;
+        if (left == null)
+            return right;
+        int d = 0;
+        Node node = left;
+        for (; node.right != null; node = node.right)
+            push(d++, node, false);
+        node = splay(d, node, false);
+        node.right = right;
+        node.N += size(right);
+        return node;
+    }
+
+    private void push(int d, Node node, boolean left) {
+        if (d == path.length) {
+            path = Arrays.copyOf(path, d << 1);
+            directions = Arrays.copyOf(directions, d << 1);
+        }
+        path[d] = node;
+        directions[d] = left;
+    }
+
+    /**
+     * 自底向上伸展。path[0..d-1]是x的祖先，path[0]是子树的根结点。
+     * <br />
+     * 之字形：x连续旋转两次，上升两层；一字形：先旋转祖父结点再旋转父结点，
+     * <br />
+     * 半伸展时只旋转祖父结点，之后从父结点继续
+     * @param d x的深度
+     * @param x 要伸展的结点
+     * @param semi 是否半伸展
+     * @return 子树新的根结点
+     */
+    private Node splay(int d, Node x, boolean semi) {
+        while (d > 0) {
+            Node parent = path[d - 1];
+            Node top;
+            if (d == 1) {
+                top = rotate(parent, directions[0]);
+                path[--d] = null;
+            } else {
+                Node grand = path[d - 2];
+                boolean xLeft = directions[d - 1], parentLeft = directions[d - 2];
+                if (xLeft == parentLeft) {
+                    top = rotate(grand, parentLeft);
+                    if (!semi)
+                        top = rotate(top, xLeft);
+                } else {
+                    if (parentLeft) grand.left = rotate(parent, xLeft);
+                    else grand.right = rotate(parent, xLeft);
+                    top = rotate(grand, parentLeft);
+                }
+                d -= 2;
+                path[d] = path[d + 1] = null;
+                if (d > 0) {
+                    if (directions[d - 1]) path[d - 1].left = top;
+                    else path[d - 1].right = top;
+                }
+            }
+            x = top;
+        }
+        return x;
+    }
+
+    /**
+     * 把h的左孩子（left为true）或右孩子旋转上来，子树的大小不变
+     */
+    private Node rotate(Node h, boolean left) {
+        Node x;
+        if (left) {
+            x = h.left;
+            h.left = x.right;
+            x.right = h;
+        } else {
+            x = h.right;
+            h.right = x.left;
+            x.left = h;
+        }
+        x.N = h.N;
+        h.N = size(h.left) + size(h.right) + 1;
+        return x;
+    }
+
+    private int size(Node node) {
+        return node == null ? 0 : node.N;
+    }
+
+    private void nullValueCheck(Object... value) {
+        for (Object o : value) {
+            if (o == null)
+                throw new IllegalArgumentException("argument is null");
+        }
+    }
+
+    /**
+     * 基于排名的范围游标，和{@link main.top.kindless.search.redblackbst.RedBlackBST}的游标相同，
+     * <br />
+     * 遍历期间不能访问符号表，否则伸展会改变树的结构
+     */
+    private class Cursor<T> extends RangeCursor<T> {
+
+        private final boolean sortedKeys;
+
+        private final Function<Node, T> element;
+
+        private Deque<Node> stack;
+
+        Cursor(int lo, int hi, boolean descending, boolean sortedKeys, Function<Node, T> element) {
+            super(lo, hi, descending, sortedKeys);
+            this.sortedKeys = sortedKeys;
+            this.element = element;
+        }
+
+        @Override
+        protected T nextElement(boolean first) {
+            if (first) {
+                stack = new ArrayDeque<>();
+                locate(descending ? hi - 1 : lo);
+            }
+            Node node = stack.pop();
+            if (descending) {
+                for (Node x = node.left; x != null; x = x.right)
+                    stack.push(x);
+            } else {
+                for (Node x = node.right; x != null; x = x.left)
+                    stack.push(x);
+            }
+            return element.apply(node);
+        }
+
+        private void locate(int i) {
+            Node node = root;
+            while (node != null) {
+                int t = size(node.left);
+                if (i < t) {
+                    if (!descending)
+                        stack.push(node);
+                    node = node.left;
+                } else if (i > t) {
+                    if (descending)
+                        stack.push(node);
+                    i -= t + 1;
+                    node = node.right;
+                } else {
+                    stack.push(node);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected RangeCursor<T> subCursor(int lo, int hi) {
+            return new Cursor<>(lo, hi, descending, sortedKeys, element);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package main.top.kindless.search.utils;
+
+import main.top.kindless.search.OrderedST;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+
+/**
+ * 两个按键排序的键值对序列的归并连接，一次顺序扫描得到并集、交集或差集，O(m+n)。
+ * <br />
+ * 结果也是按键排序的惰性序列，可以直接交给bulkLoad构建新的符号表，
+ * <br />
+ * 适合数组实现的符号表，或者不能分裂和连接的符号表
+ * @param <K> 键
+ * @param <V> 值
+ */
+public final class MergeJoin<K extends Comparable<K>, V> implements Iterator<Map.Entry<K, V>> {
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    private final int operation;
+
+    private final Iterator<? extends Map.Entry<K, V>> a, b;
+
+    private final BinaryOperator<V> merge;
+
+    /**
+     * 两个序列当前的元素，序列结束时为null
+     */
+    private Map.Entry<K, V> x, y;
+
+    private Map.Entry<K, V> next;
+
+    private MergeJoin(int operation, Iterator<? extends Map.Entry<K, V>> a, Iterator<? extends Map.Entry<K, V>> b, BinaryOperator<V> merge) {
+        this.operation = operation;
+        this.a = Objects.requireNonNull(a);
+        this.b = Objects.requireNonNull(b);
+        this.merge = merge;
+        x = advance(a);
+        y = advance(b);
+        next = compute();
+    }
+
+    /**
+     * 并集
+     * @param merge 两边都有的键，新值是merge(a中的值, b中的值)，返回null时跳过这个键
+     */
+    public static <K extends Comparable<K>, V> MergeJoin<K, V> union(Iterator<? extends Map.Entry<K, V>> a, Iterator<? extends Map.Entry<K, V>> b, BinaryOperator<V> merge) {
+        return new MergeJoin<>(UNION, a, b, Objects.requireNonNull(merge));
+    }
+
+    /**
+     * 交集
+     * @param merge 新值是merge(a中的值, b中的值)，返回null时跳过这个键
+     */
+    public static <K extends Comparable<K>, V> MergeJoin<K, V> intersection(Iterator<? extends Map.Entry<K, V>> a, Iterator<? extends Map.Entry<K, V>> b, BinaryOperator<V> merge) {
+        return new MergeJoin<>(INTERSECTION, a, b, Objects.requireNonNull(merge));
+    }
+
+    /**
+     * 差集，a中有而b中没有的键
+     */
+    public static <K extends Comparable<K>, V> MergeJoin<K, V> difference(Iterator<? extends Map.Entry<K, V>> a, Iterator<? extends Map.Entry<K, V>> b) {
+        return new MergeJoin<>(DIFFERENCE, a, b, null);
+    }
+
+    /**
+     * 有序符号表中所有的键值对，按键从小到大
+     * @param st
+     * @return
+     */
+    public static <K extends Comparable<K>, V> Iterator<Map.Entry<K, V>> entries(OrderedST<K, V> st) {
+        if (st.isEmpty())
+            return Collections.emptyIterator();
+        return st.entries(st.min(), st.max()).iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+        if (next == null)
+            throw new NoSuchElementException();
+        Map.Entry<K, V> entry = next;
+        next = compute();
+        return entry;
+    }
+
+    private Map.Entry<K, V> compute() {
+        while (x != null || y != null) {
+            if (y == null) {
+                if (operation == INTERSECTION)
+                    return null;
+                return takeX();
+            }
+            if (x == null) {
+                if (operation != UNION)
+                    return null;
+                return takeY();
+            }
+            int cmp = x.getKey().compareTo(y.getKey());
+            if (cmp < 0) {
+                Map.Entry<K, V> entry = takeX();
+                if (operation != INTERSECTION)
+                    return entry;
+            } else if (cmp > 0) {
+                Map.Entry<K, V> entry = takeY();
+                if (operation == UNION)
+                    return entry;
+            } else {
+                Map.Entry<K, V> left = takeX(), right = takeY();
+                if (operation == DIFFERENCE)
+                    continue;
+                V value = merge.apply(left.getValue(), right.getValue());
+                if (value != null)
+                    return new AbstractMap.SimpleImmutableEntry<>(left.getKey(), value);
+            }
+        }
+        return null;
+    }
+
+    private Map.Entry<K, V> takeX() {
+        Map.Entry<K, V> entry = x;
+        x = advance(a);
+        return entry;
+    }
+
+    private Map.Entry<K, V> takeY() {
+        Map.Entry<K, V> entry = y;
+        y = advance(b);
+        return entry;
+    }
+
+    private static <K, V> Map.Entry<K, V> advance(Iterator<? extends Map.Entry<K, V>> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
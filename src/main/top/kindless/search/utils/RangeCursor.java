@@ -0,0 +1,141 @@
+package main.top.kindless.search.utils;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 有序符号表的惰性范围游标，按排名区间[lo,hi)描述要遍历的元素，
+ * <br />
+ * 既是迭代器也是可分割迭代器：在开始遍历之前可以从中间排名处分割，
+ * <br />
+ * 分割出的前一半交给另一个线程。子类只需要按顺序取出下一个元素，
+ * <br />
+ * 第一次取元素时才定位到起始位置，所以创建游标不需要任何查找。
+ * <br />
+ * 遍历期间不能修改符号表
+ * @param <T> 元素
+ */
+public abstract class RangeCursor<T> implements Iterator<T>, Spliterator<T> {
+
+    /**
+     * 剩余元素的排名区间[lo,hi)
+     */
+    protected int lo, hi;
+
+    /**
+     * 是否从大到小遍历
+     */
+    protected final boolean descending;
+
+    /**
+     * 是否已经取出过元素，开始之后就不能再分割了
+     */
+    private boolean started;
+
+    private final int characteristics;
+
+    /**
+     *
+     * @param lo 第一个元素的排名
+     * @param hi 最后一个元素的排名加一
+     * @param descending 是否从大到小遍历
+     * @param sortedKeys 元素是否是按自然顺序排列的键
+     */
+    protected RangeCursor(int lo, int hi, boolean descending, boolean sortedKeys) {
+        this.lo = lo;
+        this.hi = Math.max(lo, hi);
+        this.descending = descending;
+        this.characteristics = ORDERED | SIZED | SUBSIZED | NONNULL
+                | (sortedKeys && !descending ? SORTED | DISTINCT : 0);
+    }
+
+    /**
+     * 取出下一个元素，从小到大遍历时它的排名是lo，否则是hi-1
+     * @param first 是否是第一次取元素，需要先定位
+     * @return 元素
+     */
+    protected abstract T nextElement(boolean first);
+
+    /**
+     * 创建一个遍历[lo,hi)的新游标，方向不变
+     * @param lo 第一个元素的排名
+     * @param hi 最后一个元素的排名加一
+     * @return 新游标
+     */
+    protected abstract RangeCursor<T> subCursor(int lo, int hi);
+
+    @Override
+    public boolean hasNext() {
+        return lo < hi;
+    }
+
+    @Override
+    public T next() {
+        if (lo >= hi)
+            throw new NoSuchElementException();
+        T t = nextElement(!started);
+        started = true;
+        if (descending)
+            hi--;
+        else lo++;
+        return t;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (lo >= hi)
+            return false;
+        action.accept(next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        while (lo < hi) {
+            action.accept(next());
+        }
+    }
+
+    /**
+     * 从中间排名处分割，返回遍历顺序中的前一半
+     * @return 前一半，开始遍历之后或者元素太少时返回null
+     */
+    @Override
+    public Spliterator<T> trySplit() {
+        int mid = (lo + hi) >>> 1;
+        if (started || mid == lo)
+            return null;
+        RangeCursor<T> prefix;
+        if (descending) {
+            prefix = subCursor(mid, hi);
+            hi = mid;
+        } else {
+            prefix = subCursor(lo, mid);
+            lo = mid;
+        }
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return hi - lo;
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+
+    /**
+     * 按自然顺序排列，没有比较器
+     */
+    @Override
+    public Comparator<? super T> getComparator() {
+        if ((characteristics & SORTED) != 0)
+            return null;
+        throw new IllegalStateException();
+    }
+}
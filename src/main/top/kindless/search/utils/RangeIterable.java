@@ -0,0 +1,30 @@
+package main.top.kindless.search.utils;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Supplier;
+
+/**
+ * 惰性的范围，每次遍历都创建一个新的游标，
+ * <br />
+ * 所以创建它本身不需要任何查找
+ * @param <T> 元素
+ */
+public class RangeIterable<T> implements Iterable<T> {
+
+    private final Supplier<RangeCursor<T>> cursor;
+
+    public RangeIterable(Supplier<RangeCursor<T>> cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return cursor.get();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return cursor.get();
+    }
+}
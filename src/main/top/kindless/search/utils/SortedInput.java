@@ -0,0 +1,92 @@
+package main.top.kindless.search.utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 批量构建有序符号表时的输入：按键从小到大排列的键值对，
+ * <br />
+ * 读入时检查键不为空并且严格递增
+ * @param <K> 键
+ * @param <V> 值
+ */
+public final class SortedInput<K extends Comparable<K>, V> {
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 前size个是有效的键值对，数组长度可能大于size
+     */
+    public final K[] keys;
+
+    public final V[] values;
+
+    public final int size;
+
+    private SortedInput(K[] keys, V[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * 直接使用已有的数组，不复制
+     * @param keys 严格递增的键
+     * @param values 和键一一对应的值
+     * @param nullValues 是否允许值为空
+     * @return
+     */
+    public static <K extends Comparable<K>, V> SortedInput<K, V> of(K[] keys, V[] values, boolean nullValues) {
+        Objects.requireNonNull(keys);
+        Objects.requireNonNull(values);
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + keys.length + ", " + values.length);
+        for (int i = 0; i < keys.length; i++) {
+            check(i == 0 ? null : keys[i - 1], keys[i], values[i], nullValues);
+        }
+        return new SortedInput<>(keys, values, keys.length);
+    }
+
+    /**
+     * 把迭代器中的键值对读入数组，数组按1.5倍扩容，均摊O(n)
+     * @param sorted 按键从小到大排列、键不重复的键值对
+     * @param nullValues 是否允许值为空
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<K>, V> SortedInput<K, V> drain(Iterator<? extends Map.Entry<K, V>> sorted, boolean nullValues) {
+        Objects.requireNonNull(sorted);
+        K[] keys = (K[]) new Comparable[16];
+        V[] values = (V[]) new Object[16];
+        int n = 0;
+        K last = null;
+        while (sorted.hasNext()) {
+            Map.Entry<K, V> entry = sorted.next();
+            K k = entry.getKey();
+            V v = entry.getValue();
+            check(last, k, v, nullValues);
+            if (n == keys.length) {
+                int capacity = keys.length + (keys.length >> 1);
+                if (capacity < 0 || capacity > MAX_ARRAY_SIZE)
+                    capacity = MAX_ARRAY_SIZE;
+                if (capacity == n)
+                    throw new OutOfMemoryError("too many entries");
+                keys = Arrays.copyOf(keys, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            keys[n] = k;
+            values[n++] = v;
+            last = k;
+        }
+        return new SortedInput<>(keys, values, n);
+    }
+
+    private static <K extends Comparable<K>> void check(K last, K k, Object v, boolean nullValues) {
+        if (k == null || (v == null && !nullValues))
+            throw new IllegalArgumentException("argument is null");
+        if (last != null && last.compareTo(k) >= 0)
+            throw new IllegalArgumentException("keys are not strictly ascending: " + last + ", " + k);
+    }
+}
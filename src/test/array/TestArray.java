@@ -21,6 +21,18 @@ public class TestArray {
         st.forEach((key,value) -> {
             System.out.println("key="+key+", value="+value);
         });
+        System.out.println("删除后的大小："+st.size());
+        ArrayST<Integer,Integer> garbage = new ArrayST<>();
+        for (int i = 0; i < 1000; i++) {
+            garbage.put(i,i);
+        }
+        for (int i = 0; i < 900; i++) {
+            garbage.delete(i);
+            if (garbage.garbageRatio() > .25)
+                throw new IllegalStateException("not compacted: " + garbage.garbageRatio());
+        }
+        System.out.println("删除900个键后的大小："+garbage.size()+"，墓碑比例："+garbage.garbageRatio()
+                +"，线程数："+Thread.activeCount());
 //        System.out.println(st.get("hello"));
 //        System.out.println(st.get(st.get("你好")));
 //        long nanoTime = System.nanoTime();
@@ -0,0 +1,101 @@
+package test.binary;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.binary.BinarySearchST;
+import main.top.kindless.search.binary.BufferedBinarySearchST;
+import main.top.kindless.search.utils.MergeJoin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestBufferedBinarySearch {
+
+    /**
+     * 累加查询结果，防止查询被优化掉
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        correctness();
+        randomInserts(1 << 17);
+        randomInserts(1 << 20);
+    }
+
+    /**
+     * 和TreeMap对比，键的范围小时墓碑和缓冲区中的键会被反复删除和插入
+     */
+    private static void correctness() {
+        BufferedBinarySearchST<Integer, Integer> st = new BufferedBinarySearchST<>();
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        Random random = new Random(47);
+        for (int i = 0; i < 300000; i++) {
+            int key = random.nextInt(20000);
+            if (random.nextInt(3) == 0) {
+                st.delete(key);
+                map.remove(key);
+            } else {
+                st.put(key, i);
+                map.put(key, i);
+            }
+            int probe = random.nextInt(20000);
+            if (st.size() != map.size() || st.rank(probe) != map.headMap(probe).size()
+                    || !Objects.equals(st.get(probe), map.get(probe))
+                    || !Objects.equals(st.floor(probe), map.floorKey(probe))
+                    || !Objects.equals(st.ceiling(probe), map.ceilingKey(probe)))
+                throw new IllegalStateException("differs at " + probe);
+            if (i % 10000 == 0) {
+                List<Integer> keys = new ArrayList<>();
+                st.descendingKeys(5000, 15000).forEach(keys::add);
+                if (!keys.equals(new ArrayList<>(map.subMap(5000, true, 15000, true).descendingKeySet())))
+                    throw new IllegalStateException("keys differ");
+            }
+        }
+        System.out.println("BufferedBinarySearchST与TreeMap一致");
+    }
+
+    /**
+     * 随机顺序插入n个键，然后和同样n个键的BinarySearchST比较rank。BinarySearchST只插入前n/8个键，否则太慢
+     */
+    private static void randomInserts(int n) {
+        Integer[] keys = new Integer[n];
+        Random random = new Random(47);
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        for (int round = 0; round < 2; round++) {
+            BinarySearchST<Integer, Integer> binary = new BinarySearchST<>();
+            long nanoTime = System.nanoTime();
+            for (int i = 0; i < n >> 3; i++) {
+                binary.put(keys[i], i);
+            }
+            long shifted = System.nanoTime() - nanoTime;
+            BufferedBinarySearchST<Integer, Integer> buffered = new BufferedBinarySearchST<>();
+            nanoTime = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                buffered.put(keys[i], i);
+            }
+            long merged = System.nanoTime() - nanoTime;
+            System.out.println("随机插入 BinarySearchST " + (n >> 3) + "个键：" + shifted / 1000000 + "毫秒，BufferedBinarySearchST "
+                    + n + "个键：" + merged / 1000000 + "毫秒");
+            BinarySearchST<Integer, Integer> packed = BinarySearchST.bulkLoad(MergeJoin.entries(buffered));
+            System.out.print("随机rank BinarySearchST：" + ranks(packed, keys) + "纳秒/次，BufferedBinarySearchST："
+                    + ranks(buffered, keys) + "纳秒/次，");
+            buffered.flush();
+            System.out.println("flush之后：" + ranks(buffered, keys) + "纳秒/次");
+        }
+    }
+
+    private static long ranks(OrderedST<Integer, Integer> st, Integer[] keys) {
+        long nanoTime = System.nanoTime();
+        long sum = 0;
+        for (Integer key : keys) {
+            sum += st.rank(key);
+        }
+        long time = System.nanoTime() - nanoTime;
+        sink += sum;
+        return time / keys.length;
+    }
+}
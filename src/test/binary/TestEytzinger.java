@@ -0,0 +1,60 @@
+package test.binary;
+
+import main.top.kindless.search.binary.BinarySearchST;
+import main.top.kindless.search.binary.EytzingerST;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+public class TestEytzinger {
+
+    private static final int N = 1 << 22;
+
+    private static final int LOOKUPS = 1 << 22;
+
+    /**
+     * 累加查询结果，防止查询被优化掉
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        Integer[] keys = new Integer[N];
+        for (int i = 0; i < N; i++) {
+            //键都是偶数，奇数的查询都不命中
+            keys[i] = i << 1;
+        }
+        BinarySearchST<Integer, Integer> st = BinarySearchST.fromSorted(keys, keys);
+        long nanoTime = System.nanoTime();
+        EytzingerST<Integer, Integer> frozen = st.freeze();
+        System.out.println("冻结" + N + "个键：" + (System.nanoTime() - nanoTime) / 1000000 + "毫秒");
+        Random random = new Random(47);
+        Integer[] probes = new Integer[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = random.nextInt(N << 1);
+        }
+        for (Integer probe : Arrays.copyOf(probes, 100000)) {
+            if (st.rank(probe) != frozen.rank(probe) || !st.floor(probe).equals(frozen.floor(probe))
+                    || st.get(probe) != frozen.get(probe))
+                throw new IllegalStateException("differs at " + probe);
+        }
+        for (int round = 0; round < 3; round++) {
+            System.out.println("rank BinarySearchST：" + lookup(st::rank, probes) + "纳秒/次，EytzingerST："
+                    + lookup(frozen::rank, probes) + "纳秒/次");
+            System.out.println("get BinarySearchST：" + lookup(k -> st.get(k) == null ? 0 : 1, probes)
+                    + "纳秒/次，EytzingerST：" + lookup(k -> frozen.get(k) == null ? 0 : 1, probes) + "纳秒/次");
+        }
+    }
+
+    private static long lookup(ToIntFunction<Integer> search, Integer[] probes) {
+        System.gc();
+        long nanoTime = System.nanoTime();
+        long sum = 0;
+        for (Integer probe : probes) {
+            sum += search.applyAsInt(probe);
+        }
+        long time = System.nanoTime() - nanoTime;
+        sink += sum;
+        return time / probes.length;
+    }
+}
@@ -0,0 +1,131 @@
+package test.binary;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.binary.BinarySearchST;
+import main.top.kindless.search.binary.LearnedIndexST;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestLearnedIndex {
+
+    private static final int N = 1 << 22;
+
+    private static final int LOOKUPS = 1 << 22;
+
+    /**
+     * 累加查询结果，防止查询被优化掉
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        correctness();
+        Random random = new Random(47);
+        long[] uniform = new long[N];
+        for (int i = 0; i < N; i++) {
+            uniform[i] = random.nextLong() >>> 12;
+        }
+        compare("均匀分布", uniform);
+        compare("时间戳", timestamps(random));
+        appends(timestamps(random));
+    }
+
+    /**
+     * 和TreeMap对比，大部分键按时间顺序追加，少量乱序到达的键插入中间
+     */
+    private static void correctness() {
+        LearnedIndexST<Long, Integer> st = new LearnedIndexST<>();
+        TreeMap<Long, Integer> map = new TreeMap<>();
+        Random random = new Random(47);
+        long clock = 0;
+        for (int i = 0; i < 300000; i++) {
+            long key = random.nextInt(10) < 8 ? (clock += 1 + random.nextInt(100)) : (long) (random.nextDouble() * clock);
+            if (random.nextInt(4) == 0) {
+                st.delete(key);
+                map.remove(key);
+            } else {
+                st.put(key, i);
+                map.put(key, i);
+            }
+            long probe = (long) (random.nextDouble() * clock);
+            if (st.size() != map.size() || i % 100 == 0 && st.rank(probe) != map.headMap(probe).size()
+                    || !Objects.equals(st.get(probe), map.get(probe))
+                    || !Objects.equals(st.floor(probe), map.floorKey(probe))
+                    || !Objects.equals(st.ceiling(probe), map.ceilingKey(probe)))
+                throw new IllegalStateException("differs at " + probe);
+        }
+        System.out.println("LearnedIndexST与TreeMap一致，" + st.segmentCount() + "段，最大误差" + st.maxError());
+    }
+
+    /**
+     * 模拟的事件时间戳（毫秒）：到达率按天周期变化，间隔是指数分布，偶尔有长时间的停顿
+     */
+    private static long[] timestamps(Random random) {
+        long[] keys = new long[N];
+        double clock = 1.6e12;
+        for (int i = 0; i < N; i++) {
+            double rate = 1 + 0.8 * Math.sin(2 * Math.PI * clock / 8.64e7);
+            clock += 1 - Math.log(1 - random.nextDouble()) * 20 / rate;
+            if (random.nextInt(100000) == 0)
+                clock += 3.6e6;
+            keys[i] = (long) clock;
+        }
+        return keys;
+    }
+
+    private static void compare(String name, long[] raw) {
+        Long[] keys = Arrays.stream(raw).sorted().distinct().boxed().toArray(Long[]::new);
+        BinarySearchST<Long, Long> binary = BinarySearchST.fromSorted(keys, keys);
+        long nanoTime = System.nanoTime();
+        LearnedIndexST<Long, Long> learned = LearnedIndexST.fromSorted(keys, keys, 32);
+        long build = System.nanoTime() - nanoTime;
+        LearnedIndexST<Long, Long> coarse = LearnedIndexST.fromSorted(keys, keys, 256);
+        System.out.println(name + "：" + keys.length + "个键，拟合耗时" + build / 1000000 + "毫秒");
+        System.out.println("epsilon=32：" + learned.segmentCount() + "段，最大误差" + learned.maxError() + "，模型"
+                + learned.modelBytes() + "字节；epsilon=256：" + coarse.segmentCount() + "段，模型" + coarse.modelBytes() + "字节");
+        Random random = new Random(31);
+        Long[] probes = new Long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            //一半命中，一半落在键之间
+            Long key = keys[random.nextInt(keys.length)];
+            probes[i] = random.nextBoolean() ? key : key + 1;
+        }
+        for (Long probe : Arrays.copyOf(probes, 100000)) {
+            if (binary.rank(probe) != learned.rank(probe) || binary.rank(probe) != coarse.rank(probe))
+                throw new IllegalStateException("rank differs at " + probe);
+        }
+        for (int round = 0; round < 3; round++) {
+            System.out.println("rank BinarySearchST：" + ranks(binary, probes) + "纳秒/次，LearnedIndexST(32)："
+                    + ranks(learned, probes) + "纳秒/次，LearnedIndexST(256)：" + ranks(coarse, probes) + "纳秒/次");
+        }
+    }
+
+    /**
+     * 按时间顺序追加，模型只扩展最后一段
+     */
+    private static void appends(long[] raw) {
+        for (int round = 0; round < 3; round++) {
+            LearnedIndexST<Long, Long> st = new LearnedIndexST<>(N, 32);
+            long nanoTime = System.nanoTime();
+            for (long key : raw) {
+                st.put(key, key);
+            }
+            long time = System.nanoTime() - nanoTime;
+            System.out.println("顺序追加" + raw.length + "个时间戳：" + time / raw.length + "纳秒/次，" + st.segmentCount() + "段");
+        }
+    }
+
+    private static long ranks(OrderedST<Long, Long> st, Long[] probes) {
+        System.gc();
+        long nanoTime = System.nanoTime();
+        long sum = 0;
+        for (Long probe : probes) {
+            sum += st.rank(probe);
+        }
+        long time = System.nanoTime() - nanoTime;
+        sink += sum;
+        return time / probes.length;
+    }
+}
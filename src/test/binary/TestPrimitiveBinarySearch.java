@@ -0,0 +1,72 @@
+package test.binary;
+
+import main.top.kindless.search.binary.BinarySearchST;
+import main.top.kindless.search.binary.IntBinarySearchST;
+import main.top.kindless.search.binary.LongBinarySearchST;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestPrimitiveBinarySearch {
+
+    private static final int N = 1 << 22;
+
+    private static final int LOOKUPS = 1 << 22;
+
+    /**
+     * 累加查询结果，防止查询被优化掉
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        Random random = new Random(47);
+        long[] keys = random.longs(N, 0, 1L << 40).sorted().distinct().toArray();
+        int n = keys.length;
+        Long[] boxed = Arrays.stream(keys).boxed().toArray(Long[]::new);
+        BinarySearchST<Long, Long> binary = BinarySearchST.fromSorted(boxed, boxed);
+        LongBinarySearchST<Long> primitive = LongBinarySearchST.fromSorted(keys, boxed);
+        int[] ints = Arrays.stream(keys).mapToInt(k -> (int) (k >>> 9)).distinct().toArray();
+        IntBinarySearchST<Long> intST = IntBinarySearchST.fromSorted(ints, Arrays.copyOf(boxed, ints.length));
+        long[] probes = new long[LOOKUPS];
+        Long[] boxedProbes = new Long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = keys[random.nextInt(n)] + random.nextInt(2);
+            boxedProbes[i] = probes[i];
+        }
+        for (int i = 0; i < 100000; i++) {
+            long lo = probes[i], hi = lo + random.nextInt(1 << 20);
+            if (binary.rank(boxedProbes[i]) != primitive.rank(lo) || binary.size(lo, hi) != primitive.size(lo, hi)
+                    || primitive.keys(lo, hi).length != primitive.size(lo, hi))
+                throw new IllegalStateException("differs at " + lo);
+        }
+        System.out.println(n + "个键，结果一致");
+        for (int round = 0; round < 3; round++) {
+            System.gc();
+            long nanoTime = System.nanoTime();
+            long sum = 0;
+            for (Long probe : boxedProbes) {
+                sum += binary.rank(probe);
+            }
+            long boxedRank = System.nanoTime() - nanoTime;
+            nanoTime = System.nanoTime();
+            for (long probe : probes) {
+                sum += primitive.rank(probe);
+            }
+            long longRank = System.nanoTime() - nanoTime;
+            nanoTime = System.nanoTime();
+            for (long probe : probes) {
+                sum += intST.rank((int) (probe >>> 9));
+            }
+            long intRank = System.nanoTime() - nanoTime;
+            nanoTime = System.nanoTime();
+            for (long probe : probes) {
+                sum += primitive.size(probe, probe + (1 << 24));
+            }
+            long rangeCount = System.nanoTime() - nanoTime;
+            sink += sum;
+            System.out.println("rank BinarySearchST<Long>：" + boxedRank / LOOKUPS + "纳秒/次，LongBinarySearchST："
+                    + longRank / LOOKUPS + "纳秒/次，IntBinarySearchST：" + intRank / LOOKUPS + "纳秒/次，LongBinarySearchST.size(lo,hi)："
+                    + rangeCount / LOOKUPS + "纳秒/次");
+        }
+    }
+}
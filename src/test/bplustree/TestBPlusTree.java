@@ -0,0 +1,130 @@
+package test.bplustree;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.bplustree.BPlusTreeST;
+import main.top.kindless.search.redblackbst.RedBlackBST;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestBPlusTree {
+
+    public static void main(String[] args) {
+        correctness();
+        int n = 1 << 21;
+        Random random = new Random(47);
+        //键值对都是同一批Integer对象，内存只统计结构的开销
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        Integer[] sorted = Arrays.stream(keys).sorted().distinct().toArray(Integer[]::new);
+        long before = usedMemory();
+        OrderedST<Integer, Integer> redBlackBST = new RedBlackBST<>();
+        for (Integer key : keys) {
+            redBlackBST.put(key, key);
+        }
+        long redBlack = usedMemory() - before;
+        OrderedST<Integer, Integer> bPlusTree = new BPlusTreeST<>();
+        for (Integer key : keys) {
+            bPlusTree.put(key, key);
+        }
+        long bPlus = usedMemory() - before - redBlack;
+        before = usedMemory();
+        OrderedST<Integer, Integer> loaded = BPlusTreeST.bulkLoad(new Iterator<Map.Entry<Integer, Integer>>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < sorted.length;
+            }
+
+            @Override
+            public Map.Entry<Integer, Integer> next() {
+                Integer key = sorted[i++];
+                return new AbstractMap.SimpleImmutableEntry<>(key, key);
+            }
+        });
+        long bulk = usedMemory() - before;
+        System.out.println("红黑树：" + redBlack / n + "字节/个，B+树：" + bPlus / n + "字节/个，批量构建的B+树：" + bulk / n + "字节/个");
+        Integer[] probes = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            probes[i] = random.nextBoolean() ? keys[random.nextInt(n)] : random.nextInt();
+        }
+        for (int round = 0; round < 3; round++) {
+            for (OrderedST<Integer, Integer> st : Arrays.asList(redBlackBST, bPlusTree, loaded)) {
+                String name = st == loaded ? "BPlusTreeST(bulk)" : st.getClass().getSimpleName();
+                long nanoTime = System.nanoTime();
+                long sum = 0;
+                for (Integer probe : probes) {
+                    Integer value = st.get(probe);
+                    if (value != null)
+                        sum += value;
+                }
+                long get = System.nanoTime() - nanoTime;
+                nanoTime = System.nanoTime();
+                for (Integer probe : probes) {
+                    Integer floor = st.floor(probe);
+                    if (floor != null)
+                        sum += floor;
+                }
+                long floor = System.nanoTime() - nanoTime;
+                nanoTime = System.nanoTime();
+                int scanned = 0;
+                for (int i = 0; i < n / 1000; i++) {
+                    for (Integer key : st.keys(probes[i], probes[i] + (1 << 22))) {
+                        sum += key;
+                        scanned++;
+                    }
+                }
+                long scan = System.nanoTime() - nanoTime;
+                System.out.println(name + " get：" + n * 1000000L / get + "次/毫秒，floor：" + n * 1000000L / floor
+                        + "次/毫秒，范围查找：" + scanned * 1000000L / scan + "个键/毫秒（" + sum + "）");
+            }
+        }
+    }
+
+    /**
+     * 和TreeMap对比插入、删除以及有序操作的结果，阶数很小时会频繁地分裂和合并
+     */
+    private static void correctness() {
+        for (int order : new int[]{4, 5, 64}) {
+            BPlusTreeST<Integer, Integer> st = new BPlusTreeST<>(order);
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            Random random = new Random(order);
+            for (int i = 0; i < 200000; i++) {
+                int key = random.nextInt(10000);
+                if (random.nextInt(3) == 0) {
+                    st.delete(key);
+                    map.remove(key);
+                } else {
+                    st.put(key, i);
+                    map.put(key, i);
+                }
+                int probe = random.nextInt(10000);
+                if (st.size() != map.size() || st.rank(probe) != map.headMap(probe).size()
+                        || !String.valueOf(st.floor(probe)).equals(String.valueOf(map.floorKey(probe)))
+                        || !String.valueOf(st.ceiling(probe)).equals(String.valueOf(map.ceilingKey(probe))))
+                    throw new IllegalStateException("order " + order + " differs at " + probe);
+            }
+            int i = 0;
+            for (Integer key : map.keySet()) {
+                if (!key.equals(st.select(i++)))
+                    throw new IllegalStateException("order " + order + " select " + (i - 1));
+            }
+            System.out.println("阶数" + order + "：" + st.size() + "个键，高度" + st.height() + "，与TreeMap一致");
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
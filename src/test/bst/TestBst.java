@@ -2,12 +2,18 @@ package test.bst;
 
 import main.top.kindless.search.OrderedST;
 import main.top.kindless.search.ST;
+import main.top.kindless.search.binary.BinarySearchST;
 import main.top.kindless.search.bst.BST;
+import main.top.kindless.search.redblackbst.RedBlackBST;
 import main.top.kindless.search.utils.CastUtil;
 import test.annotation.Test;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 
 import static main.top.kindless.search.utils.CastUtil.cast;
@@ -28,6 +34,217 @@ public class TestBst {
             }
         }
     }
+
+    /**
+     * 有序插入会让BST退化成链表，插入和删除都是非递归的，不会栈溢出
+     */
+    @Test
+    public void sortedPutDelete(){
+        int n = 200000;
+        for (OrderedST<Integer,Integer> st : Arrays.<OrderedST<Integer,Integer>>asList(new BST<>(), new RedBlackBST<>())) {
+            long nanoTime = System.nanoTime();
+            int limit = st instanceof BST ? n / 10 : n;
+            for (int i = 0; i < limit; i++)
+                st.put(i, i);
+            for (int i = 0; i < limit; i += 2)
+                st.delete(i);
+            System.out.println(st.getClass().getSimpleName() + " 有序插入" + limit + "个键再删除一半：" + (System.nanoTime() - nanoTime) / 1000000
+                    + "毫秒，剩余" + st.size() + "个，最小键" + st.min() + "，最大键" + st.max());
+        }
+        Random random = new Random(47);
+        int[] keys = new int[n * 5];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = random.nextInt();
+        for (OrderedST<Integer,Integer> st : Arrays.<OrderedST<Integer,Integer>>asList(new BST<>(), new RedBlackBST<>())) {
+            long nanoTime = System.nanoTime();
+            for (int key : keys)
+                st.put(key, key);
+            for (int i = 0; i < keys.length; i += 2)
+                st.delete(keys[i]);
+            System.out.println(st.getClass().getSimpleName() + " 随机put+delete：" + keys.length * 3 / 2 * 1000000L / (System.nanoTime() - nanoTime)
+                    + "次/毫秒（剩余" + st.size() + "）");
+        }
+    }
+
+    /**
+     * 已排序的数据：逐个put和批量构建的耗时对比，BinarySearchST逐个put是O(n^2)的，只插入一小部分
+     */
+    @Test
+    public void bulkLoad(){
+        int n = 1 << 22;
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = i;
+        RedBlackBST<Integer,Integer> loaded = null, parallel = null;
+        //每轮都先释放上一轮的树，避免老年代的回收影响计时
+        for (int round = 0; round < 3; round++) {
+            loaded = parallel = null;
+            System.gc();
+            long nanoTime = System.nanoTime();
+            OrderedST<Integer,Integer> redBlackBST = new RedBlackBST<>();
+            for (Integer key : keys)
+                redBlackBST.put(key, key);
+            long put = System.nanoTime() - nanoTime;
+            redBlackBST = null;
+            System.gc();
+            nanoTime = System.nanoTime();
+            loaded = RedBlackBST.fromSorted(keys, keys);
+            long load = System.nanoTime() - nanoTime;
+            nanoTime = System.nanoTime();
+            parallel = RedBlackBST.fromSorted(keys, keys, true);
+            long parallelLoad = System.nanoTime() - nanoTime;
+            System.out.println("RedBlackBST " + n + "个有序键，put：" + put / 1000000 + "毫秒，fromSorted：" + load / 1000000
+                    + "毫秒，并行fromSorted：" + parallelLoad / 1000000 + "毫秒");
+        }
+        long nanoTime = System.nanoTime();
+        BST<Integer,Integer> bst = BST.fromSorted(keys, keys);
+        System.out.println("BST fromSorted：" + (System.nanoTime() - nanoTime) / 1000000 + "毫秒");
+        int m = n / 64;
+        nanoTime = System.nanoTime();
+        OrderedST<Integer,Integer> binary = new BinarySearchST<>();
+        for (int i = m - 1; i >= 0; i--)
+            binary.put(keys[i], keys[i]);
+        long put = System.nanoTime() - nanoTime;
+        nanoTime = System.nanoTime();
+        BinarySearchST<Integer,Integer> packed = BinarySearchST.fromSorted(keys, keys);
+        System.out.println("BinarySearchST 逆序put " + m + "个键：" + put / 1000000 + "毫秒，fromSorted " + n + "个键："
+                + (System.nanoTime() - nanoTime) / 1000000 + "毫秒");
+        for (int i = 0; i < n; i += 997) {
+            Integer key = keys[i];
+            if (!key.equals(loaded.get(key)) || !key.equals(parallel.get(key)) || !key.equals(bst.get(key))
+                    || !key.equals(packed.get(key)) || loaded.rank(key) != i || !key.equals(bst.select(i)))
+                throw new IllegalStateException("bulk load differs at " + key);
+        }
+    }
+
+    /**
+     * 过期一段时间范围内的键：deleteRange和逐个delete的耗时对比
+     */
+    @Test
+    public void deleteRange(){
+        int n = 1 << 21;
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = i;
+        int lo = n / 4, hi = lo + (1 << 20) - 1;
+        for (OrderedST<Integer,Integer> st : Arrays.<OrderedST<Integer,Integer>>asList(RedBlackBST.fromSorted(keys, keys),
+                BST.fromSorted(keys, keys), BinarySearchST.fromSorted(keys, keys))) {
+            long nanoTime = System.nanoTime();
+            int deleted = st.deleteRange(lo, hi);
+            long range = System.nanoTime() - nanoTime;
+            if (deleted != hi - lo + 1 || st.size() != n - deleted || st.floor(hi) != lo - 1 || st.ceiling(lo) != hi + 1)
+                throw new IllegalStateException(st.getClass().getSimpleName() + " deleteRange");
+            System.out.println(st.getClass().getSimpleName() + " deleteRange删除" + deleted + "个键：" + range / 1000 + "微秒");
+        }
+        RedBlackBST<Integer,Integer> redBlackBST = RedBlackBST.fromSorted(keys, keys);
+        long nanoTime = System.nanoTime();
+        for (int i = lo; i <= hi; i++)
+            redBlackBST.delete(i);
+        System.out.println("RedBlackBST 逐个delete" + (hi - lo + 1) + "个键：" + (System.nanoTime() - nanoTime) / 1000 + "微秒");
+        RedBlackBST<Integer,Integer> right = redBlackBST.split(n / 2);
+        RedBlackBST<Integer,Integer> joined = RedBlackBST.join(redBlackBST, right);
+        if (joined.size() != n - (hi - lo + 1) || !redBlackBST.isEmpty())
+            throw new IllegalStateException("split/join");
+    }
+
+    /**
+     * 两个各有一百万个键、一半重叠的表：并集和逐个put的耗时对比，以及交集、差集
+     */
+    @Test
+    public void setAlgebra(){
+        int n = 1 << 20;
+        Integer[] even = new Integer[n], third = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            even[i] = i * 2;
+            third[i] = i * 3;
+        }
+        RedBlackBST<Integer,Integer> a = RedBlackBST.fromSorted(even, even);
+        RedBlackBST<Integer,Integer> b = RedBlackBST.fromSorted(third, third);
+        long nanoTime = System.nanoTime();
+        for (Integer key : third)
+            a.put(key, a.contains(key) ? a.get(key) + key : key);
+        System.out.println("RedBlackBST 逐个put合并：" + (System.nanoTime() - nanoTime) / 1000000 + "毫秒，" + a.size() + "个键");
+        a = RedBlackBST.fromSorted(even, even);
+        nanoTime = System.nanoTime();
+        RedBlackBST<Integer,Integer> union = RedBlackBST.union(a, b, Integer::sum);
+        System.out.println("RedBlackBST union：" + (System.nanoTime() - nanoTime) / 1000000 + "毫秒，" + union.size() + "个键，"
+                + Runtime.getRuntime().availableProcessors() + "个核心");
+        nanoTime = System.nanoTime();
+        RedBlackBST<Integer,Integer> intersection = RedBlackBST.intersection(RedBlackBST.fromSorted(even, even),
+                RedBlackBST.fromSorted(third, third), Integer::sum);
+        RedBlackBST<Integer,Integer> difference = RedBlackBST.difference(RedBlackBST.fromSorted(even, even),
+                RedBlackBST.fromSorted(third, third));
+        System.out.println("RedBlackBST intersection+difference：" + (System.nanoTime() - nanoTime) / 1000000 + "毫秒，"
+                + intersection.size() + "+" + difference.size() + "个键");
+        BinarySearchST<Integer,Integer> x = BinarySearchST.fromSorted(even, even);
+        BinarySearchST<Integer,Integer> y = BinarySearchST.fromSorted(third, third);
+        nanoTime = System.nanoTime();
+        BinarySearchST<Integer,Integer> merged = BinarySearchST.union(x, y, Integer::sum);
+        System.out.println("BinarySearchST union：" + (System.nanoTime() - nanoTime) / 1000000 + "毫秒，" + merged.size() + "个键");
+        if (union.size() != merged.size() || intersection.size() + difference.size() != n
+                || !union.get(6).equals(12) || !merged.get(6).equals(12) || !intersection.get(6).equals(12) || difference.contains(6))
+            throw new IllegalStateException("set algebra");
+    }
+
+    /**
+     * 排行榜式的rank/select查询，借助子树大小N，每次查询只需要一次向下查找
+     */
+    @Test
+    public void rankSelect(){
+        int n = 1000000;
+        Random random = new Random(47);
+        OrderedST<Integer,Integer> bst = new BST<>();
+        OrderedST<Integer,Integer> redBlackBST = new RedBlackBST<>();
+        for (int i = 0; i < n; i++) {
+            int score = random.nextInt();
+            bst.put(score, i);
+            redBlackBST.put(score, i);
+        }
+        for (OrderedST<Integer,Integer> st : Arrays.asList(bst, redBlackBST)) {
+            long nanoTime = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                int rank = st.rank(random.nextInt());
+                sum += st.select(Math.min(rank, st.size() - 1));
+                sum += st.size(i, i + (1 << 20));
+            }
+            System.out.println(st.getClass().getSimpleName() + " rank+select+size：" + n * 1000000L / (System.nanoTime() - nanoTime)
+                    + "次/毫秒（" + sum + "）");
+        }
+    }
+
+    /**
+     * 分页扫描：只读取范围中的前100个键，耗时应该和范围大小无关
+     */
+    @Test
+    public void rangeScan(){
+        int n = 1000000;
+        OrderedST<Integer,Integer> bst = new BST<>();
+        OrderedST<Integer,Integer> redBlackBST = new RedBlackBST<>();
+        OrderedST<Integer,Integer> binarySearchST = new BinarySearchST<>(n);
+        Random random = new Random(47);
+        for (int i = 0; i < n; i++) {
+            int key = random.nextInt(n * 10);
+            bst.put(key, i);
+            redBlackBST.put(key, i);
+        }
+        for (int i = 0; i < n; i++) {
+            binarySearchST.put(i * 10, i);
+        }
+        for (OrderedST<Integer,Integer> st : Arrays.asList(bst, redBlackBST, binarySearchST)) {
+            long nanoTime = System.nanoTime();
+            long sum = 0;
+            for (int page = 0; page < 10000; page++) {
+                int lo = random.nextInt(n * 9);
+                Iterator<Map.Entry<Integer,Integer>> iterator = st.entries(lo, n * 10).iterator();
+                for (int i = 0; i < 100 && iterator.hasNext(); i++) {
+                    sum += iterator.next().getValue();
+                }
+            }
+            System.out.println(st.getClass().getSimpleName() + " 每页100条：" + (System.nanoTime() - nanoTime) / 10000 + "纳秒/页（" + sum + "）");
+        }
+    }
+
     @Test
     public void test(){
         OrderedST<Integer,String> st = new BST<>();
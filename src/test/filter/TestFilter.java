@@ -0,0 +1,89 @@
+package test.filter;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.filter.FilteredST;
+import main.top.kindless.search.hash.SeparateChainingHashST;
+import main.top.kindless.search.redblackbst.RedBlackBST;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class TestFilter {
+
+    private static final int N = 1000000;
+
+    public static void main(String[] args) {
+        Integer[] keys = new Integer[N];
+        Integer[] queries = new Integer[N];
+        Random random = new Random(47);
+        for (int i = 0; i < N; i++) {
+            keys[i] = random.nextInt() & ~1;
+        }
+        //70%的查询不存在，不存在的键都是奇数，和存在的键混在一起
+        for (int i = 0; i < N; i++) {
+            queries[i] = random.nextInt(10) < 7 ? random.nextInt() | 1 : keys[random.nextInt(N)];
+        }
+        for (int round = 0; round < 3; round++) {
+            bench("SeparateChainingHashST", SeparateChainingHashST::new, keys, queries);
+            bench("SeparateChainingHashST + bloom", () -> FilteredST.bloom(new SeparateChainingHashST<Integer, Integer>(), N, .01), keys, queries);
+            bench("SeparateChainingHashST + cuckoo", () -> FilteredST.cuckoo(new SeparateChainingHashST<Integer, Integer>(), N), keys, queries);
+            bench("RedBlackBST", RedBlackBST::new, keys, queries);
+            bench("RedBlackBST + bloom", () -> FilteredST.bloom(new RedBlackBST<Integer, Integer>(), N, .01), keys, queries);
+        }
+        collidingKeys();
+    }
+
+    /**
+     * hashCode相同的键在布谷鸟过滤器里只能放8个，多出来的进入溢出集合，过滤器不会无限扩容
+     */
+    private static void collidingKeys() {
+        //"Aa"和"BB"的hashCode相同，由它们拼成的字符串hashCode都相同
+        FilteredST<String, Integer> strings = FilteredST.cuckoo(new SeparateChainingHashST<String, Integer>(), 1000);
+        for (int i = 0; i < 1 << 10; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int bit = 0; bit < 10; bit++) {
+                sb.append((i >>> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            strings.put(sb.toString(), i);
+        }
+        if (strings.size() != 1 << 10 || strings.get("AaAaAaAaAaAaAaAaAaAa") != 0 || strings.get("BBBBBBBBBBBBBBBBBBBB") != (1 << 10) - 1)
+            throw new IllegalStateException("colliding strings");
+        FilteredST<Long, Integer> longs = FilteredST.cuckoo(new RedBlackBST<Long, Integer>(), 100);
+        int n = 10000;
+        for (int i = 0; i < n; i++) {
+            //hashCode都是0
+            longs.put((long) i << 32 | i, i);
+        }
+        for (int i = 0; i < n; i += 2) {
+            longs.delete((long) i << 32 | i);
+        }
+        for (int i = 0; i < n; i++) {
+            Integer value = longs.get((long) i << 32 | i);
+            if (i % 2 == 0 ? value != null : value == null || value != i)
+                throw new IllegalStateException("colliding longs differ at " + i);
+        }
+        System.out.println("同hashCode的键：字符串溢出" + strings.overflowSize() + "个，Long溢出" + longs.overflowSize()
+                + "个，重建" + longs.rebuildNum() + "次");
+    }
+
+    private static void bench(String name, Supplier<ST<Integer, Integer>> supplier, Integer[] keys, Integer[] queries) {
+        ST<Integer, Integer> st = supplier.get();
+        for (Integer key : keys) {
+            st.put(key, key);
+        }
+        long nanoTime = System.nanoTime();
+        long hit = 0;
+        for (Integer query : queries) {
+            if (st.get(query) != null)
+                hit++;
+        }
+        long get = System.nanoTime() - nanoTime;
+        String metrics = "";
+        if (st instanceof FilteredST) {
+            FilteredST<Integer, Integer> filtered = (FilteredST<Integer, Integer>) st;
+            metrics = "，预计误判率：" + String.format("%.4f", filtered.expectedFalsePositiveRate())
+                    + "，实际误判率：" + String.format("%.4f", filtered.observedFalsePositiveRate());
+        }
+        System.out.println(name + " 查询：" + queries.length * 1000000L / get + "次/毫秒（命中" + hit + "）" + metrics);
+    }
+}
@@ -0,0 +1,137 @@
+package test.hash;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.hash.ConcurrentHashST;
+import main.top.kindless.search.hash.SeparateChainingHashST;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+public class TestConcurrentHash {
+
+    private static final int KEYS = 1 << 20;
+
+    private static final long DURATION = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores * 2; threads <<= 1) {
+            ConcurrentHashST<Integer, Integer> st = new ConcurrentHashST<>();
+            SeparateChainingHashST<Integer, Integer> locked = new SeparateChainingHashST<>();
+            for (int i = 0; i < KEYS; i++) {
+                st.put(i, i);
+                locked.put(i, i);
+            }
+            System.out.println(threads + "线程 ConcurrentHashST：" + bench(st, threads) + "次/毫秒，"
+                    + "全局锁 SeparateChainingHashST：" + bench(synchronizedST(locked), threads) + "次/毫秒");
+        }
+        collidingKeys();
+    }
+
+    /**
+     * hashCode全部相同的键落在同一个树化的桶里，写操作原地修改红黑树
+     */
+    private static void collidingKeys() {
+        for (int n = 8000; n <= 64000; n <<= 1) {
+            ConcurrentHashST<Colliding, Integer> st = new ConcurrentHashST<>();
+            long currentTimeMillis = System.currentTimeMillis();
+            for (int i = 0; i < n; i++) {
+                st.put(new Colliding(i), i);
+            }
+            for (int i = 0; i < n; i += 2) {
+                st.delete(new Colliding(i));
+            }
+            long time = System.currentTimeMillis() - currentTimeMillis;
+            for (int i = 0; i < n; i++) {
+                Integer value = st.get(new Colliding(i));
+                if (i % 2 == 0 ? value != null : value == null || value != i)
+                    throw new IllegalStateException("differs at " + i);
+            }
+            System.out.println(n + "个同hash键插入并删除一半：" + time + "毫秒，" + st.treeNum() + "棵树");
+        }
+    }
+
+    private static final class Colliding implements Comparable<Colliding> {
+
+        private final int value;
+
+        Colliding(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).value == value;
+        }
+
+        @Override
+        public int compareTo(Colliding o) {
+            return Integer.compare(value, o.value);
+        }
+    }
+
+    /**
+     * 95%读，5%写
+     */
+    private static long bench(ST<Integer, Integer> st, int threads) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch latch = new CountDownLatch(threads);
+        long end = System.currentTimeMillis() + DURATION;
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long n = 0;
+                while (System.currentTimeMillis() < end) {
+                    for (int i = 0; i < 1000; i++) {
+                        int key = random.nextInt(KEYS);
+                        if (random.nextInt(100) < 5)
+                            st.put(key, i);
+                        else
+                            st.get(key);
+                    }
+                    n += 1000;
+                }
+                ops.add(n);
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        return ops.sum() / DURATION;
+    }
+
+    private static <K, V> ST<K, V> synchronizedST(ST<K, V> st) {
+        return new ST<K, V>() {
+            @Override
+            public synchronized void put(K k, V v) {
+                st.put(k, v);
+            }
+
+            @Override
+            public synchronized V get(K k) {
+                return st.get(k);
+            }
+
+            @Override
+            public synchronized int size() {
+                return st.size();
+            }
+
+            @Override
+            public synchronized Iterable<K> keys() {
+                return st.keys();
+            }
+
+            @Override
+            public synchronized void forEach(BiConsumer<? super K, ? super V> action) {
+                st.forEach(action);
+            }
+        };
+    }
+}
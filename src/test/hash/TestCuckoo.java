@@ -0,0 +1,78 @@
+package test.hash;
+
+import main.top.kindless.search.hash.CuckooHashST;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.Random;
+
+public class TestCuckoo {
+
+    private static final int N = 1000000;
+
+    public static void main(String[] args) {
+        CuckooHashST<Integer, Integer> st = new CuckooHashST<>();
+        Integer[] keys = new Integer[N];
+        Random random = new Random(47);
+        for (int i = 0; i < N; i++) {
+            keys[i] = random.nextInt();
+        }
+        long currentTimeMillis = System.currentTimeMillis();
+        for (Integer key : keys) {
+            st.put(key, key);
+        }
+        System.out.println("插入耗时：" + (System.currentTimeMillis() - currentTimeMillis) + "毫秒");
+        System.out.println("装载因子：" + st.loadFactor() + "，暂存区：" + st.stashSize());
+        long[] latency = new long[N];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < N; i++) {
+                long nanoTime = System.nanoTime();
+                st.get(keys[i]);
+                latency[i] = System.nanoTime() - nanoTime;
+            }
+        }
+        Arrays.sort(latency);
+        System.out.println("查询 p50：" + latency[N / 2] + "纳秒，p99.9：" + latency[(int) (N * .999)] + "纳秒");
+        sameHash();
+    }
+
+    /**
+     * hashCode全部为0的Long键，扩容无法把它们分开，多出来的键进入所在桶的溢出链表，
+     * 其他键的查询（包括未命中）不会遍历这些链表
+     */
+    private static void sameHash() {
+        CuckooHashST<Long, Integer> st = new CuckooHashST<>();
+        HashMap<Long, Integer> map = new HashMap<>();
+        int n = 10000;
+        for (int i = 0; i < n; i++) {
+            st.put((long) i << 32 | i, i);
+            map.put((long) i << 32 | i, i);
+        }
+        for (int i = 0; i < n; i += 2) {
+            st.delete((long) i << 32 | i);
+            map.remove((long) i << 32 | i);
+        }
+        //普通的键让表扩容若干次
+        Random random = new Random(47);
+        for (int i = 0; i < N; i++) {
+            long key = random.nextInt();
+            st.put(key, i);
+            map.put(key, i);
+        }
+        for (long key : map.keySet()) {
+            if (!map.get(key).equals(st.get(key)))
+                throw new IllegalStateException("differs at " + key);
+        }
+        if (st.size() != map.size())
+            throw new IllegalStateException("size:" + st.size());
+        long nanoTime = System.nanoTime();
+        int hit = 0;
+        for (int i = 0; i < N; i++) {
+            if (st.contains((long) random.nextInt() << 32 | 1))
+                hit++;
+        }
+        System.out.println("同hash键：" + n / 2 + "个，溢出链表：" + st.overflowSize() + "，未命中查询："
+                + (System.nanoTime() - nanoTime) / N + "纳秒/次（命中" + hit + "）");
+    }
+}
@@ -3,8 +3,10 @@ package test.hash;
 
 import main.top.kindless.search.hash.SeparateChainingHashST;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
 
 public class TestHash {
@@ -22,5 +24,88 @@ public class TestHash {
                 .max()
                 .ifPresent(System.out::println);
         System.out.println(st.treeNum());
+        putLatency();
+        smallTables();
+        hashFlooding();
+    }
+
+    /**
+     * 哈希洪水攻击：由"Aa"和"BB"拼接而成的字符串的hashCode全部相同，
+     * 检测到碰撞风暴后会换用带随机种子的哈希并重新散列
+     */
+    private static void hashFlooding() {
+        int n = 1 << 16;
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int bit = 0; bit < 16; bit++) {
+                sb.append((i >>> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            keys[i] = sb.toString();
+        }
+        SeparateChainingHashST<String, Integer> st = new SeparateChainingHashST<>();
+        long nanoTime = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            st.put(keys[i], i);
+        }
+        for (int i = 0; i < n; i++) {
+            if (st.get(keys[i]) != i)
+                throw new IllegalStateException("lost key:" + keys[i]);
+        }
+        System.out.println("碰撞键插入并查询耗时：" + (System.nanoTime() - nanoTime) / 1000000 + "毫秒，重新播种：" + st.reseedNum()
+                + "次，红黑树：" + st.treeNum() + "棵，最大桶：" + Arrays.stream(st.sizeOfEachButton()).max().getAsInt());
+        for (int i = 0; i < n; i++) {
+            st.delete(keys[i]);
+        }
+        System.out.println("删除后剩余：" + st.size());
+    }
+
+    /**
+     * 大量小符号表的内存占用，桶数组在第一次插入时才分配，桶也是按需创建的
+     */
+    private static void smallTables() {
+        int n = 10000;
+        List<SeparateChainingHashST<Integer, Integer>> tables = new ArrayList<>(n);
+        long before = usedMemory();
+        for (int i = 0; i < n; i++) {
+            tables.add(new SeparateChainingHashST<>());
+        }
+        long empty = usedMemory() - before;
+        for (SeparateChainingHashST<Integer, Integer> st : tables) {
+            for (int i = 0; i < 4; i++) {
+                st.put(i, i);
+            }
+        }
+        long four = usedMemory() - before;
+        System.out.println("空表：" + empty / n + "字节/个，4个元素：" + four / n + "字节/个（" + tables.size() + "）");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 逐次统计插入耗时，扩容是渐进式的，所以高分位耗时不应该出现尖刺
+     */
+    private static void putLatency() {
+        int n = 1 << 22;
+        SeparateChainingHashST<Integer, Integer> st = new SeparateChainingHashST<>(1);
+        long[] latency = new long[n];
+        for (int i = 0; i < n; i++) {
+            long nanoTime = System.nanoTime();
+            st.put(i, i);
+            latency[i] = System.nanoTime() - nanoTime;
+        }
+        for (int i = 0; i < n; i++) {
+            if (st.get(i) != i)
+                throw new IllegalStateException("lost key:" + i);
+        }
+        Arrays.sort(latency);
+        System.out.println("p50：" + latency[n / 2] + "纳秒，p99：" + latency[(int) (n * .99)]
+                + "纳秒，p99.9：" + latency[(int) (n * .999)] + "纳秒，最大：" + latency[n - 1] + "纳秒");
     }
 }
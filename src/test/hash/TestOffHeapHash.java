@@ -0,0 +1,86 @@
+package test.hash;
+
+import main.top.kindless.search.hash.OffHeapHashST;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+public class TestOffHeapHash {
+
+    public static void main(String[] args) {
+        try (OffHeapHashST st = new OffHeapHashST()) {
+            ByteBuffer key = ByteBuffer.allocate(16);
+            ByteBuffer value = ByteBuffer.allocate(64);
+            long before = usedMemory();
+            long currentTimeMillis = System.currentTimeMillis();
+            for (int n = 1; n <= 4000000; n++) {
+                key.clear();
+                key.putLong(n).putLong(n * 31L).flip();
+                value.clear();
+                while (value.hasRemaining()) {
+                    value.putInt(n);
+                }
+                value.flip();
+                st.put(key, value);
+                if (n % 1000000 == 0) {
+                    System.out.println("条数：" + n + "，堆内存增长：" + (usedMemory() - before) / 1024 + "KB，堆外内存："
+                            + st.offHeapBytes() / 1024 / 1024 + "MB，数据段：" + st.segmentNum());
+                }
+            }
+            System.out.println("插入耗时：" + (System.currentTimeMillis() - currentTimeMillis) + "毫秒");
+            key.clear();
+            key.putLong(42).putLong(42 * 31L).flip();
+            System.out.println("查询：" + st.get(key).getInt());
+            st.delete("missing".getBytes(StandardCharsets.UTF_8));
+        }
+        byteOrder();
+        compactGarbage();
+    }
+
+    /**
+     * 同样的字节通过小端序的缓冲区传入，仍是同一个键
+     */
+    private static void byteOrder() {
+        try (OffHeapHashST st = new OffHeapHashST()) {
+            ByteBuffer big = ByteBuffer.allocate(16);
+            big.putLong(7).putLong(11).flip();
+            ByteBuffer little = ByteBuffer.allocateDirect(16).order(ByteOrder.LITTLE_ENDIAN);
+            little.put(big.duplicate()).flip();
+            st.put(little, ByteBuffer.wrap(new byte[]{1}));
+            if (!st.contains(big) || st.get(big).get() != 1 || !st.contains(little))
+                throw new IllegalStateException("byte order changes the key");
+            st.put(big, ByteBuffer.wrap(new byte[]{2}));
+            st.delete(little);
+            if (st.size() != 0 || st.contains(big))
+                throw new IllegalStateException("byte order changes the key");
+            System.out.println("字节序无关：通过");
+        }
+    }
+
+    /**
+     * 压缩后只剩各数据段末尾放不下记录的空间
+     */
+    private static void compactGarbage() {
+        try (OffHeapHashST st = new OffHeapHashST(16, 1000)) {
+            //每条记录300字节，一个数据段放3条，末尾浪费100字节
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < 10; i++) {
+                    st.put(new byte[]{(byte) i}, new byte[291]);
+                }
+            }
+            st.compact();
+            if (st.segmentNum() != 4 || st.garbageBytes() != 300)
+                throw new IllegalStateException("garbage:" + st.garbageBytes() + ", segments:" + st.segmentNum());
+            System.out.println("压缩后垃圾：" + st.garbageBytes() + "字节，数据段：" + st.segmentNum());
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
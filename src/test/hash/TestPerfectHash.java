@@ -0,0 +1,58 @@
+package test.hash;
+
+import main.top.kindless.search.hash.PerfectHashST;
+import main.top.kindless.search.hash.SeparateChainingHashST;
+
+import java.util.Random;
+import java.util.function.Function;
+
+public class TestPerfectHash {
+
+    private static final int N = 1000000;
+
+    /**
+     * 累加查询结果，防止查询被优化掉
+     */
+    private static long sink;
+
+    public static void main(String[] args) {
+        SeparateChainingHashST<Integer, Integer> st = new SeparateChainingHashST<>();
+        Integer[] keys = new Integer[N];
+        Integer[] misses = new Integer[N];
+        Random random = new Random(47);
+        for (int i = 0; i < N; i++) {
+            //存在的键都是偶数，不存在的键都是奇数
+            keys[i] = random.nextInt() & ~1;
+            misses[i] = random.nextInt() | 1;
+            st.put(keys[i], i);
+        }
+        for (int round = 0; round < 3; round++) {
+            long nanoTime = System.nanoTime();
+            PerfectHashST<Integer, Integer> frozen = PerfectHashST.freeze(st);
+            long build = System.nanoTime() - nanoTime;
+            System.out.println("构建耗时：" + build / 1000000 + "毫秒，哈希函数：" + String.format("%.2f", frozen.bitsPerKey())
+                    + "位/键，溢出：" + frozen.overflowSize());
+            for (int i = 0; i < N; i++) {
+                if (!frozen.get(keys[i]).equals(st.get(keys[i])))
+                    throw new IllegalStateException("wrong value:" + keys[i]);
+            }
+            System.out.println("SeparateChainingHashST 命中查询：" + lookup(st::get, keys) + "次/毫秒，未命中查询："
+                    + lookup(st::get, misses) + "次/毫秒");
+            System.out.println("PerfectHashST 命中查询：" + lookup(frozen::get, keys) + "次/毫秒，未命中查询："
+                    + lookup(frozen::get, misses) + "次/毫秒");
+        }
+    }
+
+    private static long lookup(Function<Integer, Integer> get, Integer[] keys) {
+        long nanoTime = System.nanoTime();
+        long sum = 0;
+        for (Integer key : keys) {
+            Integer value = get.apply(key);
+            if (value != null)
+                sum += value;
+        }
+        long time = System.nanoTime() - nanoTime;
+        sink += sum;
+        return keys.length * 1000000L / time;
+    }
+}
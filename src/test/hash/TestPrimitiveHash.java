@@ -0,0 +1,72 @@
+package test.hash;
+
+import main.top.kindless.search.hash.IntHashST;
+import main.top.kindless.search.hash.LongHashST;
+import main.top.kindless.search.hash.SeparateChainingHashST;
+
+import java.util.Random;
+
+public class TestPrimitiveHash {
+
+    private static final int N = 1000000;
+
+    public static void main(String[] args) {
+        long[] ids = new long[N];
+        Random random = new Random(47);
+        for (int i = 0; i < N; i++) {
+            ids[i] = random.nextLong();
+        }
+        String value = "value";
+        for (int round = 0; round < 3; round++) {
+            long before = usedMemory();
+            long nanoTime = System.nanoTime();
+            LongHashST<String> st = new LongHashST<>();
+            for (long id : ids) {
+                st.put(id, value);
+            }
+            long put = System.nanoTime() - nanoTime;
+            long memory = usedMemory() - before;
+            nanoTime = System.nanoTime();
+            int hit = 0;
+            for (long id : ids) {
+                if (st.contains(id))
+                    hit++;
+            }
+            System.out.println("LongHashST 插入耗时：" + put / 1000000 + "毫秒，查询耗时："
+                    + (System.nanoTime() - nanoTime) / 1000000 + "毫秒，内存：" + memory / N + "字节/条（" + hit + "）");
+
+            before = usedMemory();
+            nanoTime = System.nanoTime();
+            SeparateChainingHashST<Long, String> boxed = new SeparateChainingHashST<>(16);
+            for (long id : ids) {
+                boxed.put(id, value);
+            }
+            put = System.nanoTime() - nanoTime;
+            memory = usedMemory() - before;
+            nanoTime = System.nanoTime();
+            hit = 0;
+            for (long id : ids) {
+                if (boxed.contains(id))
+                    hit++;
+            }
+            System.out.println("SeparateChainingHashST 插入耗时：" + put / 1000000 + "毫秒，查询耗时："
+                    + (System.nanoTime() - nanoTime) / 1000000 + "毫秒，内存：" + memory / N + "字节/条（" + hit + "）");
+        }
+
+        IntHashST<String> st = new IntHashST<>(1);
+        for (int i = -5; i <= 5; i++) {
+            st.put(i, "v" + i);
+        }
+        st.delete(0);
+        st.delete(3);
+        st.forEach((k, v) -> System.out.println("key=" + k + ", value=" + v));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,61 @@
+package test.hash;
+
+import main.top.kindless.search.ST;
+import main.top.kindless.search.hash.RobinHoodHashST;
+import main.top.kindless.search.hash.SeparateChainingHashST;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class TestRobinHood {
+
+    private static final int N = 1000000;
+
+    public static void main(String[] args) {
+        Integer[] keys = new Integer[N];
+        Random random = new Random(47);
+        for (int i = 0; i < N; i++) {
+            keys[i] = random.nextInt();
+        }
+        for (int round = 0; round < 3; round++) {
+            //预先分配足够的桶，保证两者都不需要扩容
+            bench("SeparateChainingHashST", () -> new SeparateChainingHashST<>((int) (N / .75) + 1), keys);
+            bench("RobinHoodHashST", () -> new RobinHoodHashST<>(N * 2), keys);
+        }
+    }
+
+    private static void bench(String name, Supplier<ST<Integer, Integer>> supplier, Integer[] keys) {
+        long before = usedMemory();
+        long nanoTime = System.nanoTime();
+        ST<Integer, Integer> st = supplier.get();
+        for (Integer key : keys) {
+            st.put(key, key);
+        }
+        long put = System.nanoTime() - nanoTime;
+        long memory = usedMemory() - before;
+        nanoTime = System.nanoTime();
+        long sum = 0;
+        for (Integer key : keys) {
+            sum += st.get(key);
+        }
+        long get = System.nanoTime() - nanoTime;
+        nanoTime = System.nanoTime();
+        for (int i = 0; i < keys.length; i++) {
+            if (st.get(i * 31 + 7) != null)
+                sum++;
+        }
+        long miss = System.nanoTime() - nanoTime;
+        System.out.println(name + " 插入：" + keys.length * 1000000L / put + "次/毫秒"
+                + "，命中查询：" + keys.length * 1000000L / get + "次/毫秒"
+                + "，未命中查询：" + keys.length * 1000000L / miss + "次/毫秒"
+                + "，内存：" + memory / keys.length + "字节/条（" + sum + "）");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
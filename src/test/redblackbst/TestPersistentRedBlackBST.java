@@ -0,0 +1,148 @@
+package test.redblackbst;
+
+import main.top.kindless.search.redblackbst.PersistentRedBlackBST;
+import main.top.kindless.search.redblackbst.PersistentRedBlackBST.Snapshot;
+import main.top.kindless.search.redblackbst.RedBlackBST;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestPersistentRedBlackBST {
+
+    private static final int KEYS = 1 << 18;
+
+    public static void main(String[] args) throws InterruptedException {
+        snapshots();
+        readersWithWriter();
+        writeCost();
+    }
+
+    /**
+     * 和TreeMap对比，并且检查之前的快照在之后的修改中保持不变
+     */
+    private static void snapshots() {
+        PersistentRedBlackBST<Integer, Integer> st = new PersistentRedBlackBST<>();
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        List<Snapshot<Integer, Integer>> snapshots = new ArrayList<>();
+        List<TreeMap<Integer, Integer>> expected = new ArrayList<>();
+        Random random = new Random(47);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                st.delete(key);
+                map.remove(key);
+            } else {
+                st.put(key, i);
+                map.put(key, i);
+            }
+            int probe = random.nextInt(5000);
+            if (st.size() != map.size() || st.rank(probe) != map.headMap(probe).size()
+                    || !Objects.equals(st.get(probe), map.get(probe))
+                    || !Objects.equals(st.floor(probe), map.floorKey(probe)))
+                throw new IllegalStateException("differs at " + probe);
+            if (i % 1000 == 0) {
+                snapshots.add(st.snapshot());
+                expected.add(new TreeMap<>(map));
+            }
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            TreeMap<Integer, Integer> old = expected.get(i);
+            List<Integer> keys = new ArrayList<>();
+            snapshots.get(i).forEach((key, value) -> {
+                if (!value.equals(old.get(key)))
+                    throw new IllegalStateException("snapshot changed: " + key);
+                keys.add(key);
+            });
+            if (!keys.equals(new ArrayList<>(old.keySet())))
+                throw new IllegalStateException("snapshot changed");
+        }
+        System.out.println(snapshots.size() + "个快照在之后的修改中保持不变，当前版本与TreeMap一致");
+    }
+
+    /**
+     * 一个线程不断写，其他线程不加锁地在快照上做范围遍历，每次遍历的结果都必须是完整的一个版本：
+     * 写线程总是成对地修改key和key+KEYS，所以快照里两者要么都在要么都不在
+     */
+    private static void readersWithWriter() throws InterruptedException {
+        PersistentRedBlackBST<Integer, Integer> st = new PersistentRedBlackBST<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] writes = {0};
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long n = 0;
+            while (!stop.get()) {
+                int key = random.nextInt(KEYS);
+                if (random.nextBoolean()) {
+                    st.update(s -> s.with(key, key).with(key + KEYS, key));
+                } else {
+                    st.update(s -> s.without(key).without(key + KEYS));
+                }
+                n++;
+            }
+            writes[0] = n;
+        });
+        int readers = 2;
+        long[] scans = new long[readers];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < readers; t++) {
+            int id = t;
+            threads.add(new Thread(() -> {
+                while (!stop.get()) {
+                    Snapshot<Integer, Integer> snapshot = st.snapshot();
+                    int lower = snapshot.size(0, KEYS - 1);
+                    int count = 0;
+                    for (Integer key : snapshot.keys(KEYS, 2 * KEYS - 1)) {
+                        if (!snapshot.contains(key - KEYS))
+                            throw new IllegalStateException("torn snapshot at " + key);
+                        count++;
+                    }
+                    if (count != lower)
+                        throw new IllegalStateException("torn snapshot: " + lower + " != " + count);
+                    scans[id]++;
+                }
+            }));
+        }
+        writer.start();
+        threads.forEach(Thread::start);
+        Thread.sleep(2000);
+        stop.set(true);
+        writer.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("写线程修改" + writes[0] + "次，读线程在快照上完整遍历" + (scans[0] + scans[1]) + "次，没有看到中间状态");
+    }
+
+    /**
+     * 路径复制的写比原地修改慢，但是不需要任何锁，而且快照是O(1)的
+     */
+    private static void writeCost() {
+        int n = 1 << 20;
+        int[] keys = new int[n];
+        Random random = new Random(47);
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        for (int round = 0; round < 3; round++) {
+            long nanoTime = System.nanoTime();
+            RedBlackBST<Integer, Integer> redBlackBST = new RedBlackBST<>();
+            for (int key : keys) {
+                redBlackBST.put(key, key);
+            }
+            long mutable = System.nanoTime() - nanoTime;
+            nanoTime = System.nanoTime();
+            PersistentRedBlackBST<Integer, Integer> persistent = new PersistentRedBlackBST<>();
+            for (int key : keys) {
+                persistent.put(key, key);
+            }
+            long copying = System.nanoTime() - nanoTime;
+            System.out.println("插入" + n + "个键，RedBlackBST：" + mutable / 1000000 + "毫秒，PersistentRedBlackBST："
+                    + copying / 1000000 + "毫秒");
+        }
+    }
+}
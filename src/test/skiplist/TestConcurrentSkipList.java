@@ -0,0 +1,144 @@
+package test.skiplist;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.redblackbst.RedBlackBST;
+import main.top.kindless.search.skiplist.ConcurrentSkipListST;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TestConcurrentSkipList {
+
+    private static final int KEYS = 1 << 20;
+
+    private static final long DURATION = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        disjointWriters();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores * 2; threads <<= 1) {
+            ConcurrentSkipListST<Integer, Integer> st = new ConcurrentSkipListST<>();
+            RedBlackBST<Integer, Integer> locked = new RedBlackBST<>();
+            for (int i = 0; i < KEYS; i += 2) {
+                st.put(i, i);
+                locked.put(i, i);
+            }
+            System.out.println(threads + "线程 ConcurrentSkipListST：" + bench(st, threads) + "次/毫秒，"
+                    + "全局锁 RedBlackBST：" + bench(locked, threads) + "次/毫秒");
+        }
+    }
+
+    /**
+     * 每个线程只修改自己的键，结束后和每个线程各自的TreeMap合并的结果对比，
+     * 同时有一个线程不断地遍历，检查键是否有序
+     */
+    private static void disjointWriters() throws InterruptedException {
+        int threads = 4;
+        ConcurrentSkipListST<Integer, Integer> st = new ConcurrentSkipListST<>();
+        List<TreeMap<Integer, Integer>> maps = new ArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            maps.add(map);
+            int offset = t;
+            writers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500000; i++) {
+                    int key = random.nextInt(10000) * threads + offset;
+                    if (random.nextInt(3) == 0) {
+                        st.delete(key);
+                        map.remove(key);
+                    } else {
+                        st.put(key, i);
+                        map.put(key, i);
+                    }
+                }
+            }));
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] scans = {0};
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                Integer previous = null;
+                for (Integer key : st.keys()) {
+                    if (previous != null && previous >= key)
+                        throw new IllegalStateException("keys out of order: " + previous + ", " + key);
+                    previous = key;
+                }
+                scans[0]++;
+            }
+        });
+        reader.start();
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        stop.set(true);
+        reader.join();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        maps.forEach(expected::putAll);
+        List<Integer> keys = new ArrayList<>();
+        st.forEach((key, value) -> {
+            if (!value.equals(expected.get(key)))
+                throw new IllegalStateException("wrong value of " + key);
+            keys.add(key);
+        });
+        if (!keys.equals(new ArrayList<>(expected.keySet())) || st.size() != expected.size())
+            throw new IllegalStateException("keys differ");
+        System.out.println(threads + "个线程并发修改之后与TreeMap一致：" + st.size() + "个键，并发遍历" + scans[0] + "次");
+    }
+
+    /**
+     * 50%写（插入和删除各一半），25%get，25%floor
+     */
+    private static long bench(OrderedST<Integer, Integer> st, int threads) throws InterruptedException {
+        Object lock = new Object();
+        boolean locked = !(st instanceof ConcurrentSkipListST);
+        LongAdder ops = new LongAdder();
+        CountDownLatch latch = new CountDownLatch(threads);
+        long end = System.currentTimeMillis() + DURATION;
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long n = 0;
+                while (System.currentTimeMillis() < end) {
+                    for (int i = 0; i < 1000; i++) {
+                        int key = random.nextInt(KEYS);
+                        int op = random.nextInt(4);
+                        if (locked) {
+                            synchronized (lock) {
+                                operate(st, key, op);
+                            }
+                        } else operate(st, key, op);
+                    }
+                    n += 1000;
+                }
+                ops.add(n);
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        return ops.sum() / DURATION;
+    }
+
+    private static void operate(OrderedST<Integer, Integer> st, int key, int op) {
+        switch (op) {
+            case 0:
+                st.put(key, key);
+                break;
+            case 1:
+                st.delete(key);
+                break;
+            case 2:
+                st.get(key);
+                break;
+            default:
+                st.floor(key);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package test.splay;
+
+import main.top.kindless.search.OrderedST;
+import main.top.kindless.search.redblackbst.RedBlackBST;
+import main.top.kindless.search.splay.SplayST;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestSplay {
+
+    private static final int KEYS = 1 << 20;
+
+    private static final int LOOKUPS = 1 << 23;
+
+    public static void main(String[] args) {
+        correctness(false);
+        correctness(true);
+        skewedAccess(0.99);
+        skewedAccess(1.2);
+        hotSet(0.01, 0.9);
+        uniformAccess();
+    }
+
+    /**
+     * 和TreeMap对比，顺序插入会让树退化成链表，检查深的路径也没有问题
+     */
+    private static void correctness(boolean semiSplay) {
+        SplayST<Integer, Integer> st = new SplayST<>(semiSplay);
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        Random random = new Random(47);
+        for (int i = 0; i < 300000; i++) {
+            int key = random.nextInt(5000);
+            int op = random.nextInt(4);
+            if (op == 0) {
+                st.delete(key);
+                map.remove(key);
+            } else {
+                st.put(key, i);
+                map.put(key, i);
+            }
+            int probe = random.nextInt(5000);
+            if (st.size() != map.size() || st.rank(probe) != map.headMap(probe).size()
+                    || !Objects.equals(st.get(probe), map.get(probe))
+                    || !Objects.equals(st.floor(probe), map.floorKey(probe))
+                    || !Objects.equals(st.ceiling(probe), map.ceilingKey(probe)))
+                throw new IllegalStateException("differs at " + probe);
+            if (i % 10000 == 0) {
+                List<Integer> keys = new ArrayList<>();
+                st.keys(1000, 3000).forEach(keys::add);
+                if (!keys.equals(new ArrayList<>(map.subMap(1000, true, 3000, true).keySet())))
+                    throw new IllegalStateException("keys differ");
+            }
+        }
+        SplayST<Integer, Integer> chain = new SplayST<>(semiSplay);
+        for (int i = 0; i < KEYS; i++) {
+            chain.put(i, i);
+        }
+        for (int i = 0; i < KEYS; i += 7) {
+            if (chain.get(i) != i)
+                throw new IllegalStateException("lost " + i);
+        }
+        System.out.println((semiSplay ? "半伸展" : "伸展") + "树与TreeMap一致，顺序插入" + KEYS + "个键后查找正常");
+    }
+
+    /**
+     * Zipf分布的查找，指数越大越倾斜，热点键在键空间里随机分布
+     * @param s Zipf指数
+     */
+    private static void skewedAccess(double s) {
+        int[] keys = permutation(KEYS, new Random(47));
+        int[] ranks = zipf(KEYS, s, LOOKUPS, new Random(31));
+        int[] lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = keys[ranks[i]];
+        }
+        System.out.println("Zipf(" + s + ")：" + KEYS + "个键，" + LOOKUPS + "次查找");
+        compare(keys, lookups);
+    }
+
+    /**
+     * 一小部分热点键承担大部分查找，其余查找均匀地落在所有键上
+     * @param hot 热点键的比例
+     * @param traffic 热点键承担的查找比例
+     */
+    private static void hotSet(double hot, double traffic) {
+        int[] keys = permutation(KEYS, new Random(47));
+        int hotKeys = (int) (KEYS * hot);
+        Random random = new Random(31);
+        int[] lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = random.nextDouble() < traffic ? keys[random.nextInt(hotKeys)] : random.nextInt(KEYS);
+        }
+        System.out.println((int) (hot * 100) + "%的键承担" + (int) (traffic * 100) + "%的查找：" + KEYS + "个键，" + LOOKUPS + "次查找");
+        compare(keys, lookups);
+    }
+
+    /**
+     * 均匀分布的查找，伸展树在这里没有优势，旋转是额外的开销
+     */
+    private static void uniformAccess() {
+        int[] keys = permutation(KEYS, new Random(47));
+        Random random = new Random(31);
+        int[] lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = random.nextInt(KEYS);
+        }
+        System.out.println("均匀分布：" + KEYS + "个键，" + LOOKUPS + "次查找");
+        compare(keys, lookups);
+    }
+
+    private static void compare(int[] keys, int[] lookups) {
+        List<OrderedST<Integer, Integer>> sts = new ArrayList<>();
+        sts.add(new RedBlackBST<>());
+        sts.add(new SplayST<>());
+        sts.add(new SplayST<>(true));
+        String[] names = {"RedBlackBST", "SplayST", "SplayST(半伸展)"};
+        Integer[] boxed = new Integer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            boxed[i] = i;
+        }
+        for (OrderedST<Integer, Integer> st : sts) {
+            for (int key : keys) {
+                st.put(boxed[key], key);
+            }
+        }
+        for (int round = 0; round < 3; round++) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < sts.size(); i++) {
+                OrderedST<Integer, Integer> st = sts.get(i);
+                System.gc();
+                long sum = 0;
+                long nanoTime = System.nanoTime();
+                for (int key : lookups) {
+                    sum += st.get(boxed[key]);
+                }
+                long time = System.nanoTime() - nanoTime;
+                if (sum < 0)
+                    throw new IllegalStateException();
+                line.append(names[i]).append("：").append(String.format("%.1f", (double) time / LOOKUPS)).append("纳秒/次 ");
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static int[] permutation(int n, Random random) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        return keys;
+    }
+
+    /**
+     * 按累积分布二分查找生成Zipf分布的排名，排名0最热
+     */
+    private static int[] zipf(int n, double s, int count, Random random) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1 / Math.pow(i + 1, s);
+            cdf[i] = total;
+        }
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            double u = random.nextDouble() * total;
+            int lo = 0, hi = n - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) lo = mid + 1;
+                else hi = mid;
+            }
+            ranks[i] = lo;
+        }
+        return ranks;
+    }
+}